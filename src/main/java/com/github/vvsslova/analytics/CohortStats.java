@@ -0,0 +1,22 @@
+package com.github.vvsslova.analytics;
+
+import lombok.Data;
+
+import java.time.YearMonth;
+
+/**
+ * Возвраты пользователей, впервые взявших книгу в указанном месяце
+ */
+@Data
+public class CohortStats {
+    private final YearMonth cohort;
+    private final long returned;
+    private final long overdue;
+
+    /**
+     * Доля возвратов позже срока
+     */
+    public double getOverdueRate() {
+        return returned == 0 ? 0 : (double) overdue / returned;
+    }
+}
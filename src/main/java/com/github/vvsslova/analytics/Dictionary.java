@@ -0,0 +1,62 @@
+package com.github.vvsslova.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Словарь строк истории: каждой строке назначается плотный номер, и столбцы хранят только номера.
+ * Номера назначаются одним потоком под блокировкой истории, а читатели получают строки по номерам
+ * из уже опубликованных строк истории без блокировок
+ */
+final class Dictionary {
+    private final Map<String, Integer> ids;
+    private volatile String[] names;
+    private volatile int size;
+
+    Dictionary() {
+        this.ids = new HashMap<>();
+        this.names = new String[256];
+    }
+
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int next = size;
+        String[] current = names;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = name;
+        names = current;
+        ids.put(name, next);
+        size = next + 1;
+        return next;
+    }
+
+    /**
+     * Удаление строки из словаря. Номер остаётся занятым, и строки истории с ним сохраняются,
+     * но по номеру строка больше не выдаётся, а повторное добавление той же строки получит новый номер
+     *
+     * @param name строка
+     * @return true, если строка была в словаре
+     */
+    boolean forget(String name) {
+        Integer id = ids.remove(name);
+        if (id == null) {
+            return false;
+        }
+        names[id] = null;
+        return true;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return size;
+    }
+}
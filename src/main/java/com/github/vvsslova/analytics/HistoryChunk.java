@@ -0,0 +1,50 @@
+package com.github.vvsslova.analytics;
+
+/**
+ * Блок строк истории одного месяца в виде столбцов фиксированной длины. Строки только добавляются,
+ * количество строк публикуется после записи их столбцов, поэтому читатели видят заполненные строки без блокировок
+ */
+final class HistoryChunk {
+    static final int UNKNOWN_DAY = Integer.MIN_VALUE;
+
+    final int month;
+    final int[] book;
+    final int[] user;
+    final int[] author;
+    final byte[] genre;
+    final int[] lendDay;
+    final int[] dueDay;
+    final int[] returnDay;
+    private volatile int size;
+
+    HistoryChunk(int month, int capacity) {
+        this.month = month;
+        this.book = new int[capacity];
+        this.user = new int[capacity];
+        this.author = new int[capacity];
+        this.genre = new byte[capacity];
+        this.lendDay = new int[capacity];
+        this.dueDay = new int[capacity];
+        this.returnDay = new int[capacity];
+    }
+
+    boolean isFull() {
+        return size == book.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void append(int bookRef, int userRef, int authorRef, int genreOrdinal, int lend, int due, int returned) {
+        int row = size;
+        book[row] = bookRef;
+        user[row] = userRef;
+        author[row] = authorRef;
+        genre[row] = (byte) genreOrdinal;
+        lendDay[row] = lend;
+        dueDay[row] = due;
+        returnDay[row] = returned;
+        size = row + 1;
+    }
+}
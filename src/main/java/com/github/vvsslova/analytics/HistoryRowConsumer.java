@@ -0,0 +1,24 @@
+package com.github.vvsslova.analytics;
+
+import com.github.vvsslova.constant.BookGenre;
+
+import java.time.LocalDate;
+
+/**
+ * Получатель строк истории при выгрузке {@link LoanHistory#export(HistoryRowConsumer)}
+ */
+@FunctionalInterface
+public interface HistoryRowConsumer {
+    /**
+     * @param bookID        ID книги
+     * @param userID        ID пользователя или ключ обезличенного пользователя, одинаковый для всех его строк
+     * @param userForgotten пользователь обезличен
+     * @param author        автор книги на момент возврата
+     * @param bookGenre     жанр книги на момент возврата
+     * @param lendDate      дата выдачи или null, если она неизвестна
+     * @param dueDate       срок возврата
+     * @param returnedDate  дата фактического возврата
+     */
+    void accept(String bookID, String userID, boolean userForgotten, String author, BookGenre bookGenre,
+                LocalDate lendDate, LocalDate dueDate, LocalDate returnedDate);
+}
@@ -0,0 +1,132 @@
+package com.github.vvsslova.analytics;
+
+import com.github.vvsslova.constant.BookGenre;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Накопленные показатели по всей истории выдач, обновляемые по мере её роста.
+ * {@link #refresh()} учитывает только строки, добавленные после предыдущего обновления:
+ * для каждого блока запоминается количество уже учтённых строк, а заполненные блоки больше не просматриваются
+ */
+public class LoanAggregates {
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    private final LoanHistory history;
+    private int[] seenRows;
+    private int firstOpenChunk;
+    private int[] bookCounts;
+    private int[] authorCounts;
+    private final long[] genreCounts;
+    private long knownDurationLoans;
+    private long totalLoanDays;
+    private long returned;
+    private long overdue;
+
+    public LoanAggregates(LoanHistory history) {
+        this.history = history;
+        this.seenRows = new int[16];
+        this.bookCounts = new int[0];
+        this.authorCounts = new int[0];
+        this.genreCounts = new long[GENRES.length];
+    }
+
+    /**
+     * Учёт строк, добавленных после предыдущего обновления
+     *
+     * @return количество учтённых строк
+     */
+    public synchronized long refresh() {
+        HistoryChunk[] chunks = history.chunks();
+        if (chunks.length > seenRows.length) {
+            seenRows = Arrays.copyOf(seenRows, Math.max(chunks.length, seenRows.length * 2));
+        }
+        int[] sizes = new int[chunks.length];
+        for (int i = firstOpenChunk; i < chunks.length; i++) {
+            sizes[i] = chunks[i].size();
+        }
+        bookCounts = ensureCapacity(bookCounts, history.books().size());
+        authorCounts = ensureCapacity(authorCounts, history.authors().size());
+        long added = 0;
+        for (int i = firstOpenChunk; i < chunks.length; i++) {
+            HistoryChunk chunk = chunks[i];
+            int size = sizes[i];
+            for (int row = seenRows[i]; row < size; row++) {
+                bookCounts[chunk.book[row]]++;
+                authorCounts[chunk.author[row]]++;
+                genreCounts[chunk.genre[row]]++;
+                int lent = chunk.lendDay[row];
+                if (lent != HistoryChunk.UNKNOWN_DAY) {
+                    totalLoanDays += chunk.returnDay[row] - lent;
+                    knownDurationLoans++;
+                }
+                if (chunk.returnDay[row] > chunk.dueDay[row]) {
+                    overdue++;
+                }
+            }
+            added += size - seenRows[i];
+            seenRows[i] = size;
+            if (i == firstOpenChunk && size == chunk.book.length) {
+                firstOpenChunk++;
+            }
+        }
+        returned += added;
+        return added;
+    }
+
+    /**
+     * Наиболее часто выдаваемые книги на момент последнего обновления
+     *
+     * @param limit размер рейтинга
+     * @return ID книг с количеством выдач, по убыванию количества
+     */
+    public synchronized List<RankedItem> mostBorrowedBooks(int limit) {
+        return LoanAnalytics.top(bookCounts, history.books(), limit);
+    }
+
+    /**
+     * Наиболее часто выдаваемые авторы на момент последнего обновления
+     *
+     * @param limit размер рейтинга
+     * @return авторы с количеством выдач, по убыванию количества
+     */
+    public synchronized List<RankedItem> mostBorrowedAuthors(int limit) {
+        return LoanAnalytics.top(authorCounts, history.authors(), limit);
+    }
+
+    /**
+     * Количество выдач по жанрам на момент последнего обновления
+     */
+    public synchronized Map<BookGenre, Long> getGenreCounts() {
+        Map<BookGenre, Long> counts = new EnumMap<>(BookGenre.class);
+        for (BookGenre bookGenre : GENRES) {
+            counts.put(bookGenre, genreCounts[bookGenre.ordinal()]);
+        }
+        return counts;
+    }
+
+    /**
+     * Средняя продолжительность выдачи в днях или NaN, если выдач с известной датой выдачи нет
+     */
+    public synchronized double getAverageLoanDays() {
+        return knownDurationLoans == 0 ? Double.NaN : (double) totalLoanDays / knownDurationLoans;
+    }
+
+    /**
+     * Доля возвратов позже срока
+     */
+    public synchronized double getOverdueRate() {
+        return returned == 0 ? 0 : (double) overdue / returned;
+    }
+
+    public synchronized long getReturned() {
+        return returned;
+    }
+
+    private static int[] ensureCapacity(int[] counts, int size) {
+        return counts.length >= size ? counts : Arrays.copyOf(counts, Math.max(size, counts.length * 2));
+    }
+}
@@ -0,0 +1,349 @@
+package com.github.vvsslova.analytics;
+
+import com.github.vvsslova.constant.BookGenre;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Статистика по истории выдач. Каждый запрос выбирает блоки нужных месяцев, запоминает количество строк
+ * в них и просматривает блоки параллельно задачами {@link ForkJoinPool}: каждая задача считает свои блоки
+ * в отдельный накопитель по столбцам, а накопители складываются попарно при объединении задач.
+ * Строки, добавленные во время запроса, не учитываются
+ */
+public class LoanAnalytics {
+    private static final BookGenre[] GENRES = BookGenre.values();
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final LoanHistory history;
+    private final ForkJoinPool pool;
+
+    public LoanAnalytics(LoanHistory history) {
+        this(history, ForkJoinPool.commonPool());
+    }
+
+    public LoanAnalytics(LoanHistory history, ForkJoinPool pool) {
+        this.history = history;
+        this.pool = pool;
+    }
+
+    /**
+     * Наиболее часто выдаваемые книги среди возвращённых в указанном промежутке
+     *
+     * @param from  начальная дата возврата включительно
+     * @param to    конечная дата возврата не включительно
+     * @param limit размер рейтинга
+     * @return ID книг с количеством выдач, по убыванию количества
+     */
+    public List<RankedItem> mostBorrowedBooks(LocalDate from, LocalDate to, int limit) {
+        int fromDay = toDay(from);
+        int toDay = toDay(to);
+        List<HistoryChunk> chunks = history.chunksReturnedBetween(fromDay, toDay);
+        int[] rows = rowCounts(chunks);
+        int books = history.books().size();
+        int[] counts = scan(chunks, rows, () -> new int[books], (acc, chunk, size) -> {
+            for (int row = 0; row < size; row++) {
+                int returned = chunk.returnDay[row];
+                if (returned >= fromDay && returned < toDay) {
+                    acc[chunk.book[row]]++;
+                }
+            }
+        }, LoanAnalytics::sum);
+        return top(counts, history.books(), limit);
+    }
+
+    /**
+     * Наиболее часто выдаваемые авторы среди книг, возвращённых в указанном промежутке
+     *
+     * @param from  начальная дата возврата включительно
+     * @param to    конечная дата возврата не включительно
+     * @param limit размер рейтинга
+     * @return авторы с количеством выдач, по убыванию количества
+     */
+    public List<RankedItem> mostBorrowedAuthors(LocalDate from, LocalDate to, int limit) {
+        int fromDay = toDay(from);
+        int toDay = toDay(to);
+        List<HistoryChunk> chunks = history.chunksReturnedBetween(fromDay, toDay);
+        int[] rows = rowCounts(chunks);
+        int authors = history.authors().size();
+        int[] counts = scan(chunks, rows, () -> new int[authors], (acc, chunk, size) -> {
+            for (int row = 0; row < size; row++) {
+                int returned = chunk.returnDay[row];
+                if (returned >= fromDay && returned < toDay) {
+                    acc[chunk.author[row]]++;
+                }
+            }
+        }, LoanAnalytics::sum);
+        return top(counts, history.authors(), limit);
+    }
+
+    /**
+     * Спрос на жанры: количество выдач по дате выдачи в последовательных окнах промежутка.
+     * Выдачи с неизвестной датой выдачи не учитываются
+     *
+     * @param from       начальная дата выдачи включительно
+     * @param to         конечная дата выдачи не включительно
+     * @param windowDays длина окна в днях, последнее окно может быть короче
+     * @return количество выдач по окнам для каждого жанра
+     */
+    public Map<BookGenre, long[]> genreDemand(LocalDate from, LocalDate to, int windowDays) {
+        int fromDay = toDay(from);
+        int toDay = toDay(to);
+        int windows = Math.max(0, (int) (((long) toDay - fromDay + windowDays - 1) / windowDays));
+        List<HistoryChunk> chunks = history.chunksReturnedBetween(fromDay, Integer.MAX_VALUE);
+        int[] rows = rowCounts(chunks);
+        long[] counts = scan(chunks, rows, () -> new long[GENRES.length * windows], (acc, chunk, size) -> {
+            for (int row = 0; row < size; row++) {
+                int lent = chunk.lendDay[row];
+                if (lent >= fromDay && lent < toDay) {
+                    acc[chunk.genre[row] * windows + (lent - fromDay) / windowDays]++;
+                }
+            }
+        }, LoanAnalytics::sum);
+        Map<BookGenre, long[]> demand = new EnumMap<>(BookGenre.class);
+        for (BookGenre bookGenre : GENRES) {
+            int offset = bookGenre.ordinal() * windows;
+            demand.put(bookGenre, Arrays.copyOfRange(counts, offset, offset + windows));
+        }
+        return demand;
+    }
+
+    /**
+     * Средняя продолжительность выдачи в днях для выдач, возвращённых в указанном промежутке
+     *
+     * @param from начальная дата возврата включительно
+     * @param to   конечная дата возврата не включительно
+     * @return средняя продолжительность или NaN, если выдач с известной датой выдачи нет
+     */
+    public double averageLoanDays(LocalDate from, LocalDate to) {
+        int fromDay = toDay(from);
+        int toDay = toDay(to);
+        List<HistoryChunk> chunks = history.chunksReturnedBetween(fromDay, toDay);
+        int[] rows = rowCounts(chunks);
+        long[] total = scan(chunks, rows, () -> new long[2], (acc, chunk, size) -> {
+            for (int row = 0; row < size; row++) {
+                int returned = chunk.returnDay[row];
+                int lent = chunk.lendDay[row];
+                if (returned >= fromDay && returned < toDay && lent != HistoryChunk.UNKNOWN_DAY) {
+                    acc[0] += returned - lent;
+                    acc[1]++;
+                }
+            }
+        }, LoanAnalytics::sum);
+        return total[1] == 0 ? Double.NaN : (double) total[0] / total[1];
+    }
+
+    /**
+     * Доля возвратов позже срока по когортам пользователей. Когорта пользователя — месяц его первой выдачи
+     * во всей истории, а при неизвестной дате выдачи — месяц первого возврата
+     *
+     * @param from начальная дата возврата включительно
+     * @param to   конечная дата возврата не включительно
+     * @return статистика когорт, у которых есть возвраты в промежутке, в порядке месяцев
+     */
+    public List<CohortStats> overdueRateByCohort(LocalDate from, LocalDate to) {
+        int fromDay = toDay(from);
+        int toDay = toDay(to);
+        List<HistoryChunk> all = Arrays.asList(history.chunks());
+        int[] allRows = rowCounts(all);
+        int users = history.users().size();
+        Map<HistoryChunk, Integer> capturedRows = new IdentityHashMap<>();
+        for (int i = 0; i < allRows.length; i++) {
+            capturedRows.put(all.get(i), allRows[i]);
+        }
+        List<HistoryChunk> chunks = history.chunksReturnedBetween(fromDay, toDay);
+        int[] rows = new int[chunks.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = capturedRows.getOrDefault(chunks.get(i), 0);
+        }
+        int[] firstDay = scan(all, allRows, () -> {
+            int[] days = new int[users];
+            Arrays.fill(days, Integer.MAX_VALUE);
+            return days;
+        }, (acc, chunk, size) -> {
+            for (int row = 0; row < size; row++) {
+                int lent = chunk.lendDay[row];
+                int day = lent == HistoryChunk.UNKNOWN_DAY ? chunk.returnDay[row] : lent;
+                int user = chunk.user[row];
+                if (day < acc[user]) {
+                    acc[user] = day;
+                }
+            }
+        }, LoanAnalytics::min);
+
+        int minMonth = Integer.MAX_VALUE;
+        int maxMonth = Integer.MIN_VALUE;
+        int[] cohortOfUser = new int[users];
+        for (int user = 0; user < users; user++) {
+            if (firstDay[user] != Integer.MAX_VALUE) {
+                cohortOfUser[user] = LoanHistory.monthOf(LocalDate.ofEpochDay(firstDay[user]));
+                minMonth = Math.min(minMonth, cohortOfUser[user]);
+                maxMonth = Math.max(maxMonth, cohortOfUser[user]);
+            }
+        }
+        if (minMonth > maxMonth) {
+            return Collections.emptyList();
+        }
+        int firstMonth = minMonth;
+        int months = maxMonth - minMonth + 1;
+        long[] counts = scan(chunks, rows, () -> new long[2 * months], (acc, chunk, size) -> {
+            for (int row = 0; row < size; row++) {
+                int returned = chunk.returnDay[row];
+                if (returned >= fromDay && returned < toDay) {
+                    int cohort = cohortOfUser[chunk.user[row]] - firstMonth;
+                    acc[2 * cohort]++;
+                    if (returned > chunk.dueDay[row]) {
+                        acc[2 * cohort + 1]++;
+                    }
+                }
+            }
+        }, LoanAnalytics::sum);
+        List<CohortStats> cohorts = new ArrayList<>();
+        for (int month = 0; month < months; month++) {
+            if (counts[2 * month] > 0) {
+                int cohort = firstMonth + month;
+                cohorts.add(new CohortStats(YearMonth.of(cohort / 12, cohort % 12 + 1),
+                        counts[2 * month], counts[2 * month + 1]));
+            }
+        }
+        return cohorts;
+    }
+
+    /**
+     * Параллельный просмотр блоков
+     *
+     * @param chunks   просматриваемые блоки
+     * @param rows     количество строк каждого блока на начало запроса
+     * @param supplier создание пустого накопителя задачи
+     * @param scanner  учёт строк блока в накопителе
+     * @param combiner объединение накопителей
+     * @return накопитель со всеми блоками
+     */
+    private <A> A scan(List<HistoryChunk> chunks, int[] rows, Supplier<A> supplier, ChunkScanner<A> scanner,
+                       BinaryOperator<A> combiner) {
+        int leafChunks = Math.max(1, chunks.size() / (pool.getParallelism() * TASKS_PER_THREAD));
+        return pool.invoke(new ScanTask<>(chunks, rows, 0, chunks.size(), leafChunks, supplier, scanner, combiner));
+    }
+
+    private static int[] rowCounts(List<HistoryChunk> chunks) {
+        int[] rows = new int[chunks.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = chunks.get(i).size();
+        }
+        return rows;
+    }
+
+    /**
+     * Первые позиции рейтинга: по убыванию количества, при равенстве — по имени
+     *
+     * @param counts количество по номерам словаря
+     * @param names  словарь
+     * @param limit  размер рейтинга
+     * @return рейтинг
+     */
+    static List<RankedItem> top(int[] counts, Dictionary names, int limit) {
+        PriorityQueue<Integer> worstFirst = new PriorityQueue<>((a, b) -> counts[a] != counts[b]
+                ? Integer.compare(counts[a], counts[b])
+                : names.name(b).compareTo(names.name(a)));
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] == 0) {
+                continue;
+            }
+            worstFirst.add(id);
+            if (worstFirst.size() > limit) {
+                worstFirst.poll();
+            }
+        }
+        List<RankedItem> ranking = new ArrayList<>(worstFirst.size());
+        while (!worstFirst.isEmpty()) {
+            int id = worstFirst.poll();
+            ranking.add(new RankedItem(names.name(id), counts[id]));
+        }
+        Collections.reverse(ranking);
+        return ranking;
+    }
+
+    private static int[] sum(int[] left, int[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] += right[i];
+        }
+        return left;
+    }
+
+    private static long[] sum(long[] left, long[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] += right[i];
+        }
+        return left;
+    }
+
+    private static int[] min(int[] left, int[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] = Math.min(left[i], right[i]);
+        }
+        return left;
+    }
+
+    private static int toDay(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    /**
+     * Учёт первых строк блока в накопителе
+     */
+    @FunctionalInterface
+    private interface ChunkScanner<A> {
+        void scan(A accumulator, HistoryChunk chunk, int size);
+    }
+
+    private static final class ScanTask<A> extends RecursiveTask<A> {
+        private final List<HistoryChunk> chunks;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final int leafChunks;
+        private final Supplier<A> supplier;
+        private final ChunkScanner<A> scanner;
+        private final BinaryOperator<A> combiner;
+
+        private ScanTask(List<HistoryChunk> chunks, int[] rows, int from, int to, int leafChunks,
+                         Supplier<A> supplier, ChunkScanner<A> scanner, BinaryOperator<A> combiner) {
+            this.chunks = chunks;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.leafChunks = leafChunks;
+            this.supplier = supplier;
+            this.scanner = scanner;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= leafChunks) {
+                A accumulator = supplier.get();
+                for (int i = from; i < to; i++) {
+                    scanner.scan(accumulator, chunks.get(i), rows[i]);
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask<A> right = new ScanTask<>(chunks, rows, middle, to, leafChunks, supplier, scanner, combiner);
+            right.fork();
+            A left = new ScanTask<>(chunks, rows, from, middle, leafChunks, supplier, scanner, combiner).compute();
+            return combiner.apply(left, right.join());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.vvsslova.analytics;
+
+import com.github.vvsslova.constant.BookGenre;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * История завершённых выдач. Строки хранятся по столбцам в блоках {@link HistoryChunk} фиксированного размера,
+ * блоки разбиты по месяцам возврата, а ID книг, пользователей и авторы заменены номерами из словарей.
+ * Строка занимает около 25 байт. Добавление выполняется под блокировкой истории, чтение — без блокировок
+ */
+public class LoanHistory {
+    public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+    public static final String FORGOTTEN_USER_PREFIX = "forgotten-";
+
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    private final int chunkRows;
+    private final Dictionary books;
+    private final Dictionary users;
+    private final Dictionary authors;
+    private final NavigableMap<Integer, HistoryChunk[]> partitions;
+
+    private volatile HistoryChunk[] chunks;
+    private long rows;
+
+    public LoanHistory() {
+        this(DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * @param chunkRows количество строк в блоке
+     */
+    public LoanHistory(int chunkRows) {
+        this.chunkRows = chunkRows;
+        this.books = new Dictionary();
+        this.users = new Dictionary();
+        this.authors = new Dictionary();
+        this.partitions = new ConcurrentSkipListMap<>();
+        this.chunks = new HistoryChunk[0];
+    }
+
+    /**
+     * Запись завершённой выдачи
+     *
+     * @param bookID       ID книги
+     * @param userID       ID пользователя
+     * @param author       автор книги на момент возврата
+     * @param bookGenre    жанр книги на момент возврата
+     * @param lendDate     дата выдачи или null, если она неизвестна
+     * @param dueDate      срок возврата
+     * @param returnedDate дата фактического возврата
+     * @return номер строки: строки нумеруются подряд в порядке записи, начиная с нуля
+     */
+    public synchronized long record(String bookID, String userID, String author, BookGenre bookGenre,
+                                    LocalDate lendDate, LocalDate dueDate, LocalDate returnedDate) {
+        int returnDay = (int) returnedDate.toEpochDay();
+        int month = monthOf(returnedDate);
+        HistoryChunk[] monthChunks = partitions.get(month);
+        HistoryChunk chunk = monthChunks == null ? null : monthChunks[monthChunks.length - 1];
+        if (chunk == null || chunk.isFull()) {
+            chunk = new HistoryChunk(month, chunkRows);
+            partitions.put(month, append(monthChunks == null ? new HistoryChunk[0] : monthChunks, chunk));
+            chunks = append(chunks, chunk);
+        }
+        chunk.append(books.intern(bookID), users.intern(userID), authors.intern(author), bookGenre.ordinal(),
+                lendDate == null ? HistoryChunk.UNKNOWN_DAY : (int) lendDate.toEpochDay(),
+                (int) dueDate.toEpochDay(), returnDay);
+        return rows++;
+    }
+
+    /**
+     * Выгрузка строк истории, например для снимка хранилища. Размеры блоков фиксируются под блокировкой истории,
+     * а строки читаются без неё, поэтому выгружаются ровно строки с номерами меньше возвращённого количества.
+     * Обезличенный пользователь выгружается под ключом {@link #FORGOTTEN_USER_PREFIX} с номером из словаря
+     *
+     * @param consumer получатель строк
+     * @return количество выгруженных строк
+     */
+    public long export(HistoryRowConsumer consumer) {
+        HistoryChunk[] exported;
+        int[] sizes;
+        long count;
+        synchronized (this) {
+            exported = chunks;
+            sizes = new int[exported.length];
+            for (int i = 0; i < exported.length; i++) {
+                sizes[i] = exported[i].size();
+            }
+            count = rows;
+        }
+        for (int i = 0; i < exported.length; i++) {
+            HistoryChunk chunk = exported[i];
+            for (int row = 0; row < sizes[i]; row++) {
+                String userID = users.name(chunk.user[row]);
+                boolean userForgotten = userID == null;
+                consumer.accept(books.name(chunk.book[row]),
+                        userForgotten ? FORGOTTEN_USER_PREFIX + chunk.user[row] : userID, userForgotten,
+                        authors.name(chunk.author[row]), GENRES[chunk.genre[row]],
+                        chunk.lendDay[row] == HistoryChunk.UNKNOWN_DAY ? null : LocalDate.ofEpochDay(chunk.lendDay[row]),
+                        LocalDate.ofEpochDay(chunk.dueDay[row]), LocalDate.ofEpochDay(chunk.returnDay[row]));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Обезличивание истории удалённого пользователя: его ID удаляется из словаря за O(1),
+     * а строки его выдач остаются в статистике книг, авторов и жанров
+     *
+     * @param userID ID пользователя
+     * @return true, если у пользователя была история
+     */
+    public synchronized boolean forgetUser(String userID) {
+        return users.forget(userID);
+    }
+
+    /**
+     * Количество записанных выдач
+     */
+    public long size() {
+        long size = 0;
+        for (HistoryChunk chunk : chunks) {
+            size += chunk.size();
+        }
+        return size;
+    }
+
+    /**
+     * Все блоки в порядке создания
+     */
+    HistoryChunk[] chunks() {
+        return chunks;
+    }
+
+    /**
+     * Блоки месяцев, в которые попадают возвраты из указанного промежутка
+     *
+     * @param fromDay первый день эпохи включительно
+     * @param toDay   последний день эпохи не включительно
+     * @return блоки в порядке месяцев
+     */
+    List<HistoryChunk> chunksReturnedBetween(int fromDay, int toDay) {
+        List<HistoryChunk> selected = new ArrayList<>();
+        if (fromDay >= toDay) {
+            return selected;
+        }
+        int fromMonth = monthOf(LocalDate.ofEpochDay(fromDay));
+        int toMonth = monthOf(LocalDate.ofEpochDay(toDay - 1));
+        for (HistoryChunk[] monthChunks : partitions.subMap(fromMonth, true, toMonth, true).values()) {
+            selected.addAll(Arrays.asList(monthChunks));
+        }
+        return selected;
+    }
+
+    Dictionary books() {
+        return books;
+    }
+
+    Dictionary users() {
+        return users;
+    }
+
+    Dictionary authors() {
+        return authors;
+    }
+
+    static int monthOf(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static HistoryChunk[] append(HistoryChunk[] array, HistoryChunk chunk) {
+        HistoryChunk[] extended = Arrays.copyOf(array, array.length + 1);
+        extended[array.length] = chunk;
+        return extended;
+    }
+}
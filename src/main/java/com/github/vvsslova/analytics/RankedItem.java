@@ -0,0 +1,12 @@
+package com.github.vvsslova.analytics;
+
+import lombok.Data;
+
+/**
+ * Позиция рейтинга: ID книги или автор и количество выдач
+ */
+@Data
+public class RankedItem {
+    private final String name;
+    private final long count;
+}
@@ -0,0 +1,38 @@
+package com.github.vvsslova.audit;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * Событие аудита. Экземпляры заранее выделены в кольцевом буфере {@link AuditLog} и переиспользуются,
+ * поэтому приёмник не должен сохранять ссылку на событие после {@link AuditSink#write(AuditEvent)}
+ */
+@Getter
+public final class AuditEvent {
+    private long sequence;
+    private long timestamp;
+    private AuditEventType type;
+    private String bookID;
+    private String userID;
+    private String text;
+    private long value;
+
+    void set(long sequence, long timestamp, AuditEventType type, String bookID, String userID, String text,
+             long value) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.bookID = bookID;
+        this.userID = userID;
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * Значение события, представленное датой, для событий с {@link AuditEventType#isDateValue()}
+     */
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(value);
+    }
+}
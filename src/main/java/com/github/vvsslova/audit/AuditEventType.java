@@ -0,0 +1,37 @@
+package com.github.vvsslova.audit;
+
+import lombok.Getter;
+
+/**
+ * Виды событий аудита и сообщения, которыми они выводятся в лог.
+ * Первый параметр сообщения — текст события, второй — его числовое значение или дата
+ */
+@Getter
+public enum AuditEventType {
+    BOOK_ADDED("Книга {} успешно добавлена в библиотеку", false),
+    BOOK_REMOVED("Книга успешно удалена из библиотеки", false),
+    BOOK_AUTHOR_CHANGED("Автор успешно изменён на {}", false),
+    BOOK_TITLE_CHANGED("Название успешно изменено на {}", false),
+    BOOK_GENRE_CHANGED("Жанр успешно изменён на {}", false),
+    USER_ADDED("Пользователь {} успешно добавлен в библотеку", false),
+    USER_REMOVED("Пользователь успешно удалён из библотеки", false),
+    USER_PHONE_CHANGED("Номер телефона успешно изменён!", false),
+    USER_NAME_CHANGED("Имя успешно изменено на {}", false),
+    USER_SURNAME_CHANGED("Фамилия успешно изменена на {}", false),
+    BOOK_LENT("Книга {} выдана пользователю до {}", true),
+    BOOK_RETURNED("Книга {} возвращена в срок", true),
+    BOOK_RETURNED_OVERDUE("Книга {} просрочена пользователем !", true),
+    BOOK_RETURNED_BY_LIBRARY("Книга {} по техническим причинам возвращена библиотекой!", false),
+    RETURN_DATE_CHANGED("Срок возврата книги {} перенесён на {}", true),
+    HOLD_PLACED("Книга {} зарезервирована до {}", true),
+    HOLD_CANCELLED("Резервирование книги {} отменено", false),
+    HOLD_FULFILLED("Зарезервированная книга {} выдана пользователю до {}", true);
+
+    private final String message;
+    private final boolean dateValue;
+
+    AuditEventType(String message, boolean dateValue) {
+        this.message = message;
+        this.dateValue = dateValue;
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.vvsslova.audit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный журнал аудита. Потоки операций занимают ячейку заранее выделенного кольцевого буфера
+ * и заполняют её ссылками на уже существующие строки, не форматируя сообщений и не создавая объектов.
+ * Фоновый поток читает опубликованные ячейки по порядку и передаёт их в {@link AuditSink} пакетами,
+ * завершая каждый пакет одним {@link AuditSink#flush()}. Простаивающий фоновый поток просыпается по таймеру
+ * или когда накопилось достаточно событий для пакета, а не на каждое событие.
+ * При заполненном буфере поведение определяется {@link OverflowPolicy}. Фоновый поток не мешает завершению
+ * программы, а события, принятые до завершения, записываются обработчиком завершения JVM, если журнал
+ * не был закрыт
+ */
+@Slf4j
+public class AuditLog implements Closeable {
+    public static final int DEFAULT_CAPACITY = 8_192;
+    public static final int DEFAULT_MAX_BATCH = 1_024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final AuditSink sink;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxBatch;
+    private final AuditEvent[] events;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int wakeThreshold;
+    private final AtomicLong claimed;
+    private final LongAdder dropped;
+    private final Thread consumer;
+    private final Thread shutdownHook;
+    private final AtomicBoolean consumerIdle;
+
+    private volatile long consumed;
+    private volatile boolean closed;
+
+    public AuditLog(AuditSink sink) {
+        this(sink, DEFAULT_CAPACITY, OverflowPolicy.BLOCK, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param sink           приёмник событий
+     * @param capacity       размер буфера, округляется вверх до степени двойки
+     * @param overflowPolicy поведение при заполненном буфере
+     * @param maxBatch       максимальное количество событий между вызовами {@link AuditSink#flush()}
+     */
+    public AuditLog(AuditSink sink, int capacity, OverflowPolicy overflowPolicy, int maxBatch) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.sink = sink;
+        this.overflowPolicy = overflowPolicy;
+        this.maxBatch = maxBatch;
+        this.events = new AuditEvent[size];
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.wakeThreshold = Math.max(1, Math.min(maxBatch, size / 4));
+        for (int i = 0; i < size; i++) {
+            events[i] = new AuditEvent();
+            published.set(i, -1);
+        }
+        this.claimed = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.consumerIdle = new AtomicBoolean();
+        this.consumer = new Thread(this::drain, "audit-log");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+        this.shutdownHook = new Thread(this::flush, "audit-log-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Запись события
+     *
+     * @param type   вид события
+     * @param bookID ID книги или null
+     * @param userID ID пользователя или null
+     * @param text   текст события или null
+     * @param value  числовое значение события, для дат — номер дня эпохи
+     * @return true, если событие принято, false, если оно отброшено
+     */
+    public boolean record(AuditEventType type, String bookID, String userID, String text, long value) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        long sequence = overflowPolicy == OverflowPolicy.DROP ? tryClaim() : claim();
+        if (sequence < 0) {
+            dropped.increment();
+            return false;
+        }
+        int index = (int) sequence & mask;
+        events[index].set(sequence, System.currentTimeMillis(), type, bookID, userID, text, value);
+        published.set(index, sequence);
+        if (sequence - consumed >= wakeThreshold) {
+            wakeConsumer();
+        }
+        return true;
+    }
+
+    /**
+     * Ожидание записи всех принятых к этому моменту событий
+     */
+    public void flush() {
+        long target = claimed.get();
+        while (consumed < target && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Количество отброшенных событий
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Количество записанных событий
+     */
+    public long getWritten() {
+        return consumed;
+    }
+
+    /**
+     * Запись оставшихся событий и закрытие приёмника
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            log.debug("Журнал аудита закрывается при завершении программы");
+        }
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sink.close();
+    }
+
+    private long claim() {
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed >= events.length && consumer.isAlive()) {
+            wakeConsumer();
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        return sequence;
+    }
+
+    /**
+     * Пробуждение простаивающего фонового потока. Пробуждает только один из конкурирующих производителей
+     */
+    private void wakeConsumer() {
+        if (consumerIdle.get() && consumerIdle.compareAndSet(true, false)) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private long tryClaim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed >= events.length) {
+                return -1;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void drain() {
+        long next = 0;
+        while (true) {
+            int count = 0;
+            while (count < maxBatch && published.get((int) next & mask) == next) {
+                write(events[(int) next & mask]);
+                next++;
+                count++;
+            }
+            if (count > 0) {
+                flushSink();
+                consumed = next;
+                continue;
+            }
+            if (closed && next == claimed.get()) {
+                return;
+            }
+            consumerIdle.set(true);
+            if (published.get((int) next & mask) != next && !closed) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            consumerIdle.set(false);
+        }
+    }
+
+    private void write(AuditEvent event) {
+        try {
+            sink.write(event);
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка записи события аудита " + event.getType(), e);
+        }
+    }
+
+    private void flushSink() {
+        try {
+            sink.flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка записи событий аудита", e);
+        }
+    }
+}
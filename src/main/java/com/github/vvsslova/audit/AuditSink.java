@@ -0,0 +1,21 @@
+package com.github.vvsslova.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Приёмник событий аудита. Вызывается только из фонового потока {@link AuditLog}
+ */
+public interface AuditSink extends Closeable {
+    /**
+     * Запись события
+     *
+     * @param event событие, действительное только до возврата из метода
+     */
+    void write(AuditEvent event) throws IOException;
+
+    /**
+     * Завершение пакета событий
+     */
+    void flush() throws IOException;
+}
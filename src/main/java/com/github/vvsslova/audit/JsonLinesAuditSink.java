@@ -0,0 +1,90 @@
+package com.github.vvsslova.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Запись событий аудита в файл JSON Lines: одно событие — одна строка.
+ * Пакет событий записывается в буфер и сбрасывается на диск одной операцией
+ */
+public class JsonLinesAuditSink implements AuditSink {
+    private final Writer writer;
+    private final StringBuilder line;
+
+    public JsonLinesAuditSink(Path path) throws IOException {
+        this(Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+    }
+
+    public JsonLinesAuditSink(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+        this.line = new StringBuilder(256);
+    }
+
+    @Override
+    public void write(AuditEvent event) throws IOException {
+        line.setLength(0);
+        line.append("{\"seq\":").append(event.getSequence())
+                .append(",\"time\":").append(event.getTimestamp())
+                .append(",\"type\":\"").append(event.getType().name()).append('"');
+        appendField("bookID", event.getBookID());
+        appendField("userID", event.getUserID());
+        appendField("text", event.getText());
+        if (event.getType().isDateValue()) {
+            line.append(",\"date\":\"").append(event.getDate()).append('"');
+        } else if (event.getValue() != 0) {
+            line.append(",\"value\":").append(event.getValue());
+        }
+        line.append("}\n");
+        writer.append(line);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.vvsslova.audit;
+
+/**
+ * Поведение при заполненном буфере событий аудита
+ */
+public enum OverflowPolicy {
+    /**
+     * Ожидание освобождения места: операции замедляются до скорости записи событий
+     */
+    BLOCK,
+    /**
+     * Отбрасывание нового события с учётом в {@link AuditLog#getDropped()}
+     */
+    DROP
+}
@@ -0,0 +1,25 @@
+package com.github.vvsslova.audit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Вывод событий аудита в лог. Сообщения форматируются в фоновом потоке, а не в потоке операции
+ */
+@Slf4j
+public class Slf4jAuditSink implements AuditSink {
+    @Override
+    public void write(AuditEvent event) {
+        if (log.isInfoEnabled()) {
+            AuditEventType type = event.getType();
+            log.info(type.getMessage(), event.getText(), type.isDateValue() ? event.getDate() : event.getValue());
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.vvsslova.cache;
+
+/**
+ * Политика вытеснения {@link LookupCache}
+ */
+public enum CachePolicy {
+    /**
+     * Вытеснение давно не использованных записей
+     */
+    LRU,
+    /**
+     * Небольшое LRU-окно для новых записей и основная область, в которую запись из окна допускается,
+     * только если к ней обращались чаще, чем к вытесняемой записи. Устойчива к разовым проходам по многим ключам
+     */
+    W_TINY_LFU
+}
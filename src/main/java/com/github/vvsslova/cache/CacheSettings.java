@@ -0,0 +1,26 @@
+package com.github.vvsslova.cache;
+
+import lombok.Data;
+
+/**
+ * Настройки {@link LookupCache}
+ */
+@Data
+public class CacheSettings {
+    public static final int DEFAULT_MAXIMUM_WEIGHT = 100_000;
+
+    /**
+     * Максимальный суммарный вес записей; при весе 1 на запись — максимальное количество записей.
+     * 0 отключает кэширование
+     */
+    private final long maximumWeight;
+    private final CachePolicy policy;
+    /**
+     * Запоминать отсутствие ключа в хранилище
+     */
+    private final boolean negativeCaching;
+
+    public static CacheSettings defaults() {
+        return new CacheSettings(DEFAULT_MAXIMUM_WEIGHT, CachePolicy.W_TINY_LFU, true);
+    }
+}
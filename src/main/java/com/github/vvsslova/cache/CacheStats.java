@@ -0,0 +1,25 @@
+package com.github.vvsslova.cache;
+
+import lombok.Data;
+
+/**
+ * Показатели {@link LookupCache} на момент запроса
+ */
+@Data
+public class CacheStats {
+    private final long hits;
+    private final long negativeHits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final long size;
+    private final long weight;
+
+    /**
+     * Доля обращений, обслуженных без чтения хранилища, включая запомненное отсутствие ключа
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
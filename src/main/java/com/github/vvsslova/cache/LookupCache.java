@@ -0,0 +1,350 @@
+package com.github.vvsslova.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Ограниченный кэш чтения перед медленным хранилищем. Ключи разбиты на сегменты, у каждого сегмента своя
+ * таблица записей, очереди вытеснения и счётчик частоты обращений. Чтение попавшей записи не блокируется:
+ * порядок вытеснения обновляется, только если блокировка сегмента свободна.
+ * Загрузка и инвалидация одного ключа должны выполняться под его блокировкой {@code StripedLock},
+ * иначе загруженное до изменения значение может попасть в кэш после инвалидации
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public class LookupCache<K, V> {
+    private static final Object ABSENT = new Object();
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_WEIGHT = 64;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = 3;
+
+    private final CacheSettings settings;
+    private final ToIntFunction<V> weigher;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hits;
+    private final LongAdder negativeHits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder invalidations;
+
+    public LookupCache(CacheSettings settings) {
+        this(settings, value -> 1);
+    }
+
+    /**
+     * @param settings настройки
+     * @param weigher  вес значения, не меньше 1; отсутствие ключа весит 1
+     */
+    @SuppressWarnings("unchecked")
+    public LookupCache(CacheSettings settings, ToIntFunction<V> weigher) {
+        this.settings = settings;
+        this.weigher = weigher;
+        long maximum = settings.getMaximumWeight();
+        int count = Integer.highestOneBit((int) Math.max(1, Math.min(MAX_SEGMENTS, maximum / MIN_SEGMENT_WEIGHT)));
+        this.segments = (Segment[]) new LookupCache.Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment((maximum + count - 1) / count);
+        }
+        this.segmentMask = count - 1;
+        this.hits = new LongAdder();
+        this.negativeHits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.invalidations = new LongAdder();
+    }
+
+    /**
+     * Значение из кэша или из хранилища с сохранением в кэше
+     *
+     * @param key    ключ
+     * @param loader чтение из хранилища, возвращает null для отсутствующего ключа
+     * @return значение или null, если ключа нет в хранилище
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key, Function<K, V> loader) {
+        if (settings.getMaximumWeight() <= 0) {
+            misses.increment();
+            return loader.apply(key);
+        }
+        int hash = spread(key.hashCode());
+        Segment segment = segments[hash & segmentMask];
+        Node<K> node = segment.data.get(key);
+        if (node != null) {
+            hits.increment();
+            segment.recordHit(node);
+            if (node.value == ABSENT) {
+                negativeHits.increment();
+                return null;
+            }
+            return (V) node.value;
+        }
+        misses.increment();
+        V value = loader.apply(key);
+        if (value != null) {
+            segment.put(key, hash, value, Math.max(1, weigher.applyAsInt(value)));
+        } else if (settings.isNegativeCaching()) {
+            segment.put(key, hash, ABSENT, 1);
+        }
+        return value;
+    }
+
+    /**
+     * Удаление записи после изменения ключа в хранилище, в том числе запомненного отсутствия ключа
+     *
+     * @param key ключ
+     */
+    public void invalidate(K key) {
+        if (settings.getMaximumWeight() <= 0) {
+            return;
+        }
+        int hash = spread(key.hashCode());
+        if (segments[hash & segmentMask].remove(key)) {
+            invalidations.increment();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public CacheStats getStats() {
+        long size = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            size += segment.data.size();
+            weight += segment.weight();
+        }
+        return new CacheStats(hits.sum(), negativeHits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                size, weight);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Запись кэша. Очередь и связи изменяются под блокировкой сегмента
+     */
+    private static final class Node<K> {
+        private final K key;
+        private final int hash;
+        private final Object value;
+        private final int weight;
+        private volatile int queue;
+        private Node<K> previous;
+        private Node<K> next;
+
+        private Node(K key, int hash, Object value, int weight) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Сегмент кэша: таблица записей и очереди окна, испытательной и защищённой областей.
+     * Для LRU используется только очередь окна на весь размер сегмента
+     */
+    private final class Segment {
+        private final ReentrantLock lock;
+        private final ConcurrentHashMap<K, Node<K>> data;
+        private final FrequencySketch sketch;
+        private final Node<K>[] queues;
+        private final long[] weights;
+        private final long maximum;
+        private final long windowMaximum;
+        private final long mainMaximum;
+        private final long protectedMaximum;
+
+        @SuppressWarnings("unchecked")
+        private Segment(long maximum) {
+            this.lock = new ReentrantLock();
+            this.data = new ConcurrentHashMap<>();
+            this.maximum = maximum;
+            boolean lru = settings.getPolicy() == CachePolicy.LRU;
+            this.windowMaximum = lru ? maximum : Math.max(1, maximum / 100);
+            this.mainMaximum = maximum - windowMaximum;
+            this.protectedMaximum = mainMaximum * 8 / 10;
+            this.sketch = lru ? null : new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maximum));
+            this.queues = new Node[3];
+            this.weights = new long[3];
+            for (int i = 0; i < queues.length; i++) {
+                Node<K> sentinel = new Node<>(null, 0, null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                queues[i] = sentinel;
+            }
+        }
+
+        private long weight() {
+            return weights[WINDOW] + weights[PROBATION] + weights[PROTECTED];
+        }
+
+        private void recordHit(Node<K> node) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                if (sketch != null) {
+                    sketch.increment(node.hash);
+                }
+                switch (node.queue) {
+                    case WINDOW:
+                    case PROTECTED:
+                        unlink(node);
+                        link(node, node.queue);
+                        break;
+                    case PROBATION:
+                        unlink(node);
+                        link(node, PROTECTED);
+                        while (weights[PROTECTED] > protectedMaximum) {
+                            Node<K> demoted = queues[PROTECTED].next;
+                            unlink(demoted);
+                            link(demoted, PROBATION);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(K key, int hash, Object value, int weight) {
+            lock.lock();
+            try {
+                if (sketch != null) {
+                    sketch.increment(hash);
+                }
+                Node<K> existing = data.remove(key);
+                if (existing != null) {
+                    discard(existing);
+                }
+                if (weight > maximum) {
+                    return;
+                }
+                Node<K> node = new Node<>(key, hash, value, weight);
+                data.put(key, node);
+                link(node, WINDOW);
+                while (weights[WINDOW] > windowMaximum) {
+                    Node<K> candidate = queues[WINDOW].next;
+                    if (mainMaximum == 0) {
+                        evict(candidate);
+                    } else {
+                        unlink(candidate);
+                        link(candidate, PROBATION);
+                        admit(candidate);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Допуск записи из окна в основную область: при переполнении вытесняется та из записей —
+         * кандидат или самая старая запись основной области, — к которой реже обращались
+         *
+         * @param candidate запись, перенесённая из окна
+         */
+        private void admit(Node<K> candidate) {
+            while (weights[PROBATION] + weights[PROTECTED] > mainMaximum) {
+                if (candidate.queue != PROBATION) {
+                    Node<K> oldest = queues[PROBATION].next != queues[PROBATION]
+                            ? queues[PROBATION].next
+                            : queues[PROTECTED].next;
+                    evict(oldest);
+                    continue;
+                }
+                Node<K> victim = queues[PROBATION].next != candidate
+                        ? queues[PROBATION].next
+                        : queues[PROTECTED].next;
+                if (victim == queues[PROTECTED] || victim == candidate) {
+                    evict(candidate);
+                } else if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                    evict(victim);
+                } else {
+                    evict(candidate);
+                }
+            }
+        }
+
+        private boolean remove(K key) {
+            lock.lock();
+            try {
+                Node<K> node = data.remove(key);
+                if (node == null) {
+                    return false;
+                }
+                discard(node);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                for (Node<K> node : data.values()) {
+                    node.queue = REMOVED;
+                }
+                data.clear();
+                for (int i = 0; i < queues.length; i++) {
+                    queues[i].previous = queues[i];
+                    queues[i].next = queues[i];
+                    weights[i] = 0;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void evict(Node<K> node) {
+            if (node.queue != REMOVED) {
+                unlink(node);
+            }
+            node.queue = REMOVED;
+            data.remove(node.key, node);
+            evictions.increment();
+        }
+
+        private void discard(Node<K> node) {
+            if (node.queue != REMOVED) {
+                unlink(node);
+                node.queue = REMOVED;
+            }
+        }
+
+        private void link(Node<K> node, int queue) {
+            Node<K> sentinel = queues[queue];
+            node.previous = sentinel.previous;
+            node.next = sentinel;
+            sentinel.previous.next = node;
+            sentinel.previous = node;
+            node.queue = queue;
+            weights[queue] += node.weight;
+        }
+
+        private void unlink(Node<K> node) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            weights[node.queue] -= node.weight;
+        }
+    }
+}
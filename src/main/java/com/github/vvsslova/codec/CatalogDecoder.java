@@ -0,0 +1,198 @@
+package com.github.vvsslova.codec;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Чтение записей, созданных {@link CatalogEncoder}, прямо из буфера без промежуточных потоков.
+ * Строки из таблицы строк возвращаются одними и теми же экземплярами, поэтому повторяющиеся авторы
+ * и названия не занимают память повторно. Позиция исходного буфера не меняется
+ */
+public class CatalogDecoder {
+    private static final CatalogRecordType[] TYPES = CatalogRecordType.values();
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    private final ByteBuffer buffer;
+    private final List<String> strings;
+    private CatalogRecordType current;
+
+    /**
+     * @param source буфер, начинающийся с заголовка формата
+     * @throws IOException если заголовок не распознан или версия схемы не поддерживается
+     */
+    public CatalogDecoder(ByteBuffer source) throws IOException {
+        this.buffer = source.duplicate();
+        this.strings = new ArrayList<>();
+        try {
+            for (byte expected : CatalogFormat.MAGIC) {
+                if (buffer.get() != expected) {
+                    throw new IOException("Not a catalog stream");
+                }
+            }
+            byte version = buffer.get();
+            if (version != CatalogFormat.VERSION) {
+                throw new IOException("Unsupported catalog format version: " + version);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated catalog header", e);
+        }
+    }
+
+    /**
+     * Переход к следующей записи
+     *
+     * @return вид записи или null, если записи закончились
+     */
+    public CatalogRecordType next() throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("Record " + current + " has not been read");
+        }
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        int type = buffer.get();
+        if (type < CatalogFormat.BOOK || type > TYPES.length) {
+            throw new IOException("Unknown catalog record type: " + type);
+        }
+        current = TYPES[type - 1];
+        return current;
+    }
+
+    public BookDto readBook() throws IOException {
+        expect(CatalogRecordType.BOOK);
+        try {
+            return new BookDto(readID(false), readString(), readString(), readGenre());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated book record", e);
+        }
+    }
+
+    public UserDto readUser() throws IOException {
+        expect(CatalogRecordType.USER);
+        try {
+            return new UserDto(readID(true), readString(), readString(), readVarLong());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated user record", e);
+        }
+    }
+
+    public Journal readLoan() throws IOException {
+        expect(CatalogRecordType.LOAN);
+        try {
+            return new Journal(readID(false), readID(true), readString(), readDate(), readDate());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated loan record", e);
+        }
+    }
+
+    private void expect(CatalogRecordType type) {
+        if (current != type) {
+            throw new IllegalStateException("Expected " + current + " record, not " + type);
+        }
+        current = null;
+    }
+
+    private String readID(boolean interned) throws IOException {
+        long code = readVarLong();
+        if (code == 0) {
+            return null;
+        }
+        if ((code & 1) == 0) {
+            return reference(code);
+        }
+        String ID;
+        if (code == CatalogFormat.ID_UUID) {
+            ID = new UUID(buffer.getLong(), buffer.getLong()).toString();
+        } else {
+            ID = readUtf8((code - CatalogFormat.ID_UUID - 2) >>> 1);
+        }
+        if (interned) {
+            intern(ID);
+        }
+        return ID;
+    }
+
+    private String readString() throws IOException {
+        long code = readVarLong();
+        if (code == 0) {
+            return null;
+        }
+        if ((code & 1) == 0) {
+            return reference(code);
+        }
+        String value = readUtf8(code >>> 1);
+        intern(value);
+        return value;
+    }
+
+    private String reference(long code) throws IOException {
+        long index = (code >>> 1) - 1;
+        if (index >= strings.size()) {
+            throw new IOException("Unknown string reference: " + index);
+        }
+        return strings.get((int) index);
+    }
+
+    private String readUtf8(long length) throws IOException {
+        if (length > buffer.remaining()) {
+            throw new IOException("String length " + length + " exceeds remaining " + buffer.remaining() + " bytes");
+        }
+        int size = (int) length;
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), size, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + size);
+        } else {
+            byte[] bytes = new byte[size];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private void intern(String value) {
+        if (strings.size() < CatalogFormat.MAX_STRINGS) {
+            strings.add(value);
+        }
+    }
+
+    private BookGenre readGenre() throws IOException {
+        int code = buffer.get() & 0xFF;
+        if (code > GENRES.length) {
+            throw new IOException("Unknown genre code: " + code);
+        }
+        return code == 0 ? null : GENRES[code - 1];
+    }
+
+    private LocalDate readDate() throws IOException {
+        long code = readVarLong();
+        if (code == 0) {
+            return null;
+        }
+        long zigZag = code - 1;
+        return LocalDate.ofEpochDay((zigZag >>> 1) ^ -(zigZag & 1));
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.vvsslova.codec;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Запись книг, пользователей и выдач в компактном двоичном формате {@link CatalogFormat}.
+ * Повторяющиеся строки (названия, авторы, имена, фамилии, ID пользователей) записываются один раз,
+ * далее — номером в таблице строк потока. Запись идёт в буфер вызывающего, например прямой
+ * или отображаемый в память, или в собственный буфер в куче, который растёт по мере записи
+ */
+public class CatalogEncoder {
+    private final boolean growable;
+    private final int start;
+    private final Map<String, Integer> strings;
+    private ByteBuffer buffer;
+
+    /**
+     * Запись в собственный буфер в куче
+     */
+    public CatalogEncoder() {
+        this(ByteBuffer.allocate(4096), true);
+    }
+
+    /**
+     * Запись в буфер вызывающего с его текущей позиции. Если места не хватает,
+     * выбрасывается {@link BufferOverflowException}
+     *
+     * @param target буфер
+     */
+    public CatalogEncoder(ByteBuffer target) {
+        this(target, false);
+    }
+
+    private CatalogEncoder(ByteBuffer buffer, boolean growable) {
+        this.buffer = buffer;
+        this.growable = growable;
+        this.start = buffer.position();
+        this.strings = new HashMap<>();
+        ensure(CatalogFormat.MAGIC.length + 1);
+        this.buffer.put(CatalogFormat.MAGIC);
+        this.buffer.put(CatalogFormat.VERSION);
+    }
+
+    public void writeBook(BookDto bookDto) {
+        ensure(1);
+        buffer.put(CatalogFormat.BOOK);
+        writeID(bookDto.getID(), false);
+        writeString(bookDto.getTitle());
+        writeString(bookDto.getAuthor());
+        writeGenre(bookDto.getBookGenre());
+    }
+
+    public void writeUser(UserDto userDto) {
+        ensure(1);
+        buffer.put(CatalogFormat.USER);
+        writeID(userDto.getID(), true);
+        writeString(userDto.getName());
+        writeString(userDto.getSurname());
+        writeVarLong(userDto.getPhoneNumber());
+    }
+
+    public void writeLoan(Journal journal) {
+        ensure(1);
+        buffer.put(CatalogFormat.LOAN);
+        writeID(journal.getBookID(), false);
+        writeID(journal.getUserID(), true);
+        writeString(journal.getBookTitle());
+        writeDate(journal.getLendDate());
+        writeDate(journal.getReturnDate());
+    }
+
+    /**
+     * Записанные данные от начала заголовка
+     *
+     * @return буфер только для чтения, готовый к чтению
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer written = buffer.duplicate();
+        written.limit(buffer.position());
+        written.position(start);
+        return written.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Количество записанных байтов, включая заголовок
+     *
+     * @return количество байтов
+     */
+    public int size() {
+        return buffer.position() - start;
+    }
+
+    /**
+     * ID: 0 — нет, чётное — номер в таблице строк ((номер + 1) * 2), 1 — UUID в 16 байтах,
+     * иначе длина (длина * 2 + 3) и байты. ID пользователей встречаются в каждой их выдаче,
+     * поэтому хранятся в таблице строк, а ID книг — нет
+     */
+    private void writeID(String ID, boolean interned) {
+        if (ID == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = interned ? strings.get(ID) : null;
+        if (index != null) {
+            writeVarLong((long) (index + 1) << 1);
+            return;
+        }
+        UUID uuid = CatalogFormat.parseUuid(ID);
+        if (uuid != null) {
+            writeVarLong(CatalogFormat.ID_UUID);
+            ensure(16);
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        } else {
+            byte[] bytes = ID.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(((long) bytes.length << 1) + CatalogFormat.ID_UUID + 2);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+        if (interned) {
+            intern(ID);
+        }
+    }
+
+    /**
+     * Строка: 0 — нет, чётное — номер в таблице строк ((номер + 1) * 2), нечётное — длина (длина * 2 + 1) и байты.
+     * Новая строка добавляется в таблицу строк
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarLong((long) (index + 1) << 1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(((long) bytes.length << 1) | 1);
+        ensure(bytes.length);
+        buffer.put(bytes);
+        intern(value);
+    }
+
+    private void intern(String value) {
+        if (strings.size() < CatalogFormat.MAX_STRINGS) {
+            strings.put(value, strings.size());
+        }
+    }
+
+    private void writeGenre(BookGenre bookGenre) {
+        ensure(1);
+        buffer.put((byte) (bookGenre == null ? 0 : bookGenre.ordinal() + 1));
+    }
+
+    /**
+     * Дата: 0 — нет, иначе номер дня в кодировке со знаком, сдвинутый на 1
+     */
+    private void writeDate(LocalDate date) {
+        if (date == null) {
+            writeVarLong(0);
+            return;
+        }
+        long day = date.toEpochDay();
+        writeVarLong(((day << 1) ^ (day >> 63)) + 1);
+    }
+
+    private void writeVarLong(long value) {
+        ensure((64 - Long.numberOfLeadingZeros(value | 1) + 6) / 7);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (!growable) {
+            throw new BufferOverflowException();
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.limit(buffer.position());
+        buffer.position(0);
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.vvsslova.codec;
+
+import java.util.UUID;
+
+/**
+ * Двоичный формат обмена каталогом. Поток начинается с сигнатуры и версии схемы, далее идут записи:
+ * байт вида записи и поля. Длины и числа записываются в переменном количестве байтов (по 7 бит в байте),
+ * ID в виде UUID — в 16 байтах, жанр — байтом. Повторяющиеся строки заменяются номером в таблице строк,
+ * которую кодировщик и декодер ведут одинаково по мере записи и чтения, не больше {@link #MAX_STRINGS} строк.
+ * <p>
+ * Версия 1: коды жанров — порядковые номера {@link com.github.vvsslova.constant.BookGenre} плюс 1,
+ * новые жанры добавляются только в конец перечисления
+ */
+final class CatalogFormat {
+    static final byte[] MAGIC = {'L', 'B', 'C'};
+    static final byte VERSION = 1;
+    static final byte BOOK = 1;
+    static final byte USER = 2;
+    static final byte LOAN = 3;
+    static final int ID_UUID = 1;
+    static final int MAX_STRINGS = 1 << 20;
+
+    private CatalogFormat() {
+    }
+
+    /**
+     * UUID, если строка — его каноническая запись, которая восстанавливается без изменений
+     *
+     * @param ID строка
+     * @return UUID или null
+     */
+    static UUID parseUuid(String ID) {
+        if (ID.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(ID);
+            return uuid.toString().equals(ID) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
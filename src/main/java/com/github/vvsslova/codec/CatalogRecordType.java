@@ -0,0 +1,8 @@
+package com.github.vvsslova.codec;
+
+/**
+ * Виды записей двоичного формата каталога
+ */
+public enum CatalogRecordType {
+    BOOK, USER, LOAN
+}
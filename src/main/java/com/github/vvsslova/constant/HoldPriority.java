@@ -0,0 +1,9 @@
+package com.github.vvsslova.constant;
+
+/**
+ * Уровни очереди резервирования книги: заявки более высокого уровня обслуживаются раньше,
+ * внутри уровня — в порядке подачи
+ */
+public enum HoldPriority {
+    HIGH, NORMAL, LOW;
+}
@@ -24,6 +24,16 @@ public class BookDto {
         this.bookGenre = bookGenre;
     }
 
+    /**
+     * Восстановление книги с ранее выданным ID
+     */
+    public BookDto(String ID, String title, String author, BookGenre bookGenre) {
+        this.ID = ID;
+        this.title = title;
+        this.author = author;
+        this.bookGenre = bookGenre;
+    }
+
     /**
      * Генерация ID книги
      *
@@ -23,6 +23,16 @@ public class UserDto {
         this.ID = generateId();
     }
 
+    /**
+     * Восстановление пользователя с ранее выданным ID
+     */
+    public UserDto(String ID, String name, String surname, long phoneNumber) {
+        this.ID = ID;
+        this.name = name;
+        this.surname = surname;
+        this.phoneNumber = phoneNumber;
+    }
+
     /**
      * Генерация ID пользователя
      *
@@ -0,0 +1,19 @@
+package com.github.vvsslova.exception;
+
+/**
+ * Передаётся подписчику ленты изменений, если запрошенные события уже вытеснены из ленты
+ */
+public class EventsExpiredException extends Exception {
+    private final long requestedSequence;
+    private final long oldestSequence;
+
+    public EventsExpiredException(long requestedSequence, long oldestSequence) {
+        this.requestedSequence = requestedSequence;
+        this.oldestSequence = oldestSequence;
+    }
+
+    @Override
+    public String getMessage() {
+        return "События с номера " + requestedSequence + " уже недоступны, самое раннее: " + oldestSequence;
+    }
+}
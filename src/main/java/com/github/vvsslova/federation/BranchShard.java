@@ -0,0 +1,68 @@
+package com.github.vvsslova.federation;
+
+import com.github.vvsslova.service.LibraryService;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Филиал федерации: собственная библиотека и единственный поток-исполнитель, через который проходят
+ * все обращения к ней. Филиалы обмениваются только DTO и результатами операций, поэтому филиал
+ * можно вынести в отдельный процесс, заменив очередь сообщений сетевым каналом
+ */
+@Slf4j
+public class BranchShard implements Closeable {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    @Getter
+    private final String name;
+    private final LibraryService libraryService;
+    private final ExecutorService eventLoop;
+
+    /**
+     * @param libraryService библиотека филиала; после передачи в филиал обращаться к ней напрямую нельзя
+     */
+    public BranchShard(LibraryService libraryService) {
+        this.name = libraryService.getName();
+        this.libraryService = libraryService;
+        this.eventLoop = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "branch-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Постановка операции в очередь филиала. Операции выполняются по одной в порядке постановки
+     *
+     * @param operation операция над библиотекой филиала
+     * @return результат операции
+     */
+    public <T> CompletableFuture<T> submit(Function<LibraryService, T> operation) {
+        return CompletableFuture.supplyAsync(() -> operation.apply(libraryService), eventLoop);
+    }
+
+    /**
+     * Остановка очереди после выполнения уже поставленных операций и закрытие библиотеки филиала
+     */
+    @Override
+    public void close() throws IOException {
+        eventLoop.shutdown();
+        try {
+            if (!eventLoop.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.error("Очередь филиала {} не завершилась за {} с", name, SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(e.getMessage(), e);
+        }
+        libraryService.close();
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.vvsslova.federation;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.CatalogTitle;
+import com.github.vvsslova.service.LibraryService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Федерация филиалов библиотеки. Книги размещаются в указанном филиале или по хэшу ID, пользователи — по хэшу ID.
+ * Каждый филиал обслуживается своим потоком {@link BranchShard}, поэтому пропускная способность растёт
+ * с количеством филиалов. Выдача хранится в филиале книги: при выдаче книги читателю другого филиала
+ * данные читателя запрашиваются у его филиала и регистрируются в филиале книги как гостевые.
+ * Поиск по каталогу рассылается всем филиалам, результаты объединяются по изданиям
+ */
+@Slf4j
+public class LibraryFederation implements Closeable {
+    private final List<BranchShard> shards;
+    private final Map<String, BranchShard> branches;
+    private final Map<String, BranchShard> bookHome;
+    private final Map<String, Set<BranchShard>> guestShards;
+
+    /**
+     * Федерация из библиотек филиалов. Размещение книг и гостевые регистрации читателей
+     * восстанавливаются по содержимому библиотек
+     *
+     * @param libraryServices библиотеки филиалов с различными названиями
+     */
+    public LibraryFederation(List<LibraryService> libraryServices) {
+        this.shards = new ArrayList<>(libraryServices.size());
+        this.branches = new LinkedHashMap<>();
+        this.bookHome = new ConcurrentHashMap<>();
+        this.guestShards = new ConcurrentHashMap<>();
+        for (LibraryService libraryService : libraryServices) {
+            BranchShard shard = new BranchShard(libraryService);
+            if (branches.putIfAbsent(shard.getName(), shard) != null) {
+                throw new IllegalArgumentException("Филиал " + shard.getName() + " указан дважды");
+            }
+            shards.add(shard);
+        }
+        for (BranchShard shard : shards) {
+            shard.submit(libraryService -> {
+                libraryService.streamBooks(null, null).forEach(bookDto -> bookHome.put(bookDto.getID(), shard));
+                libraryService.streamUsers().forEach(userDto -> {
+                    if (userShard(userDto.getID()) != shard) {
+                        guestShards.computeIfAbsent(userDto.getID(), key -> ConcurrentHashMap.newKeySet()).add(shard);
+                    }
+                });
+                return null;
+            }).join();
+        }
+    }
+
+    /**
+     * Федерация из новых библиотек в памяти
+     *
+     * @param branchNames названия филиалов
+     * @return федерация
+     */
+    public static LibraryFederation create(String... branchNames) {
+        List<LibraryService> libraryServices = new ArrayList<>(branchNames.length);
+        for (String branchName : branchNames) {
+            libraryServices.add(new LibraryService(branchName));
+        }
+        return new LibraryFederation(libraryServices);
+    }
+
+    /**
+     * Названия филиалов
+     */
+    public Set<String> getBranchNames() {
+        return Collections.unmodifiableSet(branches.keySet());
+    }
+
+    /**
+     * Филиал, в котором хранится книга
+     *
+     * @param bookID ID книги
+     * @return название филиала или null, если книги нет
+     */
+    public String getBookBranch(String bookID) {
+        BranchShard shard = bookHome.get(bookID);
+        return shard == null ? null : shard.getName();
+    }
+
+    /**
+     * Филиал, к которому приписан пользователь
+     *
+     * @param userID ID пользователя
+     * @return название филиала
+     */
+    public String getUserBranch(String userID) {
+        return userShard(userID).getName();
+    }
+
+    /**
+     * Добавление книги в филиал, выбранный по хэшу ID
+     *
+     * @param bookDto добавляемая книга
+     * @return true, если книга добавлена
+     */
+    public CompletableFuture<Boolean> addBook(BookDto bookDto) {
+        return addBook(shards.get(Math.floorMod(bookDto.getID().hashCode(), shards.size())), bookDto);
+    }
+
+    /**
+     * Добавление книги в указанный филиал
+     *
+     * @param branchName название филиала
+     * @param bookDto    добавляемая книга
+     * @return true, если книга добавлена
+     */
+    public CompletableFuture<Boolean> addBook(String branchName, BookDto bookDto) {
+        return addBook(branch(branchName), bookDto);
+    }
+
+    private CompletableFuture<Boolean> addBook(BranchShard shard, BookDto bookDto) {
+        if (bookHome.putIfAbsent(bookDto.getID(), shard) != null) {
+            log.error("Книга {} уже есть в федерации", bookDto.getID());
+            return CompletableFuture.completedFuture(false);
+        }
+        return shard.submit(libraryService -> {
+            boolean added = libraryService.addBooks(Collections.singletonList(bookDto)).isEmpty();
+            if (!added) {
+                bookHome.remove(bookDto.getID(), shard);
+            }
+            return added;
+        });
+    }
+
+    /**
+     * Удаление книги из её филиала
+     *
+     * @param bookID ID книги
+     */
+    public CompletableFuture<Void> removeBook(String bookID) {
+        BranchShard shard = bookHome.get(bookID);
+        if (shard == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return shard.submit(libraryService -> {
+            libraryService.removeBook(bookID);
+            if (libraryService.getBook(bookID) == null) {
+                bookHome.remove(bookID, shard);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Добавление пользователя в филиал, выбранный по хэшу ID
+     *
+     * @param userDto добавляемый пользователь
+     * @return true, если пользователь добавлен
+     */
+    public CompletableFuture<Boolean> addUser(UserDto userDto) {
+        return userShard(userDto.getID()).submit(libraryService ->
+                libraryService.addUsers(Collections.singletonList(userDto)).isEmpty());
+    }
+
+    /**
+     * Удаление пользователя из его филиала и всех филиалов, где он зарегистрирован как гость.
+     * Выданные ему книги возвращаются в фонд своих филиалов
+     *
+     * @param userID ID пользователя
+     */
+    public CompletableFuture<Void> removeUser(String userID) {
+        List<CompletableFuture<Void>> removals = new ArrayList<>();
+        removals.add(userShard(userID).submit(libraryService -> {
+            libraryService.removeUser(userID);
+            return null;
+        }));
+        Set<BranchShard> guests = guestShards.remove(userID);
+        if (guests != null) {
+            for (BranchShard shard : guests) {
+                removals.add(shard.submit(libraryService -> {
+                    libraryService.removeUser(userID);
+                    return null;
+                }));
+            }
+        }
+        return CompletableFuture.allOf(removals.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Выдача книги пользователю любого филиала. Для читателя другого филиала сначала у его филиала
+     * запрашиваются данные читателя, затем в филиале книги он регистрируется как гость и получает книгу
+     *
+     * @param bookID ID книги
+     * @param userID ID пользователя
+     * @return true, если книга выдана
+     */
+    public CompletableFuture<Boolean> lendBook(String bookID, String userID) {
+        BranchShard bookShard = bookHome.get(bookID);
+        if (bookShard == null) {
+            log.error("Книга {} не найдена ни в одном филиале", bookID);
+            return CompletableFuture.completedFuture(false);
+        }
+        BranchShard userShard = userShard(userID);
+        if (bookShard == userShard) {
+            return bookShard.submit(libraryService -> libraryService.lendBook(bookID, userID));
+        }
+        return userShard.submit(libraryService -> libraryService.getUser(userID))
+                .thenCompose(userDto -> {
+                    if (userDto == null) {
+                        log.error("Пользователь {} не найден в филиале {}", userID, userShard.getName());
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return bookShard.submit(libraryService -> {
+                        registerGuest(bookShard, libraryService, userDto);
+                        return libraryService.lendBook(bookID, userID);
+                    });
+                });
+    }
+
+    /**
+     * Возврат книги в любом филиале. Возврат передаётся в филиал книги, где хранится выдача
+     *
+     * @param bookID ID книги
+     * @param userID ID пользователя
+     * @return true, если книга возвращена
+     */
+    public CompletableFuture<Boolean> returnBook(String bookID, String userID) {
+        BranchShard shard = bookHome.get(bookID);
+        if (shard == null) {
+            log.error("Книга {} не найдена ни в одном филиале", bookID);
+            return CompletableFuture.completedFuture(false);
+        }
+        return shard.submit(libraryService -> libraryService.returnBook(bookID, userID));
+    }
+
+    /**
+     * Поиск по каталогам всех филиалов. Запрос выполняется филиалами параллельно, результаты чередуются
+     * по позиции в выдаче филиала, одно издание из разных филиалов включается один раз,
+     * предпочтительно экземпляр, который можно выдать
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные книги
+     */
+    public CompletableFuture<List<BookDto>> findBooks(String titleQuery, String authorQuery, BookGenre bookGenre,
+                                                      int limit) {
+        List<CompletableFuture<List<Hit>>> scattered = shards.stream()
+                .map(shard -> shard.submit(libraryService -> libraryService.findBooks(titleQuery, authorQuery,
+                        bookGenre, limit).stream()
+                        .map(bookDto -> Hit.of(libraryService, bookDto))
+                        .collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(scattered.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> gather(scattered.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()), limit));
+    }
+
+    /**
+     * Остановка всех филиалов
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (BranchShard shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static List<BookDto> gather(List<List<Hit>> results, int limit) {
+        Map<String, Hit> merged = new LinkedHashMap<>();
+        int depth = results.stream().mapToInt(List::size).max().orElse(0);
+        for (int rank = 0; rank < depth; rank++) {
+            for (List<Hit> result : results) {
+                if (rank < result.size()) {
+                    Hit hit = result.get(rank);
+                    Hit current = merged.get(hit.titleKey);
+                    boolean added = current == null && merged.size() < limit;
+                    if (added || current != null && !current.available && hit.available) {
+                        merged.put(hit.titleKey, hit);
+                    }
+                }
+            }
+        }
+        return merged.values().stream().map(hit -> hit.bookDto).collect(Collectors.toList());
+    }
+
+    private void registerGuest(BranchShard shard, LibraryService libraryService, UserDto userDto) {
+        if (libraryService.getUser(userDto.getID()) == null) {
+            libraryService.addUsers(Collections.singletonList(userDto));
+        }
+        guestShards.computeIfAbsent(userDto.getID(), key -> ConcurrentHashMap.newKeySet()).add(shard);
+    }
+
+    private BranchShard userShard(String userID) {
+        return shards.get(Math.floorMod(userID.hashCode(), shards.size()));
+    }
+
+    private BranchShard branch(String branchName) {
+        BranchShard shard = branches.get(branchName);
+        if (shard == null) {
+            throw new IllegalArgumentException("Филиал " + branchName + " не найден");
+        }
+        return shard;
+    }
+
+    /**
+     * Результат поиска в одном филиале
+     */
+    private static final class Hit {
+        private final String titleKey;
+        private final BookDto bookDto;
+        private final boolean available;
+
+        private Hit(String titleKey, BookDto bookDto, boolean available) {
+            this.titleKey = titleKey;
+            this.bookDto = bookDto;
+            this.available = available;
+        }
+
+        private static Hit of(LibraryService libraryService, BookDto bookDto) {
+            CatalogTitle catalogTitle = libraryService.getTitle(bookDto.getID());
+            return catalogTitle == null ? new Hit(bookDto.getID(), bookDto, false)
+                    : new Hit(catalogTitle.getKey(), bookDto, catalogTitle.isAvailable());
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.github.vvsslova.feed;
+
+import com.github.vvsslova.exception.EventsExpiredException;
+import com.github.vvsslova.storage.Mutation;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лента изменений библиотеки. Каждое опубликованное изменение получает следующий порядковый номер
+ * и хранится в кольцевом буфере последних событий. Подписчики получают события пачками в своём темпе:
+ * доставка идёт в потоках исполнителя только в пределах запрошенного подписчиком, а публикация
+ * только записывает событие в буфер и не ждёт подписчиков. Подписчик, отставший больше чем на ёмкость буфера,
+ * получает {@link EventsExpiredException} и должен заново выгрузить состояние.
+ * <p>
+ * Номера событий действуют в пределах одного запуска библиотеки и начинаются с 1
+ */
+@Slf4j
+public class ChangeFeed implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final LibraryEvent[] ring;
+    private final int mask;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final List<FeedSubscription> subscriptions;
+    private long lastSequence;
+    private volatile boolean closed;
+
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity количество хранимых последних событий, округляется вверх до степени двойки
+     */
+    public ChangeFeed(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param capacity количество хранимых последних событий, округляется вверх до степени двойки
+     * @param executor исполнитель доставки или null для собственного пула потоков-демонов
+     */
+    public ChangeFeed(int capacity, Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.ring = new LibraryEvent[size];
+        this.mask = size - 1;
+        this.ownExecutor = executor == null ? Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "library-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.executor = executor == null ? ownExecutor : executor;
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Публикация изменений одной операции. Вызывается под блокировками изменённых книг и пользователей,
+     * поэтому события одной книги или пользователя получают номера в порядке выполнения
+     *
+     * @param mutations изменения
+     */
+    public void publish(List<Mutation> mutations) {
+        if (closed) {
+            return;
+        }
+        Instant now = Instant.now();
+        synchronized (this) {
+            for (Mutation mutation : mutations) {
+                lastSequence++;
+                ring[(int) (lastSequence & mask)] = new LibraryEvent(lastSequence, now, mutation);
+            }
+        }
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Подписка на события, опубликованные после подписки
+     *
+     * @param maxBatch   наибольшее количество событий в пачке
+     * @param subscriber подписчик
+     */
+    public void subscribe(int maxBatch, ChangeSubscriber subscriber) {
+        long from;
+        synchronized (this) {
+            from = lastSequence + 1;
+        }
+        subscribe(from, maxBatch, subscriber);
+    }
+
+    /**
+     * Подписка начиная с события с указанным номером, например следующего после последнего обработанного
+     *
+     * @param fromSequence номер первого нужного события
+     * @param maxBatch     наибольшее количество событий в пачке
+     * @param subscriber   подписчик
+     */
+    public void subscribe(long fromSequence, int maxBatch, ChangeSubscriber subscriber) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        }
+        FeedSubscription subscription = new FeedSubscription(Math.max(1, fromSequence), maxBatch, subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        subscription.signal();
+    }
+
+    /**
+     * Номер последнего опубликованного события
+     *
+     * @return номер или 0, если событий ещё не было
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Номер самого раннего события, которое ещё можно получить
+     *
+     * @return номер события
+     */
+    public synchronized long getOldestSequence() {
+        return Math.max(1, lastSequence - ring.length + 1);
+    }
+
+    /**
+     * Закрытие ленты: подписчики получают оставшиеся запрошенные события и завершение
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Следующая пачка событий подписки
+     *
+     * @return события или null, если подписчик отстал больше чем на ёмкость буфера
+     */
+    private synchronized List<LibraryEvent> read(long from, int maxBatch) {
+        if (from < Math.max(1, lastSequence - ring.length + 1)) {
+            return null;
+        }
+        int count = (int) Math.min(maxBatch, lastSequence - from + 1);
+        List<LibraryEvent> events = new ArrayList<>(Math.max(0, count));
+        for (long sequence = from; sequence < from + count; sequence++) {
+            events.add(ring[(int) (sequence & mask)]);
+        }
+        return events;
+    }
+
+    /**
+     * Подписка с доставкой в потоках исполнителя. Одновременно выполняется не больше одной доставки
+     * подписки, поэтому подписчик получает пачки последовательно
+     */
+    private final class FeedSubscription implements ChangeSubscription, Runnable {
+        private final int maxBatch;
+        private final ChangeSubscriber subscriber;
+        private final AtomicLong requested;
+        private final AtomicInteger pending;
+        private volatile long nextSequence;
+        private volatile boolean done;
+
+        private FeedSubscription(long nextSequence, int maxBatch, ChangeSubscriber subscriber) {
+            this.nextSequence = nextSequence;
+            this.maxBatch = maxBatch;
+            this.subscriber = subscriber;
+            this.requested = new AtomicLong();
+            this.pending = new AtomicInteger();
+        }
+
+        @Override
+        public void request(long batches) {
+            if (batches <= 0) {
+                finish(new IllegalArgumentException("Requested batches must be positive: " + batches));
+                return;
+            }
+            requested.getAndAccumulate(batches, (current, added) -> current + added < 0 ? Long.MAX_VALUE
+                    : current + added);
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        @Override
+        public long getNextSequence() {
+            return nextSequence;
+        }
+
+        private void signal() {
+            if (!done && pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    pending.set(0);
+                    log.error("Не удалось запланировать доставку событий", e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (!done) {
+                List<LibraryEvent> events = read(nextSequence, maxBatch);
+                if (events == null) {
+                    finish(new EventsExpiredException(nextSequence, getOldestSequence()));
+                    return;
+                }
+                if (events.isEmpty()) {
+                    if (closed) {
+                        done = true;
+                        subscriptions.remove(this);
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                if (requested.get() == 0) {
+                    return;
+                }
+                requested.decrementAndGet();
+                nextSequence += events.size();
+                try {
+                    subscriber.onNext(events);
+                } catch (RuntimeException e) {
+                    log.error("Подписчик ленты изменений завершился с ошибкой", e);
+                    cancel();
+                }
+            }
+        }
+
+        private void finish(Throwable throwable) {
+            if (!done) {
+                cancel();
+                subscriber.onError(throwable);
+            }
+        }
+    }
+}
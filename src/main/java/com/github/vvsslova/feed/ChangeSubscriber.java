@@ -0,0 +1,35 @@
+package com.github.vvsslova.feed;
+
+import java.util.List;
+
+/**
+ * Подписчик ленты изменений. Контракт повторяет {@code java.util.concurrent.Flow.Subscriber}:
+ * пачки приходят последовательно и только в пределах запрошенного через {@link ChangeSubscription#request(long)}
+ */
+public interface ChangeSubscriber {
+    /**
+     * Начало подписки, до первой пачки
+     *
+     * @param subscription подписка для запроса пачек и отмены
+     */
+    void onSubscribe(ChangeSubscription subscription);
+
+    /**
+     * Очередная пачка событий по порядку номеров
+     *
+     * @param events события, не больше размера пачки подписки
+     */
+    void onNext(List<LibraryEvent> events);
+
+    /**
+     * Завершение подписки с ошибкой, например если нужные события уже вытеснены из ленты
+     *
+     * @param throwable причина
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Завершение подписки при закрытии ленты после доставки всех событий
+     */
+    void onComplete();
+}
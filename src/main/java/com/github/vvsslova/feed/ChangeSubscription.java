@@ -0,0 +1,26 @@
+package com.github.vvsslova.feed;
+
+/**
+ * Подписка на ленту изменений. Контракт повторяет {@code java.util.concurrent.Flow.Subscription}
+ */
+public interface ChangeSubscription {
+    /**
+     * Запрос ещё нескольких пачек событий
+     *
+     * @param batches количество пачек, больше нуля
+     */
+    void request(long batches);
+
+    /**
+     * Отмена подписки. Пачки, доставка которых уже началась, могут прийти после отмены
+     */
+    void cancel();
+
+    /**
+     * Номер следующего события, которое получит подписчик. Сохранив его, подписчик может
+     * продолжить с того же места через {@link ChangeFeed#subscribe(long, int, ChangeSubscriber)}
+     *
+     * @return номер события
+     */
+    long getNextSequence();
+}
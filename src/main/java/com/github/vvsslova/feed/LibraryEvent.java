@@ -0,0 +1,32 @@
+package com.github.vvsslova.feed;
+
+import com.github.vvsslova.storage.Mutation;
+import com.github.vvsslova.storage.MutationType;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Событие ленты изменений: изменение состояния библиотеки с порядковым номером и временем публикации
+ */
+@Getter
+public class LibraryEvent {
+    private final long sequence;
+    private final Instant publishedAt;
+    private final Mutation mutation;
+
+    LibraryEvent(long sequence, Instant publishedAt, Mutation mutation) {
+        this.sequence = sequence;
+        this.publishedAt = publishedAt;
+        this.mutation = mutation;
+    }
+
+    public MutationType getType() {
+        return mutation.getType();
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + mutation;
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.vvsslova.http;
+
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.CatalogTitle;
+
+import java.util.Collection;
+
+/**
+ * Запись ответов сервера в JSON
+ */
+final class JsonWriter {
+    private final StringBuilder json;
+    private boolean first;
+
+    JsonWriter() {
+        this.json = new StringBuilder(128);
+    }
+
+    static String book(BookDto bookDto, boolean lent) {
+        return new JsonWriter().begin().bookFields(bookDto).field("lent", lent).end().toString();
+    }
+
+    static String books(Collection<BookDto> bookDtos) {
+        StringBuilder json = new StringBuilder(bookDtos.size() * 128 + 2).append('[');
+        for (BookDto bookDto : bookDtos) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(new JsonWriter().begin().bookFields(bookDto).end());
+        }
+        return json.append(']').toString();
+    }
+
+    static String titles(Collection<CatalogTitle> catalogTitles) {
+        StringBuilder json = new StringBuilder(catalogTitles.size() * 128 + 2).append('[');
+        for (CatalogTitle catalogTitle : catalogTitles) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(new JsonWriter().begin()
+                    .field("title", catalogTitle.getTitle())
+                    .field("author", catalogTitle.getAuthor())
+                    .field("genre", catalogTitle.getBookGenre() == null ? null : catalogTitle.getBookGenre().name())
+                    .field("copies", catalogTitle.getCopyCount())
+                    .field("available", catalogTitle.getAvailableCopies())
+                    .end());
+        }
+        return json.append(']').toString();
+    }
+
+    static String user(UserDto userDto) {
+        return new JsonWriter().begin()
+                .field("id", userDto.getID())
+                .field("name", userDto.getName())
+                .field("surname", userDto.getSurname())
+                .field("phone", userDto.getPhoneNumber())
+                .end().toString();
+    }
+
+    static String error(String message) {
+        return new JsonWriter().begin().field("error", message).end().toString();
+    }
+
+    JsonWriter begin() {
+        json.append('{');
+        first = true;
+        return this;
+    }
+
+    JsonWriter end() {
+        json.append('}');
+        return this;
+    }
+
+    JsonWriter field(String name, String value) {
+        if (value == null) {
+            return this;
+        }
+        name(name);
+        quote(value);
+        return this;
+    }
+
+    JsonWriter field(String name, long value) {
+        name(name);
+        json.append(value);
+        return this;
+    }
+
+    JsonWriter field(String name, boolean value) {
+        name(name);
+        json.append(value);
+        return this;
+    }
+
+    private JsonWriter bookFields(BookDto bookDto) {
+        return field("id", bookDto.getID())
+                .field("title", bookDto.getTitle())
+                .field("author", bookDto.getAuthor())
+                .field("genre", bookDto.getBookGenre() == null ? null : bookDto.getBookGenre().name());
+    }
+
+    @Override
+    public String toString() {
+        return json.toString();
+    }
+
+    private void name(String name) {
+        if (!first) {
+            json.append(',');
+        }
+        first = false;
+        quote(name);
+        json.append(':');
+    }
+
+    private void quote(String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.vvsslova.http;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.importer.RecordParser;
+import com.github.vvsslova.service.LibraryService;
+import com.github.vvsslova.service.LoanStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/JSON-интерфейс библиотеки на встроенном сервере JDK. Каждый запрос выполняется в своём виртуальном потоке,
+ * если JVM их поддерживает, иначе в пуле платформенных потоков ({@link RequestExecutors}).
+ * <pre>
+ * POST   /books            {"title", "author", "genre"}    добавление книги
+ * GET    /books?title=&amp;author=&amp;genre=&amp;limit=  поиск книг, с fuzzy=true допускаются опечатки
+ * GET    /books?prefix=&amp;limit=                         автодополнение названия
+ * GET    /books/{id}                                       книга
+ * PATCH  /books/{id}       {"title", "author", "genre"}    изменение книги
+ * DELETE /books/{id}                                       удаление книги, выданная книга возвращается
+ * POST   /users            {"name", "surname", "phone"}    добавление пользователя
+ * GET    /users/{id}                                       пользователь
+ * PATCH  /users/{id}       {"name", "surname", "phone"}    изменение пользователя
+ * DELETE /users/{id}                                       удаление пользователя
+ * POST   /loans            {"bookID", "userID", "kioskID"} выдача книги, kioskID необязателен
+ * POST   /returns          {"bookID", "userID"}            возврат книги
+ * GET    /metrics                                          метрики в формате Prometheus
+ * </pre>
+ * Клиенты без поддержки PATCH могут отправить POST с заголовком X-HTTP-Method-Override: PATCH
+ */
+@Slf4j
+public class LibraryHttpServer implements Closeable {
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    private static final int BACKLOG = 4096;
+    private static final int FALLBACK_THREADS = 64;
+    private static final int STOP_DELAY_SECONDS = 1;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String METHOD_OVERRIDE = "X-HTTP-Method-Override";
+
+    private final LibraryService libraryService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param libraryService обслуживаемая библиотека
+     * @param address        адрес сервера, порт 0 выбирает свободный порт
+     */
+    public LibraryHttpServer(LibraryService libraryService, InetSocketAddress address) throws IOException {
+        this.libraryService = libraryService;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = RequestExecutors.newPerRequestExecutor(FALLBACK_THREADS, "library-http");
+        server.setExecutor(executor);
+        server.createContext("/books", exchange -> handle(exchange, this::books));
+        server.createContext("/users", exchange -> handle(exchange, this::users));
+        server.createContext("/loans", exchange -> handle(exchange, this::loans));
+        server.createContext("/returns", exchange -> handle(exchange, this::returns));
+        server.createContext("/metrics", exchange -> handle(exchange, this::metrics));
+    }
+
+    /**
+     * Запуск приёма запросов
+     */
+    public void start() {
+        server.start();
+        log.info("HTTP-сервер библиотеки {} запущен на порту {}, виртуальные потоки: {}",
+                libraryService.getName(), getPort(), RequestExecutors.isVirtualThreadsAvailable());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Остановка сервера с ожиданием выполняемых запросов. Библиотека не закрывается
+     */
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        Response response;
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String context = exchange.getHttpContext().getPath();
+            String id = path.length() > context.length() + 1 ? path.substring(context.length() + 1) : null;
+            String method = exchange.getRequestMethod();
+            String override = exchange.getRequestHeaders().getFirst(METHOD_OVERRIDE);
+            if (override != null && method.equalsIgnoreCase("POST")) {
+                method = override;
+            }
+            response = handler.handle(method.toUpperCase(Locale.ROOT), id, exchange);
+        } catch (IllegalArgumentException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+            response = Response.error(500, "Internal error");
+        }
+        try {
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response books(String method, String bookID, HttpExchange exchange) throws IOException {
+        if (bookID == null) {
+            switch (method) {
+                case "GET":
+                    Map<String, String> query = query(exchange);
+                    int limit = limit(query.get("limit"));
+                    if (query.containsKey("prefix")) {
+                        return Response.json(200, JsonWriter.titles(libraryService.suggestTitles(query.get("prefix"),
+                                limit)));
+                    }
+                    String genre = query.get("genre");
+                    BookGenre bookGenre = genre == null ? null : genre(genre);
+                    return Response.json(200, JsonWriter.books(Boolean.parseBoolean(query.get("fuzzy"))
+                            ? libraryService.findSimilarBooks(query.get("title"), query.get("author"), bookGenre, limit)
+                            : libraryService.findBooks(query.get("title"), query.get("author"), bookGenre, limit)));
+                case "POST":
+                    Map<String, String> fields = body(exchange);
+                    BookDto bookDto = new BookDto(required(fields, "title"), required(fields, "author"),
+                            genre(required(fields, "genre")));
+                    if (!libraryService.addBooks(Collections.singletonList(bookDto)).isEmpty()) {
+                        return Response.error(409, "Book already exists");
+                    }
+                    return Response.json(201, JsonWriter.book(bookDto, false));
+                default:
+                    return Response.error(405, "Method not allowed");
+            }
+        }
+        if (libraryService.getBook(bookID) == null) {
+            return Response.error(404, "Book not found");
+        }
+        switch (method) {
+            case "GET":
+                break;
+            case "PATCH":
+                Map<String, String> fields = body(exchange);
+                BookGenre newGenre = fields.containsKey("genre") ? genre(fields.get("genre")) : null;
+                if (fields.containsKey("title")) {
+                    libraryService.changeBookTitle(bookID, fields.get("title"));
+                }
+                if (fields.containsKey("author")) {
+                    libraryService.changeBookAuthor(bookID, fields.get("author"));
+                }
+                if (newGenre != null) {
+                    libraryService.changeBookGenre(bookID, newGenre);
+                }
+                break;
+            case "DELETE":
+                libraryService.removeBook(bookID);
+                return Response.empty(204);
+            default:
+                return Response.error(405, "Method not allowed");
+        }
+        BookDto bookDto = libraryService.getBook(bookID);
+        return bookDto == null ? Response.error(404, "Book not found")
+                : Response.json(200, JsonWriter.book(bookDto, libraryService.getLendingJournal().isBookLent(bookID)));
+    }
+
+    private Response users(String method, String userID, HttpExchange exchange) throws IOException {
+        if (userID == null) {
+            if (!method.equals("POST")) {
+                return Response.error(405, "Method not allowed");
+            }
+            Map<String, String> fields = body(exchange);
+            UserDto userDto = new UserDto(required(fields, "name"), required(fields, "surname"),
+                    phone(required(fields, "phone")));
+            if (!libraryService.addUsers(Collections.singletonList(userDto)).isEmpty()) {
+                return Response.error(409, "User already exists");
+            }
+            return Response.json(201, JsonWriter.user(userDto));
+        }
+        if (libraryService.getUser(userID) == null) {
+            return Response.error(404, "User not found");
+        }
+        switch (method) {
+            case "GET":
+                break;
+            case "PATCH":
+                Map<String, String> fields = body(exchange);
+                long newPhone = fields.containsKey("phone") ? phone(fields.get("phone")) : 0;
+                if (fields.containsKey("name")) {
+                    libraryService.changeUserName(userID, fields.get("name"));
+                }
+                if (fields.containsKey("surname")) {
+                    libraryService.changeUserSurname(userID, fields.get("surname"));
+                }
+                if (newPhone != 0) {
+                    libraryService.changeUserPhone(userID, newPhone);
+                }
+                break;
+            case "DELETE":
+                libraryService.removeUser(userID);
+                return Response.empty(204);
+            default:
+                return Response.error(405, "Method not allowed");
+        }
+        UserDto userDto = libraryService.getUser(userID);
+        return userDto == null ? Response.error(404, "User not found") : Response.json(200, JsonWriter.user(userDto));
+    }
+
+    private Response loans(String method, String ignored, HttpExchange exchange) throws IOException {
+        if (!method.equals("POST")) {
+            return Response.error(405, "Method not allowed");
+        }
+        Map<String, String> fields = body(exchange);
+        LoanStatus status = libraryService.tryLendBook(required(fields, "bookID"), required(fields, "userID"),
+                fields.get("kioskID"));
+        return status == LoanStatus.DONE ? Response.empty(201) : Response.error(409, "Book cannot be lent: " + status);
+    }
+
+    private Response returns(String method, String ignored, HttpExchange exchange) throws IOException {
+        if (!method.equals("POST")) {
+            return Response.error(405, "Method not allowed");
+        }
+        Map<String, String> fields = body(exchange);
+        return libraryService.returnBook(required(fields, "bookID"), required(fields, "userID"))
+                ? Response.empty(204) : Response.error(409, "Book is not lent to this user");
+    }
+
+    private Response metrics(String method, String ignored, HttpExchange exchange) {
+        if (!method.equals("GET")) {
+            return Response.error(405, "Method not allowed");
+        }
+        return new Response(200, "text/plain; version=0.0.4; charset=utf-8", libraryService.getMetrics().toPrometheus());
+    }
+
+    private static Map<String, String> body(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream input = exchange.getRequestBody()) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return RecordParser.parseJson(new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0 && separator < pair.length() - 1) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8.name()));
+            }
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static BookGenre genre(String value) {
+        return BookGenre.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static long phone(String value) {
+        return Long.parseLong(value.trim());
+    }
+
+    private static int limit(String value) {
+        if (value == null) {
+            return DEFAULT_SEARCH_LIMIT;
+        }
+        int limit = Integer.parseInt(value.trim());
+        if (limit <= 0 || limit > MAX_SEARCH_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_SEARCH_LIMIT);
+        }
+        return limit;
+    }
+
+    private interface Handler {
+        Response handle(String method, String id, HttpExchange exchange) throws IOException;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        private Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        private static Response json(int status, String body) {
+            return new Response(status, JSON, body);
+        }
+
+        private static Response empty(int status) {
+            return new Response(status, JSON, "");
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, JSON, JsonWriter.error(message));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.vvsslova.http;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исполнители запросов. На Java 21 и новее каждый запрос выполняется в своём виртуальном потоке,
+ * поэтому тысячи одновременных запросов не требуют пула платформенных потоков. Сборка ведётся
+ * под Java 8, поэтому исполнитель виртуальных потоков получается через рефлексию, а на старых JVM
+ * используется пул платформенных потоков ограниченного размера
+ */
+@Slf4j
+public final class RequestExecutors {
+    private RequestExecutors() {
+    }
+
+    /**
+     * Исполнитель с отдельным виртуальным потоком на каждую задачу или пул платформенных потоков
+     *
+     * @param fallbackThreads размер пула, если виртуальные потоки недоступны
+     * @param threadPrefix    префикс имён платформенных потоков
+     * @return исполнитель
+     */
+    public static ExecutorService newPerRequestExecutor(int fallbackThreads, String threadPrefix) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(fallbackThreads, runnable -> {
+            Thread thread = new Thread(runnable, threadPrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Доступны ли виртуальные потоки в текущей JVM
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return virtualFactory() != null;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        Method factory = virtualFactory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.error("Не удалось создать исполнитель виртуальных потоков", e);
+            return null;
+        }
+    }
+
+    private static Method virtualFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
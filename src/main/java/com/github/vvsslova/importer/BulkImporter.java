@@ -0,0 +1,403 @@
+package com.github.vvsslova.importer;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import com.github.vvsslova.service.LibraryService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Потоковая массовая загрузка книг, пользователей и выдач из CSV и JSONL.
+ * <p>
+ * Файл читается построчно и делится на пакеты, которые разбираются несколькими потоками
+ * и добавляются в библиотеку в порядке следования в файле. Одновременно в памяти находится
+ * ограниченное число пакетов. Повторяющиеся ID отсекаются внутри пакета и при добавлении в хранилище,
+ * так что побеждает первая запись файла. Ошибочные записи попадают в {@link ImportReport}
+ */
+@Slf4j
+public class BulkImporter {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final int DEFAULT_MAX_REJECTIONS = 10_000;
+
+    private static final String[] BOOK_COLUMNS = {"id", "title", "author", "genre"};
+    private static final String[] USER_COLUMNS = {"id", "name", "surname", "phone"};
+    private static final String[] LOAN_COLUMNS = {"bookId", "userId", "returnDate"};
+
+    private final LibraryService libraryService;
+    private final int threads;
+    private final int batchSize;
+    private final int maxRejections;
+
+    public BulkImporter(LibraryService libraryService) {
+        this(libraryService, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, DEFAULT_MAX_REJECTIONS);
+    }
+
+    /**
+     * @param libraryService библиотека, в которую загружаются данные
+     * @param threads        количество потоков разбора
+     * @param batchSize      количество строк в пакете
+     * @param maxRejections  количество сохраняемых в отчёте отклонённых записей
+     */
+    public BulkImporter(LibraryService libraryService, int threads, int batchSize, int maxRejections) {
+        this.libraryService = libraryService;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.maxRejections = maxRejections;
+    }
+
+    /**
+     * Загрузка книг. Колонки: id (необязательно), title, author, genre
+     *
+     * @param file файл CSV или JSONL
+     * @return отчёт о загрузке
+     */
+    public ImportReport importBooks(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importBooks(reader, ImportFormat.of(file));
+        }
+    }
+
+    public ImportReport importBooks(Reader reader, ImportFormat format) throws IOException {
+        return run(reader, format, new BookHandler());
+    }
+
+    /**
+     * Загрузка пользователей. Колонки: id (необязательно), name, surname, phone
+     *
+     * @param file файл CSV или JSONL
+     * @return отчёт о загрузке
+     */
+    public ImportReport importUsers(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importUsers(reader, ImportFormat.of(file));
+        }
+    }
+
+    public ImportReport importUsers(Reader reader, ImportFormat format) throws IOException {
+        return run(reader, format, new UserHandler());
+    }
+
+    /**
+     * Загрузка существующих выдач. Колонки: bookId, userId, returnDate (ISO-8601).
+     * Книги и пользователи должны быть загружены заранее
+     *
+     * @param file файл CSV или JSONL
+     * @return отчёт о загрузке
+     */
+    public ImportReport importLoans(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importLoans(reader, ImportFormat.of(file));
+        }
+    }
+
+    public ImportReport importLoans(Reader reader, ImportFormat format) throws IOException {
+        return run(reader, format, new LoanHandler());
+    }
+
+    private <T> ImportReport run(Reader source, ImportFormat format, RecordHandler<T> handler) throws IOException {
+        ImportReport report = new ImportReport(maxRejections);
+        BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(threads * 2);
+        CommitOrder commitOrder = new CommitOrder();
+        List<Future<?>> batches = new ArrayList<>();
+        try {
+            Map<String, Integer> columns = null;
+            List<String> lines = new ArrayList<>(batchSize);
+            long firstLine = 1;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (format == ImportFormat.CSV && columns == null) {
+                    columns = csvHeader(line, handler.columns());
+                    if (columns != null) {
+                        firstLine = lineNumber + 1;
+                        continue;
+                    }
+                    columns = defaultColumns(handler.columns());
+                }
+                if (line.trim().isEmpty()) {
+                    if (lines.isEmpty()) {
+                        firstLine = lineNumber + 1;
+                    } else {
+                        lines.add(null);
+                    }
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    batches.add(submit(workers, inFlight, commitOrder, batches.size(), handler, format, columns, lines,
+                            firstLine, report));
+                    lines = new ArrayList<>(batchSize);
+                    firstLine = lineNumber + 1;
+                }
+            }
+            if (!lines.isEmpty()) {
+                batches.add(submit(workers, inFlight, commitOrder, batches.size(), handler, format, columns, lines,
+                        firstLine, report));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import batch failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        log.info("Загрузка завершена: {}", report);
+        return report;
+    }
+
+    private <T> Future<?> submit(ExecutorService workers, Semaphore inFlight, CommitOrder commitOrder, int batch,
+                                 RecordHandler<T> handler, ImportFormat format, Map<String, Integer> columns,
+                                 List<String> lines, long firstLine, ImportReport report) throws InterruptedException {
+        inFlight.acquire();
+        return workers.submit(() -> {
+            try {
+                processBatch(commitOrder, batch, handler, format, columns, lines, firstLine, report);
+            } finally {
+                inFlight.release();
+            }
+            return null;
+        });
+    }
+
+    private <T> void processBatch(CommitOrder commitOrder, int batch, RecordHandler<T> handler, ImportFormat format,
+                                  Map<String, Integer> columns, List<String> lines, long firstLine,
+                                  ImportReport report) throws InterruptedException {
+        List<T> records = new ArrayList<>(lines.size());
+        Map<T, Long> lineNumbers = new IdentityHashMap<>();
+        Set<String> batchIDs = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line == null) {
+                continue;
+            }
+            long lineNumber = firstLine + i;
+            try {
+                Map<String, String> fields = format == ImportFormat.CSV
+                        ? csvFields(line, columns) : RecordParser.parseJson(line);
+                T record = handler.parse(fields);
+                if (!batchIDs.add(handler.idOf(record))) {
+                    report.reject(lineNumber, "Duplicate ID in batch", line);
+                    continue;
+                }
+                records.add(record);
+                lineNumbers.put(record, lineNumber);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                report.reject(lineNumber, e.getMessage(), line);
+            }
+        }
+        commitOrder.await(batch);
+        List<T> rejected;
+        try {
+            rejected = handler.commit(records);
+        } finally {
+            commitOrder.advance();
+        }
+        for (T record : rejected) {
+            report.reject(lineNumbers.get(record), handler.rejectionReason(record), null);
+        }
+        report.accept(records.size() - rejected.size());
+    }
+
+    /**
+     * Разбор строки заголовка CSV
+     *
+     * @param firstLine первая строка файла
+     * @param expected  ожидаемые колонки
+     * @return номера колонок по именам или null, если первая строка не является заголовком
+     */
+    private static Map<String, Integer> csvHeader(String firstLine, String[] expected) {
+        List<String> header = RecordParser.parseCsv(firstLine);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            for (String column : expected) {
+                if (column.equalsIgnoreCase(header.get(i))) {
+                    columns.put(column, i);
+                }
+            }
+        }
+        return columns.isEmpty() ? null : columns;
+    }
+
+    private static Map<String, Integer> defaultColumns(String[] expected) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < expected.length; i++) {
+            columns.put(expected[i], i);
+        }
+        return columns;
+    }
+
+    private static Map<String, String> csvFields(String line, Map<String, Integer> columns) {
+        List<String> values = RecordParser.parseCsv(line);
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, Integer> column : columns.entrySet()) {
+            if (column.getValue() < values.size() && !values.get(column.getValue()).isEmpty()) {
+                fields.put(column.getKey(), values.get(column.getValue()));
+            }
+        }
+        return fields;
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing field " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Очередь добавления пакетов: пакеты разбираются параллельно, но добавляются в порядке номеров.
+     * Пакеты запускаются пулом по порядку, поэтому ожидаемый пакет всегда уже выполняется
+     */
+    private static class CommitOrder {
+        private int next;
+
+        private synchronized void await(int batch) throws InterruptedException {
+            while (next != batch) {
+                wait();
+            }
+        }
+
+        private synchronized void advance() {
+            next++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Разбор и добавление записей одного вида
+     */
+    private interface RecordHandler<T> {
+        String[] columns();
+
+        T parse(Map<String, String> fields);
+
+        String idOf(T record);
+
+        List<T> commit(List<T> records);
+
+        String rejectionReason(T record);
+    }
+
+    private class BookHandler implements RecordHandler<BookDto> {
+        @Override
+        public String[] columns() {
+            return BOOK_COLUMNS;
+        }
+
+        @Override
+        public BookDto parse(Map<String, String> fields) {
+            String title = required(fields, "title");
+            String author = required(fields, "author");
+            String genre = fields.get("genre");
+            BookGenre bookGenre = genre == null ? null : BookGenre.valueOf(genre.trim().toUpperCase(Locale.ROOT));
+            String id = fields.get("id");
+            return id == null ? new BookDto(title, author, bookGenre) : new BookDto(id, title, author, bookGenre);
+        }
+
+        @Override
+        public String idOf(BookDto record) {
+            return record.getID();
+        }
+
+        @Override
+        public List<BookDto> commit(List<BookDto> records) {
+            return libraryService.addBooks(records);
+        }
+
+        @Override
+        public String rejectionReason(BookDto record) {
+            return "Book " + record.getID() + " already exists";
+        }
+    }
+
+    private class UserHandler implements RecordHandler<UserDto> {
+        @Override
+        public String[] columns() {
+            return USER_COLUMNS;
+        }
+
+        @Override
+        public UserDto parse(Map<String, String> fields) {
+            String name = required(fields, "name");
+            String surname = required(fields, "surname");
+            long phone = Long.parseLong(required(fields, "phone").trim());
+            String id = fields.get("id");
+            return id == null ? new UserDto(name, surname, phone) : new UserDto(id, name, surname, phone);
+        }
+
+        @Override
+        public String idOf(UserDto record) {
+            return record.getID();
+        }
+
+        @Override
+        public List<UserDto> commit(List<UserDto> records) {
+            return libraryService.addUsers(records);
+        }
+
+        @Override
+        public String rejectionReason(UserDto record) {
+            return "User " + record.getID() + " already exists";
+        }
+    }
+
+    private class LoanHandler implements RecordHandler<Journal> {
+        @Override
+        public String[] columns() {
+            return LOAN_COLUMNS;
+        }
+
+        @Override
+        public Journal parse(Map<String, String> fields) {
+            return new Journal(required(fields, "bookId"), required(fields, "userId"), null,
+                    LocalDate.parse(required(fields, "returnDate").trim()));
+        }
+
+        @Override
+        public String idOf(Journal record) {
+            return record.getBookID();
+        }
+
+        @Override
+        public List<Journal> commit(List<Journal> records) {
+            return libraryService.addLoans(records);
+        }
+
+        @Override
+        public String rejectionReason(Journal record) {
+            if (!libraryService.getBookService().getBooks().containsKey(record.getBookID())) {
+                return "Book " + record.getBookID() + " not found";
+            }
+            if (!libraryService.getUserService().getUsers().containsKey(record.getUserID())) {
+                return "User " + record.getUserID() + " not found";
+            }
+            return "Book " + record.getBookID() + " is already lent";
+        }
+    }
+}
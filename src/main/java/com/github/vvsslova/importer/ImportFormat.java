@@ -0,0 +1,35 @@
+package com.github.vvsslova.importer;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Форматы файлов массовой загрузки
+ */
+public enum ImportFormat {
+    /**
+     * Значения через запятую, строка заголовка с именами колонок необязательна
+     */
+    CSV,
+    /**
+     * По одному плоскому JSON-объекту на строку
+     */
+    JSONL;
+
+    /**
+     * Определение формата по расширению файла
+     *
+     * @param file загружаемый файл
+     * @return формат файла
+     */
+    public static ImportFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return JSONL;
+        }
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        throw new IllegalArgumentException("Unknown import format: " + file);
+    }
+}
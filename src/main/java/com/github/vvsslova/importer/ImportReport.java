@@ -0,0 +1,77 @@
+package com.github.vvsslova.importer;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Итог массовой загрузки: количество загруженных и отклонённых записей и причины отклонения
+ */
+public class ImportReport {
+    private static final int MAX_LINE_LENGTH = 200;
+
+    private final int maxRejections;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final List<Rejection> rejections = new ArrayList<>();
+
+    public ImportReport(int maxRejections) {
+        this.maxRejections = maxRejections;
+    }
+
+    /**
+     * Количество загруженных записей
+     */
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * Количество отклонённых записей
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Отклонённые записи в порядке обнаружения, не больше заданного предела
+     */
+    public List<Rejection> getRejections() {
+        synchronized (rejections) {
+            return Collections.unmodifiableList(new ArrayList<>(rejections));
+        }
+    }
+
+    void accept(int count) {
+        accepted.add(count);
+    }
+
+    void reject(long lineNumber, String reason, String line) {
+        rejected.increment();
+        synchronized (rejections) {
+            if (rejections.size() < maxRejections) {
+                String shortLine = line == null || line.length() <= MAX_LINE_LENGTH
+                        ? line : line.substring(0, MAX_LINE_LENGTH) + "...";
+                rejections.add(new Rejection(lineNumber, reason, shortLine));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport(accepted=" + getAccepted() + ", rejected=" + getRejected() + ")";
+    }
+
+    /**
+     * Отклонённая запись
+     */
+    @Data
+    public static class Rejection {
+        private final long lineNumber;
+        private final String reason;
+        private final String line;
+    }
+}
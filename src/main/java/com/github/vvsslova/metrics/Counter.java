@@ -0,0 +1,26 @@
+package com.github.vvsslova.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонный счётчик. Увеличение не блокирует и распределено по ячейкам {@link LongAdder}
+ */
+public class Counter {
+    private final LongAdder value;
+
+    public Counter() {
+        this.value = new LongAdder();
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.vvsslova.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Реестр метрик: счётчики, значения, вычисляемые при чтении, и гистограммы длительностей.
+ * Метрики регистрируются один раз, а запись в них не обращается к реестру.
+ * Выгрузка выполняется в текстовом формате Prometheus, гистограммы выгружаются как summary в секундах
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, Family> families;
+
+    public MetricsRegistry() {
+        this.families = new LinkedHashMap<>();
+    }
+
+    /**
+     * Счётчик с указанным именем и метками; повторная регистрация возвращает тот же счётчик
+     *
+     * @param name   имя метрики
+     * @param help   описание
+     * @param labels пары имени и значения метки
+     * @return счётчик
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Counter counter = new Counter();
+        return (Counter) register(name, help, "counter", labels, counter);
+    }
+
+    /**
+     * Счётчик, значение которого читается из источника при выгрузке
+     *
+     * @param name   имя метрики
+     * @param help   описание
+     * @param value  источник значения
+     * @param labels пары имени и значения метки
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "counter", labels, value);
+    }
+
+    /**
+     * Текущее значение, которое читается из источника при выгрузке
+     *
+     * @param name   имя метрики
+     * @param help   описание
+     * @param value  источник значения
+     * @param labels пары имени и значения метки
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "gauge", labels, value);
+    }
+
+    /**
+     * Гистограмма длительностей с указанным именем и метками; повторная регистрация возвращает ту же гистограмму
+     *
+     * @param name   имя метрики
+     * @param help   описание
+     * @param labels пары имени и значения метки
+     * @return гистограмма
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        return (LatencyHistogram) register(name, help, "summary", labels, histogram);
+    }
+
+    /**
+     * Выгрузка всех метрик в текстовом формате Prometheus
+     *
+     * @param out получатель текста
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        List<Family> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(families.values());
+        }
+        for (Family family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            List<Map.Entry<String, Object>> series;
+            synchronized (this) {
+                series = new ArrayList<>(family.series.entrySet());
+            }
+            for (Map.Entry<String, Object> entry : series) {
+                writeSeries(out, family.name, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        try {
+            writePrometheus(text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Выгрузка метрик в файл для сборщика textfile. Файл заменяется целиком, поэтому читатель
+     * не видит частично записанный текст
+     *
+     * @param file файл метрик
+     */
+    public void exportTo(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writePrometheus(writer);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized Object register(String name, String help, String type, String[] labels, Object metric) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Метки задаются парами имени и значения");
+        }
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Метрика " + name + " уже зарегистрирована как " + family.type);
+        }
+        return family.series.computeIfAbsent(formatLabels(labels), key -> metric);
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            text.append(text.length() == 0 ? "" : ",").append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return text.toString();
+    }
+
+    private static void writeSeries(Appendable out, String name, String labels, Object metric) throws IOException {
+        if (metric instanceof Counter) {
+            writeSample(out, name, labels, null, Long.toString(((Counter) metric).get()));
+        } else if (metric instanceof LongSupplier) {
+            writeSample(out, name, labels, null, Long.toString(((LongSupplier) metric).getAsLong()));
+        } else {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            for (double quantile : QUANTILES) {
+                writeSample(out, name, labels, "quantile=\"" + quantile + "\"",
+                        seconds(histogram.valueAtPercentile(quantile * 100)));
+            }
+            writeSample(out, name + "_sum", labels, null, seconds(histogram.getTotalNanos()));
+            writeSample(out, name + "_count", labels, null, Long.toString(histogram.getCount()));
+        }
+    }
+
+    private static void writeSample(Appendable out, String name, String labels, String extraLabel, String value)
+            throws IOException {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * Метрики одного имени с разными значениями меток
+     */
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Object> series;
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.series = new LinkedHashMap<>();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.vvsslova.policy;
+
+import com.github.vvsslova.constant.BookGenre;
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Правила выдачи книг для {@link LoanPolicyEngine}. Нулевые ограничения не действуют
+ */
+@Data
+public class LoanPolicy {
+    public static final int UNLIMITED = 0;
+
+    /**
+     * Наибольшее количество книг на руках у пользователя
+     */
+    private final int maxLoans;
+    /**
+     * Наибольшее количество книг одного жанра на руках у пользователя
+     */
+    private final Map<BookGenre, Integer> maxLoansByGenre;
+    /**
+     * Не выдавать книги пользователю, у которого есть просроченные выдачи
+     */
+    private final boolean overdueBlocking;
+    /**
+     * Количество выдач в минуту на пользователя и на киоск самообслуживания
+     */
+    private final int checkoutsPerMinute;
+    /**
+     * Количество выдач, которые можно выполнить подряд сверх средней скорости
+     */
+    private final int checkoutBurst;
+
+    public LoanPolicy(int maxLoans, Map<BookGenre, Integer> maxLoansByGenre, boolean overdueBlocking,
+                      int checkoutsPerMinute, int checkoutBurst) {
+        if (maxLoans < 0 || checkoutsPerMinute < 0 || checkoutBurst < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.maxLoans = maxLoans;
+        this.maxLoansByGenre = maxLoansByGenre.isEmpty() ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new EnumMap<>(maxLoansByGenre));
+        this.overdueBlocking = overdueBlocking;
+        this.checkoutsPerMinute = checkoutsPerMinute;
+        this.checkoutBurst = Math.max(checkoutBurst, checkoutsPerMinute == UNLIMITED ? 0 : 1);
+    }
+
+    public static LoanPolicy unlimited() {
+        return new LoanPolicy(UNLIMITED, Collections.emptyMap(), false, UNLIMITED, 0);
+    }
+
+    /**
+     * Ограничение количества книг жанра
+     *
+     * @param bookGenre жанр
+     * @return наибольшее количество или {@link #UNLIMITED}
+     */
+    public int maxLoansOf(BookGenre bookGenre) {
+        Integer limit = bookGenre == null ? null : maxLoansByGenre.get(bookGenre);
+        return limit == null ? UNLIMITED : limit;
+    }
+}
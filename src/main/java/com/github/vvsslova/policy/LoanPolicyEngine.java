@@ -0,0 +1,380 @@
+package com.github.vvsslova.policy;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.service.LoanListener;
+import com.github.vvsslova.service.LoanStatus;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Проверка выдачи по правилам {@link LoanPolicy} за постоянное время. Счётчики книг пользователя,
+ * книг по жанрам и просроченных выдач ведутся по событиям журнала выдачи, поэтому проверка не обходит журнал.
+ * Выдачи становятся просроченными при первой проверке за день: выдачи с истёкшим сроком берутся из индекса
+ * по дате возврата, так что каждая выдача учитывается один раз. Жанр запоминается при выдаче и не меняется
+ * до возврата, даже если жанр книги изменили. Обработчики событий журнала не берут общей блокировки:
+ * счётчики пользователя изменяются атомарным обновлением его записи, состояние выдачи — под её монитором,
+ * а индекс по дате возврата — конкурентная карта. Ограничители скорости, заполнившиеся за время простоя,
+ * снимаются раз в минуту, поэтому их количество не растёт с числом когда-либо бравших книги пользователей
+ */
+public class LoanPolicyEngine implements LoanListener {
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final String USER_BUCKET = "user:";
+    private static final String KIOSK_BUCKET = "kiosk:";
+
+    private final Function<String, BookGenre> genreOf;
+    private final Map<String, UserLoans> users;
+    private final Map<String, Loan> loans;
+    private final ConcurrentNavigableMap<Long, Set<String>> dueByDay;
+    private final Map<String, TokenBucket> buckets;
+    private final AtomicLong bucketsSweptAt;
+    private final ReentrantLock sweepLock;
+    private volatile long overdueBefore;
+    private volatile long sweptDay;
+    private volatile LoanPolicy policy;
+
+    /**
+     * @param genreOf жанр экземпляра по его ID
+     */
+    public LoanPolicyEngine(Function<String, BookGenre> genreOf) {
+        this.genreOf = genreOf;
+        this.users = new ConcurrentHashMap<>();
+        this.loans = new ConcurrentHashMap<>();
+        this.dueByDay = new ConcurrentSkipListMap<>();
+        this.buckets = new ConcurrentHashMap<>();
+        this.bucketsSweptAt = new AtomicLong(System.nanoTime());
+        this.sweepLock = new ReentrantLock();
+        this.overdueBefore = Long.MIN_VALUE;
+        this.sweptDay = Long.MIN_VALUE;
+        this.policy = LoanPolicy.unlimited();
+    }
+
+    public LoanPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Замена правил. Накопленные маркеры ограничителей скорости сбрасываются
+     *
+     * @param policy новые правила
+     */
+    public void setPolicy(LoanPolicy policy) {
+        this.policy = policy;
+        buckets.clear();
+    }
+
+    /**
+     * Проверка ограничений количества книг и просрочек. Выдачи пакета, ещё не внесённые в журнал,
+     * передаются отдельно
+     *
+     * @param userID         ID пользователя
+     * @param bookGenre      жанр выдаваемой книги
+     * @param pending        выдачи пакета, уже одобренные для пользователя
+     * @param pendingOfGenre выдачи пакета того же жанра, уже одобренные для пользователя
+     * @param today          текущая дата
+     * @return {@link LoanStatus#DONE} или причина отказа
+     */
+    public LoanStatus check(String userID, BookGenre bookGenre, int pending, int pendingOfGenre, LocalDate today) {
+        LoanPolicy current = policy;
+        UserLoans userLoans = users.get(userID);
+        if (current.isOverdueBlocking()) {
+            sweep(today);
+            if (userLoans != null && userLoans.overdue.get() > 0) {
+                return LoanStatus.OVERDUE_LOANS;
+            }
+        }
+        int loanCount = userLoans == null ? 0 : userLoans.loans.get();
+        if (current.getMaxLoans() != LoanPolicy.UNLIMITED && loanCount + pending >= current.getMaxLoans()) {
+            return LoanStatus.LOAN_LIMIT_REACHED;
+        }
+        int genreLimit = current.maxLoansOf(bookGenre);
+        if (genreLimit != LoanPolicy.UNLIMITED) {
+            int genreCount = userLoans == null ? 0 : userLoans.byGenre.get(bookGenre.ordinal());
+            if (genreCount + pendingOfGenre >= genreLimit) {
+                return LoanStatus.GENRE_LIMIT_REACHED;
+            }
+        }
+        return LoanStatus.DONE;
+    }
+
+    /**
+     * Расход маркеров ограничителей скорости пользователя и киоска. Если маркеров не хватает у одного
+     * из ограничителей, ни один не расходуется
+     *
+     * @param userID  ID пользователя
+     * @param kioskID ID киоска самообслуживания или null
+     * @param permits количество выдач
+     * @return true, если выдачи укладываются в ограничение скорости
+     */
+    public boolean tryAcquire(String userID, String kioskID, int permits) {
+        return tryAcquire(userID, kioskID, permits, System.nanoTime());
+    }
+
+    boolean tryAcquire(String userID, String kioskID, int permits, long now) {
+        LoanPolicy current = policy;
+        if (current.getCheckoutsPerMinute() == LoanPolicy.UNLIMITED) {
+            return true;
+        }
+        sweepBuckets(now);
+        TokenBucket userBucket = acquire(USER_BUCKET + userID, current, permits, now);
+        if (userBucket == null) {
+            return false;
+        }
+        if (kioskID != null && acquire(KIOSK_BUCKET + kioskID, current, permits, now) == null) {
+            userBucket.release(permits);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Количество хранимых ограничителей скорости
+     */
+    int countRateLimiters() {
+        return buckets.size();
+    }
+
+    /**
+     * Количество книг на руках у пользователя
+     *
+     * @param userID ID пользователя
+     * @return количество книг
+     */
+    public int countLoans(String userID) {
+        UserLoans userLoans = users.get(userID);
+        return userLoans == null ? 0 : userLoans.loans.get();
+    }
+
+    /**
+     * Количество книг жанра на руках у пользователя
+     *
+     * @param userID    ID пользователя
+     * @param bookGenre жанр
+     * @return количество книг
+     */
+    public int countLoans(String userID, BookGenre bookGenre) {
+        UserLoans userLoans = users.get(userID);
+        return userLoans == null ? 0 : userLoans.byGenre.get(bookGenre.ordinal());
+    }
+
+    /**
+     * Количество просроченных выдач пользователя
+     *
+     * @param userID ID пользователя
+     * @param today  текущая дата
+     * @return количество выдач
+     */
+    public int countOverdue(String userID, LocalDate today) {
+        sweep(today);
+        UserLoans userLoans = users.get(userID);
+        return userLoans == null ? 0 : userLoans.overdue.get();
+    }
+
+    @Override
+    public void onLent(String bookID, String userID, LocalDate returnDate) {
+        BookGenre bookGenre = genreOf.apply(bookID);
+        UserLoans userLoans = users.compute(userID, (key, current) -> {
+            UserLoans counted = current == null ? new UserLoans(key) : current;
+            counted.loans.incrementAndGet();
+            if (bookGenre != null) {
+                counted.byGenre.incrementAndGet(bookGenre.ordinal());
+            }
+            return counted;
+        });
+        Loan loan = new Loan(userLoans, bookGenre, returnDate.toEpochDay());
+        synchronized (loan) {
+            loans.put(bookID, loan);
+            schedule(bookID, loan);
+        }
+    }
+
+    @Override
+    public void onReturned(String bookID, String userID) {
+        Loan loan = loans.remove(bookID);
+        if (loan == null) {
+            return;
+        }
+        synchronized (loan) {
+            loan.closed = true;
+            unschedule(bookID, loan);
+        }
+        users.computeIfPresent(loan.userLoans.userID, (key, current) -> {
+            current.loans.decrementAndGet();
+            if (loan.bookGenre != null) {
+                current.byGenre.decrementAndGet(loan.bookGenre.ordinal());
+            }
+            return current.loans.get() == 0 ? null : current;
+        });
+    }
+
+    @Override
+    public void onReturnDateChanged(String bookID, String userID, LocalDate newReturnDate) {
+        Loan loan = loans.get(bookID);
+        if (loan == null) {
+            return;
+        }
+        synchronized (loan) {
+            if (loan.closed) {
+                return;
+            }
+            unschedule(bookID, loan);
+            loan.returnDay = newReturnDate.toEpochDay();
+            schedule(bookID, loan);
+        }
+    }
+
+    /**
+     * Отметка выдач, срок которых истёк до указанной даты. Выполняется один раз за день одним потоком,
+     * остальные проверяющие ждут её окончания. Граница отметки публикуется до разбора индекса, поэтому
+     * выдача, внесённая в уже разобранный день, отмечается самим обработчиком выдачи
+     *
+     * @param today текущая дата
+     */
+    private void sweep(LocalDate today) {
+        long day = today.toEpochDay();
+        if (day <= sweptDay) {
+            return;
+        }
+        sweepLock.lock();
+        try {
+            if (day <= sweptDay) {
+                return;
+            }
+            overdueBefore = day;
+            Map.Entry<Long, Set<String>> expired;
+            while ((expired = dueByDay.firstEntry()) != null && expired.getKey() < day) {
+                dueByDay.remove(expired.getKey());
+                for (String bookID : expired.getValue()) {
+                    Loan loan = loans.get(bookID);
+                    if (loan != null) {
+                        synchronized (loan) {
+                            markOverdue(loan, day);
+                        }
+                    }
+                }
+            }
+            sweptDay = day;
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Постановка выдачи в индекс по дате возврата. Вызывается под монитором выдачи
+     */
+    private void schedule(String bookID, Loan loan) {
+        if (markOverdue(loan, overdueBefore)) {
+            return;
+        }
+        dueByDay.computeIfAbsent(loan.returnDay, day -> ConcurrentHashMap.newKeySet()).add(bookID);
+        markOverdue(loan, overdueBefore);
+    }
+
+    /**
+     * Снятие выдачи с учёта просрочек. Пустые множества дней остаются в индексе до их разбора,
+     * чтобы одновременная постановка не попала в уже удалённое множество. Вызывается под монитором выдачи
+     */
+    private void unschedule(String bookID, Loan loan) {
+        if (loan.overdue) {
+            loan.overdue = false;
+            loan.userLoans.overdue.decrementAndGet();
+            return;
+        }
+        Set<String> bookIDs = dueByDay.get(loan.returnDay);
+        if (bookIDs != null) {
+            bookIDs.remove(bookID);
+        }
+    }
+
+    /**
+     * Отметка выдачи просроченной, если её срок истёк до указанного дня. Вызывается под монитором выдачи
+     *
+     * @return true, если выдача просрочена
+     */
+    private static boolean markOverdue(Loan loan, long day) {
+        if (loan.closed || loan.returnDay >= day) {
+            return false;
+        }
+        if (!loan.overdue) {
+            loan.overdue = true;
+            loan.userLoans.overdue.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Расход маркеров ограничителя. Если ограничитель снят одновременно с расходом, берётся новый
+     *
+     * @return ограничитель или null, если маркеров не хватает
+     */
+    private TokenBucket acquire(String key, LoanPolicy current, int permits, long now) {
+        while (true) {
+            TokenBucket bucket = buckets.computeIfAbsent(key, ignored -> new TokenBucket(current.getCheckoutBurst(),
+                    (double) current.getCheckoutsPerMinute() / NANOS_PER_MINUTE, now));
+            synchronized (bucket) {
+                if (!bucket.isRetired()) {
+                    return bucket.tryAcquire(permits, now) ? bucket : null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Снятие заполнившихся ограничителей не чаще раза в минуту. Снимает один из конкурирующих потоков
+     *
+     * @param now текущее время в наносекундах
+     */
+    private void sweepBuckets(long now) {
+        long sweptAt = bucketsSweptAt.get();
+        if (now - sweptAt < NANOS_PER_MINUTE || !bucketsSweptAt.compareAndSet(sweptAt, now)) {
+            return;
+        }
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().retireIfFull(now)) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Счётчики выдач пользователя, читаемые без блокировки. Изменяются внутри атомарного обновления
+     * записи пользователя, поэтому запись удаляется только вместе с последней выдачей
+     */
+    private static final class UserLoans {
+        private final String userID;
+        private final AtomicInteger loans = new AtomicInteger();
+        private final AtomicIntegerArray byGenre = new AtomicIntegerArray(BookGenre.values().length);
+        private final AtomicInteger overdue = new AtomicInteger();
+
+        private UserLoans(String userID) {
+            this.userID = userID;
+        }
+    }
+
+    /**
+     * Выдача. Изменяемые поля читаются и изменяются под монитором выдачи
+     */
+    private static final class Loan {
+        private final UserLoans userLoans;
+        private final BookGenre bookGenre;
+        private long returnDay;
+        private boolean overdue;
+        private boolean closed;
+
+        private Loan(UserLoans userLoans, BookGenre bookGenre, long returnDay) {
+            this.userLoans = userLoans;
+            this.bookGenre = bookGenre;
+            this.returnDay = returnDay;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.vvsslova.policy;
+
+/**
+ * Ограничитель скорости: маркеры пополняются равномерно до ёмкости, каждая выдача расходует маркер.
+ * Заполненный ограничитель не отличается от нового, поэтому его можно снять и не хранить
+ */
+class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+    private boolean retired;
+
+    TokenBucket(int capacity, double tokensPerNano, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerNano;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Расход маркеров, если их хватает
+     *
+     * @param permits количество маркеров
+     * @param now     текущее время в наносекундах
+     * @return true, если маркеры израсходованы
+     */
+    synchronized boolean tryAcquire(int permits, long now) {
+        refill(now);
+        if (tokens < permits) {
+            return false;
+        }
+        tokens -= permits;
+        return true;
+    }
+
+    /**
+     * Возврат маркеров, израсходованных на невыполненную выдачу
+     *
+     * @param permits количество маркеров
+     */
+    synchronized void release(int permits) {
+        tokens = Math.min(capacity, tokens + permits);
+    }
+
+    /**
+     * Снятие заполненного ограничителя. Снятый ограничитель больше не используется
+     *
+     * @param now текущее время в наносекундах
+     * @return true, если ограничитель заполнен и снят
+     */
+    synchronized boolean retireIfFull(long now) {
+        refill(now);
+        retired = tokens >= capacity;
+        return retired;
+    }
+
+    synchronized boolean isRetired() {
+        return retired;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,393 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Инвертированный индекс изданий по словам названия, автора и по жанру.
+ * Все экземпляры издания представлены в индексе одним ключом {@link CatalogTitle#getKey()}.
+ * Для поиска с опечатками словарь каждого поля дополнительно проиндексирован по триграммам:
+ * кандидаты отбираются по количеству общих триграмм и проверяются ограниченным расстоянием Левенштейна,
+ * поэтому поиск просматривает только похожие слова словаря, а не весь каталог
+ */
+public class BookSearchIndex {
+    private static final int EXACT_TOKEN_SCORE = 4;
+    private static final int PREFIX_TOKEN_SCORE = 2;
+    private static final int FUZZY_TOKEN_SCORE = 1;
+    private static final int MAX_PREFIX_TERMS = 256;
+    private static final char TRIGRAM_PADDING = '\u0000';
+    private static final int TITLE_WEIGHT = 2;
+    private static final int AUTHOR_WEIGHT = 1;
+
+    private final Field title;
+    private final Field author;
+    private final Map<BookGenre, Set<String>> genres;
+
+    public BookSearchIndex() {
+        this.title = new Field();
+        this.author = new Field();
+        this.genres = new EnumMap<>(BookGenre.class);
+        for (BookGenre bookGenre : BookGenre.values()) {
+            genres.put(bookGenre, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * Добавление издания в индекс
+     *
+     * @param catalogTitle добавляемое издание
+     */
+    protected void add(CatalogTitle catalogTitle) {
+        title.add(catalogTitle.getKey(), catalogTitle.getTitle());
+        author.add(catalogTitle.getKey(), catalogTitle.getAuthor());
+        if (catalogTitle.getBookGenre() != null) {
+            genres.get(catalogTitle.getBookGenre()).add(catalogTitle.getKey());
+        }
+    }
+
+    /**
+     * Удаление издания из индекса
+     *
+     * @param catalogTitle удаляемое издание
+     */
+    protected void remove(CatalogTitle catalogTitle) {
+        title.remove(catalogTitle.getKey(), catalogTitle.getTitle());
+        author.remove(catalogTitle.getKey(), catalogTitle.getAuthor());
+        if (catalogTitle.getBookGenre() != null) {
+            genres.get(catalogTitle.getBookGenre()).remove(catalogTitle.getKey());
+        }
+    }
+
+    /**
+     * Издания, название которых состоит из тех же слов, что и запрос
+     *
+     * @param text название
+     * @return ключи изданий-кандидатов или null, если в запросе нет слов
+     */
+    protected Set<String> titleCandidates(String text) {
+        return title.exactCandidates(text);
+    }
+
+    /**
+     * Издания, автор которых состоит из тех же слов, что и запрос
+     *
+     * @param text автор
+     * @return ключи изданий-кандидатов или null, если в запросе нет слов
+     */
+    protected Set<String> authorCandidates(String text) {
+        return author.exactCandidates(text);
+    }
+
+    /**
+     * Поиск с ранжированием. Каждое слово запроса должно совпасть со словом
+     * или началом слова в своём поле, все заданные поля объединяются по И.
+     * Начало слова дополняется не более чем до {@value #MAX_PREFIX_TERMS} слов словаря
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @return ключи изданий с их релевантностью
+     */
+    protected Map<String, Integer> search(String titleQuery, String authorQuery, BookGenre bookGenre) {
+        return search(titleQuery, authorQuery, bookGenre, false);
+    }
+
+    /**
+     * Поиск с ранжированием, допускающий опечатки. Слово запроса совпадает также со словами, отличающимися
+     * не более чем на одну правку для слов из 3-5 букв и на две правки для более длинных слов.
+     * Точные совпадения ранжируются выше совпадений по началу слова, а те — выше совпадений с опечаткой
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param fuzzy       допускать опечатки
+     * @return ключи изданий с их релевантностью
+     */
+    protected Map<String, Integer> search(String titleQuery, String authorQuery, BookGenre bookGenre, boolean fuzzy) {
+        List<Map<String, Integer>> clauses = new ArrayList<>();
+        title.collectClauses(titleQuery, TITLE_WEIGHT, fuzzy, clauses);
+        author.collectClauses(authorQuery, AUTHOR_WEIGHT, fuzzy, clauses);
+        return intersect(clauses, bookGenre == null ? null : genres.get(bookGenre));
+    }
+
+    /**
+     * Автодополнение названия: все слова, кроме последнего, совпадают со словами названия или их началом,
+     * последнее дополняется не более чем до {@value #MAX_PREFIX_TERMS} слов словаря
+     *
+     * @param prefix начало названия
+     * @return ключи изданий с их релевантностью
+     */
+    protected Map<String, Integer> complete(String prefix) {
+        List<String> tokens = tokenize(prefix);
+        if (tokens.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<Map<String, Integer>> clauses = new ArrayList<>();
+        String last = tokens.remove(tokens.size() - 1);
+        title.collectClauses(String.join(" ", tokens), TITLE_WEIGHT, false, clauses);
+        clauses.add(title.completionClause(last, TITLE_WEIGHT));
+        return intersect(clauses, null);
+    }
+
+    private static Map<String, Integer> intersect(List<Map<String, Integer>> clauses, Set<String> genreBooks) {
+        if (clauses.isEmpty()) {
+            Map<String, Integer> result = new HashMap<>();
+            if (genreBooks != null) {
+                for (String bookID : genreBooks) {
+                    result.put(bookID, 0);
+                }
+            }
+            return result;
+        }
+        clauses.sort(Comparator.comparingInt(Map::size));
+        Map<String, Integer> result = new HashMap<>();
+        candidates:
+        for (Map.Entry<String, Integer> entry : clauses.get(0).entrySet()) {
+            String bookID = entry.getKey();
+            if (genreBooks != null && !genreBooks.contains(bookID)) {
+                continue;
+            }
+            int score = entry.getValue();
+            for (int i = 1; i < clauses.size(); i++) {
+                Integer clauseScore = clauses.get(i).get(bookID);
+                if (clauseScore == null) {
+                    continue candidates;
+                }
+                score += clauseScore;
+            }
+            result.put(bookID, score);
+        }
+        return result;
+    }
+
+    /**
+     * Допустимое количество правок для слова запроса
+     *
+     * @param token слово запроса
+     * @return 0 для слов до 2 букв, 1 для слов из 3-5 букв, 2 для более длинных
+     */
+    static int maxEdits(String token) {
+        return token.length() < 3 ? 0 : token.length() < 6 ? 1 : 2;
+    }
+
+    /**
+     * Расстояние Левенштейна, вычисляемое только в полосе ширины {@code 2 * limit + 1}
+     * с прекращением, как только оно заведомо превысит предел
+     *
+     * @param a     первое слово
+     * @param b     второе слово
+     * @param limit наибольшее интересующее расстояние
+     * @return расстояние или {@code limit + 1}, если оно больше предела
+     */
+    static int boundedDistance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - limit);
+            int to = Math.min(b.length(), i + limit);
+            current[0] = i;
+            if (from > 1) {
+                current[from - 1] = limit + 1;
+            }
+            int rowMin = from > 1 ? limit + 1 : i;
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(
+                        j <= i + limit - 1 ? previous[j] + 1 : limit + 1,
+                        current[j - 1] + 1));
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (to < b.length()) {
+                current[to + 1] = limit + 1;
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * Триграммы слова, дополненного с обеих сторон граничным символом
+     *
+     * @param token слово
+     * @return триграммы без повторов
+     */
+    static Set<String> trigrams(String token) {
+        String padded = TRIGRAM_PADDING + token + TRIGRAM_PADDING;
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Разбиение текста на нормализованные слова
+     *
+     * @param text текст
+     * @return слова без учёта регистра
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(Character.toUpperCase(c)));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Индекс одного текстового поля: слово -> ключи изданий, упорядоченный словарь для поиска по началу слова
+     * и триграмма -> слова словаря для поиска с опечатками
+     */
+    private static class Field {
+        private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+        private final NavigableSet<String> dictionary = new ConcurrentSkipListSet<>();
+        private final Map<String, Set<String>> trigramIndex = new ConcurrentHashMap<>();
+
+        private void add(String bookID, String text) {
+            for (String token : tokenize(text)) {
+                postings.compute(token, (key, bookIDs) -> {
+                    if (bookIDs == null) {
+                        bookIDs = ConcurrentHashMap.newKeySet();
+                        dictionary.add(key);
+                        for (String trigram : trigrams(key)) {
+                            trigramIndex.computeIfAbsent(trigram, ignored -> ConcurrentHashMap.newKeySet()).add(key);
+                        }
+                    }
+                    bookIDs.add(bookID);
+                    return bookIDs;
+                });
+            }
+        }
+
+        private void remove(String bookID, String text) {
+            for (String token : tokenize(text)) {
+                postings.computeIfPresent(token, (key, bookIDs) -> {
+                    bookIDs.remove(bookID);
+                    if (bookIDs.isEmpty()) {
+                        dictionary.remove(key);
+                        for (String trigram : trigrams(key)) {
+                            trigramIndex.computeIfPresent(trigram, (ignored, tokens) -> {
+                                tokens.remove(key);
+                                return tokens.isEmpty() ? null : tokens;
+                            });
+                        }
+                        return null;
+                    }
+                    return bookIDs;
+                });
+            }
+        }
+
+        private Set<String> exactCandidates(String text) {
+            Set<String> smallest = null;
+            for (String token : tokenize(text)) {
+                Set<String> bookIDs = postings.get(token);
+                if (bookIDs == null) {
+                    return Collections.emptySet();
+                }
+                if (smallest == null || bookIDs.size() < smallest.size()) {
+                    smallest = bookIDs;
+                }
+            }
+            return smallest;
+        }
+
+        private void collectClauses(String query, int weight, boolean fuzzy, List<Map<String, Integer>> clauses) {
+            for (String token : new LinkedHashSet<>(tokenize(query))) {
+                Map<String, Integer> clause = completionClause(token, weight);
+                if (fuzzy) {
+                    for (String similar : similarTokens(token)) {
+                        addPostings(similar, weight * FUZZY_TOKEN_SCORE, clause);
+                    }
+                }
+                clauses.add(clause);
+            }
+        }
+
+        /**
+         * Совпадения со словом и словами, которые с него начинаются. Само слово идёт в словаре первым,
+         * поэтому точное совпадение не отсекается ограничением {@value #MAX_PREFIX_TERMS}
+         */
+        private Map<String, Integer> completionClause(String prefix, int weight) {
+            Map<String, Integer> clause = new HashMap<>();
+            int terms = 0;
+            for (String indexed : dictionary.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+                if (terms++ == MAX_PREFIX_TERMS) {
+                    break;
+                }
+                addPostings(indexed, weight * (indexed.equals(prefix) ? EXACT_TOKEN_SCORE : PREFIX_TOKEN_SCORE),
+                        clause);
+            }
+            return clause;
+        }
+
+        private void addPostings(String token, int score, Map<String, Integer> clause) {
+            Set<String> bookIDs = postings.get(token);
+            if (bookIDs == null) {
+                return;
+            }
+            for (String bookID : bookIDs) {
+                clause.merge(bookID, score, Math::max);
+            }
+        }
+
+        /**
+         * Слова словаря на расстоянии не больше {@link #maxEdits(String)} от слова запроса.
+         * Слово с d правками сохраняет не меньше {@code n - 3d} из n триграмм, поэтому проверяются
+         * только слова, набравшие столько общих триграмм, но не меньше одной
+         */
+        private List<String> similarTokens(String token) {
+            int limit = maxEdits(token);
+            List<String> similar = new ArrayList<>();
+            if (limit == 0) {
+                return similar;
+            }
+            Map<String, Integer> shared = new HashMap<>();
+            for (String trigram : trigrams(token)) {
+                Set<String> tokens = trigramIndex.get(trigram);
+                if (tokens != null) {
+                    for (String candidate : tokens) {
+                        shared.merge(candidate, 1, Integer::sum);
+                    }
+                }
+            }
+            for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+                String candidate = entry.getKey();
+                int required = Math.max(1, Math.max(token.length(), candidate.length()) - 3 * limit);
+                if (entry.getValue() >= required && !candidate.startsWith(token)
+                        && boundedDistance(token, candidate, limit) <= limit) {
+                    similar.add(candidate);
+                }
+            }
+            return similar;
+        }
+    }
+}
@@ -2,81 +2,137 @@ package com.github.vvsslova.service;
 
 import com.github.vvsslova.constant.BookGenre;
 import com.github.vvsslova.dto.BookDto;
-import com.github.vvsslova.exception.BookAlreadyExistsException;
-import com.github.vvsslova.exception.BookNotFoundException;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Описание взаимодействия с книгами
+ * Описание взаимодействия с книгами. Каждая {@link BookDto} — отдельный экземпляр с собственным
+ * инвентарным номером (ID); экземпляры группируются в издания {@link CatalogTitle}, по которым
+ * ведутся поиск и учёт свободных экземпляров
  */
 @Slf4j
 @Data
-public class BookService {
+public class BookService implements LoanListener {
+    private static final int PRINT_PAGE_SIZE = 100;
+
     private final Map<String, BookDto> books;
+    private final NavigableSet<String> bookOrder;
+    private final BookSearchIndex searchIndex;
+    private final Map<String, CatalogTitle> titles;
+    private final Map<String, CatalogTitle> titleOfCopy;
+    private final Set<String> lentCopies;
 
     public BookService() {
-        this.books = new HashMap<>();
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Каталог поверх хранилища записей книг, например отображаемого в память файла.
+     * Книги, уже лежащие в хранилище, добавляются в порядок обхода и индексы изданий и поиска.
+     * Эти индексы хранятся в куче, поэтому конструктор читает каждую запись хранилища,
+     * а занятая индексами память растёт с размером каталога
+     *
+     * @param books потокобезопасное хранилище книг по ID
+     */
+    public BookService(Map<String, BookDto> books) {
+        this.books = books;
+        this.bookOrder = new ConcurrentSkipListSet<>();
+        this.searchIndex = new BookSearchIndex();
+        this.titles = new ConcurrentHashMap<>();
+        this.titleOfCopy = new ConcurrentHashMap<>();
+        this.lentCopies = ConcurrentHashMap.newKeySet();
+        for (BookDto bookDto : books.values()) {
+            bookOrder.add(bookDto.getID());
+            attach(bookDto);
+        }
     }
 
     /**
      * Добавление книги
      *
      * @param bookDto добавляемая книга
+     * @return true, если изменение выполнено
      */
-    protected void addBook(BookDto bookDto) {
-        try {
-            checkBookAbsence(bookDto.getID());
-            books.put(bookDto.getID(), bookDto);
-            log.info("Книга {} успешно добавлена в библиотеку", bookDto);
-        } catch (BookAlreadyExistsException e) {
-            log.error(e.getMessage(), e);
+    protected boolean addBook(BookDto bookDto) {
+        if (books.putIfAbsent(bookDto.getID(), bookDto) != null) {
+            log.error("Книга {} уже существует", bookDto.getID());
+            return false;
         }
+        bookOrder.add(bookDto.getID());
+        attach(bookDto);
+        return true;
     }
 
     /**
-     * Проверка наличия книги
+     * Добавление книги при восстановлении состояния или массовой загрузке, без журналирования
      *
-     * @param bookID ID проверямой книги
-     * @throws BookAlreadyExistsException если такая книга уже существует
+     * @param bookDto восстанавливаемая книга
+     * @return true, если книги с таким ID ещё не было
      */
-    private void checkBookAbsence(String bookID) throws BookAlreadyExistsException {
-        if (books.containsKey(bookID)) {
-            throw new BookAlreadyExistsException();
+    protected boolean restoreBook(BookDto bookDto) {
+        if (books.putIfAbsent(bookDto.getID(), bookDto) != null) {
+            return false;
         }
+        bookOrder.add(bookDto.getID());
+        attach(bookDto);
+        return true;
     }
 
     /**
-     * Проверка отсутствия книги
+     * Поиск изменяемой книги. Отсутствие книги записывается в лог без исключения
      *
-     * @param bookID ID проверямой книги
-     * @throws BookNotFoundException если книга не найдена
+     * @param bookID ID изменяемой книги
+     * @return найденная книга или null
      */
-    private void checkBooksAvailability(String bookID) throws BookNotFoundException {
-        if (!books.containsKey(bookID)) {
-            throw new BookNotFoundException();
+    private BookDto findChangingBook(String bookID) {
+        BookDto bookDto = books.get(bookID);
+        if (bookDto == null) {
+            log.error("Книга {} не найдена", bookID);
         }
+        return bookDto;
     }
 
     /**
      * Удаление книги
      *
      * @param bookID удаляемая книга
+     * @return true, если изменение выполнено
      */
-    protected void removeBook(String bookID) {
-        try {
-            checkBooksAvailability(bookID);
-            books.remove(bookID);
-            log.info("Книга успешно удалена из библиотеки");
-        } catch (BookNotFoundException e) {
-            log.error(e.getMessage(), e);
+    protected boolean removeBook(String bookID) {
+        if (takeBook(bookID) == null) {
+            log.error("Книга {} не найдена", bookID);
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Удаление книги без записи в лог: отсутствие книги — обычный результат, а не ошибка
+     *
+     * @param bookID удаляемая книга
+     * @return удалённая книга или null, если её не было
+     */
+    protected BookDto takeBook(String bookID) {
+        BookDto removedBookDto = books.remove(bookID);
+        if (removedBookDto != null) {
+            bookOrder.remove(bookID);
+            detach(bookID);
+        }
+        return removedBookDto;
     }
 
     /**
@@ -84,16 +140,17 @@ public class BookService {
      *
      * @param bookID    ID книги, у которой необходимо изменить
      * @param newAuthor новый автор
+     * @return true, если изменение выполнено
      */
-    protected void changeBookAuthor(String bookID, String newAuthor) {
-        try {
-            checkBooksAvailability(bookID);
-            BookDto changingBookDto = books.get(bookID);
-            changingBookDto.setAuthor(newAuthor);
-            log.info("Автор успешно изменён!");
-        } catch (BookNotFoundException e) {
-            log.error(e.getMessage(), e);
+    protected boolean changeBookAuthor(String bookID, String newAuthor) {
+        BookDto changingBookDto = findChangingBook(bookID);
+        if (changingBookDto == null) {
+            return false;
         }
+        detach(bookID);
+        changingBookDto.setAuthor(newAuthor);
+        attach(changingBookDto);
+        return true;
     }
 
     /**
@@ -101,16 +158,17 @@ public class BookService {
      *
      * @param bookID   ID книги, у которой необходимо изменить
      * @param newTitle новое название
+     * @return true, если изменение выполнено
      */
-    protected void changeBookTitle(String bookID, String newTitle) {
-        try {
-            checkBooksAvailability(bookID);
-            BookDto changingBookDto = books.get(bookID);
-            changingBookDto.setTitle(newTitle);
-            log.info("Название успешно изменено!");
-        } catch (BookNotFoundException e) {
-            log.error(e.getMessage(), e);
+    protected boolean changeBookTitle(String bookID, String newTitle) {
+        BookDto changingBookDto = findChangingBook(bookID);
+        if (changingBookDto == null) {
+            return false;
         }
+        detach(bookID);
+        changingBookDto.setTitle(newTitle);
+        attach(changingBookDto);
+        return true;
     }
 
     /**
@@ -118,41 +176,261 @@ public class BookService {
      *
      * @param bookID       ID книги, у которой необходимо изменить
      * @param newBookGenre новый жанр
+     * @return true, если изменение выполнено
      */
-    protected void changeBookGenre(String bookID, BookGenre newBookGenre) {
-        try {
-            checkBooksAvailability(bookID);
-            BookDto changingBookDto = books.get(bookID);
-            changingBookDto.setBookGenre(newBookGenre);
-            log.info("Жанр успешно изменён!");
-        } catch (BookNotFoundException e) {
-            log.error(e.getMessage(), e);
+    protected boolean changeBookGenre(String bookID, BookGenre newBookGenre) {
+        BookDto changingBookDto = findChangingBook(bookID);
+        if (changingBookDto == null) {
+            return false;
         }
+        detach(bookID);
+        changingBookDto.setBookGenre(newBookGenre);
+        attach(changingBookDto);
+        return true;
     }
 
     /**
-     * Поиск книги
+     * Поиск книги, по одному экземпляру на издание
      *
      * @param title  название
      * @param author автор
      */
     protected List<BookDto> searchBooks(String title, String author) {
-        List<BookDto> listOfBookDtos = new ArrayList<>(books.values());
-        List<BookDto> bookDtoList = listOfBookDtos.stream()
-                .filter(b -> (title == null || b.getTitle().equalsIgnoreCase(title)) &&
-                        (author == null || b.getAuthor().equalsIgnoreCase(author)))
+        Collection<String> titleCandidates = title == null ? null : searchIndex.titleCandidates(title);
+        Collection<String> authorCandidates = author == null ? null : searchIndex.authorCandidates(author);
+        Collection<String> candidates = titleCandidates;
+        if (candidates == null || authorCandidates != null && authorCandidates.size() < candidates.size()) {
+            candidates = authorCandidates;
+        }
+        Collection<CatalogTitle> catalogTitles = candidates == null ? titles.values() : candidates.stream()
+                .map(titles::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        List<BookDto> bookDtoList = catalogTitles.stream()
+                .filter(t -> (title == null || t.getTitle().equalsIgnoreCase(title)) &&
+                        (author == null || t.getAuthor().equalsIgnoreCase(author)))
+                .map(this::representative)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
         return bookDtoList;
     }
 
     /**
-     * Получение списка всех книг
+     * Поиск книг по словам и началам слов с ранжированием по релевантности,
+     * по одному экземпляру на издание, свободные экземпляры предпочтительнее
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные книги, наиболее релевантные первыми
+     */
+    protected List<BookDto> findBooks(String titleQuery, String authorQuery, BookGenre bookGenre, int limit) {
+        return findTitles(titleQuery, authorQuery, bookGenre, limit).stream()
+                .map(this::representative)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Поиск изданий по словам и началам слов с ранжированием по релевантности
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные издания, наиболее релевантные первыми
+     */
+    protected List<CatalogTitle> findTitles(String titleQuery, String authorQuery, BookGenre bookGenre, int limit) {
+        return rank(searchIndex.search(titleQuery, authorQuery, bookGenre), limit);
+    }
+
+    /**
+     * Поиск книг с опечатками в словах названия и автора, по одному экземпляру на издание
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные книги, точные совпадения первыми
+     */
+    protected List<BookDto> findSimilarBooks(String titleQuery, String authorQuery, BookGenre bookGenre, int limit) {
+        return rank(searchIndex.search(titleQuery, authorQuery, bookGenre, true), limit).stream()
+                .map(this::representative)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Автодополнение названия по началу
+     *
+     * @param prefix начало названия
+     * @param limit  максимальное количество подсказок
+     * @return издания, названия которых начинаются с указанных слов
+     */
+    protected List<CatalogTitle> suggestTitles(String prefix, int limit) {
+        return rank(searchIndex.complete(prefix), limit);
+    }
+
+    private List<CatalogTitle> rank(Map<String, Integer> scores, int limit) {
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .map(entry -> titles.get(entry.getKey()))
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Издание, к которому относится экземпляр
+     *
+     * @param bookID ID экземпляра
+     * @return издание или null, если экземпляр не найден
+     */
+    protected CatalogTitle getTitle(String bookID) {
+        return titleOfCopy.get(bookID);
+    }
+
+    @Override
+    public void onLent(String bookID, String userID, LocalDate returnDate) {
+        if (lentCopies.add(bookID)) {
+            CatalogTitle catalogTitle = titleOfCopy.get(bookID);
+            if (catalogTitle != null) {
+                catalogTitle.lend();
+            }
+        }
+    }
+
+    @Override
+    public void onReturned(String bookID, String userID) {
+        if (lentCopies.remove(bookID)) {
+            CatalogTitle catalogTitle = titleOfCopy.get(bookID);
+            if (catalogTitle != null) {
+                catalogTitle.giveBack();
+            }
+        }
+    }
+
+    /**
+     * Свободный экземпляр издания, а если свободных нет — любой
+     */
+    private BookDto representative(CatalogTitle catalogTitle) {
+        BookDto any = null;
+        for (String bookID : catalogTitle.getCopyIDs()) {
+            BookDto bookDto = books.get(bookID);
+            if (bookDto == null) {
+                continue;
+            }
+            if (!lentCopies.contains(bookID)) {
+                return bookDto;
+            }
+            if (any == null) {
+                any = bookDto;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Включение экземпляра в его издание. Издание создаётся и индексируется при добавлении первого экземпляра.
+     * Выполняется под блокировкой книги, поэтому не пересекается с выдачей и возвратом этого экземпляра
+     *
+     * @param bookDto экземпляр
+     */
+    private void attach(BookDto bookDto) {
+        String bookID = bookDto.getID();
+        boolean lent = lentCopies.contains(bookID);
+        CatalogTitle catalogTitle = titles.compute(
+                CatalogTitle.keyOf(bookDto.getTitle(), bookDto.getAuthor(), bookDto.getBookGenre()),
+                (key, current) -> {
+                    if (current == null) {
+                        current = new CatalogTitle(key, bookDto.getTitle(), bookDto.getAuthor(),
+                                bookDto.getBookGenre());
+                        searchIndex.add(current);
+                    }
+                    current.addCopy(bookID, lent);
+                    return current;
+                });
+        titleOfCopy.put(bookID, catalogTitle);
+    }
+
+    /**
+     * Исключение экземпляра из издания. Издание без экземпляров удаляется из каталога и индекса
+     *
+     * @param bookID ID экземпляра
+     */
+    private void detach(String bookID) {
+        CatalogTitle catalogTitle = titleOfCopy.remove(bookID);
+        if (catalogTitle == null) {
+            return;
+        }
+        boolean lent = lentCopies.contains(bookID);
+        titles.computeIfPresent(catalogTitle.getKey(), (key, current) -> {
+            current.removeCopy(bookID, lent);
+            if (current.getCopyCount() == 0) {
+                searchIndex.remove(current);
+                return null;
+            }
+            return current;
+        });
+    }
+
+    /**
+     * Страница книг в порядке ID
+     *
+     * @param cursor       курсор предыдущей страницы или null для первой страницы
+     * @param limit        максимальное количество книг на странице
+     * @param bookGenre    жанр или null
+     * @param authorPrefix начало имени автора без учёта регистра или null
+     * @return страница книг
+     * @throws IllegalArgumentException если размер страницы не положителен
+     */
+    protected Page<BookDto> listBooks(String cursor, int limit, BookGenre bookGenre, String authorPrefix) {
+        Page.checkLimit(limit);
+        List<BookDto> items = new ArrayList<>(Math.min(limit, 1024));
+        String last = null;
+        for (String bookID : cursor == null ? bookOrder : bookOrder.tailSet(cursor, false)) {
+            if (items.size() == limit) {
+                return new Page<>(items, last);
+            }
+            BookDto bookDto = books.get(bookID);
+            if (bookDto != null && matches(bookDto, bookGenre, authorPrefix)) {
+                items.add(bookDto);
+                last = bookID;
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Ленивый поток книг в порядке ID без копирования каталога
+     *
+     * @param bookGenre    жанр или null
+     * @param authorPrefix начало имени автора без учёта регистра или null
+     * @return поток книг
+     */
+    protected Stream<BookDto> streamBooks(BookGenre bookGenre, String authorPrefix) {
+        return bookOrder.stream()
+                .map(books::get)
+                .filter(bookDto -> bookDto != null && matches(bookDto, bookGenre, authorPrefix));
+    }
+
+    private static boolean matches(BookDto bookDto, BookGenre bookGenre, String authorPrefix) {
+        return (bookGenre == null || bookDto.getBookGenre() == bookGenre)
+                && (authorPrefix == null
+                || bookDto.getAuthor().regionMatches(true, 0, authorPrefix, 0, authorPrefix.length()));
+    }
+
+    /**
+     * Получение списка всех книг постранично, по одной строке лога на страницу
      */
     protected void printAllBooks() {
-        List<BookDto> bookDtoList = new ArrayList<>();
-        for (Map.Entry<String, BookDto> entry : books.entrySet()) {
-            bookDtoList.add(entry.getValue());
+        Page<BookDto> page = listBooks(null, PRINT_PAGE_SIZE, null, null);
+        log.info(page.getItems().toString());
+        while (page.hasNext()) {
+            page = listBooks(page.getNextCursor(), PRINT_PAGE_SIZE, null, null);
+            log.info(page.getItems().toString());
         }
-        log.info(bookDtoList.toString());
     }
 }
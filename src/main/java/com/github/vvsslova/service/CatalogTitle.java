@@ -0,0 +1,101 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Издание каталога: название, автор и жанр, общие для всех его экземпляров. Каждый экземпляр —
+ * это {@link com.github.vvsslova.dto.BookDto}, ID которого служит инвентарным номером.
+ * Экземпляры с одинаковыми без учёта регистра названием, автором и жанром относятся к одному изданию.
+ * Количество свободных экземпляров изменяется атомарно при выдаче и возврате любого из них
+ */
+@Getter
+public class CatalogTitle {
+    private static final char SEPARATOR = '\u001f';
+
+    private final String key;
+    private final String title;
+    private final String author;
+    private final BookGenre bookGenre;
+    @Getter(lombok.AccessLevel.NONE)
+    private final Set<String> copyIDs;
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicInteger availableCopies;
+
+    CatalogTitle(String key, String title, String author, BookGenre bookGenre) {
+        this.key = key;
+        this.title = title;
+        this.author = author;
+        this.bookGenre = bookGenre;
+        this.copyIDs = ConcurrentHashMap.newKeySet();
+        this.availableCopies = new AtomicInteger();
+    }
+
+    /**
+     * Ключ издания по названию, автору и жанру экземпляра
+     */
+    static String keyOf(String title, String author, BookGenre bookGenre) {
+        return normalize(title) + SEPARATOR + normalize(author) + SEPARATOR
+                + (bookGenre == null ? "" : bookGenre.name());
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * ID экземпляров издания
+     */
+    public Set<String> getCopyIDs() {
+        return Collections.unmodifiableSet(copyIDs);
+    }
+
+    public int getCopyCount() {
+        return copyIDs.size();
+    }
+
+    public int getAvailableCopies() {
+        return availableCopies.get();
+    }
+
+    /**
+     * Есть ли свободный экземпляр; проверка выполняется за O(1)
+     */
+    public boolean isAvailable() {
+        return availableCopies.get() > 0;
+    }
+
+    void addCopy(String bookID, boolean lent) {
+        copyIDs.add(bookID);
+        if (!lent) {
+            availableCopies.incrementAndGet();
+        }
+    }
+
+    void removeCopy(String bookID, boolean lent) {
+        copyIDs.remove(bookID);
+        if (!lent) {
+            availableCopies.decrementAndGet();
+        }
+    }
+
+    void lend() {
+        availableCopies.decrementAndGet();
+    }
+
+    void giveBack() {
+        availableCopies.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogTitle(title=" + title + ", author=" + author + ", bookGenre=" + bookGenre
+                + ", copies=" + getCopyCount() + ", available=" + getAvailableCopies() + ")";
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.vvsslova.service;
+
+import java.util.Arrays;
+
+/**
+ * Отображение строковых ID в плотные номера от 0 до {@link #capacity()}. Освободившиеся номера
+ * используются повторно, поэтому массивы, индексируемые номерами, не растут при смене записей.
+ * Хеш-таблица с открытой адресацией хранит только номера в массиве int, без упаковки ключей и значений.
+ * Не потокобезопасно
+ */
+final class DenseIndex {
+    static final int ABSENT = -1;
+
+    private String[] keys;
+    private int[] slots;
+    private int[] freeNumbers;
+    private int freeCount;
+    private int nextNumber;
+    private int size;
+
+    DenseIndex(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.keys = new String[capacity];
+        this.slots = new int[tableSize(capacity)];
+        Arrays.fill(slots, ABSENT);
+        this.freeNumbers = new int[16];
+    }
+
+    /**
+     * Поиск номера ID
+     *
+     * @param key ID
+     * @return номер или {@link #ABSENT}
+     */
+    int find(String key) {
+        int mask = slots.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int number = slots[slot];
+            if (number == ABSENT) {
+                return ABSENT;
+            }
+            if (keys[number].equals(key)) {
+                return number;
+            }
+        }
+    }
+
+    /**
+     * Выдача номера ID. Уже зарегистрированный ID сохраняет свой номер
+     *
+     * @param key ID
+     * @return номер
+     */
+    int register(String key) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        for (; slots[slot] != ABSENT; slot = (slot + 1) & mask) {
+            if (keys[slots[slot]].equals(key)) {
+                return slots[slot];
+            }
+        }
+        int number = freeCount > 0 ? freeNumbers[--freeCount] : nextNumber++;
+        if (number == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length + (keys.length >> 1));
+        }
+        keys[number] = key;
+        slots[slot] = number;
+        if (++size * 2 > slots.length) {
+            rehash(slots.length << 1);
+        }
+        return number;
+    }
+
+    /**
+     * Освобождение номера ID
+     *
+     * @param number номер
+     */
+    void release(int number) {
+        int mask = slots.length - 1;
+        int slot = hash(keys[number]) & mask;
+        while (slots[slot] != number) {
+            slot = (slot + 1) & mask;
+        }
+        for (int next = (slot + 1) & mask; slots[next] != ABSENT; next = (next + 1) & mask) {
+            int home = hash(keys[slots[next]]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = slots[next];
+                slot = next;
+            }
+        }
+        slots[slot] = ABSENT;
+        keys[number] = null;
+        if (freeCount == freeNumbers.length) {
+            freeNumbers = Arrays.copyOf(freeNumbers, freeCount << 1);
+        }
+        freeNumbers[freeCount++] = number;
+        size--;
+    }
+
+    /**
+     * ID по номеру
+     *
+     * @param number номер
+     * @return ID или null, если номер свободен
+     */
+    String key(int number) {
+        return keys[number];
+    }
+
+    /**
+     * Верхняя граница выданных номеров, по которой выделяются параллельные массивы
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int tableSize) {
+        int[] rehashed = new int[tableSize];
+        Arrays.fill(rehashed, ABSENT);
+        int mask = tableSize - 1;
+        for (int number : slots) {
+            if (number != ABSENT) {
+                int slot = hash(keys[number]) & mask;
+                while (rehashed[slot] != ABSENT) {
+                    slot = (slot + 1) & mask;
+                }
+                rehashed[slot] = number;
+            }
+        }
+        slots = rehashed;
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
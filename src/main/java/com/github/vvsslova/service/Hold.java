@@ -0,0 +1,20 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.HoldPriority;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Резервирование книги пользователем
+ */
+@Data
+public class Hold {
+    private final String bookID;
+    private final String userID;
+    private final HoldPriority priority;
+    /**
+     * Последний день, когда резервирование действует
+     */
+    private final LocalDate expiresOn;
+}
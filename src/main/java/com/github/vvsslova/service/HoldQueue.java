@@ -0,0 +1,164 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.HoldPriority;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Очередь резервирований одной книги: по очереди FIFO на каждый уровень {@link HoldPriority}
+ * и индекс действующих резервирований по ID пользователя. Постановка в очередь, отмена и выдача
+ * следующему пользователю выполняются за O(1): отменённые, истёкшие и недействительные резервирования
+ * удаляются, когда доходят до начала очереди, а при накоплении отменённых очередь уплотняется.
+ * Изменения выполняются под блокировкой книги, чтение начала очереди возможно и без неё
+ */
+final class HoldQueue {
+    private static final HoldPriority[] PRIORITIES = HoldPriority.values();
+    private static final int MIN_COMPACTION = 64;
+
+    private final ArrayDeque<Entry>[] tiers;
+    private final Map<String, Entry> active;
+    private int cancelled;
+
+    @SuppressWarnings("unchecked")
+    HoldQueue() {
+        this.tiers = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < tiers.length; i++) {
+            tiers[i] = new ArrayDeque<>();
+        }
+        this.active = new HashMap<>();
+    }
+
+    /**
+     * Постановка в конец очереди своего уровня
+     *
+     * @param hold резервирование
+     * @return false, если пользователь уже стоит в очереди за этой книгой
+     */
+    synchronized boolean add(Hold hold) {
+        if (active.containsKey(hold.getUserID())) {
+            return false;
+        }
+        Entry entry = new Entry(hold);
+        tiers[hold.getPriority().ordinal()].addLast(entry);
+        active.put(hold.getUserID(), entry);
+        return true;
+    }
+
+    /**
+     * Отмена резервирования пользователя
+     *
+     * @param userID ID пользователя
+     * @return отменённое резервирование или null, если его не было
+     */
+    synchronized Hold cancel(String userID) {
+        Entry entry = active.remove(userID);
+        if (entry == null) {
+            return null;
+        }
+        entry.cancelled = true;
+        if (++cancelled > MIN_COMPACTION && cancelled > active.size()) {
+            compact();
+        }
+        return entry.hold;
+    }
+
+    /**
+     * Первое действующее резервирование. Истёкшие резервирования и резервирования недействительных
+     * пользователей удаляются
+     *
+     * @param today    текущая дата
+     * @param eligible проверка, может ли пользователь получить книгу
+     * @return резервирование или null, если очередь пуста
+     */
+    synchronized Hold head(LocalDate today, Predicate<String> eligible) {
+        for (ArrayDeque<Entry> tier : tiers) {
+            Entry entry;
+            while ((entry = tier.peekFirst()) != null) {
+                if (!entry.cancelled && !entry.hold.getExpiresOn().isBefore(today)
+                        && eligible.test(entry.hold.getUserID())) {
+                    return entry.hold;
+                }
+                tier.pollFirst();
+                if (entry.cancelled) {
+                    cancelled--;
+                } else {
+                    active.remove(entry.hold.getUserID());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Удаление первого действующего резервирования
+     *
+     * @param today    текущая дата
+     * @param eligible проверка, может ли пользователь получить книгу
+     * @return удалённое резервирование или null, если очередь пуста
+     */
+    synchronized Hold poll(LocalDate today, Predicate<String> eligible) {
+        Hold hold = head(today, eligible);
+        if (hold != null) {
+            tiers[hold.getPriority().ordinal()].pollFirst();
+            active.remove(hold.getUserID());
+        }
+        return hold;
+    }
+
+    /**
+     * ID пользователей с действующими или ещё не удалёнными из очереди резервированиями
+     */
+    synchronized List<String> users() {
+        return new ArrayList<>(active.keySet());
+    }
+
+    synchronized boolean isEmpty() {
+        return active.isEmpty();
+    }
+
+    /**
+     * Действующие на указанную дату резервирования в порядке обслуживания
+     *
+     * @param today текущая дата
+     * @return резервирования
+     */
+    synchronized List<Hold> toList(LocalDate today) {
+        List<Hold> holds = new ArrayList<>(active.size());
+        for (ArrayDeque<Entry> tier : tiers) {
+            for (Entry entry : tier) {
+                if (!entry.cancelled && !entry.hold.getExpiresOn().isBefore(today)) {
+                    holds.add(entry.hold);
+                }
+            }
+        }
+        return holds;
+    }
+
+    private void compact() {
+        for (ArrayDeque<Entry> tier : tiers) {
+            Iterator<Entry> entries = tier.iterator();
+            while (entries.hasNext()) {
+                if (entries.next().cancelled) {
+                    entries.remove();
+                }
+            }
+        }
+        cancelled = 0;
+    }
+
+    private static final class Entry {
+        private final Hold hold;
+        private boolean cancelled;
+
+        private Entry(Hold hold) {
+            this.hold = hold;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.vvsslova.service;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Запись журнала выдачи книг
+ */
+@Data
+public class Journal {
+    private final String userID;
+    private final String bookTitle;
+    private final LocalDate returnDate;
+    private final String bookID;
+    private final LocalDate lendDate;
+
+    public Journal(String bookID, String userID, String bookTitle, LocalDate returnDate) {
+        this(bookID, userID, bookTitle, null, returnDate);
+    }
+
+    /**
+     * @param lendDate дата выдачи или null, если она неизвестна
+     */
+    public Journal(String bookID, String userID, String bookTitle, LocalDate lendDate, LocalDate returnDate) {
+        this.returnDate = returnDate;
+        this.userID = userID;
+        this.bookTitle = bookTitle;
+        this.bookID = bookID;
+        this.lendDate = lendDate;
+    }
+}
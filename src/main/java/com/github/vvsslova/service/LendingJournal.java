@@ -0,0 +1,713 @@
+package com.github.vvsslova.service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * Журнал выдачи книг с индексами по книге, пользователю и дате возврата.
+ * Выдачи хранятся по столбцам в массивах, индексируемых плотным номером выдачи: строковые ID книг и
+ * пользователей отображаются в номера через {@link DenseIndex}, а списки выдач пользователя и выдач
+ * одного дня связаны номерами внутри массивов. Записи {@link Journal} создаются только при чтении.
+ * Журнал разделён на сегменты по тому же хешу ID книги, что и {@link StripedLock}, и каждый сегмент
+ * защищён своей блокировкой, поэтому выдача и возврат разных книг не ждут друг друга. Изменения одной книги
+ * или одного пользователя должны выполняться под блокировкой {@link StripedLock}
+ */
+public class LendingJournal {
+    private static final int NONE = DenseIndex.ABSENT;
+    private static final int UNKNOWN_DAY = Integer.MIN_VALUE;
+    private static final int SEGMENTS = 64;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final String CURSOR_SEPARATOR = ":";
+
+    private final Segment[] segments;
+    private volatile LoanListener[] listeners;
+
+    public LendingJournal() {
+        this(new LoanListener[0]);
+    }
+
+    /**
+     * @param listeners обработчики выдачи и возврата экземпляров, вызываемые по порядку
+     */
+    public LendingJournal(LoanListener... listeners) {
+        this.listeners = listeners.clone();
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Подписка обработчика, который вызывается после переданных в конструктор
+     *
+     * @param listener обработчик выдачи и возврата экземпляров
+     */
+    synchronized void addListener(LoanListener listener) {
+        LoanListener[] extended = Arrays.copyOf(listeners, listeners.length + 1);
+        extended[listeners.length] = listener;
+        listeners = extended;
+    }
+
+    /**
+     * Отписка обработчика
+     *
+     * @param listener обработчик выдачи и возврата экземпляров
+     */
+    synchronized void removeListener(LoanListener listener) {
+        List<LoanListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+        if (remaining.remove(listener)) {
+            listeners = remaining.toArray(new LoanListener[0]);
+        }
+    }
+
+    /**
+     * Добавление записи о выдаче. Предыдущая выдача той же книги заменяется
+     *
+     * @param journal запись о выдаче
+     */
+    protected void add(Journal journal) {
+        List<LoanEvent> events = new ArrayList<>(2);
+        Segment segment = segmentOf(journal.getBookID());
+        long stamp = segment.lock.writeLock();
+        try {
+            segment.add(journal, events);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        fire(events);
+    }
+
+    /**
+     * Добавление пакета записей о выдаче под одной блокировкой каждого затронутого сегмента
+     *
+     * @param journals записи о выдаче
+     */
+    protected void addAll(Collection<Journal> journals) {
+        List<LoanEvent> events = new ArrayList<>(journals.size());
+        List<List<Journal>> bySegment = partition(journals, Journal::getBookID);
+        for (int i = 0; i < SEGMENTS; i++) {
+            List<Journal> part = bySegment.get(i);
+            if (part == null) {
+                continue;
+            }
+            Segment segment = segments[i];
+            long stamp = segment.lock.writeLock();
+            try {
+                for (Journal journal : part) {
+                    segment.add(journal, events);
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        fire(events);
+    }
+
+    /**
+     * Удаление записи о выдаче книги
+     *
+     * @param bookID ID книги
+     * @return удалённая запись или null, если книга не выдана
+     */
+    protected Journal removeByBook(String bookID) {
+        List<LoanEvent> events = new ArrayList<>(1);
+        Journal journal = null;
+        Segment segment = segmentOf(bookID);
+        long stamp = segment.lock.writeLock();
+        try {
+            int loan = segment.books.find(bookID);
+            if (loan != NONE) {
+                journal = segment.toJournal(loan);
+                segment.unlink(loan, events);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        fire(events);
+        return journal;
+    }
+
+    /**
+     * Удаление пакета записей о выдаче под одной блокировкой каждого затронутого сегмента
+     *
+     * @param bookIDs ID книг
+     */
+    protected void removeAllByBook(Collection<String> bookIDs) {
+        List<LoanEvent> events = new ArrayList<>(bookIDs.size());
+        List<List<String>> bySegment = partition(bookIDs, bookID -> bookID);
+        for (int i = 0; i < SEGMENTS; i++) {
+            List<String> part = bySegment.get(i);
+            if (part == null) {
+                continue;
+            }
+            Segment segment = segments[i];
+            long stamp = segment.lock.writeLock();
+            try {
+                for (String bookID : part) {
+                    int loan = segment.books.find(bookID);
+                    if (loan != NONE) {
+                        segment.unlink(loan, events);
+                    }
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        fire(events);
+    }
+
+    /**
+     * Изменение даты возврата
+     *
+     * @param bookID        ID книги
+     * @param newReturnDate новая дата возврата
+     * @return новая запись или null, если книга не выдана
+     */
+    protected Journal changeReturnDate(String bookID, LocalDate newReturnDate) {
+        List<LoanEvent> events = new ArrayList<>(1);
+        Journal journal = null;
+        Segment segment = segmentOf(bookID);
+        long stamp = segment.lock.writeLock();
+        try {
+            int loan = segment.books.find(bookID);
+            if (loan != NONE) {
+                segment.unlinkDay(loan);
+                segment.linkDay(loan, toDay(newReturnDate));
+                record(events, LoanEvent.RETURN_DATE_CHANGED, bookID, segment.users.key(segment.borrower[loan]),
+                        newReturnDate);
+                journal = segment.toJournal(loan);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        fire(events);
+        return journal;
+    }
+
+    /**
+     * Удаление всех записей пользователя
+     *
+     * @param userID ID пользователя
+     * @return удалённые записи
+     */
+    protected List<Journal> removeByUser(String userID) {
+        return removeAllByUser(Collections.singletonList(userID));
+    }
+
+    /**
+     * Удаление всех записей пакета пользователей под одной блокировкой каждого сегмента.
+     * Записи каждого пользователя находятся по его спискам выдач в сегментах, без просмотра всего журнала
+     *
+     * @param userIDs ID пользователей
+     * @return удалённые записи
+     */
+    protected List<Journal> removeAllByUser(Collection<String> userIDs) {
+        List<Journal> removed = new ArrayList<>();
+        List<LoanEvent> events = new ArrayList<>();
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                for (String userID : userIDs) {
+                    int user = segment.users.find(userID);
+                    while (user != NONE && segment.users.key(user) != null) {
+                        int loan = segment.firstLoanOfUser[user];
+                        removed.add(segment.toJournal(loan));
+                        segment.unlink(loan, events);
+                    }
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        fire(events);
+        return removed;
+    }
+
+    /**
+     * Поиск записи о выдаче книги
+     *
+     * @param bookID ID книги
+     * @return запись или null, если книга не выдана
+     */
+    public Journal findByBook(String bookID) {
+        Segment segment = segmentOf(bookID);
+        long stamp = segment.lock.readLock();
+        try {
+            int loan = segment.books.find(bookID);
+            return loan == NONE ? null : segment.toJournal(loan);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Получение книг, выданных пользователю. Сегменты читаются под блокировками чтения всех сегментов,
+     * поэтому в результат не попадают одновременно возвращённая и выданная после неё книги
+     *
+     * @param userID ID пользователя
+     * @return записи о выдаче
+     */
+    public Collection<Journal> findByUser(String userID) {
+        List<Journal> loans = new ArrayList<>();
+        long[] stamps = readLockAll();
+        try {
+            for (Segment segment : segments) {
+                int user = segment.users.find(userID);
+                if (user != NONE) {
+                    for (int loan = segment.firstLoanOfUser[user]; loan != NONE; loan = segment.nextOfUser[loan]) {
+                        loans.add(segment.toJournal(loan));
+                    }
+                }
+            }
+        } finally {
+            unlockReadAll(stamps);
+        }
+        return loans;
+    }
+
+    /**
+     * Проверка выдачи книги
+     *
+     * @param bookID ID книги
+     * @return true, если книга выдана
+     */
+    public boolean isBookLent(String bookID) {
+        Segment segment = segmentOf(bookID);
+        long stamp = segment.lock.readLock();
+        try {
+            return segment.books.find(bookID) != NONE;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Проверка наличия у пользователя взятых книг
+     *
+     * @param userID ID пользователя
+     * @return true, если у пользователя есть книги
+     */
+    public boolean hasLoans(String userID) {
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                if (segment.users.find(userID) != NONE) {
+                    return true;
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Получение выдач, срок возврата которых истёк до указанной даты
+     *
+     * @param date дата
+     * @return записи, упорядоченные по дате возврата
+     */
+    public List<Journal> dueBefore(LocalDate date) {
+        return dueBetween(LocalDate.MIN, date);
+    }
+
+    /**
+     * Получение выдач с датой возврата в указанном промежутке. Стоимость пропорциональна количеству
+     * найденных выдач
+     *
+     * @param from начальная дата включительно
+     * @param to   конечная дата не включительно
+     * @return записи, упорядоченные по дате возврата
+     */
+    public List<Journal> dueBetween(LocalDate from, LocalDate to) {
+        int fromDay = toDay(from);
+        int toDay = toDay(to);
+        if (fromDay >= toDay) {
+            return Collections.emptyList();
+        }
+        List<Journal> due = new ArrayList<>();
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                for (int first : segment.firstLoanOfDay.subMap(fromDay, toDay).values()) {
+                    for (int loan = first; loan != NONE; loan = segment.nextOfDay[loan]) {
+                        due.add(segment.toJournal(loan));
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        due.sort(Comparator.comparing(Journal::getReturnDate));
+        return due;
+    }
+
+    /**
+     * Количество выдач, срок возврата которых истёк до указанной даты, без построения записей
+     *
+     * @param date дата
+     * @return количество выдач
+     */
+    public int countDueBefore(LocalDate date) {
+        int count = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                for (int first : segment.firstLoanOfDay.headMap(toDay(date)).values()) {
+                    for (int loan = first; loan != NONE; loan = segment.nextOfDay[loan]) {
+                        count++;
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Страница выдач в порядке даты возврата и ID книги. Страница строится под блокировками чтения
+     * всех сегментов по дням возврата, поэтому память на её построение ограничена количеством выдач одного дня
+     *
+     * @param cursor    курсор предыдущей страницы или null для первой страницы
+     * @param limit     максимальное количество выдач на странице
+     * @param dueBefore только выдачи с датой возврата раньше указанной или null для всех выдач
+     * @return страница выдач
+     * @throws IllegalArgumentException если курсор не выдан журналом или размер страницы не положителен
+     */
+    public Page<Journal> listLoans(String cursor, int limit, LocalDate dueBefore) {
+        Page.checkLimit(limit);
+        int fromDay = Integer.MIN_VALUE;
+        String afterBookID = null;
+        if (cursor != null) {
+            int separator = cursor.indexOf(CURSOR_SEPARATOR);
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Malformed loan cursor: " + cursor);
+            }
+            try {
+                fromDay = Integer.parseInt(cursor.substring(0, separator));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed loan cursor: " + cursor, e);
+            }
+            afterBookID = cursor.substring(separator + 1);
+        }
+        int toDay = dueBefore == null ? Integer.MAX_VALUE : toDay(dueBefore);
+        if (dueBefore != null && fromDay >= toDay) {
+            return new Page<>(Collections.emptyList(), null);
+        }
+        long[] stamps = readLockAll();
+        try {
+            List<Journal> items = new ArrayList<>(Math.min(limit, 1024));
+            List<String> dayBookIDs = new ArrayList<>();
+            for (Integer day = nextDay(fromDay, true, toDay); day != null; day = nextDay(day, false, toDay)) {
+                dayBookIDs.clear();
+                for (Segment segment : segments) {
+                    Integer first = segment.firstLoanOfDay.get(day);
+                    for (int loan = first == null ? NONE : first; loan != NONE; loan = segment.nextOfDay[loan]) {
+                        dayBookIDs.add(segment.books.key(loan));
+                    }
+                }
+                Collections.sort(dayBookIDs);
+                for (String bookID : dayBookIDs) {
+                    if (day == fromDay && afterBookID != null && bookID.compareTo(afterBookID) <= 0) {
+                        continue;
+                    }
+                    if (items.size() == limit) {
+                        Journal last = items.get(limit - 1);
+                        return new Page<>(items, toDay(last.getReturnDate()) + CURSOR_SEPARATOR + last.getBookID());
+                    }
+                    Segment segment = segmentOf(bookID);
+                    items.add(segment.toJournal(segment.books.find(bookID)));
+                }
+            }
+            return new Page<>(items, null);
+        } finally {
+            unlockReadAll(stamps);
+        }
+    }
+
+    /**
+     * Получение всех активных выдач под блокировками чтения всех сегментов
+     *
+     * @return записи о выдаче
+     */
+    public Collection<Journal> findAll() {
+        List<Journal> loans = new ArrayList<>();
+        long[] stamps = readLockAll();
+        try {
+            for (Segment segment : segments) {
+                for (int loan = 0; loan < segment.books.capacity(); loan++) {
+                    if (segment.books.key(loan) != null) {
+                        loans.add(segment.toJournal(loan));
+                    }
+                }
+            }
+        } finally {
+            unlockReadAll(stamps);
+        }
+        return loans;
+    }
+
+    /**
+     * Количество активных выдач
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.books.size();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Захват блокировок чтения всех сегментов в порядке номеров для согласованного чтения всего журнала
+     *
+     * @return метки блокировок для {@link #unlockReadAll(long[])}
+     */
+    private long[] readLockAll() {
+        long[] stamps = new long[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            stamps[i] = segments[i].lock.readLock();
+        }
+        return stamps;
+    }
+
+    private void unlockReadAll(long[] stamps) {
+        for (int i = SEGMENTS - 1; i >= 0; i--) {
+            segments[i].lock.unlockRead(stamps[i]);
+        }
+    }
+
+    private Segment segmentOf(String bookID) {
+        return segments[StripedLock.spread(bookID) & (SEGMENTS - 1)];
+    }
+
+    private static <T> List<List<T>> partition(Collection<T> items, Function<T, String> bookID) {
+        List<List<T>> bySegment = new ArrayList<>(Collections.nCopies(SEGMENTS, (List<T>) null));
+        for (T item : items) {
+            int index = StripedLock.spread(bookID.apply(item)) & (SEGMENTS - 1);
+            if (bySegment.get(index) == null) {
+                bySegment.set(index, new ArrayList<>());
+            }
+            bySegment.get(index).add(item);
+        }
+        return bySegment;
+    }
+
+    /**
+     * Ближайший день возврата среди всех сегментов. Вызывается под блокировками чтения всех сегментов
+     *
+     * @param day       день, от которого ведётся поиск
+     * @param inclusive включать ли сам день
+     * @param toDay     граница поиска не включительно
+     * @return день или null, если выдач до границы нет
+     */
+    private Integer nextDay(int day, boolean inclusive, int toDay) {
+        Integer next = null;
+        for (Segment segment : segments) {
+            Integer candidate = inclusive ? segment.firstLoanOfDay.ceilingKey(day)
+                    : segment.firstLoanOfDay.higherKey(day);
+            if (candidate != null && candidate < toDay && (next == null || candidate < next)) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    private void record(List<LoanEvent> events, int kind, String bookID, String userID, LocalDate returnDate) {
+        if (listeners.length > 0) {
+            events.add(new LoanEvent(kind, bookID, userID, returnDate));
+        }
+    }
+
+    /**
+     * Передача собранных событий обработчикам после снятия блокировки журнала. Вызывающий держит
+     * блокировку затронутых книг, поэтому события одной книги приходят обработчикам по порядку
+     *
+     * @param events события в порядке изменений
+     */
+    private void fire(List<LoanEvent> events) {
+        for (LoanEvent event : events) {
+            for (LoanListener listener : listeners) {
+                switch (event.kind) {
+                    case LoanEvent.LENT:
+                        listener.onLent(event.bookID, event.userID, event.returnDate);
+                        break;
+                    case LoanEvent.RETURNED:
+                        listener.onReturned(event.bookID, event.userID);
+                        break;
+                    default:
+                        listener.onReturnDateChanged(event.bookID, event.userID, event.returnDate);
+                }
+            }
+        }
+    }
+
+    private static int toDay(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    /**
+     * Сегмент журнала: выдачи книг, хеш которых попадает в сегмент, списки их выдач по пользователям
+     * и по дням возврата. Все поля читаются и изменяются под блокировкой сегмента
+     */
+    private final class Segment {
+        private final StampedLock lock;
+        private final DenseIndex books;
+        private final DenseIndex users;
+        private final NavigableMap<Integer, Integer> firstLoanOfDay;
+
+        private int[] borrower;
+        private int[] returnDay;
+        private int[] lendDay;
+        private String[] bookTitle;
+        private int[] nextOfUser;
+        private int[] previousOfUser;
+        private int[] nextOfDay;
+        private int[] previousOfDay;
+
+        private int[] firstLoanOfUser;
+        private int[] loansOfUser;
+
+        private Segment() {
+            this.lock = new StampedLock();
+            this.books = new DenseIndex(INITIAL_CAPACITY);
+            this.users = new DenseIndex(INITIAL_CAPACITY);
+            this.firstLoanOfDay = new TreeMap<>();
+            this.borrower = new int[books.capacity()];
+            this.returnDay = new int[books.capacity()];
+            this.lendDay = new int[books.capacity()];
+            this.bookTitle = new String[books.capacity()];
+            this.nextOfUser = new int[books.capacity()];
+            this.previousOfUser = new int[books.capacity()];
+            this.nextOfDay = new int[books.capacity()];
+            this.previousOfDay = new int[books.capacity()];
+            this.firstLoanOfUser = new int[users.capacity()];
+            this.loansOfUser = new int[users.capacity()];
+        }
+
+        private void add(Journal journal, List<LoanEvent> events) {
+            int loan = books.find(journal.getBookID());
+            if (loan != NONE) {
+                unlink(loan, events);
+            }
+            loan = books.register(journal.getBookID());
+            if (loan >= borrower.length) {
+                growLoans(books.capacity());
+            }
+            int user = users.find(journal.getUserID());
+            if (user == NONE) {
+                user = users.register(journal.getUserID());
+                if (user >= loansOfUser.length) {
+                    growUsers(users.capacity());
+                }
+                firstLoanOfUser[user] = NONE;
+                loansOfUser[user] = 0;
+            }
+            borrower[loan] = user;
+            bookTitle[loan] = journal.getBookTitle();
+            lendDay[loan] = journal.getLendDate() == null ? UNKNOWN_DAY : toDay(journal.getLendDate());
+            previousOfUser[loan] = NONE;
+            nextOfUser[loan] = firstLoanOfUser[user];
+            if (firstLoanOfUser[user] != NONE) {
+                previousOfUser[firstLoanOfUser[user]] = loan;
+            }
+            firstLoanOfUser[user] = loan;
+            loansOfUser[user]++;
+            linkDay(loan, toDay(journal.getReturnDate()));
+            record(events, LoanEvent.LENT, journal.getBookID(), journal.getUserID(), journal.getReturnDate());
+        }
+
+        private Journal toJournal(int loan) {
+            return new Journal(books.key(loan), users.key(borrower[loan]), bookTitle[loan],
+                    lendDay[loan] == UNKNOWN_DAY ? null : LocalDate.ofEpochDay(lendDay[loan]),
+                    LocalDate.ofEpochDay(returnDay[loan]));
+        }
+
+        private void unlink(int loan, List<LoanEvent> events) {
+            int user = borrower[loan];
+            String userID = users.key(user);
+            if (previousOfUser[loan] == NONE) {
+                firstLoanOfUser[user] = nextOfUser[loan];
+            } else {
+                nextOfUser[previousOfUser[loan]] = nextOfUser[loan];
+            }
+            if (nextOfUser[loan] != NONE) {
+                previousOfUser[nextOfUser[loan]] = previousOfUser[loan];
+            }
+            if (--loansOfUser[user] == 0) {
+                users.release(user);
+            }
+            unlinkDay(loan);
+            bookTitle[loan] = null;
+            String bookID = books.key(loan);
+            books.release(loan);
+            record(events, LoanEvent.RETURNED, bookID, userID, null);
+        }
+
+        private void linkDay(int loan, int day) {
+            returnDay[loan] = day;
+            Integer first = firstLoanOfDay.put(day, loan);
+            previousOfDay[loan] = NONE;
+            nextOfDay[loan] = first == null ? NONE : first;
+            if (first != null) {
+                previousOfDay[first] = loan;
+            }
+        }
+
+        private void unlinkDay(int loan) {
+            int next = nextOfDay[loan];
+            if (previousOfDay[loan] != NONE) {
+                nextOfDay[previousOfDay[loan]] = next;
+            } else if (next == NONE) {
+                firstLoanOfDay.remove(returnDay[loan]);
+            } else {
+                firstLoanOfDay.put(returnDay[loan], next);
+            }
+            if (next != NONE) {
+                previousOfDay[next] = previousOfDay[loan];
+            }
+        }
+
+        private void growLoans(int capacity) {
+            borrower = Arrays.copyOf(borrower, capacity);
+            returnDay = Arrays.copyOf(returnDay, capacity);
+            lendDay = Arrays.copyOf(lendDay, capacity);
+            bookTitle = Arrays.copyOf(bookTitle, capacity);
+            nextOfUser = Arrays.copyOf(nextOfUser, capacity);
+            previousOfUser = Arrays.copyOf(previousOfUser, capacity);
+            nextOfDay = Arrays.copyOf(nextOfDay, capacity);
+            previousOfDay = Arrays.copyOf(previousOfDay, capacity);
+        }
+
+        private void growUsers(int capacity) {
+            firstLoanOfUser = Arrays.copyOf(firstLoanOfUser, capacity);
+            loansOfUser = Arrays.copyOf(loansOfUser, capacity);
+        }
+    }
+
+    private static final class LoanEvent {
+        private static final int LENT = 0;
+        private static final int RETURNED = 1;
+        private static final int RETURN_DATE_CHANGED = 2;
+
+        private final int kind;
+        private final String bookID;
+        private final String userID;
+        private final LocalDate returnDate;
+
+        private LoanEvent(int kind, String bookID, String userID, LocalDate returnDate) {
+            this.kind = kind;
+            this.bookID = bookID;
+            this.userID = userID;
+            this.returnDate = returnDate;
+        }
+    }
+}
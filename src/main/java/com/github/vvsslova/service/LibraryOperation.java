@@ -0,0 +1,20 @@
+package com.github.vvsslova.service;
+
+import java.util.Locale;
+
+/**
+ * Операции {@link LibraryService}, длительность которых учитывается в метриках
+ */
+public enum LibraryOperation {
+    ADD_BOOK, ADD_BOOKS, REMOVE_BOOK, CHANGE_BOOK, FIND_BOOKS, SUGGEST_TITLES,
+    ADD_USER, ADD_USERS, REMOVE_USER, DEACTIVATE_USERS, CHANGE_USER,
+    LEND_BOOK, LEND_BOOKS, ADD_LOANS, RETURN_BOOK, RETURN_BOOKS, EXTEND_LOAN, RENEW_LOAN,
+    PLACE_HOLD, CANCEL_HOLD, SNAPSHOT;
+
+    /**
+     * Значение метки operation в метриках
+     */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,32 +1,388 @@
 package com.github.vvsslova.service;
 
+import com.github.vvsslova.analytics.LoanHistory;
+import com.github.vvsslova.audit.AuditEventType;
+import com.github.vvsslova.audit.AuditLog;
+import com.github.vvsslova.audit.Slf4jAuditSink;
+import com.github.vvsslova.cache.CacheSettings;
+import com.github.vvsslova.cache.LookupCache;
 import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.constant.HoldPriority;
 import com.github.vvsslova.dto.BookDto;
 import com.github.vvsslova.dto.UserDto;
-import com.github.vvsslova.exception.BookAlreadyLendException;
-import com.github.vvsslova.exception.UserLendBookException;
+import com.github.vvsslova.metrics.LatencyHistogram;
+import com.github.vvsslova.metrics.MetricsRegistry;
+import com.github.vvsslova.feed.ChangeFeed;
+import com.github.vvsslova.policy.LoanPolicy;
+import com.github.vvsslova.policy.LoanPolicyEngine;
+import com.github.vvsslova.snapshot.LibrarySnapshot;
+import com.github.vvsslova.snapshot.SnapshotManager;
+import com.github.vvsslova.storage.InMemoryStorageEngine;
+import com.github.vvsslova.storage.Mutation;
+import com.github.vvsslova.storage.MutationType;
+import com.github.vvsslova.storage.StorageEngine;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
- * Проектирование библиотечной системы
+ * Проектирование библиотечной системы.
+ * Операции с разными книгами и пользователями выполняются параллельно под блокировками {@link StripedLock},
+ * каждое изменение записывается в {@link StorageEngine} и публикуется для снимков {@link SnapshotManager}
+ * под теми же блокировками, а событие о нём передаётся в асинхронный {@link AuditLog}.
+ * Книги и пользователи при выдаче читаются через {@link LookupCache}, записи которого сбрасываются
+ * при каждом изменении книги или пользователя. Длительность операций и размеры каталога и журнала выдач
+ * доступны в {@link MetricsRegistry}. Просроченные выдачи оповещаются {@link OverdueScheduler}, который
+ * создаётся и закрывается вместе с библиотекой и запускается после подписки обработчиков
  */
 @Data
 @Slf4j
-public class LibraryService {
+public class LibraryService implements Closeable {
+    private static final int LOCK_STRIPES = 1024;
+    private static final int STREAM_PAGE_SIZE = 1_000;
+    public static final int LENDING_PERIOD_DAYS = 14;
+    public static final int HOLD_EXPIRY_DAYS = 30;
+    public static final int DEACTIVATION_BATCH = 256;
+
     private final String name;
     private final UserService userService;
     private final BookService bookService;
-    private final List<Journal> lendingJournal;
+    private final LendingJournal lendingJournal;
+    private final OverdueScheduler overdueScheduler;
+    private final LoanPolicyEngine loanPolicy;
+    private final StripedLock locks;
+    private final StorageEngine storage;
+    private final AuditLog auditLog;
+    private final SnapshotManager snapshots;
+    private final ChangeFeed changeFeed;
+    private final LoanHistory loanHistory;
+    private final Map<String, HoldQueue> holds;
+    private final Map<String, Set<String>> holdsByUser;
+    private final LookupCache<String, BookDto> bookCache;
+    private final LookupCache<String, UserDto> userCache;
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram[] latencies;
 
     public LibraryService(String name) {
+        this(name, new AuditLog(new Slf4jAuditSink()));
+    }
+
+    public LibraryService(String name, AuditLog auditLog) {
+        this(name, new InMemoryStorageEngine(), auditLog, CacheSettings.defaults(), new BookService());
+    }
+
+    public LibraryService(String name, AuditLog auditLog, CacheSettings cacheSettings) {
+        this(name, new InMemoryStorageEngine(), auditLog, cacheSettings, new BookService());
+    }
+
+    private LibraryService(String name, StorageEngine storage, AuditLog auditLog, CacheSettings cacheSettings,
+                           BookService bookService) {
         this.name = name;
         this.userService = new UserService();
-        this.bookService = new BookService();
-        this.lendingJournal = new LinkedList<>();
+        this.bookService = bookService;
+        this.loanPolicy = new LoanPolicyEngine(bookID -> {
+            CatalogTitle catalogTitle = bookService.getTitle(bookID);
+            return catalogTitle == null ? null : catalogTitle.getBookGenre();
+        });
+        this.lendingJournal = new LendingJournal(bookService, loanPolicy);
+        this.overdueScheduler = new OverdueScheduler(lendingJournal);
+        this.locks = new StripedLock(LOCK_STRIPES);
+        this.storage = storage;
+        this.auditLog = auditLog;
+        this.snapshots = new SnapshotManager();
+        this.changeFeed = new ChangeFeed();
+        this.loanHistory = new LoanHistory();
+        this.holds = new ConcurrentHashMap<>();
+        this.holdsByUser = new ConcurrentHashMap<>();
+        this.bookCache = new LookupCache<>(cacheSettings);
+        this.userCache = new LookupCache<>(cacheSettings);
+        this.metrics = new MetricsRegistry();
+        this.latencies = new LatencyHistogram[LibraryOperation.values().length];
+        registerMetrics();
+    }
+
+    /**
+     * Регистрация гистограмм длительности операций и показателей, которые вычисляются при выгрузке метрик
+     */
+    private void registerMetrics() {
+        for (LibraryOperation operation : LibraryOperation.values()) {
+            latencies[operation.ordinal()] = metrics.histogram("library_operation_duration_seconds",
+                    "Длительность операций библиотеки", "operation", operation.label());
+        }
+        metrics.gauge("library_books", "Количество книг в каталоге", () -> bookService.getBooks().size());
+        metrics.gauge("library_users", "Количество пользователей", () -> userService.getUsers().size());
+        metrics.gauge("library_active_loans", "Количество активных выдач", lendingJournal::size);
+        metrics.gauge("library_overdue_loans", "Количество просроченных выдач",
+                () -> lendingJournal.countDueBefore(LocalDate.now()));
+        metrics.gauge("library_loan_history_rows", "Количество завершённых выдач в истории", loanHistory::size);
+        registerCacheMetrics("book", bookCache);
+        registerCacheMetrics("user", userCache);
+    }
+
+    private void registerCacheMetrics(String cache, LookupCache<String, ?> lookupCache) {
+        metrics.counter("library_cache_hits_total", "Обращения к кэшу без чтения хранилища",
+                () -> lookupCache.getStats().getHits(), "cache", cache);
+        metrics.counter("library_cache_misses_total", "Обращения к кэшу с чтением хранилища",
+                () -> lookupCache.getStats().getMisses(), "cache", cache);
+        metrics.counter("library_cache_evictions_total", "Вытесненные записи кэша",
+                () -> lookupCache.getStats().getEvictions(), "cache", cache);
+        metrics.gauge("library_cache_size", "Количество записей в кэше", () -> lookupCache.getStats().getSize(),
+                "cache", cache);
+    }
+
+    /**
+     * Гистограмма длительности операции
+     *
+     * @param operation операция
+     * @return гистограмма
+     */
+    public LatencyHistogram getLatency(LibraryOperation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    private void recordLatency(LibraryOperation operation, long start) {
+        latencies[operation.ordinal()].recordSince(start);
+    }
+
+    /**
+     * Открытие библиотеки с восстановлением состояния из хранилища
+     *
+     * @param name    название библиотеки
+     * @param storage хранилище изменений
+     * @return библиотека с восстановленным состоянием
+     */
+    public static LibraryService open(String name, StorageEngine storage) throws IOException {
+        return open(name, storage, new AuditLog(new Slf4jAuditSink()));
+    }
+
+    /**
+     * Открытие библиотеки с восстановлением состояния из хранилища и указанным журналом аудита
+     *
+     * @param name     название библиотеки
+     * @param storage  хранилище изменений
+     * @param auditLog журнал аудита
+     * @return библиотека с восстановленным состоянием
+     */
+    public static LibraryService open(String name, StorageEngine storage, AuditLog auditLog) throws IOException {
+        return open(name, storage, auditLog, CacheSettings.defaults());
+    }
+
+    /**
+     * Открытие библиотеки с восстановлением состояния из хранилища, указанным журналом аудита и настройками кэша
+     *
+     * @param name          название библиотеки
+     * @param storage       хранилище изменений
+     * @param auditLog      журнал аудита
+     * @param cacheSettings настройки кэша книг и пользователей
+     * @return библиотека с восстановленным состоянием
+     */
+    public static LibraryService open(String name, StorageEngine storage, AuditLog auditLog,
+                                      CacheSettings cacheSettings) throws IOException {
+        return open(name, storage, auditLog, cacheSettings, new BookService());
+    }
+
+    /**
+     * Открытие библиотеки с каталогом книг во внешнем хранилище записей, например {@link com.github.vvsslova.storage.MappedBookStore}.
+     * Книги, уже лежащие в хранилище записей, попадают в каталог без чтения журнала изменений,
+     * а снимки журнала изменений не содержат книг хранилища, если оно {@link Flushable}.
+     * Индексы изданий, поиска и порядка обхода остаются в куче и строятся при открытии обходом всех записей,
+     * поэтому время открытия и занятая кучей память пропорциональны размеру каталога.
+     * Хранилище записей закрывается вместе с библиотекой
+     *
+     * @param name          название библиотеки
+     * @param storage       хранилище изменений
+     * @param auditLog      журнал аудита
+     * @param cacheSettings настройки кэша книг и пользователей
+     * @param bookStore     хранилище записей книг по ID
+     * @return библиотека с восстановленным состоянием
+     */
+    public static LibraryService open(String name, StorageEngine storage, AuditLog auditLog,
+                                      CacheSettings cacheSettings, Map<String, BookDto> bookStore) throws IOException {
+        return open(name, storage, auditLog, cacheSettings, new BookService(bookStore));
+    }
+
+    private static LibraryService open(String name, StorageEngine storage, AuditLog auditLog,
+                                       CacheSettings cacheSettings, BookService bookService) throws IOException {
+        LibraryService libraryService = new LibraryService(name, storage, auditLog, cacheSettings, bookService);
+        libraryService.recover();
+        storage.attachSnapshotSource(libraryService::captureState);
+        return libraryService;
+    }
+
+    /**
+     * Восстановление состояния из хранилища. Строки истории из снимка записаны без номеров и восстанавливаются все,
+     * а строки из журнала изменений с номерами меньше количества строк снимка уже вошли в снимок и пропускаются
+     */
+    private void recover() throws IOException {
+        long[] snapshotHistoryRows = {0};
+        storage.recover(mutation -> {
+            if (mutation.getType() != MutationType.LOAN_CLOSED) {
+                replay(mutation);
+                return;
+            }
+            if (mutation.getHistoryRow() == Mutation.NO_HISTORY_ROW) {
+                snapshotHistoryRows[0]++;
+            } else if (mutation.getHistoryRow() < snapshotHistoryRows[0]) {
+                return;
+            }
+            loanHistory.record(mutation.getBookID(), mutation.getUserID(), mutation.getAuthor(),
+                    mutation.getBookGenre(), mutation.getLendDate(), mutation.getReturnDate(), mutation.getClosedDate());
+        });
+    }
+
+    /**
+     * Остановка проверки просроченных выдач, закрытие хранилища, журнала аудита и хранилища записей книг с записью всех накопленных изменений и событий
+     */
+    @Override
+    public void close() throws IOException {
+        overdueScheduler.close();
+        snapshots.close();
+        changeFeed.close();
+        try {
+            storage.close();
+        } finally {
+            try {
+                auditLog.close();
+            } finally {
+                if (bookService.getBooks() instanceof Closeable) {
+                    ((Closeable) bookService.getBooks()).close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Согласованный снимок состояния для отчётов, включающий все завершённые к моменту вызова изменения.
+     * Первый вызов выгружает текущее состояние, после чего снимки ведутся по опубликованным изменениям
+     * и не требуют копирования или блокировок
+     *
+     * @return снимок состояния
+     */
+    public LibrarySnapshot snapshot() {
+        long start = System.nanoTime();
+        if (!snapshots.isStarted()) {
+            snapshots.start(this::captureLockedState);
+        }
+        LibrarySnapshot snapshot = snapshots.snapshot();
+        recordLatency(LibraryOperation.SNAPSHOT, start);
+        return snapshot;
+    }
+
+    /**
+     * Запись изменения в хранилище и публикация его для снимков и ленты изменений под блокировками операции
+     *
+     * @param mutation изменение
+     */
+    private void persist(Mutation mutation) {
+        invalidateCached(mutation);
+        storage.append(mutation);
+        List<Mutation> mutations = Collections.singletonList(mutation);
+        snapshots.publish(mutations);
+        changeFeed.publish(mutations);
+    }
+
+    /**
+     * Запись изменений одной операции в хранилище одной записью и публикация их для снимков и ленты изменений.
+     * Строки истории завершённых выдач нужны только для восстановления и не публикуются
+     *
+     * @param mutations изменения
+     */
+    private void persistAll(List<Mutation> mutations) {
+        List<Mutation> published = new ArrayList<>(mutations.size());
+        for (Mutation mutation : mutations) {
+            invalidateCached(mutation);
+            if (mutation.getType() != MutationType.LOAN_CLOSED) {
+                published.add(mutation);
+            }
+        }
+        storage.appendAll(mutations);
+        snapshots.publish(published);
+        changeFeed.publish(published);
+    }
+
+    /**
+     * Сброс кэшированной книги или пользователя, которых затрагивает изменение. Выдачи и возвраты
+     * каталог не меняют и кэш не сбрасывают
+     *
+     * @param mutation изменение
+     */
+    private void invalidateCached(Mutation mutation) {
+        switch (mutation.getType()) {
+            case ADD_BOOK:
+            case REMOVE_BOOK:
+            case CHANGE_BOOK_AUTHOR:
+            case CHANGE_BOOK_TITLE:
+            case CHANGE_BOOK_GENRE:
+                bookCache.invalidate(mutation.getBookID());
+                break;
+            case ADD_USER:
+            case REMOVE_USER:
+            case CHANGE_USER_PHONE:
+            case CHANGE_USER_NAME:
+            case CHANGE_USER_SURNAME:
+                userCache.invalidate(mutation.getUserID());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Книга из кэша или каталога. Вызывается под блокировкой книги
+     *
+     * @param bookID ID книги
+     * @return книга или null, если её нет
+     */
+    private BookDto findBook(String bookID) {
+        return bookCache.get(bookID, bookService.getBooks()::get);
+    }
+
+    /**
+     * Пользователь из кэша или списка пользователей. Вызывается под блокировкой пользователя
+     *
+     * @param userID ID пользователя
+     * @return пользователь или null, если его нет
+     */
+    private UserDto findUser(String userID) {
+        return userCache.get(userID, userService.getUsers()::get);
+    }
+
+    /**
+     * Книга по ID
+     *
+     * @param bookID ID книги
+     * @return книга или null, если её нет
+     */
+    public BookDto getBook(String bookID) {
+        return bookService.getBooks().get(bookID);
+    }
+
+    /**
+     * Пользователь по ID
+     *
+     * @param userID ID пользователя
+     * @return пользователь или null, если его нет
+     */
+    public UserDto getUser(String userID) {
+        return userService.getUsers().get(userID);
     }
 
     /**
@@ -35,29 +391,76 @@ public class LibraryService {
      * @param bookDto добавляемая книга
      */
     public void addBook(BookDto bookDto) {
-        bookService.addBook(bookDto);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookDto.getID());
+        try {
+            if (bookService.addBook(bookDto)) {
+                persist(Mutation.addBook(bookDto));
+                auditLog.record(AuditEventType.BOOK_ADDED, bookDto.getID(), null, bookDto.getTitle(), 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.ADD_BOOK, start);
+        }
+    }
+
+    /**
+     * Пакетное добавление книг без записи в лог по каждой книге
+     *
+     * @param bookDtos добавляемые книги
+     * @return книги, не добавленные из-за уже существующего ID
+     */
+    public List<BookDto> addBooks(Collection<BookDto> bookDtos) {
+        long start = System.nanoTime();
+        List<BookDto> rejected = new ArrayList<>();
+        for (BookDto bookDto : bookDtos) {
+            int[] acquired = locks.lock(bookDto.getID());
+            try {
+                if (bookService.restoreBook(bookDto)) {
+                    persist(Mutation.addBook(bookDto));
+                } else {
+                    rejected.add(bookDto);
+                }
+            } finally {
+                locks.unlock(acquired);
+            }
+        }
+        log.info("Пакетно добавлено книг: {}, отклонено: {}", bookDtos.size() - rejected.size(), rejected.size());
+        recordLatency(LibraryOperation.ADD_BOOKS, start);
+        return rejected;
     }
 
     /**
-     * Удаление книги
+     * Удаление книги вместе с её выдачей и очередью резервирований. Выдача находится по индексу журнала,
+     * очередь — по ID книги, поэтому удаление не просматривает журнал целиком
      *
      * @param bookID ID удаляемой книги
+     * @return true, если книга была и удалена
      */
-    public void removeBook(String bookID) {
+    public boolean removeBook(String bookID) {
+        long start = System.nanoTime();
+        int[] acquired = lockBookWithBorrower(bookID);
         try {
-            checkBookLending(bookID);
-            bookService.removeBook(bookID);
-        } catch (BookAlreadyLendException e) {
-            log.info("Эта книга выдана пользователям!");
-            Iterator<Journal> journalIterator = lendingJournal.iterator();
-            while (journalIterator.hasNext()) {
-                Journal journal = journalIterator.next();
-                if (journal.bookID.equals(bookID)) {
-                    journalIterator.remove();
-                    log.info("Книга {} по техническим причинам возвращена библиотекой!", journal.getBookTitle());
-                }
+            Journal journal = lendingJournal.removeByBook(bookID);
+            List<Mutation> mutations = new ArrayList<>(2);
+            if (journal != null) {
+                auditLog.record(AuditEventType.BOOK_RETURNED_BY_LIBRARY, bookID, journal.getUserID(),
+                        journal.getBookTitle(), 0);
+                recordClosedLoan(journal, LocalDate.now(), mutations);
+            }
+            dropHolds(bookID);
+            boolean removed = bookService.takeBook(bookID) != null;
+            if (!removed && journal == null) {
+                log.error("Книга {} не найдена", bookID);
+                return false;
             }
-            bookService.removeBook(bookID);
+            mutations.add(Mutation.removeBook(bookID));
+            persistAll(mutations);
+            auditLog.record(AuditEventType.BOOK_REMOVED, bookID, null, null, 0);
+            return removed;
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.REMOVE_BOOK, start);
         }
     }
 
@@ -68,7 +471,17 @@ public class LibraryService {
      * @param newAuthor новый автор
      */
     public void changeBookAuthor(String bookID, String newAuthor) {
-        bookService.changeBookAuthor(bookID, newAuthor);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID);
+        try {
+            if (bookService.changeBookAuthor(bookID, newAuthor)) {
+                persist(Mutation.changeBookAuthor(bookID, newAuthor));
+                auditLog.record(AuditEventType.BOOK_AUTHOR_CHANGED, bookID, null, newAuthor, 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CHANGE_BOOK, start);
+        }
     }
 
     /**
@@ -78,7 +491,17 @@ public class LibraryService {
      * @param newTitle новое название
      */
     public void changeBookTitle(String bookID, String newTitle) {
-        bookService.changeBookTitle(bookID, newTitle);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID);
+        try {
+            if (bookService.changeBookTitle(bookID, newTitle)) {
+                persist(Mutation.changeBookTitle(bookID, newTitle));
+                auditLog.record(AuditEventType.BOOK_TITLE_CHANGED, bookID, null, newTitle, 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CHANGE_BOOK, start);
+        }
     }
 
     /**
@@ -88,7 +511,17 @@ public class LibraryService {
      * @param newBookGenre новый жанр
      */
     public void changeBookGenre(String bookID, BookGenre newBookGenre) {
-        bookService.changeBookGenre(bookID, newBookGenre);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID);
+        try {
+            if (bookService.changeBookGenre(bookID, newBookGenre)) {
+                persist(Mutation.changeBookGenre(bookID, newBookGenre));
+                auditLog.record(AuditEventType.BOOK_GENRE_CHANGED, bookID, null, newBookGenre.name(), 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CHANGE_BOOK, start);
+        }
     }
 
     /**
@@ -101,6 +534,89 @@ public class LibraryService {
         log.info(bookService.searchBooks(title, author).toString());
     }
 
+    /**
+     * Поиск книг по словам и началам слов названия и автора, а также по жанру
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные книги, наиболее релевантные первыми
+     */
+    public List<BookDto> findBooks(String titleQuery, String authorQuery, BookGenre bookGenre, int limit) {
+        long start = System.nanoTime();
+        List<BookDto> found = bookService.findBooks(titleQuery, authorQuery, bookGenre, limit);
+        recordLatency(LibraryOperation.FIND_BOOKS, start);
+        return found;
+    }
+
+    /**
+     * Поиск книг с опечатками в словах названия и автора
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные книги, точные совпадения первыми
+     */
+    public List<BookDto> findSimilarBooks(String titleQuery, String authorQuery, BookGenre bookGenre, int limit) {
+        long start = System.nanoTime();
+        List<BookDto> found = bookService.findSimilarBooks(titleQuery, authorQuery, bookGenre, limit);
+        recordLatency(LibraryOperation.FIND_BOOKS, start);
+        return found;
+    }
+
+    /**
+     * Автодополнение названия по началу
+     *
+     * @param prefix начало названия
+     * @param limit  максимальное количество подсказок
+     * @return издания, названия которых начинаются с указанных слов
+     */
+    public List<CatalogTitle> suggestTitles(String prefix, int limit) {
+        long start = System.nanoTime();
+        List<CatalogTitle> suggestions = bookService.suggestTitles(prefix, limit);
+        recordLatency(LibraryOperation.SUGGEST_TITLES, start);
+        return suggestions;
+    }
+
+    /**
+     * Поиск изданий по словам и началам слов названия и автора, а также по жанру
+     *
+     * @param titleQuery  слова названия или null
+     * @param authorQuery слова автора или null
+     * @param bookGenre   жанр или null
+     * @param limit       максимальное количество результатов
+     * @return найденные издания с количеством свободных экземпляров, наиболее релевантные первыми
+     */
+    public List<CatalogTitle> findTitles(String titleQuery, String authorQuery, BookGenre bookGenre, int limit) {
+        long start = System.nanoTime();
+        List<CatalogTitle> found = bookService.findTitles(titleQuery, authorQuery, bookGenre, limit);
+        recordLatency(LibraryOperation.FIND_BOOKS, start);
+        return found;
+    }
+
+    /**
+     * Издание, к которому относится экземпляр
+     *
+     * @param bookID ID экземпляра
+     * @return издание или null, если экземпляр не найден
+     */
+    public CatalogTitle getTitle(String bookID) {
+        return bookService.getTitle(bookID);
+    }
+
+    /**
+     * Есть ли свободный экземпляр того же издания, что и указанный
+     *
+     * @param bookID ID любого экземпляра издания
+     * @return true, если хотя бы один экземпляр не выдан
+     */
+    public boolean isAnyCopyAvailable(String bookID) {
+        CatalogTitle catalogTitle = bookService.getTitle(bookID);
+        return catalogTitle != null && catalogTitle.isAvailable();
+    }
+
     /**
      * Получение списка всех книг
      */
@@ -108,78 +624,373 @@ public class LibraryService {
         bookService.printAllBooks();
     }
 
+    /**
+     * Страница книг в порядке ID
+     *
+     * @param cursor       курсор предыдущей страницы или null для первой страницы
+     * @param limit        максимальное количество книг на странице
+     * @param bookGenre    жанр или null
+     * @param authorPrefix начало имени автора без учёта регистра или null
+     * @return страница книг
+     * @throws IllegalArgumentException если размер страницы не положителен
+     */
+    public Page<BookDto> listBooks(String cursor, int limit, BookGenre bookGenre, String authorPrefix) {
+        return bookService.listBooks(cursor, limit, bookGenre, authorPrefix);
+    }
+
+    /**
+     * Ленивый поток книг в порядке ID
+     *
+     * @param bookGenre    жанр или null
+     * @param authorPrefix начало имени автора без учёта регистра или null
+     * @return поток книг
+     */
+    public Stream<BookDto> streamBooks(BookGenre bookGenre, String authorPrefix) {
+        return bookService.streamBooks(bookGenre, authorPrefix);
+    }
+
     /**
      * Добавление пользователя
      *
      * @param userDto добавляемый пользователь
      */
     public void addUser(UserDto userDto) {
-        userService.addUser(userDto);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(userDto.getID());
+        try {
+            if (userService.addUser(userDto)) {
+                persist(Mutation.addUser(userDto));
+                auditLog.record(AuditEventType.USER_ADDED, null, userDto.getID(), userDto.getName(), 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.ADD_USER, start);
+        }
+    }
+
+    /**
+     * Пакетное добавление пользователей без записи в лог по каждому пользователю
+     *
+     * @param userDtos добавляемые пользователи
+     * @return пользователи, не добавленные из-за уже существующего ID
+     */
+    public List<UserDto> addUsers(Collection<UserDto> userDtos) {
+        long start = System.nanoTime();
+        List<UserDto> rejected = new ArrayList<>();
+        for (UserDto userDto : userDtos) {
+            int[] acquired = locks.lock(userDto.getID());
+            try {
+                if (userService.restoreUser(userDto)) {
+                    persist(Mutation.addUser(userDto));
+                } else {
+                    rejected.add(userDto);
+                }
+            } finally {
+                locks.unlock(acquired);
+            }
+        }
+        log.info("Пакетно добавлено пользователей: {}, отклонено: {}", userDtos.size() - rejected.size(), rejected.size());
+        recordLatency(LibraryOperation.ADD_USERS, start);
+        return rejected;
     }
 
     /**
-     * Удаление пользователя
+     * Удаление пользователя вместе с его выдачами и резервированиями. Выданные книги возвращаются в фонд
+     * и передаются следующим в очереди, история выдач пользователя обезличивается
      *
      * @param userID ID удаляемого пользователя
+     * @return true, если пользователь был и удалён
      */
-    public void removeUser(String userID) {
+    public boolean removeUser(String userID) {
+        long start = System.nanoTime();
+        List<String> userIDs = Collections.singletonList(userID);
+        List<String> freed = new ArrayList<>();
+        boolean removed;
+        int[] acquired = lockUsersWithBooks(userIDs);
         try {
-            checkUserBookLending(userID);
-            userService.removeUser(userID);
-        } catch (UserLendBookException e) {
-            log.error("Этот пользователь взял книги!", e);
-            Iterator<Journal> journalIterator = lendingJournal.iterator();
-            while (journalIterator.hasNext()) {
-                Journal journal = journalIterator.next();
-                if (journal.userID.equals(userID)) {
-                    journalIterator.remove();
-                    log.info("Книга пользователя по техническим причинам возвращена библиотекой!");
+            removed = removeUsersCascade(userIDs, freed).isEmpty();
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.REMOVE_USER, start);
+        }
+        for (String bookID : freed) {
+            handOff(bookID);
+        }
+        if (!removed) {
+            log.error("Пользователь {} не найден", userID);
+        }
+        return removed;
+    }
+
+    /**
+     * Массовое удаление пользователей, например ежегодное удаление выпустившихся студентов.
+     * Пользователи удаляются пакетами по {@link #DEACTIVATION_BATCH}: на пакет приходится один захват
+     * блокировок, одна блокировка журнала и одна запись в хранилище. Освободившиеся книги передаются
+     * по очередям резервирований после снятия блокировок пакета
+     *
+     * @param userIDs ID удаляемых пользователей
+     * @return ID, которых не было среди пользователей
+     */
+    public List<String> deactivateUsers(Collection<String> userIDs) {
+        long start = System.nanoTime();
+        List<String> missing = new ArrayList<>();
+        List<String> batch = new ArrayList<>(DEACTIVATION_BATCH);
+        Iterator<String> iterator = userIDs.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == DEACTIVATION_BATCH || !iterator.hasNext()) {
+                List<String> freed = new ArrayList<>();
+                int[] acquired = lockUsersWithBooks(batch);
+                try {
+                    missing.addAll(removeUsersCascade(batch, freed));
+                } finally {
+                    locks.unlock(acquired);
+                }
+                for (String bookID : freed) {
+                    handOff(bookID);
+                }
+                batch.clear();
+            }
+        }
+        log.info("Удалено пользователей: {}, не найдено: {}", userIDs.size() - missing.size(), missing.size());
+        recordLatency(LibraryOperation.DEACTIVATE_USERS, start);
+        return missing;
+    }
+
+    /**
+     * Каскадное удаление пакета пользователей под блокировками {@link #lockUsersWithBooks(Collection)}.
+     * Выдачи находятся по спискам выдач пользователей в журнале, резервирования — по индексу
+     * резервирований пользователя, поэтому стоимость пропорциональна количеству зависимых записей
+     *
+     * @param userIDs ID удаляемых пользователей
+     * @param freed   получатель ID освободившихся книг
+     * @return ID, которых не было среди пользователей
+     */
+    private List<String> removeUsersCascade(List<String> userIDs, List<String> freed) {
+        LocalDate today = LocalDate.now();
+        Set<String> borrowers = new HashSet<>();
+        List<Mutation> mutations = new ArrayList<>(userIDs.size());
+        for (Journal journal : lendingJournal.removeAllByUser(userIDs)) {
+            auditLog.record(AuditEventType.BOOK_RETURNED_BY_LIBRARY, journal.getBookID(), journal.getUserID(),
+                    journal.getBookTitle(), 0);
+            recordClosedLoan(journal, today, mutations);
+            borrowers.add(journal.getUserID());
+            freed.add(journal.getBookID());
+        }
+        List<String> missing = new ArrayList<>();
+        for (String userID : userIDs) {
+            for (String bookID : cancelHoldsOf(userID)) {
+                auditLog.record(AuditEventType.HOLD_CANCELLED, bookID, userID, null, 0);
+            }
+            if (userService.takeUser(userID) == null) {
+                missing.add(userID);
+                if (!borrowers.contains(userID)) {
+                    continue;
                 }
             }
-            userService.removeUser(userID);
+            loanHistory.forgetUser(userID);
+            mutations.add(Mutation.removeUser(userID));
+        }
+        if (!mutations.isEmpty()) {
+            persistAll(mutations);
+        }
+        for (Mutation mutation : mutations) {
+            if (mutation.getType() == MutationType.REMOVE_USER) {
+                auditLog.record(AuditEventType.USER_REMOVED, null, mutation.getUserID(), null, 0);
+            }
         }
+        return missing;
     }
 
     /**
-     * Проверка выдачи книги
+     * Блокировка книги вместе с пользователем, которому она выдана
      *
-     * @param bookID ID проверяемой книги
-     * @throws BookAlreadyLendException если книга уже выдана
+     * @param bookID ID книги
+     * @return захваченные блокировки
      */
-    private void checkBookLending(String bookID) throws BookAlreadyLendException {
-        for (Journal journalList : lendingJournal) {
-            if (journalList.bookID.equals(bookID)) {
-                throw new BookAlreadyLendException();
+    private int[] lockBookWithBorrower(String bookID) {
+        while (true) {
+            String borrowerID = borrowerOf(bookID);
+            int[] acquired = locks.lock(bookID, borrowerID);
+            if (Objects.equals(borrowerOf(bookID), borrowerID)) {
+                return acquired;
             }
+            locks.unlock(acquired);
         }
     }
 
+    private String borrowerOf(String bookID) {
+        Journal journal = lendingJournal.findByBook(bookID);
+        return journal == null ? null : journal.getUserID();
+    }
+
     /**
-     * Проверка наличия пользователя в журнале выдачи книг перед удалением
+     * Блокировка пользователей вместе со всеми выданными им книгами и книгами, за которыми они стоят в очереди
      *
-     * @param userID ID проверяемого пользователя
-     * @throws UserLendBookException в случае, если пользователь взял книги
+     * @param userIDs ID пользователей
+     * @return захваченные блокировки
      */
-    private void checkUserBookLending(String userID) throws UserLendBookException {
-        for (Journal journalList : lendingJournal) {
-            if (journalList.userID.equals(userID)) {
-                throw new UserLendBookException();
+    private int[] lockUsersWithBooks(Collection<String> userIDs) {
+        while (true) {
+            List<String> keys = new ArrayList<>(userIDs);
+            for (String userID : userIDs) {
+                addDependentBooks(userID, keys);
             }
+            int[] acquired = locks.lock(keys.toArray(new String[0]));
+            Set<String> locked = new HashSet<>(keys);
+            List<String> current = new ArrayList<>();
+            for (String userID : userIDs) {
+                addDependentBooks(userID, current);
+            }
+            if (locked.containsAll(current)) {
+                return acquired;
+            }
+            locks.unlock(acquired);
+        }
+    }
+
+    private void addDependentBooks(String userID, List<String> bookIDs) {
+        for (Journal journal : lendingJournal.findByUser(userID)) {
+            bookIDs.add(journal.getBookID());
+        }
+        bookIDs.addAll(holdsByUser.getOrDefault(userID, Collections.emptySet()));
+    }
+
+    /**
+     * Проверка правил выдачи: ограничений количества книг, просрочек и скорости выдач
+     *
+     * @param userID    ID получающего пользователя
+     * @param kioskID   ID киоска самообслуживания или null
+     * @param bookGenre жанр выдаваемой книги
+     * @param today     текущая дата
+     * @return DONE или причина отказа
+     */
+    private LoanStatus checkLoanPolicy(String userID, String kioskID, BookGenre bookGenre, LocalDate today) {
+        LoanStatus status = loanPolicy.check(userID, bookGenre, 0, 0, today);
+        if (status != LoanStatus.DONE) {
+            return status;
         }
+        return loanPolicy.tryAcquire(userID, kioskID, 1) ? LoanStatus.DONE : LoanStatus.RATE_LIMITED;
     }
 
+    /**
+     * Правила выдачи книг
+     *
+     * @return правила
+     */
+    public LoanPolicy getLoanPolicy() {
+        return loanPolicy.getPolicy();
+    }
+
+    /**
+     * Замена правил выдачи книг. Уже выданные книги остаются у пользователей
+     *
+     * @param policy новые правила
+     */
+    public void setLoanPolicy(LoanPolicy policy) {
+        loanPolicy.setPolicy(policy);
+    }
 
     /**
-     * Выдача книги
+     * Выдача книги. Наличие книги, пользователя и отсутствие выдачи проверяются атомарно
      *
      * @param bookID ID выдаваемой книги
      * @param userID ID получающего пользователя
+     * @return true, если книга выдана
      */
-    public void lendBook(String bookID, String userID) {
-        BookDto lendingBook = bookService.getBooks().get(bookID);
-        LocalDate returnDate = LocalDate.now().plusDays(14);
-        lendingJournal.add(new Journal(lendingBook.getID(), userID, lendingBook.getTitle(), returnDate));
-        log.info("Книга {} выдана пользователю", lendingBook.getTitle());
+    public boolean lendBook(String bookID, String userID) {
+        return lendBook(bookID, userID, null);
+    }
+
+    /**
+     * Выдача книги через киоск самообслуживания, скорость выдач которого ограничена отдельно
+     *
+     * @param bookID  ID выдаваемой книги
+     * @param userID  ID получающего пользователя
+     * @param kioskID ID киоска или null
+     * @return true, если книга выдана
+     */
+    public boolean lendBook(String bookID, String userID, String kioskID) {
+        LoanStatus status = tryLendBook(bookID, userID, kioskID);
+        if (status != LoanStatus.DONE) {
+            log.info("Книга {} не выдана пользователю {}: {}", bookID, userID, status);
+        }
+        return status == LoanStatus.DONE;
+    }
+
+    /**
+     * Выдача книги с причиной отказа. Наличие книги, пользователя, отсутствие выдачи, очередь резервирований
+     * и правила выдачи проверяются атомарно, отказ возвращается результатом без исключений
+     *
+     * @param bookID  ID выдаваемой книги
+     * @param userID  ID получающего пользователя
+     * @param kioskID ID киоска самообслуживания или null
+     * @return {@link LoanStatus#DONE} или причина отказа
+     */
+    public LoanStatus tryLendBook(String bookID, String userID, String kioskID) {
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID, userID);
+        try {
+            BookDto lendingBook = findBook(bookID);
+            if (lendingBook == null) {
+                return LoanStatus.BOOK_NOT_FOUND;
+            }
+            if (findUser(userID) == null) {
+                return LoanStatus.USER_NOT_FOUND;
+            }
+            if (lendingJournal.isBookLent(bookID)) {
+                return LoanStatus.ALREADY_LENT;
+            }
+            LocalDate today = LocalDate.now();
+            if (isHeldForOther(bookID, userID, today)) {
+                return LoanStatus.ON_HOLD;
+            }
+            LoanStatus policyStatus = checkLoanPolicy(userID, kioskID, lendingBook.getBookGenre(), today);
+            if (policyStatus != LoanStatus.DONE) {
+                return policyStatus;
+            }
+            claimHold(bookID, userID);
+            LocalDate returnDate = today.plusDays(LENDING_PERIOD_DAYS);
+            lendingJournal.add(new Journal(lendingBook.getID(), userID, lendingBook.getTitle(), today, returnDate));
+            persist(Mutation.lendBook(bookID, userID, lendingBook.getTitle(), today, returnDate));
+            auditLog.record(AuditEventType.BOOK_LENT, bookID, userID, lendingBook.getTitle(), returnDate.toEpochDay());
+            return LoanStatus.DONE;
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.LEND_BOOK, start);
+        }
+    }
+
+    /**
+     * Пакетный перенос существующих выдач с их датами возврата. Название книги в записях
+     * не используется и берётся из каталога
+     *
+     * @param loans переносимые выдачи
+     * @return выдачи, отклонённые из-за отсутствия книги или пользователя либо повторной выдачи книги
+     */
+    public List<Journal> addLoans(Collection<Journal> loans) {
+        long start = System.nanoTime();
+        List<Journal> rejected = new ArrayList<>();
+        for (Journal loan : loans) {
+            int[] acquired = locks.lock(loan.getBookID(), loan.getUserID());
+            try {
+                BookDto bookDto = findBook(loan.getBookID());
+                if (bookDto == null || findUser(loan.getUserID()) == null
+                        || lendingJournal.isBookLent(loan.getBookID())) {
+                    rejected.add(loan);
+                    continue;
+                }
+                lendingJournal.add(new Journal(bookDto.getID(), loan.getUserID(), bookDto.getTitle(), loan.getLendDate(),
+                        loan.getReturnDate()));
+                persist(Mutation.lendBook(bookDto.getID(), loan.getUserID(), bookDto.getTitle(), loan.getLendDate(),
+                        loan.getReturnDate()));
+            } finally {
+                locks.unlock(acquired);
+            }
+        }
+        log.info("Пакетно перенесено выдач: {}, отклонено: {}", loans.size() - rejected.size(), rejected.size());
+        recordLatency(LibraryOperation.ADD_LOANS, start);
+        return rejected;
     }
 
     /**
@@ -187,38 +998,483 @@ public class LibraryService {
      *
      * @param bookID ID возвращаемой книги
      * @param userID ID возвращающего пользователя
+     * @return true, если книга была выдана этому пользователю и возвращена
      */
-    public void returnBook(String bookID, String userID) {
-        Iterator<Journal> journalIterator = lendingJournal.iterator();
-        while (journalIterator.hasNext()) {
-            Journal journalEntry = journalIterator.next();
-            if (journalEntry.userID.equals(userID) &&
-                    journalEntry.bookID.equals(bookID)) {
-                checkLendingPeriodDates(bookID);
-                journalIterator.remove();
-                log.info("Книга {} возвращена в библотеку", journalEntry.getBookTitle());
+    public boolean returnBook(String bookID, String userID) {
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID, userID);
+        try {
+            Journal journalEntry = lendingJournal.findByBook(bookID);
+            if (journalEntry == null || !journalEntry.getUserID().equals(userID)) {
+                return false;
             }
+            lendingJournal.removeByBook(bookID);
+            LocalDate today = LocalDate.now();
+            List<Mutation> mutations = new ArrayList<>(2);
+            mutations.add(Mutation.returnBook(bookID, userID));
+            recordClosedLoan(journalEntry, today, mutations);
+            persistAll(mutations);
+            checkLendingPeriodDates(journalEntry, today);
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.RETURN_BOOK, start);
         }
+        handOff(bookID);
+        return true;
     }
 
     /**
-     * Проверка сроков возврата
+     * Пакетная выдача книг одному пользователю: одна проверка, один захват блокировок
+     * и одна запись в хранилище на весь пакет
      *
-     * @param bookID ID проверяемой книги
+     * @param userID       ID получающего пользователя
+     * @param bookIDs      ID выдаваемых книг
+     * @param allOrNothing не выдавать ни одной книги, если хотя бы одну выдать нельзя
+     * @return результат по каждой книге в порядке запроса
      */
-    private void checkLendingPeriodDates(String bookID) {
-        LocalDate today = LocalDate.now();
-        for (Journal journalList : lendingJournal) {
-            if (journalList.bookID.equals(bookID)) {
-                if (journalList.returnDate.isBefore(today)) {
-                    log.info("Книга {} просрочена пользователем !", journalList.bookTitle);
+    public Map<String, LoanStatus> lendBooks(String userID, List<String> bookIDs, boolean allOrNothing) {
+        long start = System.nanoTime();
+        Map<String, LoanStatus> results = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(bookIDs.size() + 1);
+        keys.add(userID);
+        keys.addAll(bookIDs);
+        int[] acquired = locks.lock(keys.toArray(new String[0]));
+        try {
+            boolean userExists = findUser(userID) != null;
+            LocalDate today = LocalDate.now();
+            LocalDate returnDate = today.plusDays(LENDING_PERIOD_DAYS);
+            List<Journal> loans = new ArrayList<>(bookIDs.size());
+            int[] pendingByGenre = new int[BookGenre.values().length];
+            for (String bookID : bookIDs) {
+                if (results.containsKey(bookID)) {
+                    results.put(bookID, LoanStatus.DUPLICATE);
+                    continue;
+                }
+                BookDto bookDto = findBook(bookID);
+                BookGenre bookGenre = bookDto == null ? null : bookDto.getBookGenre();
+                LoanStatus status = bookDto == null ? LoanStatus.BOOK_NOT_FOUND
+                        : !userExists ? LoanStatus.USER_NOT_FOUND
+                        : lendingJournal.isBookLent(bookID) ? LoanStatus.ALREADY_LENT
+                        : isHeldForOther(bookID, userID, today) ? LoanStatus.ON_HOLD
+                        : loanPolicy.check(userID, bookGenre, loans.size(),
+                        bookGenre == null ? 0 : pendingByGenre[bookGenre.ordinal()], today);
+                results.put(bookID, status);
+                if (status == LoanStatus.DONE) {
+                    loans.add(new Journal(bookID, userID, bookDto.getTitle(), today, returnDate));
+                    if (bookGenre != null) {
+                        pendingByGenre[bookGenre.ordinal()]++;
+                    }
+                }
+            }
+            if (loans.isEmpty() || allOrNothing && loans.size() < results.size()) {
+                return rejectBatch(results);
+            }
+            if (!loanPolicy.tryAcquire(userID, null, loans.size())) {
+                results.replaceAll((bookID, status) -> status == LoanStatus.DONE ? LoanStatus.RATE_LIMITED : status);
+                return results;
+            }
+            lendingJournal.addAll(loans);
+            List<Mutation> mutations = new ArrayList<>(loans.size());
+            for (Journal loan : loans) {
+                claimHold(loan.getBookID(), userID);
+                mutations.add(Mutation.lendBook(loan.getBookID(), userID, loan.getBookTitle(), today, returnDate));
+            }
+            persistAll(mutations);
+            for (Journal loan : loans) {
+                auditLog.record(AuditEventType.BOOK_LENT, loan.getBookID(), userID, loan.getBookTitle(),
+                        returnDate.toEpochDay());
+            }
+            return results;
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.LEND_BOOKS, start);
+        }
+    }
+
+    /**
+     * Пакетный возврат книг: одна проверка, один захват блокировок и одна запись в хранилище на весь пакет
+     *
+     * @param returns      возвращаемые книги с ID вернувших их пользователей, название и дата не используются
+     * @param allOrNothing не возвращать ни одной книги, если хотя бы одну вернуть нельзя
+     * @return результат по каждой книге в порядке запроса
+     */
+    public Map<String, LoanStatus> returnBooks(Collection<Journal> returns, boolean allOrNothing) {
+        long start = System.nanoTime();
+        Map<String, LoanStatus> results = new LinkedHashMap<>();
+        List<String> freed = new ArrayList<>();
+        List<String> keys = new ArrayList<>(returns.size() * 2);
+        for (Journal journal : returns) {
+            keys.add(journal.getBookID());
+            keys.add(journal.getUserID());
+        }
+        int[] acquired = locks.lock(keys.toArray(new String[0]));
+        try {
+            LocalDate today = LocalDate.now();
+            List<Journal> returned = new ArrayList<>(returns.size());
+            for (Journal request : returns) {
+                String bookID = request.getBookID();
+                if (results.containsKey(bookID)) {
+                    results.put(bookID, LoanStatus.DUPLICATE);
+                    continue;
+                }
+                Journal journalEntry = lendingJournal.findByBook(bookID);
+                if (journalEntry == null || !journalEntry.getUserID().equals(request.getUserID())) {
+                    results.put(bookID, LoanStatus.NOT_LENT_TO_USER);
                 } else {
-                    log.info("Книга {} возвращена в срок", journalList.bookTitle);
+                    results.put(bookID, LoanStatus.DONE);
+                    returned.add(journalEntry);
+                }
+            }
+            if (returned.isEmpty() || allOrNothing && returned.size() < results.size()) {
+                return rejectBatch(results);
+            }
+            List<String> bookIDs = new ArrayList<>(returned.size());
+            List<Mutation> mutations = new ArrayList<>(returned.size());
+            for (Journal journalEntry : returned) {
+                bookIDs.add(journalEntry.getBookID());
+                mutations.add(Mutation.returnBook(journalEntry.getBookID(), journalEntry.getUserID()));
+                recordClosedLoan(journalEntry, today, mutations);
+            }
+            lendingJournal.removeAllByBook(bookIDs);
+            persistAll(mutations);
+            for (Journal journalEntry : returned) {
+                checkLendingPeriodDates(journalEntry, today);
+            }
+            freed.addAll(bookIDs);
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.RETURN_BOOKS, start);
+        }
+        for (String bookID : freed) {
+            handOff(bookID);
+        }
+        return results;
+    }
+
+    /**
+     * Отметка допустимых операций отклонённого пакета как невыполненных
+     *
+     * @param results результаты проверки пакета
+     * @return те же результаты
+     */
+    private static Map<String, LoanStatus> rejectBatch(Map<String, LoanStatus> results) {
+        results.replaceAll((bookID, status) -> status == LoanStatus.DONE ? LoanStatus.NOT_APPLIED : status);
+        return results;
+    }
+
+    /**
+     * Перенос срока возврата выданной книги на указанную дату
+     *
+     * @param bookID        ID выданной книги
+     * @param userID        ID пользователя, которому выдана книга
+     * @param newReturnDate новая дата возврата, не ранее текущей
+     * @return true, если срок перенесён
+     */
+    public boolean extendLoan(String bookID, String userID, LocalDate newReturnDate) {
+        if (newReturnDate.isBefore(LocalDate.now())) {
+            log.error("Дата возврата {} уже прошла", newReturnDate);
+            return false;
+        }
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID, userID);
+        try {
+            return changeReturnDate(bookID, userID, newReturnDate);
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.EXTEND_LOAN, start);
+        }
+    }
+
+    /**
+     * Продление выдачи на стандартный срок от текущей даты или от даты возврата, если она ещё не наступила
+     *
+     * @param bookID ID выданной книги
+     * @param userID ID пользователя, которому выдана книга
+     * @return true, если выдача продлена
+     */
+    public boolean renewLoan(String bookID, String userID) {
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID, userID);
+        try {
+            Journal journalEntry = lendingJournal.findByBook(bookID);
+            if (journalEntry == null) {
+                return false;
+            }
+            LocalDate today = LocalDate.now();
+            LocalDate from = journalEntry.getReturnDate().isAfter(today) ? journalEntry.getReturnDate() : today;
+            return changeReturnDate(bookID, userID, from.plusDays(LENDING_PERIOD_DAYS));
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.RENEW_LOAN, start);
+        }
+    }
+
+    /**
+     * Изменение даты возврата под захваченными блокировками книги и пользователя
+     *
+     * @param bookID        ID выданной книги
+     * @param userID        ID пользователя, которому выдана книга
+     * @param newReturnDate новая дата возврата
+     * @return true, если книга выдана этому пользователю и дата изменена
+     */
+    private boolean changeReturnDate(String bookID, String userID, LocalDate newReturnDate) {
+        Journal journalEntry = lendingJournal.findByBook(bookID);
+        if (journalEntry == null || !journalEntry.getUserID().equals(userID)) {
+            return false;
+        }
+        lendingJournal.changeReturnDate(bookID, newReturnDate);
+        persist(Mutation.changeReturnDate(bookID, userID, newReturnDate));
+        auditLog.record(AuditEventType.RETURN_DATE_CHANGED, bookID, userID, journalEntry.getBookTitle(),
+                newReturnDate.toEpochDay());
+        return true;
+    }
+
+    /**
+     * Резервирование выданной книги: пользователь встаёт в конец очереди своего уровня и получит книгу
+     * автоматически, когда она будет возвращена и подойдёт его очередь
+     *
+     * @param bookID   ID книги
+     * @param userID   ID пользователя
+     * @param priority уровень очереди
+     * @return true, если резервирование создано; false, если книги или пользователя нет, книга свободна
+     * и очереди за ней нет, она уже у этого пользователя или он уже стоит в очереди
+     */
+    public boolean placeHold(String bookID, String userID, HoldPriority priority) {
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID, userID);
+        try {
+            if (findBook(bookID) == null || findUser(userID) == null) {
+                log.error("Книга {} или пользователь {} не найдены", bookID, userID);
+                return false;
+            }
+            LocalDate today = LocalDate.now();
+            Journal journal = lendingJournal.findByBook(bookID);
+            if (journal == null ? nextHold(bookID, today) == null : journal.getUserID().equals(userID)) {
+                log.error("Книгу {} можно получить без резервирования", bookID);
+                return false;
+            }
+            LocalDate expiresOn = today.plusDays(HOLD_EXPIRY_DAYS);
+            if (!holds.computeIfAbsent(bookID, key -> new HoldQueue())
+                    .add(new Hold(bookID, userID, priority, expiresOn))) {
+                return false;
+            }
+            indexHold(bookID, userID);
+            persist(Mutation.placeHold(bookID, userID, priority, expiresOn));
+            auditLog.record(AuditEventType.HOLD_PLACED, bookID, userID, null, expiresOn.toEpochDay());
+            return true;
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.PLACE_HOLD, start);
+        }
+    }
+
+    /**
+     * Отмена резервирования
+     *
+     * @param bookID ID книги
+     * @param userID ID пользователя
+     * @return true, если резервирование было и отменено
+     */
+    public boolean cancelHold(String bookID, String userID) {
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(bookID, userID);
+        try {
+            HoldQueue queue = holds.get(bookID);
+            if (queue == null || queue.cancel(userID) == null) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                holds.remove(bookID, queue);
+            }
+            unindexHold(bookID, userID);
+            persist(Mutation.cancelHold(bookID, userID));
+            auditLog.record(AuditEventType.HOLD_CANCELLED, bookID, userID, null, 0);
+            return true;
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CANCEL_HOLD, start);
+        }
+    }
+
+    /**
+     * Действующие резервирования книги в порядке, в котором пользователи получат книгу
+     *
+     * @param bookID ID книги
+     * @return резервирования
+     */
+    public List<Hold> getHolds(String bookID) {
+        HoldQueue queue = holds.get(bookID);
+        return queue == null ? Collections.emptyList() : queue.toList(LocalDate.now());
+    }
+
+    /**
+     * Выдача освободившейся книги первому пользователю в очереди резервирований по тем же правилам,
+     * что и обычная выдача. Резервирование пользователя, которому правила запрещают выдачу, снимается,
+     * и книга предлагается следующему в очереди. Вызывается без блокировок: книга блокируется вместе с пользователем из начала очереди,
+     * и если очередь за это время изменилась, попытка повторяется
+     *
+     * @param bookID ID освободившейся книги
+     */
+    private void handOff(String bookID) {
+        while (true) {
+            LocalDate today = LocalDate.now();
+            Hold next = nextHold(bookID, today);
+            if (next == null) {
+                return;
+            }
+            int[] acquired = locks.lock(bookID, next.getUserID());
+            try {
+                if (!next.equals(nextHold(bookID, today))) {
+                    continue;
+                }
+                BookDto bookDto = findBook(bookID);
+                if (bookDto == null || lendingJournal.isBookLent(bookID)) {
+                    return;
+                }
+                LoanStatus policyStatus = checkLoanPolicy(next.getUserID(), null, bookDto.getBookGenre(), today);
+                if (policyStatus != LoanStatus.DONE) {
+                    log.info("Резервирование книги {} пользователем {} снято, выдача запрещена правилами: {}",
+                            bookID, next.getUserID(), policyStatus);
+                    claimHold(bookID, next.getUserID());
+                    persist(Mutation.cancelHold(bookID, next.getUserID()));
+                    auditLog.record(AuditEventType.HOLD_CANCELLED, bookID, next.getUserID(), null, 0);
+                    continue;
+                }
+                claimHold(bookID, next.getUserID());
+                LocalDate returnDate = today.plusDays(LENDING_PERIOD_DAYS);
+                lendingJournal.add(new Journal(bookID, next.getUserID(), bookDto.getTitle(), today, returnDate));
+                persist(Mutation.lendBook(bookID, next.getUserID(), bookDto.getTitle(), today, returnDate));
+                auditLog.record(AuditEventType.HOLD_FULFILLED, bookID, next.getUserID(), bookDto.getTitle(),
+                        returnDate.toEpochDay());
+                return;
+            } finally {
+                locks.unlock(acquired);
+            }
+        }
+    }
+
+    /**
+     * Первое действующее резервирование книги
+     *
+     * @param bookID ID книги
+     * @param today  текущая дата
+     * @return резервирование или null, если очереди нет
+     */
+    private Hold nextHold(String bookID, LocalDate today) {
+        HoldQueue queue = holds.get(bookID);
+        return queue == null ? null : queue.head(today, userService.getUsers()::containsKey);
+    }
+
+    private boolean isHeldForOther(String bookID, String userID, LocalDate today) {
+        Hold next = nextHold(bookID, today);
+        return next != null && !next.getUserID().equals(userID);
+    }
+
+    /**
+     * Снятие резервирования пользователя, получающего книгу, под блокировкой книги
+     *
+     * @param bookID ID книги
+     * @param userID ID пользователя
+     */
+    private void claimHold(String bookID, String userID) {
+        HoldQueue queue = holds.get(bookID);
+        if (queue != null && queue.cancel(userID) != null) {
+            if (queue.isEmpty()) {
+                holds.remove(bookID, queue);
+            }
+            unindexHold(bookID, userID);
+        }
+    }
+
+    /**
+     * Отмена всех резервирований пользователя по индексу его резервирований под блокировками
+     * пользователя и этих книг
+     *
+     * @param userID ID пользователя
+     * @return ID книг, резервирования которых были отменены
+     */
+    private List<String> cancelHoldsOf(String userID) {
+        Set<String> heldBooks = holdsByUser.remove(userID);
+        if (heldBooks == null) {
+            return Collections.emptyList();
+        }
+        List<String> cancelled = new ArrayList<>(heldBooks.size());
+        for (String bookID : heldBooks) {
+            HoldQueue queue = holds.get(bookID);
+            if (queue != null && queue.cancel(userID) != null) {
+                if (queue.isEmpty()) {
+                    holds.remove(bookID, queue);
                 }
+                cancelled.add(bookID);
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Удаление очереди резервирований книги вместе с её записями в индексе резервирований пользователей
+     *
+     * @param bookID ID книги
+     */
+    private void dropHolds(String bookID) {
+        HoldQueue queue = holds.remove(bookID);
+        if (queue != null) {
+            for (String userID : queue.users()) {
+                unindexHold(bookID, userID);
             }
         }
     }
 
+    /**
+     * Добавление книги в индекс резервирований пользователя под блокировкой пользователя;
+     * резервирования, истёкшие в очереди, остаются в нём до удаления пользователя или книги
+     *
+     * @param bookID ID книги
+     * @param userID ID пользователя
+     */
+    private void indexHold(String bookID, String userID) {
+        holdsByUser.computeIfAbsent(userID, key -> ConcurrentHashMap.newKeySet()).add(bookID);
+    }
+
+    private void unindexHold(String bookID, String userID) {
+        holdsByUser.computeIfPresent(userID, (key, heldBooks) -> {
+            heldBooks.remove(bookID);
+            return heldBooks.isEmpty() ? null : heldBooks;
+        });
+    }
+
+    /**
+     * Запись завершённой выдачи в историю под блокировкой книги, пока книга ещё есть в каталоге.
+     * Изменение с номером строки истории записывается в хранилище вместе с изменениями операции
+     *
+     * @param journalEntry запись о завершённой выдаче
+     * @param today        дата возврата
+     * @param mutations    изменения операции
+     */
+    private void recordClosedLoan(Journal journalEntry, LocalDate today, List<Mutation> mutations) {
+        BookDto bookDto = findBook(journalEntry.getBookID());
+        if (bookDto != null) {
+            long row = loanHistory.record(journalEntry.getBookID(), journalEntry.getUserID(), bookDto.getAuthor(),
+                    bookDto.getBookGenre(), journalEntry.getLendDate(), journalEntry.getReturnDate(), today);
+            mutations.add(Mutation.closeLoan(journalEntry.getBookID(), journalEntry.getUserID(), bookDto.getAuthor(),
+                    bookDto.getBookGenre(), journalEntry.getLendDate(), journalEntry.getReturnDate(), today, row));
+        }
+    }
+
+    /**
+     * Проверка сроков возврата
+     *
+     * @param journalEntry запись о выдаче проверяемой книги
+     * @param today        текущая дата
+     */
+    private void checkLendingPeriodDates(Journal journalEntry, LocalDate today) {
+        AuditEventType type = journalEntry.getReturnDate().isBefore(today)
+                ? AuditEventType.BOOK_RETURNED_OVERDUE
+                : AuditEventType.BOOK_RETURNED;
+        auditLog.record(type, journalEntry.getBookID(), journalEntry.getUserID(), journalEntry.getBookTitle(),
+                journalEntry.getReturnDate().toEpochDay());
+    }
+
     /**
      * Изменение номера телефона пользователя
      *
@@ -226,7 +1482,17 @@ public class LibraryService {
      * @param newPhone новый номер
      */
     public void changeUserPhone(String userID, long newPhone) {
-        userService.changeUserPhone(userID, newPhone);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(userID);
+        try {
+            if (userService.changeUserPhone(userID, newPhone)) {
+                persist(Mutation.changeUserPhone(userID, newPhone));
+                auditLog.record(AuditEventType.USER_PHONE_CHANGED, null, userID, null, newPhone);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CHANGE_USER, start);
+        }
     }
 
     /**
@@ -236,7 +1502,17 @@ public class LibraryService {
      * @param newName новое имя
      */
     public void changeUserName(String userID, String newName) {
-        userService.changeUserName(userID, newName);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(userID);
+        try {
+            if (userService.changeUserName(userID, newName)) {
+                persist(Mutation.changeUserName(userID, newName));
+                auditLog.record(AuditEventType.USER_NAME_CHANGED, null, userID, newName, 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CHANGE_USER, start);
+        }
     }
 
     /**
@@ -246,7 +1522,17 @@ public class LibraryService {
      * @param newSurName новая фамилия
      */
     public void changeUserSurname(String userID, String newSurName) {
-        userService.changeUserSurname(userID, newSurName);
+        long start = System.nanoTime();
+        int[] acquired = locks.lock(userID);
+        try {
+            if (userService.changeUserSurname(userID, newSurName)) {
+                persist(Mutation.changeUserSurname(userID, newSurName));
+                auditLog.record(AuditEventType.USER_SURNAME_CHANGED, null, userID, newSurName, 0);
+            }
+        } finally {
+            locks.unlock(acquired);
+            recordLatency(LibraryOperation.CHANGE_USER, start);
+        }
     }
 
     /**
@@ -256,18 +1542,225 @@ public class LibraryService {
         userService.printAllUsers();
     }
 
-    @Data
-    private static class Journal {
-        private final String userID;
-        private final String bookTitle;
-        private final LocalDate returnDate;
-        private final String bookID;
+    /**
+     * Страница пользователей в порядке ID
+     *
+     * @param cursor курсор предыдущей страницы или null для первой страницы
+     * @param limit  максимальное количество пользователей на странице
+     * @return страница пользователей
+     * @throws IllegalArgumentException если размер страницы не положителен
+     */
+    public Page<UserDto> listUsers(String cursor, int limit) {
+        return userService.listUsers(cursor, limit);
+    }
+
+    /**
+     * Ленивый поток пользователей в порядке ID
+     *
+     * @return поток пользователей
+     */
+    public Stream<UserDto> streamUsers() {
+        return userService.streamUsers();
+    }
+
+    /**
+     * Страница активных выдач в порядке даты возврата и ID книги
+     *
+     * @param cursor      курсор предыдущей страницы или null для первой страницы
+     * @param limit       максимальное количество выдач на странице
+     * @param overdueOnly только просроченные выдачи
+     * @return страница выдач
+     * @throws IllegalArgumentException если курсор не выдан предыдущей страницей или размер страницы не положителен
+     */
+    public Page<Journal> listLoans(String cursor, int limit, boolean overdueOnly) {
+        return lendingJournal.listLoans(cursor, limit, overdueOnly ? LocalDate.now() : null);
+    }
+
+    /**
+     * Ленивый поток активных выдач в порядке даты возврата и ID книги, читаемый страницами
+     *
+     * @param overdueOnly только просроченные выдачи
+     * @return поток выдач
+     */
+    public Stream<Journal> streamLoans(boolean overdueOnly) {
+        LocalDate dueBefore = overdueOnly ? LocalDate.now() : null;
+        return Page.stream(cursor -> lendingJournal.listLoans(cursor, STREAM_PAGE_SIZE, dueBefore));
+    }
+
+    /**
+     * Выгрузка состояния для снимка хранилища. Книги из хранилища записей, которое само сохраняет записи
+     * на диск ({@link Flushable}), не выгружаются: хранилище записывается на диск до снимка и уже содержит
+     * все изменения книг, вошедшие в снимок. История завершённых выдач выгружается строками без номеров,
+     * а обезличенные пользователи истории выгружаются под ключами, которые обезличиваются после всех строк
+     *
+     * @param sink получатель изменений, воссоздающих состояние
+     */
+    private void captureState(Consumer<Mutation> sink) {
+        Map<String, BookDto> books = bookService.getBooks();
+        if (books instanceof Flushable) {
+            try {
+                ((Flushable) books).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            for (BookDto bookDto : books.values()) {
+                sink.accept(Mutation.addBook(bookDto));
+            }
+        }
+        for (UserDto userDto : userService.getUsers().values()) {
+            sink.accept(Mutation.addUser(userDto));
+        }
+        for (Journal journal : lendingJournal.findAll()) {
+            sink.accept(Mutation.lendBook(journal.getBookID(), journal.getUserID(),
+                    journal.getBookTitle(), journal.getLendDate(), journal.getReturnDate()));
+        }
+        LocalDate today = LocalDate.now();
+        for (HoldQueue queue : holds.values()) {
+            for (Hold hold : queue.toList(today)) {
+                sink.accept(Mutation.placeHold(hold.getBookID(), hold.getUserID(), hold.getPriority(),
+                        hold.getExpiresOn()));
+            }
+        }
+        Set<String> forgottenUsers = new HashSet<>();
+        loanHistory.export((bookID, userID, userForgotten, author, bookGenre, lendDate, dueDate, returnedDate) -> {
+            if (userForgotten) {
+                forgottenUsers.add(userID);
+            }
+            sink.accept(Mutation.closeLoan(bookID, userID, author, bookGenre, lendDate, dueDate, returnedDate,
+                    Mutation.NO_HISTORY_ROW));
+        });
+        for (String userID : forgottenUsers) {
+            sink.accept(Mutation.removeUser(userID));
+        }
+    }
+
+    /**
+     * Выгрузка состояния для снимков: каждая книга вместе с её выдачей и каждый пользователь
+     * читаются под своей блокировкой, поэтому выгрузка не пропускает изменений, опубликованных после её начала
+     *
+     * @param sink получатель изменений, воссоздающих состояние
+     */
+    private void captureLockedState(Consumer<Mutation> sink) {
+        for (String bookID : bookService.getBooks().keySet()) {
+            int[] acquired = locks.lock(bookID);
+            try {
+                BookDto bookDto = bookService.getBooks().get(bookID);
+                Journal journal = lendingJournal.findByBook(bookID);
+                if (bookDto != null) {
+                    sink.accept(Mutation.addBook(bookDto));
+                }
+                if (journal != null) {
+                    sink.accept(Mutation.lendBook(bookID, journal.getUserID(), journal.getBookTitle(),
+                            journal.getLendDate(), journal.getReturnDate()));
+                }
+            } finally {
+                locks.unlock(acquired);
+            }
+        }
+        for (String userID : userService.getUsers().keySet()) {
+            int[] acquired = locks.lock(userID);
+            try {
+                UserDto userDto = userService.getUsers().get(userID);
+                if (userDto != null) {
+                    sink.accept(Mutation.addUser(userDto));
+                }
+            } finally {
+                locks.unlock(acquired);
+            }
+        }
+    }
 
-        public Journal(String bookID, String userID, String bookTitle, LocalDate returnDate) {
-            this.returnDate = returnDate;
-            this.userID = userID;
-            this.bookTitle = bookTitle;
-            this.bookID = bookID;
+    /**
+     * Повторное применение изменения при восстановлении. Изменения применяются идемпотентно,
+     * так как снимок может уже содержать результат части повторяемых изменений
+     *
+     * @param mutation восстанавливаемое изменение
+     */
+    private void replay(Mutation mutation) {
+        String bookID = mutation.getBookID();
+        String userID = mutation.getUserID();
+        boolean bookExists = bookID != null && bookService.getBooks().containsKey(bookID);
+        boolean userExists = userID != null && userService.getUsers().containsKey(userID);
+        switch (mutation.getType()) {
+            case ADD_BOOK:
+                bookService.restoreBook(new BookDto(bookID, mutation.getTitle(), mutation.getAuthor(),
+                        mutation.getBookGenre()));
+                break;
+            case REMOVE_BOOK:
+                lendingJournal.removeByBook(bookID);
+                dropHolds(bookID);
+                bookService.takeBook(bookID);
+                break;
+            case CHANGE_BOOK_AUTHOR:
+                if (bookExists) {
+                    bookService.changeBookAuthor(bookID, mutation.getAuthor());
+                }
+                break;
+            case CHANGE_BOOK_TITLE:
+                if (bookExists) {
+                    bookService.changeBookTitle(bookID, mutation.getTitle());
+                }
+                break;
+            case CHANGE_BOOK_GENRE:
+                if (bookExists) {
+                    bookService.changeBookGenre(bookID, mutation.getBookGenre());
+                }
+                break;
+            case ADD_USER:
+                userService.restoreUser(new UserDto(userID, mutation.getName(), mutation.getSurname(),
+                        mutation.getPhoneNumber()));
+                break;
+            case REMOVE_USER:
+                lendingJournal.removeByUser(userID);
+                cancelHoldsOf(userID);
+                userService.takeUser(userID);
+                loanHistory.forgetUser(userID);
+                break;
+            case CHANGE_USER_PHONE:
+                if (userExists) {
+                    userService.changeUserPhone(userID, mutation.getPhoneNumber());
+                }
+                break;
+            case CHANGE_USER_NAME:
+                if (userExists) {
+                    userService.changeUserName(userID, mutation.getName());
+                }
+                break;
+            case CHANGE_USER_SURNAME:
+                if (userExists) {
+                    userService.changeUserSurname(userID, mutation.getSurname());
+                }
+                break;
+            case LEND_BOOK:
+                lendingJournal.removeByBook(bookID);
+                lendingJournal.add(new Journal(bookID, userID, mutation.getTitle(), mutation.getLendDate(),
+                        mutation.getReturnDate()));
+                claimHold(bookID, userID);
+                break;
+            case RETURN_BOOK:
+                Journal journal = lendingJournal.findByBook(bookID);
+                if (journal != null && journal.getUserID().equals(userID)) {
+                    lendingJournal.removeByBook(bookID);
+                }
+                break;
+            case CHANGE_RETURN_DATE:
+                Journal lent = lendingJournal.findByBook(bookID);
+                if (lent != null && lent.getUserID().equals(userID)) {
+                    lendingJournal.changeReturnDate(bookID, mutation.getReturnDate());
+                }
+                break;
+            case PLACE_HOLD:
+                if (holds.computeIfAbsent(bookID, key -> new HoldQueue())
+                        .add(new Hold(bookID, userID, mutation.getHoldPriority(), mutation.getReturnDate()))) {
+                    indexHold(bookID, userID);
+                }
+                break;
+            case CANCEL_HOLD:
+                claimHold(bookID, userID);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mutation " + mutation.getType());
         }
     }
 }
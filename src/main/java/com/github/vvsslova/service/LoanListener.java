@@ -0,0 +1,37 @@
+package com.github.vvsslova.service;
+
+import java.time.LocalDate;
+
+/**
+ * Обработчик изменений журнала выдачи по отдельным экземплярам. Вызывается после снятия блокировки журнала,
+ * но под блокировкой книги вызывающего, поэтому события разных книг могут приходить одновременно,
+ * а события одной книги приходят по порядку
+ */
+public interface LoanListener {
+    /**
+     * Экземпляр выдан
+     *
+     * @param bookID     ID экземпляра
+     * @param userID     ID получившего пользователя
+     * @param returnDate дата возврата
+     */
+    void onLent(String bookID, String userID, LocalDate returnDate);
+
+    /**
+     * Экземпляр возвращён или его выдача удалена из журнала
+     *
+     * @param bookID ID экземпляра
+     * @param userID ID пользователя, которому экземпляр был выдан
+     */
+    void onReturned(String bookID, String userID);
+
+    /**
+     * Изменена дата возврата выданного экземпляра
+     *
+     * @param bookID        ID экземпляра
+     * @param userID        ID пользователя, которому экземпляр выдан
+     * @param newReturnDate новая дата возврата
+     */
+    default void onReturnDateChanged(String bookID, String userID, LocalDate newReturnDate) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.vvsslova.service;
+
+/**
+ * Результат выдачи или возврата одной книги, отдельно или в пакетной операции
+ */
+public enum LoanStatus {
+    /**
+     * Операция выполнена
+     */
+    DONE,
+    /**
+     * Книга не найдена
+     */
+    BOOK_NOT_FOUND,
+    /**
+     * Пользователь не найден
+     */
+    USER_NOT_FOUND,
+    /**
+     * Книга уже выдана
+     */
+    ALREADY_LENT,
+    /**
+     * Книга зарезервирована другим пользователем
+     */
+    ON_HOLD,
+    /**
+     * Книга не выдана этому пользователю
+     */
+    NOT_LENT_TO_USER,
+    /**
+     * Книга уже встречалась в этом пакете
+     */
+    DUPLICATE,
+    /**
+     * У пользователя максимальное количество книг
+     */
+    LOAN_LIMIT_REACHED,
+    /**
+     * У пользователя максимальное количество книг этого жанра
+     */
+    GENRE_LIMIT_REACHED,
+    /**
+     * У пользователя есть просроченные выдачи
+     */
+    OVERDUE_LOANS,
+    /**
+     * Превышена допустимая скорость выдач пользователю или через киоск
+     */
+    RATE_LIMITED,
+    /**
+     * Операция допустима, но не выполнена, так как пакет отклонён целиком
+     */
+    NOT_APPLIED
+}
@@ -0,0 +1,14 @@
+package com.github.vvsslova.service;
+
+/**
+ * Обработчик просроченных выдач: напоминания, начисление штрафов и т.п.
+ */
+@FunctionalInterface
+public interface OverdueListener {
+    /**
+     * Вызывается один раз для выдачи, срок возврата которой истёк
+     *
+     * @param journal просроченная выдача
+     */
+    void onOverdue(Journal journal);
+}
@@ -0,0 +1,207 @@
+package com.github.vvsslova.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик просроченных выдач. Выдача становится просроченной в начале дня, следующего за датой возврата,
+ * поэтому проверка запускается в начале каждых суток и читает из индекса по дате возврата только выдачи,
+ * просроченные с момента предыдущей проверки. Стоимость проверки пропорциональна количеству новых просрочек.
+ * Планировщик подписан на журнал: выдача или перенос срока на дату, которую проверка уже прошла,
+ * например при переносе выдач из другой системы, оповещаются сразу. Проверенная дата публикуется до чтения индекса,
+ * поэтому выдача, добавленная во время проверки, попадает либо в проверку, либо в оповещение журнала, а запомненные
+ * даты возврата оповещённых выдач не дают оповестить её дважды
+ */
+@Slf4j
+public class OverdueScheduler implements Closeable, LoanListener {
+    private final LendingJournal lendingJournal;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Clock clock;
+    private final List<OverdueListener> listeners;
+    private final ConcurrentMap<String, LocalDate> notifiedReturnDates;
+    private volatile LocalDate checkedUntil;
+    private ScheduledFuture<?> nextCheck;
+    private volatile boolean closed;
+
+    public OverdueScheduler(LendingJournal lendingJournal) {
+        this(lendingJournal, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overdue-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }), true, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param lendingJournal журнал выдачи книг
+     * @param executor       исполнитель проверок, не останавливается при закрытии планировщика
+     * @param clock          часы, определяющие текущую дату и начало суток
+     */
+    public OverdueScheduler(LendingJournal lendingJournal, ScheduledExecutorService executor, Clock clock) {
+        this(lendingJournal, executor, false, clock);
+    }
+
+    private OverdueScheduler(LendingJournal lendingJournal, ScheduledExecutorService executor,
+                             boolean ownsExecutor, Clock clock) {
+        this.lendingJournal = lendingJournal;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.clock = clock;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.notifiedReturnDates = new ConcurrentHashMap<>();
+        this.checkedUntil = LocalDate.MIN;
+        lendingJournal.addListener(this);
+    }
+
+    /**
+     * Добавление обработчика просроченных выдач
+     *
+     * @param listener обработчик
+     */
+    public void addListener(OverdueListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Запуск проверки сейчас и далее в начале каждых суток
+     */
+    public synchronized void start() {
+        if (nextCheck == null && !closed) {
+            nextCheck = executor.schedule(this::runScheduledCheck, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Оповещение о выдачах, просроченных с момента предыдущей проверки. Выдача, срок которой
+     * был перенесён, оповещается повторно, если истёк и новый срок
+     *
+     * @return количество оповещённых выдач
+     */
+    public synchronized int checkOverdue() {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate from = checkedUntil;
+        if (today.isAfter(from)) {
+            checkedUntil = today;
+        }
+        int notified = 0;
+        for (Journal journal : lendingJournal.dueBetween(from, today)) {
+            if (notifyOnce(journal)) {
+                notified++;
+            }
+        }
+        return notified;
+    }
+
+    /**
+     * Повторная проверка всех выдач при следующем запуске, например после переноса выдач с уже прошедшими датами
+     */
+    public synchronized void rescan() {
+        checkedUntil = LocalDate.MIN;
+        notifiedReturnDates.clear();
+    }
+
+    /**
+     * Остановка проверок
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        lendingJournal.removeListener(this);
+        if (nextCheck != null) {
+            nextCheck.cancel(false);
+        }
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void onLent(String bookID, String userID, LocalDate returnDate) {
+        notifyIfAlreadyChecked(bookID, returnDate);
+    }
+
+    @Override
+    public void onReturned(String bookID, String userID) {
+        notifiedReturnDates.remove(bookID);
+    }
+
+    @Override
+    public void onReturnDateChanged(String bookID, String userID, LocalDate newReturnDate) {
+        notifyIfAlreadyChecked(bookID, newReturnDate);
+    }
+
+    /**
+     * Оповещение о выдаче, дата возврата которой раньше уже проверенной даты и не попадёт в следующую проверку.
+     * Вызывается под блокировкой книги, поэтому не захватывает монитор планировщика, который удерживается
+     * при оповещении из проверки
+     */
+    private void notifyIfAlreadyChecked(String bookID, LocalDate returnDate) {
+        if (closed || !returnDate.isBefore(checkedUntil)) {
+            return;
+        }
+        Journal journal = lendingJournal.findByBook(bookID);
+        if (journal != null && returnDate.equals(journal.getReturnDate())) {
+            notifyOnce(journal);
+        }
+    }
+
+    /**
+     * Оповещение о выдаче, если о ней с той же датой возврата ещё не оповещали. Выдачу, добавленную
+     * во время проверки, может увидеть и проверка, и оповещение журнала
+     *
+     * @return true, если обработчики оповещены
+     */
+    private boolean notifyOnce(Journal journal) {
+        if (journal.getReturnDate().equals(notifiedReturnDates.put(journal.getBookID(), journal.getReturnDate()))) {
+            return false;
+        }
+        notifyListeners(journal);
+        return true;
+    }
+
+    private void notifyListeners(Journal journal) {
+        for (OverdueListener listener : listeners) {
+            try {
+                listener.onOverdue(journal);
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки просроченной выдачи книги " + journal.getBookTitle(), e);
+            }
+        }
+    }
+
+    private void runScheduledCheck() {
+        try {
+            int notified = checkOverdue();
+            if (notified > 0) {
+                log.info("Просроченных выдач: {}", notified);
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка проверки просроченных выдач", e);
+        } finally {
+            scheduleNextCheck();
+        }
+    }
+
+    private synchronized void scheduleNextCheck() {
+        if (closed) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        ZonedDateTime nextDay = now.toLocalDate().plusDays(1).atStartOfDay(clock.getZone());
+        nextCheck = executor.schedule(this::runScheduledCheck,
+                Duration.between(now, nextDay).toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.vvsslova.service;
+
+import lombok.Data;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Страница списка с курсором следующей страницы. Курсор непрозрачен для клиента и указывает на последнюю
+ * возвращённую запись, поэтому добавление и удаление записей между запросами не приводит к пропускам
+ * и повторам уже просмотренных записей
+ *
+ * @param <T> тип записи
+ */
+@Data
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    /**
+     * Проверка наличия следующей страницы
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Проверка размера страницы, заданного клиентом
+     *
+     * @param limit максимальное количество записей на странице
+     * @throws IllegalArgumentException если размер не положителен
+     */
+    static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+
+    /**
+     * Ленивый поток записей, читающий страницы по мере потребления
+     *
+     * @param pages получение страницы по курсору, null — первая страница
+     * @param <T>   тип записи
+     * @return поток записей всех страниц
+     */
+    static <T> Stream<T> stream(Function<String, Page<T>> pages) {
+        Iterator<T> iterator = new Iterator<T>() {
+            private Page<T> page;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                if (page == null) {
+                    page = pages.apply(null);
+                }
+                while (position == page.getItems().size()) {
+                    if (!page.hasNext()) {
+                        return false;
+                    }
+                    page = pages.apply(page.getNextCursor());
+                    position = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.getItems().get(position++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
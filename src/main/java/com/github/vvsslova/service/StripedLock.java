@@ -0,0 +1,77 @@
+package com.github.vvsslova.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Набор блокировок, распределённых по ID книг и пользователей.
+ * Несколько ключей блокируются в порядке номеров полос, что исключает взаимоблокировки
+ */
+public class StripedLock {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public StripedLock(int concurrencyLevel) {
+        int size = Integer.highestOneBit(Math.max(1, concurrencyLevel - 1) << 1);
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Захват блокировок для набора ключей
+     *
+     * @param keys ID книг и пользователей, null игнорируются
+     * @return номера захваченных полос, которые нужно передать в {@link #unlock(int[])}
+     */
+    public int[] lock(String... keys) {
+        int[] indexes = new int[keys.length];
+        int count = 0;
+        for (String key : keys) {
+            if (key != null) {
+                indexes[count++] = stripeOf(key);
+            }
+        }
+        Arrays.sort(indexes, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || indexes[unique - 1] != indexes[i]) {
+                indexes[unique++] = indexes[i];
+            }
+        }
+        int[] acquired = Arrays.copyOf(indexes, unique);
+        for (int index : acquired) {
+            stripes[index].lock();
+        }
+        return acquired;
+    }
+
+    /**
+     * Освобождение блокировок, захваченных {@link #lock(String...)}
+     *
+     * @param acquired номера захваченных полос
+     */
+    public void unlock(int[] acquired) {
+        for (int i = acquired.length - 1; i >= 0; i--) {
+            stripes[acquired[i]].unlock();
+        }
+    }
+
+    private int stripeOf(String key) {
+        return spread(key) & mask;
+    }
+
+    /**
+     * Хеш ключа, по младшим битам которого выбирается полоса. Структуры, разделённые по тому же хешу
+     * на степень двойки частей не больше количества полос, получают каждую полосу целиком в одной части
+     *
+     * @param key ID книги или пользователя
+     * @return хеш ключа
+     */
+    static int spread(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
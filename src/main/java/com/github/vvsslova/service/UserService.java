@@ -7,9 +7,13 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
 
 /**
  * Описание взаимодействия с пользователями
@@ -17,35 +21,55 @@ import java.util.Map;
 @Slf4j
 @Data
 public class UserService {
+    private static final int PRINT_PAGE_SIZE = 100;
+
     private final Map<String, UserDto> users;
+    private final NavigableSet<String> userOrder;
 
     public UserService() {
-        this.users = new HashMap<>();
+        this.users = new ConcurrentHashMap<>();
+        this.userOrder = new ConcurrentSkipListSet<>();
     }
 
     /**
      * Добавление пользователя
      *
      * @param userDto добавляемый пользователь
+     * @return true, если изменение выполнено
      */
-    protected void addUser(UserDto userDto) {
+    protected boolean addUser(UserDto userDto) {
         try {
-            checkUserAbsence(userDto.getID());
-            users.put(userDto.getID(), userDto);
-            log.info("Пользователь {} успешно добавлен в библотеку", userDto);
+            checkUserAbsence(userDto);
+            userOrder.add(userDto.getID());
+            return true;
         } catch (UserAlreadyExistsException e) {
             log.error(e.getMessage(), e);
+            return false;
         }
     }
 
     /**
-     * Проверка наличия пользователя
+     * Добавление пользователя при восстановлении состояния или массовой загрузке, без журналирования
      *
-     * @param userID проверяемый ID
+     * @param userDto восстанавливаемый пользователь
+     * @return true, если пользователя с таким ID ещё не было
+     */
+    protected boolean restoreUser(UserDto userDto) {
+        if (users.putIfAbsent(userDto.getID(), userDto) != null) {
+            return false;
+        }
+        userOrder.add(userDto.getID());
+        return true;
+    }
+
+    /**
+     * Атомарная проверка наличия и добавление пользователя
+     *
+     * @param userDto добавляемый пользователь
      * @throws UserAlreadyExistsException если пользователь уже существует
      */
-    private void checkUserAbsence(String userID) throws UserAlreadyExistsException {
-        if (users.containsKey(userID)) {
+    private void checkUserAbsence(UserDto userDto) throws UserAlreadyExistsException {
+        if (users.putIfAbsent(userDto.getID(), userDto) != null) {
             throw new UserAlreadyExistsException();
         }
     }
@@ -54,43 +78,64 @@ public class UserService {
      * Проверка отсутствия пользователя
      *
      * @param userID проверяемый ID
+     * @return найденный пользователь
      * @throws UserNotFoundException если пользователь не найден
      */
-    private void checkUsersAvailability(String userID) throws UserNotFoundException {
-        if (!users.containsKey(userID)) {
+    private UserDto checkUsersAvailability(String userID) throws UserNotFoundException {
+        UserDto userDto = users.get(userID);
+        if (userDto == null) {
             throw new UserNotFoundException();
         }
+        return userDto;
     }
 
     /**
      * Удаление пользователя
      *
      * @param userID ID удаляемого пользователя
+     * @return true, если изменение выполнено
      */
-    protected void removeUser(String userID) {
+    protected boolean removeUser(String userID) {
         try {
-            checkUsersAvailability(userID);
-            users.remove(userID);
-            log.info("Пользователь успешно удалён из библотеки");
+            if (takeUser(userID) == null) {
+                throw new UserNotFoundException();
+            }
+            return true;
         } catch (UserNotFoundException e) {
             log.error(e.getMessage(), e);
+            return false;
         }
     }
 
+    /**
+     * Удаление пользователя без записи в лог: отсутствие пользователя — обычный результат, а не ошибка
+     *
+     * @param userID ID удаляемого пользователя
+     * @return удалённый пользователь или null, если его не было
+     */
+    protected UserDto takeUser(String userID) {
+        UserDto removedUserDto = users.remove(userID);
+        if (removedUserDto != null) {
+            userOrder.remove(userID);
+        }
+        return removedUserDto;
+    }
+
     /**
      * Изменение номера телефона
      *
      * @param userID   ID изменяемого пользователя
      * @param newPhone новый номер
+     * @return true, если изменение выполнено
      */
-    protected void changeUserPhone(String userID, long newPhone) {
+    protected boolean changeUserPhone(String userID, long newPhone) {
         try {
-            checkUsersAvailability(userID);
-            UserDto changingUserDto = users.get(userID);
+            UserDto changingUserDto = checkUsersAvailability(userID);
             changingUserDto.setPhoneNumber(newPhone);
-            log.info("Номер телефона успешно изменён!");
+            return true;
         } catch (UserNotFoundException e) {
             log.error(e.getMessage(), e);
+            return false;
         }
     }
 
@@ -99,15 +144,16 @@ public class UserService {
      *
      * @param userID  ID пользователя, у которого необходимо изменить имя
      * @param newName новое имя
+     * @return true, если изменение выполнено
      */
-    protected void changeUserName(String userID, String newName) {
+    protected boolean changeUserName(String userID, String newName) {
         try {
-            checkUsersAvailability(userID);
-            UserDto changingUserDto = users.get(userID);
+            UserDto changingUserDto = checkUsersAvailability(userID);
             changingUserDto.setName(newName);
-            log.info("Имя успешно изменено!");
+            return true;
         } catch (UserNotFoundException e) {
             log.error(e.getMessage(), e);
+            return false;
         }
     }
 
@@ -116,26 +162,64 @@ public class UserService {
      *
      * @param userID     ID пользователя, у которого необходимо изменить фамилию
      * @param newSurName новая фамилия
+     * @return true, если изменение выполнено
      */
-    protected void changeUserSurname(String userID, String newSurName) {
+    protected boolean changeUserSurname(String userID, String newSurName) {
         try {
-            checkUsersAvailability(userID);
-            UserDto changingUserDto = users.get(userID);
+            UserDto changingUserDto = checkUsersAvailability(userID);
             changingUserDto.setSurname(newSurName);
-            log.info("Фамилия успешно изменена!");
+            return true;
         } catch (UserNotFoundException e) {
             log.error(e.getMessage(), e);
+            return false;
         }
     }
 
     /**
-     * Получение списка всех пользователей
+     * Страница пользователей в порядке ID
+     *
+     * @param cursor курсор предыдущей страницы или null для первой страницы
+     * @param limit  максимальное количество пользователей на странице
+     * @return страница пользователей
+     * @throws IllegalArgumentException если размер страницы не положителен
+     */
+    protected Page<UserDto> listUsers(String cursor, int limit) {
+        Page.checkLimit(limit);
+        List<UserDto> items = new ArrayList<>(Math.min(limit, 1024));
+        String last = null;
+        for (String userID : cursor == null ? userOrder : userOrder.tailSet(cursor, false)) {
+            if (items.size() == limit) {
+                return new Page<>(items, last);
+            }
+            UserDto userDto = users.get(userID);
+            if (userDto != null) {
+                items.add(userDto);
+                last = userID;
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Ленивый поток пользователей в порядке ID без копирования списка
+     *
+     * @return поток пользователей
+     */
+    protected Stream<UserDto> streamUsers() {
+        return userOrder.stream()
+                .map(users::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Получение списка всех пользователей постранично, по одной строке лога на страницу
      */
     protected void printAllUsers() {
-        List<UserDto> userDtoList = new ArrayList<>();
-        for (Map.Entry<String, UserDto> entry : users.entrySet()) {
-            userDtoList.add(entry.getValue());
+        Page<UserDto> page = listUsers(null, PRINT_PAGE_SIZE);
+        log.info(page.getItems().toString());
+        while (page.hasNext()) {
+            page = listUsers(page.getNextCursor(), PRINT_PAGE_SIZE);
+            log.info(page.getItems().toString());
         }
-        log.info(userDtoList.toString());
     }
 }
@@ -0,0 +1,149 @@
+package com.github.vvsslova.snapshot;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Согласованное состояние библиотеки на момент применения изменения с номером {@link #getVersion()}.
+ * Снимок неизменяем и не зависит от последующих изменений, поэтому отчёты по нему не блокируют операции.
+ * Книги, пользователи и выдачи снимка общие для нескольких снимков и не должны изменяться
+ */
+public final class LibrarySnapshot {
+    @Getter
+    private final long version;
+    private final PersistentMap<String, BookDto> books;
+    private final PersistentMap<String, UserDto> users;
+    private final PersistentMap<String, Journal> loans;
+    private final PersistentMap<String, PersistentMap<String, Journal>> loansByUser;
+    private final PersistentMap<String, Boolean> lentBooks;
+
+    LibrarySnapshot(long version, PersistentMap<String, BookDto> books, PersistentMap<String, UserDto> users,
+                    PersistentMap<String, Journal> loans,
+                    PersistentMap<String, PersistentMap<String, Journal>> loansByUser,
+                    PersistentMap<String, Boolean> lentBooks) {
+        this.version = version;
+        this.books = books;
+        this.users = users;
+        this.loans = loans;
+        this.loansByUser = loansByUser;
+        this.lentBooks = lentBooks;
+    }
+
+    public BookDto getBook(String bookID) {
+        return books.get(bookID);
+    }
+
+    public UserDto getUser(String userID) {
+        return users.get(userID);
+    }
+
+    /**
+     * @param bookID ID книги
+     * @return выдача книги или null, если книга не выдана
+     */
+    public Journal findLoanByBook(String bookID) {
+        return loans.get(bookID);
+    }
+
+    /**
+     * @param userID ID пользователя
+     * @return выдачи пользователя
+     */
+    public List<Journal> findLoansByUser(String userID) {
+        PersistentMap<String, Journal> userLoans = loansByUser.get(userID);
+        return userLoans == null ? Collections.emptyList() : userLoans.values().collect(Collectors.toList());
+    }
+
+    public int getBookCount() {
+        return books.size();
+    }
+
+    public int getUserCount() {
+        return users.size();
+    }
+
+    public int getLoanCount() {
+        return loans.size();
+    }
+
+    public Stream<BookDto> books() {
+        return books.values();
+    }
+
+    public Stream<UserDto> users() {
+        return users.values();
+    }
+
+    public Stream<Journal> loans() {
+        return loans.values();
+    }
+
+    /**
+     * Выдачи книг указанного жанра. Выдачи книг, которых нет в снимке, не учитываются
+     *
+     * @param bookGenre жанр
+     * @return поток выдач
+     */
+    public Stream<Journal> loansByGenre(BookGenre bookGenre) {
+        return loans().filter(journal -> bookGenre != null && bookGenre == genreOf(journal));
+    }
+
+    /**
+     * Количество выдач по жанрам. Выдачи книг, которых нет в снимке или у которых не указан жанр, не учитываются
+     *
+     * @return количество выдач для каждого жанра, у которого они есть
+     */
+    public Map<BookGenre, Long> countLoansByGenre() {
+        return loans().map(this::genreOf)
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(Function.identity(), () -> new EnumMap<>(BookGenre.class),
+                        Collectors.counting()));
+    }
+
+    /**
+     * Жанр книги выдачи
+     *
+     * @return жанр или null, если книги нет в снимке
+     */
+    private BookGenre genreOf(Journal journal) {
+        BookDto bookDto = books.get(journal.getBookID());
+        return bookDto == null ? null : bookDto.getBookGenre();
+    }
+
+    /**
+     * Пользователи, у которых на руках больше указанного количества книг
+     *
+     * @param booksCount количество книг
+     * @return пользователи в порядке хешей ID
+     */
+    public List<UserDto> usersWithMoreThan(int booksCount) {
+        List<UserDto> found = new ArrayList<>();
+        loansByUser.entries()
+                .filter(entry -> entry.getValue().size() > booksCount)
+                .forEach(entry -> found.add(users.get(entry.getKey())));
+        return found;
+    }
+
+    /**
+     * Книги, которые ни разу не выдавались с момента начала ведения снимков.
+     * Выдачи, завершённые до первого снимка, неизвестны
+     *
+     * @return поток книг
+     */
+    public Stream<BookDto> booksNeverLent() {
+        return books().filter(bookDto -> !lentBooks.containsKey(bookDto.getID()));
+    }
+}
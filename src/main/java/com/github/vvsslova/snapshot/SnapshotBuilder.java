@@ -0,0 +1,147 @@
+package com.github.vvsslova.snapshot;
+
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import com.github.vvsslova.storage.Mutation;
+
+/**
+ * Последовательное применение изменений к неизменяемым таблицам снимка.
+ * Изменения применяются идемпотентно, как при восстановлении из хранилища,
+ * так как начальное состояние может уже содержать результат части применяемых изменений.
+ * Используется одним потоком
+ */
+final class SnapshotBuilder {
+    private PersistentMap<String, BookDto> books = PersistentMap.empty();
+    private PersistentMap<String, UserDto> users = PersistentMap.empty();
+    private PersistentMap<String, Journal> loans = PersistentMap.empty();
+    private PersistentMap<String, PersistentMap<String, Journal>> loansByUser = PersistentMap.empty();
+    private PersistentMap<String, Boolean> lentBooks = PersistentMap.empty();
+
+    /**
+     * @param version номер последнего применённого изменения
+     * @return снимок текущего состояния
+     */
+    LibrarySnapshot build(long version) {
+        return new LibrarySnapshot(version, books, users, loans, loansByUser, lentBooks);
+    }
+
+    void apply(Mutation mutation) {
+        String bookID = mutation.getBookID();
+        String userID = mutation.getUserID();
+        BookDto bookDto = bookID == null ? null : books.get(bookID);
+        UserDto userDto = userID == null ? null : users.get(userID);
+        switch (mutation.getType()) {
+            case ADD_BOOK:
+                if (bookDto == null) {
+                    books = books.put(bookID, new BookDto(bookID, mutation.getTitle(), mutation.getAuthor(),
+                            mutation.getBookGenre()));
+                }
+                break;
+            case REMOVE_BOOK:
+                removeLoan(bookID);
+                books = books.remove(bookID);
+                lentBooks = lentBooks.remove(bookID);
+                break;
+            case CHANGE_BOOK_AUTHOR:
+                if (bookDto != null) {
+                    books = books.put(bookID, new BookDto(bookID, bookDto.getTitle(), mutation.getAuthor(),
+                            bookDto.getBookGenre()));
+                }
+                break;
+            case CHANGE_BOOK_TITLE:
+                if (bookDto != null) {
+                    books = books.put(bookID, new BookDto(bookID, mutation.getTitle(), bookDto.getAuthor(),
+                            bookDto.getBookGenre()));
+                }
+                break;
+            case CHANGE_BOOK_GENRE:
+                if (bookDto != null) {
+                    books = books.put(bookID, new BookDto(bookID, bookDto.getTitle(), bookDto.getAuthor(),
+                            mutation.getBookGenre()));
+                }
+                break;
+            case ADD_USER:
+                if (userDto == null) {
+                    users = users.put(userID, new UserDto(userID, mutation.getName(), mutation.getSurname(),
+                            mutation.getPhoneNumber()));
+                }
+                break;
+            case REMOVE_USER:
+                PersistentMap<String, Journal> userLoans = loansByUser.get(userID);
+                if (userLoans != null) {
+                    userLoans.entries().forEach(entry -> loans = loans.remove(entry.getKey()));
+                    loansByUser = loansByUser.remove(userID);
+                }
+                users = users.remove(userID);
+                break;
+            case CHANGE_USER_PHONE:
+                if (userDto != null) {
+                    users = users.put(userID, new UserDto(userID, userDto.getName(), userDto.getSurname(),
+                            mutation.getPhoneNumber()));
+                }
+                break;
+            case CHANGE_USER_NAME:
+                if (userDto != null) {
+                    users = users.put(userID, new UserDto(userID, mutation.getName(), userDto.getSurname(),
+                            userDto.getPhoneNumber()));
+                }
+                break;
+            case CHANGE_USER_SURNAME:
+                if (userDto != null) {
+                    users = users.put(userID, new UserDto(userID, userDto.getName(), mutation.getSurname(),
+                            userDto.getPhoneNumber()));
+                }
+                break;
+            case LEND_BOOK:
+                removeLoan(bookID);
+                putLoan(new Journal(bookID, userID, mutation.getTitle(), mutation.getLendDate(),
+                        mutation.getReturnDate()));
+                lentBooks = lentBooks.put(bookID, Boolean.TRUE);
+                break;
+            case RETURN_BOOK:
+                if (isLentTo(bookID, userID)) {
+                    removeLoan(bookID);
+                }
+                break;
+            case CHANGE_RETURN_DATE:
+                if (isLentTo(bookID, userID)) {
+                    Journal journal = loans.get(bookID);
+                    putLoan(new Journal(bookID, userID, journal.getBookTitle(), journal.getLendDate(),
+                            mutation.getReturnDate()));
+                }
+                break;
+            case PLACE_HOLD:
+            case CANCEL_HOLD:
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mutation " + mutation.getType());
+        }
+    }
+
+    private boolean isLentTo(String bookID, String userID) {
+        Journal journal = loans.get(bookID);
+        return journal != null && journal.getUserID().equals(userID);
+    }
+
+    private void putLoan(Journal journal) {
+        loans = loans.put(journal.getBookID(), journal);
+        PersistentMap<String, Journal> userLoans = loansByUser.get(journal.getUserID());
+        if (userLoans == null) {
+            userLoans = PersistentMap.empty();
+        }
+        loansByUser = loansByUser.put(journal.getUserID(), userLoans.put(journal.getBookID(), journal));
+    }
+
+    private void removeLoan(String bookID) {
+        Journal journal = loans.get(bookID);
+        if (journal == null) {
+            return;
+        }
+        loans = loans.remove(bookID);
+        PersistentMap<String, Journal> userLoans = loansByUser.get(journal.getUserID()).remove(bookID);
+        loansByUser = userLoans.isEmpty()
+                ? loansByUser.remove(journal.getUserID())
+                : loansByUser.put(journal.getUserID(), userLoans);
+    }
+}
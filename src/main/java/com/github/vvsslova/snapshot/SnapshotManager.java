@@ -0,0 +1,193 @@
+package com.github.vvsslova.snapshot;
+
+import com.github.vvsslova.storage.Mutation;
+import com.github.vvsslova.storage.SnapshotSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ведение снимков состояния библиотеки. Операции под своими блокировками только получают номер изменения
+ * и ставят изменение в очередь. Фоновый поток и читатели применяют изменения по порядку номеров
+ * к неизменяемым таблицам {@link PersistentMap} и публикуют новый {@link LibrarySnapshot},
+ * поэтому получение снимка не копирует состояние и не останавливает операции
+ */
+@Slf4j
+public class SnapshotManager implements Closeable {
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final AtomicLong published;
+    private final Queue<Change> queue;
+    private final ReentrantLock applyLock;
+    private final Map<Long, List<Mutation>> outOfOrder;
+    private final Thread applier;
+
+    private SnapshotBuilder builder;
+    private long applied;
+    private volatile boolean publishing;
+    private volatile LibrarySnapshot current;
+    private volatile boolean closed;
+
+    public SnapshotManager() {
+        this.published = new AtomicLong();
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.applyLock = new ReentrantLock();
+        this.outOfOrder = new HashMap<>();
+        this.builder = new SnapshotBuilder();
+        this.applier = new Thread(this::applyPeriodically, "library-snapshots");
+        this.applier.setDaemon(true);
+    }
+
+    /**
+     * Построение начального состояния и запуск фонового применения изменений, если они ещё не запущены.
+     * Изменения, опубликованные во время выгрузки, применяются поверх неё, поэтому источник может выгружать
+     * состояние без общей блокировки, но каждую книгу и каждого пользователя — под их блокировкой.
+     * Если выгрузка не удалась, публикация изменений прекращается, частично построенное состояние
+     * отбрасывается и запуск можно повторить
+     *
+     * @param source источник текущего состояния
+     */
+    public synchronized void start(SnapshotSource source) {
+        if (publishing) {
+            return;
+        }
+        publishing = true;
+        applyLock.lock();
+        try {
+            source.captureState(builder::apply);
+            applyUpTo(published.get());
+        } catch (RuntimeException e) {
+            publishing = false;
+            builder = new SnapshotBuilder();
+            queue.clear();
+            outOfOrder.clear();
+            applied = published.get();
+            throw e;
+        } finally {
+            applyLock.unlock();
+        }
+        applier.start();
+    }
+
+    public boolean isStarted() {
+        return current != null;
+    }
+
+    /**
+     * Публикация изменения. Вызывается под блокировками изменённых книг и пользователей,
+     * поэтому изменения одной книги или пользователя получают номера в порядке выполнения.
+     * До запуска снимков изменения не публикуются
+     *
+     * @param mutations изменения одной операции, применяемые вместе
+     */
+    public void publish(List<Mutation> mutations) {
+        if (!publishing) {
+            return;
+        }
+        long version = published.incrementAndGet();
+        queue.add(new Change(version, mutations));
+    }
+
+    /**
+     * Снимок, включающий все изменения, опубликованные до вызова. Недостающие изменения применяются
+     * в потоке вызова
+     *
+     * @return согласованный снимок
+     */
+    public LibrarySnapshot snapshot() {
+        long target = published.get();
+        LibrarySnapshot snapshot = latest();
+        if (snapshot.getVersion() >= target) {
+            return snapshot;
+        }
+        applyLock.lock();
+        try {
+            applyUpTo(target);
+            return current;
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    /**
+     * Последний опубликованный снимок без ожидания применения накопленных изменений
+     *
+     * @return согласованный, возможно отстающий снимок
+     */
+    public LibrarySnapshot latest() {
+        LibrarySnapshot snapshot = current;
+        if (snapshot == null) {
+            throw new IllegalStateException("Snapshots are not started");
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(applier);
+    }
+
+    private void applyPeriodically() {
+        while (!closed) {
+            LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+            applyLock.lock();
+            try {
+                applyUpTo(published.get());
+            } catch (RuntimeException e) {
+                log.error("Не удалось применить изменения к снимку", e);
+            } finally {
+                applyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Применение изменений по порядку номеров. Номер занимается до постановки в очередь,
+     * поэтому изменения могут приходить не по порядку и ожидают предыдущих
+     *
+     * @param target номер изменения, до которого нужно применить все изменения
+     */
+    private void applyUpTo(long target) {
+        long before = applied;
+        while (applied < target) {
+            Change change = queue.poll();
+            if (change == null) {
+                Thread.yield();
+                continue;
+            }
+            if (change.version > applied) {
+                outOfOrder.put(change.version, change.mutations);
+            }
+            List<Mutation> next;
+            while ((next = outOfOrder.remove(applied + 1)) != null) {
+                for (Mutation mutation : next) {
+                    builder.apply(mutation);
+                }
+                applied++;
+            }
+        }
+        if (applied != before || current == null) {
+            current = builder.build(applied);
+        }
+    }
+
+    private static final class Change {
+        private final long version;
+        private final List<Mutation> mutations;
+
+        private Change(long version, List<Mutation> mutations) {
+            this.version = version;
+            this.mutations = mutations;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.github.vvsslova.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Файловое хранилище: журнал упреждающей записи с групповой фиксацией и периодические снимки состояния.
+ * <p>
+ * Журнал разбит на сегменты {@code wal-<первый номер>.log}. Запись журнала: длина, CRC32, номер и одно или несколько изменений пакета.
+ * Фоновый поток собирает накопившиеся изменения в пакет и выполняет один fsync на весь пакет.
+ * Снимок {@code snapshot-<номер>.snap} содержит состояние на момент начала выгрузки, после его записи
+ * полностью покрытые им сегменты удаляются, и восстановление читает только хвост журнала
+ */
+@Slf4j
+public class FileStorageEngine implements StorageEngine {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOT_MAGIC = 0x4C534E50;
+    private static final int SNAPSHOT_END = -1;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final long SNAPSHOT_CHECK_MILLIS = 1_000;
+
+    public static final int DEFAULT_MAX_BATCH = 4_096;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final long DEFAULT_SNAPSHOT_EVERY = 1_000_000;
+
+    private final Path directory;
+    private final int maxBatch;
+    private final long segmentBytes;
+    private final long snapshotEvery;
+    private final BlockingQueue<PendingRecord> pending;
+    private final Object appendLock = new Object();
+    private final Object segmentLock = new Object();
+    private final Object durableLock = new Object();
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+
+    private volatile long lastSequence;
+    private volatile long durableSequence;
+    private volatile long snapshotSequence;
+    private volatile IOException failure;
+    private volatile boolean recovered;
+    private volatile boolean closed;
+    private volatile SnapshotSource snapshotSource;
+
+    private FileChannel segment;
+    private long segmentSize;
+    private long writtenSequence;
+    private Thread writer;
+    private ScheduledExecutorService snapshotScheduler;
+
+    public FileStorageEngine(Path directory) {
+        this(directory, DEFAULT_MAX_BATCH, DEFAULT_SEGMENT_BYTES, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    /**
+     * @param directory     каталог журнала и снимков
+     * @param maxBatch      максимальное количество изменений в одном fsync
+     * @param segmentBytes  размер сегмента журнала, после которого начинается новый
+     * @param snapshotEvery количество изменений, после которого автоматически записывается снимок
+     */
+    public FileStorageEngine(Path directory, int maxBatch, long segmentBytes, long snapshotEvery) {
+        this.directory = directory;
+        this.maxBatch = maxBatch;
+        this.segmentBytes = segmentBytes;
+        this.snapshotEvery = snapshotEvery;
+        this.pending = new ArrayBlockingQueue<>(maxBatch * 16);
+    }
+
+    @Override
+    public void recover(Consumer<Mutation> replay) throws IOException {
+        if (recovered) {
+            throw new IllegalStateException("Storage is already recovered");
+        }
+        Files.createDirectories(directory);
+        long snapshotSeq = 0;
+        List<Long> snapshots = listSequences(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            snapshotSeq = snapshots.get(snapshots.size() - 1);
+            readSnapshot(fileName(SNAPSHOT_PREFIX, snapshotSeq, SNAPSHOT_SUFFIX), replay);
+        }
+        long last = snapshotSeq;
+        List<Long> segments = listSequences(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (int i = 0; i < segments.size(); i++) {
+            boolean coveredBySnapshot = i + 1 < segments.size() && segments.get(i + 1) - 1 <= snapshotSeq;
+            if (!coveredBySnapshot) {
+                last = Math.max(last, readSegment(fileName(SEGMENT_PREFIX, segments.get(i), SEGMENT_SUFFIX),
+                        snapshotSeq, replay));
+            }
+        }
+        lastSequence = last;
+        durableSequence = last;
+        writtenSequence = last;
+        snapshotSequence = snapshotSeq;
+        openSegment(last + 1);
+        recovered = true;
+        log.info("Состояние восстановлено: снимок {}, последнее изменение {}", snapshotSeq, last);
+
+        writer = new Thread(this::writeLoop, "storage-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::checkpointIfDue,
+                SNAPSHOT_CHECK_MILLIS, SNAPSHOT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long append(Mutation mutation) {
+        checkWritable();
+        return enqueue(MutationCodec.encode(mutation));
+    }
+
+    /**
+     * Запись пакета изменений. Изменения записываются подряд после номера одной записи журнала;
+     * пакет, не помещающийся в одну запись, записывается по одной записи на изменение
+     */
+    @Override
+    public long appendAll(List<Mutation> mutations) {
+        checkWritable();
+        byte[] payload = MutationCodec.encodeAll(mutations);
+        if (payload.length + Long.BYTES <= MAX_RECORD_BYTES) {
+            return enqueue(payload);
+        }
+        long sequence = lastSequence;
+        for (Mutation mutation : mutations) {
+            sequence = enqueue(MutationCodec.encode(mutation));
+        }
+        return sequence;
+    }
+
+    private long enqueue(byte[] payload) {
+        synchronized (appendLock) {
+            long sequence = lastSequence + 1;
+            try {
+                pending.put(new PendingRecord(sequence, payload));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while appending to the write-ahead log", e);
+            }
+            lastSequence = sequence;
+            return sequence;
+        }
+    }
+
+    @Override
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) throws InterruptedException {
+        synchronized (durableLock) {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new UncheckedIOException(failure);
+                }
+                durableLock.wait();
+            }
+        }
+    }
+
+    @Override
+    public void attachSnapshotSource(SnapshotSource snapshotSource) {
+        this.snapshotSource = snapshotSource;
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        SnapshotSource source = snapshotSource;
+        if (source == null || !recovered) {
+            return;
+        }
+        checkpointLock.lock();
+        try {
+            synchronized (segmentLock) {
+                if (segmentSize > 0) {
+                    rollSegment();
+                }
+            }
+            long sequence = lastSequence;
+            Path snapshot = fileName(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX);
+            Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+            long count = writeSnapshot(temporary, sequence, source);
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            snapshotSequence = sequence;
+            deleteObsoleteFiles(sequence);
+            log.info("Записан снимок состояния {}: {} записей", sequence, count);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (segmentLock) {
+            if (segment != null) {
+                segment.close();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkWritable() {
+        if (!recovered) {
+            throw new IllegalStateException("Storage must be recovered before appending");
+        }
+        if (closed) {
+            throw new IllegalStateException("Storage is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void checkpointIfDue() {
+        if (lastSequence - snapshotSequence < snapshotEvery) {
+            return;
+        }
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            log.error("Не удалось записать снимок состояния", e);
+        }
+    }
+
+    /**
+     * Фоновая групповая фиксация: всё, что накопилось за время предыдущего fsync, пишется одним пакетом
+     */
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatch);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        CRC32 crc = new CRC32();
+        while (true) {
+            PendingRecord first;
+            try {
+                first = pending.poll(SNAPSHOT_CHECK_MILLIS / 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = pending.poll();
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            pending.drainTo(batch, maxBatch - 1);
+            try {
+                buffer = writeBatch(batch, buffer, crc);
+            } catch (IOException e) {
+                log.error("Ошибка записи журнала", e);
+                failure = e;
+                synchronized (durableLock) {
+                    durableLock.notifyAll();
+                }
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    private ByteBuffer writeBatch(List<PendingRecord> batch, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.clear();
+        for (PendingRecord record : batch) {
+            int recordBytes = RECORD_HEADER_BYTES + Long.BYTES + record.payload.length;
+            if (buffer.remaining() < recordBytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + recordBytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            int header = buffer.position();
+            buffer.position(header + RECORD_HEADER_BYTES);
+            int start = buffer.position();
+            buffer.putLong(record.sequence);
+            buffer.put(record.payload);
+            crc.reset();
+            crc.update(buffer.array(), start, buffer.position() - start);
+            buffer.putInt(header, buffer.position() - start);
+            buffer.putInt(header + Integer.BYTES, (int) crc.getValue());
+        }
+        buffer.flip();
+        long lastInBatch = batch.get(batch.size() - 1).sequence;
+        synchronized (segmentLock) {
+            segmentSize += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+            writtenSequence = lastInBatch;
+            if (segmentSize >= segmentBytes) {
+                rollSegment();
+            }
+        }
+        synchronized (durableLock) {
+            durableSequence = lastInBatch;
+            durableLock.notifyAll();
+        }
+        return buffer;
+    }
+
+    private void rollSegment() throws IOException {
+        segment.close();
+        openSegment(writtenSequence + 1);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        segment = FileChannel.open(fileName(SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentSize = 0;
+    }
+
+    private long readSegment(Path path, long afterSequence, Consumer<Mutation> replay) throws IOException {
+        long last = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < Long.BYTES || length > MAX_RECORD_BYTES) {
+                        log.warn("Повреждённая запись в {}, чтение сегмента остановлено", path);
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        log.warn("Несовпадение CRC в {}, чтение сегмента остановлено", path);
+                        break;
+                    }
+                    DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                    long sequence = recordIn.readLong();
+                    while (sequence > afterSequence && recordIn.available() > 0) {
+                        replay.accept(MutationCodec.read(recordIn));
+                    }
+                    last = sequence;
+                } catch (EOFException e) {
+                    log.warn("Незавершённая запись в конце {}", path);
+                    break;
+                }
+            }
+        }
+        return last;
+    }
+
+    private long writeSnapshot(Path path, long sequence, SnapshotSource source) throws IOException {
+        long[] count = {0};
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            try {
+                source.captureState(mutation -> {
+                    try {
+                        byte[] bytes = MutationCodec.encode(mutation);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeInt(SNAPSHOT_END);
+            out.writeLong(count[0]);
+            out.flush();
+            channel.force(true);
+        }
+        return count[0];
+    }
+
+    private void readSnapshot(Path path, Consumer<Mutation> replay) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            in.readLong();
+            long count = 0;
+            int length;
+            while ((length = in.readInt()) != SNAPSHOT_END) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                replay.accept(MutationCodec.decode(bytes));
+                count++;
+            }
+            if (in.readLong() != count) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+        }
+    }
+
+    private void deleteObsoleteFiles(long snapshotSeq) throws IOException {
+        List<Long> segments = listSequences(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1) - 1 <= snapshotSeq) {
+                Files.deleteIfExists(fileName(SEGMENT_PREFIX, segments.get(i), SEGMENT_SUFFIX));
+            }
+        }
+        for (long snapshot : listSequences(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (snapshot < snapshotSeq) {
+                Files.deleteIfExists(fileName(SNAPSHOT_PREFIX, snapshot, SNAPSHOT_SUFFIX));
+            }
+        }
+    }
+
+    private List<Long> listSequences(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path fileName(String prefix, long sequence, String suffix) {
+        return directory.resolve(String.format("%s%020d%s", prefix, sequence, suffix));
+    }
+
+    private static class PendingRecord {
+        private final long sequence;
+        private final byte[] payload;
+
+        private PendingRecord(long sequence, byte[] payload) {
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+    }
+}
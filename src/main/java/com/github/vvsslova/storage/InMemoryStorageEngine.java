@@ -0,0 +1,47 @@
+package com.github.vvsslova.storage;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище без сохранения на диск: состояние живёт только в памяти процесса
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public void recover(Consumer<Mutation> replay) {
+    }
+
+    @Override
+    public long append(Mutation mutation) {
+        return sequence.incrementAndGet();
+    }
+
+    @Override
+    public long appendAll(List<Mutation> mutations) {
+        return sequence.incrementAndGet();
+    }
+
+    @Override
+    public long lastSequence() {
+        return sequence.get();
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+    }
+
+    @Override
+    public void attachSnapshotSource(SnapshotSource snapshotSource) {
+    }
+
+    @Override
+    public void checkpoint() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
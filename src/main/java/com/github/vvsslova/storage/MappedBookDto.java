@@ -0,0 +1,47 @@
+package com.github.vvsslova.storage;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+
+/**
+ * Представление книги из {@link MappedBookStore}: хранит только ID, поля читаются из файла при каждом обращении,
+ * а изменения сразу записываются в файл. После удаления книги поля возвращают null
+ */
+class MappedBookDto extends BookDto {
+    private final MappedBookStore store;
+
+    MappedBookDto(MappedBookStore store, String ID) {
+        super(ID, null, null, null);
+        this.store = store;
+    }
+
+    @Override
+    public String getTitle() {
+        return store.readTitle(getID());
+    }
+
+    @Override
+    public String getAuthor() {
+        return store.readAuthor(getID());
+    }
+
+    @Override
+    public BookGenre getBookGenre() {
+        return store.readGenre(getID());
+    }
+
+    @Override
+    public void setTitle(String title) {
+        store.update(getID(), title, null, null, MappedBookStore.Field.TITLE);
+    }
+
+    @Override
+    public void setAuthor(String author) {
+        store.update(getID(), null, author, null, MappedBookStore.Field.AUTHOR);
+    }
+
+    @Override
+    public void setBookGenre(BookGenre bookGenre) {
+        store.update(getID(), null, null, bookGenre, MappedBookStore.Field.GENRE);
+    }
+}
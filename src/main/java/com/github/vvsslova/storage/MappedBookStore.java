@@ -0,0 +1,634 @@
+package com.github.vvsslova.storage;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Каталог книг в отображаемых в память файлах вне кучи. Записи книг лежат в файле данных
+ * в ячейках размером от 64 байт до 64 КиБ (степени двойки), освобождённые ячейки переиспользуются
+ * через списки свободных ячеек своего размера. Файл данных отображается сегментами, поэтому каталог
+ * может быть больше кучи. ID связан со смещением записи хэш-таблицей с открытой адресацией
+ * в отдельном отображаемом файле. При открытии файлы только отображаются, без чтения записей.
+ * <p>
+ * {@link #get(Object)} возвращает лёгкое представление {@link BookDto}, которое читает поля из файла
+ * при каждом обращении, а изменение полей представления сразу изменяет запись: на месте, если она помещается
+ * в свою ячейку, иначе запись переносится в ячейку большего размера.
+ * <p>
+ * Каталог сам хранит свои записи, поэтому снимки журнала изменений не содержат книг такого каталога:
+ * перед снимком файлы записываются на диск через {@link #flush()}
+ */
+public class MappedBookStore extends AbstractMap<String, BookDto> implements Closeable, Flushable {
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    private static final String DATA_FILE = "books.dat";
+    private static final String INDEX_FILE = "books.idx";
+    private static final int MAGIC = 0x4C494242;
+    private static final int VERSION = 1;
+    private static final int DATA_HEADER_SIZE = 4096;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_END = 8;
+    private static final int HEADER_COUNT = 16;
+    private static final int HEADER_SEGMENT_SIZE = 24;
+    private static final int HEADER_FREE_LISTS = 32;
+    private static final int MIN_SLOT_SHIFT = 6;
+    private static final int SIZE_CLASSES = 11;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int NULL_LENGTH = -1;
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int INDEX_CAPACITY = 8;
+    private static final int INDEX_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    private final Path directory;
+    private final FileChannel data;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments;
+    private final ReadWriteLock lock;
+    private MappedByteBuffer index;
+    private long indexCapacity;
+
+    /**
+     * Открытие или создание каталога в директории
+     *
+     * @param directory директория файлов каталога
+     */
+    public MappedBookStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedBookStore(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.data = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segments = new ArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
+        boolean created = data.size() == 0;
+        if (created) {
+            this.segmentSize = segmentSize;
+            mapSegments(1);
+            MappedByteBuffer header = segments.get(0);
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.putInt(HEADER_MAGIC + 4, VERSION);
+            header.putLong(HEADER_END, DATA_HEADER_SIZE);
+            header.putLong(HEADER_COUNT, 0);
+            header.putLong(HEADER_SEGMENT_SIZE, segmentSize);
+            createIndex(directory.resolve(INDEX_FILE), INITIAL_INDEX_CAPACITY);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_FREE_LISTS);
+            data.read(header, 0);
+            if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_MAGIC + 4) != VERSION) {
+                throw new IOException("Unsupported book store format: " + directory);
+            }
+            this.segmentSize = (int) header.getLong(HEADER_SEGMENT_SIZE);
+            mapSegments((int) Math.max(1, data.size() / segmentSize));
+        }
+        mapIndex();
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return (int) segments.get(0).getLong(HEADER_COUNT);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return find(encode((String) key)) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Представление книги, читающее поля из файла
+     *
+     * @param key ID книги
+     * @return представление или null, если книги нет
+     */
+    @Override
+    public BookDto get(Object key) {
+        return containsKey(key) ? new MappedBookDto(this, (String) key) : null;
+    }
+
+    @Override
+    public BookDto put(String key, BookDto value) {
+        lock.writeLock().lock();
+        try {
+            BookDto previous = remove(key);
+            insert(key, value.getTitle(), value.getAuthor(), value.getBookGenre());
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public BookDto putIfAbsent(String key, BookDto value) {
+        lock.writeLock().lock();
+        try {
+            if (find(encode(key)) >= 0) {
+                return new MappedBookDto(this, key);
+            }
+            insert(key, value.getTitle(), value.getAuthor(), value.getBookGenre());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаление книги
+     *
+     * @param key ID книги
+     * @return копия удалённой книги в куче или null, если книги не было
+     */
+    @Override
+    public BookDto remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            long entry = find(encode((String) key));
+            if (entry < 0) {
+                return null;
+            }
+            long offset = index.getLong(entryPosition(entry));
+            BookDto removed = readRecord((String) key, offset);
+            deleteEntry(entry);
+            free(offset);
+            MappedByteBuffer header = segments.get(0);
+            header.putLong(HEADER_COUNT, header.getLong(HEADER_COUNT) - 1);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Записи в порядке хэш-таблицы. Итератор обходит ID, существовавшие в момент его создания,
+     * и пропускает книги, удалённые до того, как он до них дошёл
+     */
+    @Override
+    public Set<Entry<String, BookDto>> entrySet() {
+        return new AbstractSet<Entry<String, BookDto>>() {
+            @Override
+            public Iterator<Entry<String, BookDto>> iterator() {
+                return new EntryIterator(keys());
+            }
+
+            @Override
+            public int size() {
+                return MappedBookStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Запись изменений отображаемых файлов на диск
+     */
+    public void force() {
+        lock.readLock().lock();
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            index.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        data.close();
+    }
+
+    String readTitle(String key) {
+        return readField(key, Field.TITLE);
+    }
+
+    String readAuthor(String key) {
+        return readField(key, Field.AUTHOR);
+    }
+
+    BookGenre readGenre(String key) {
+        lock.readLock().lock();
+        try {
+            long entry = find(encode(key));
+            if (entry < 0) {
+                return null;
+            }
+            long offset = index.getLong(entryPosition(entry));
+            int genre = buffer(offset).get(position(offset) + 1);
+            return genre == 0 ? null : GENRES[genre - 1];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Изменение поля записи на месте или с переносом в ячейку большего размера
+     */
+    void update(String key, String title, String author, BookGenre bookGenre, Field field) {
+        lock.writeLock().lock();
+        try {
+            long entry = find(encode(key));
+            if (entry < 0) {
+                return;
+            }
+            long offset = index.getLong(entryPosition(entry));
+            BookDto current = readRecord(key, offset);
+            byte[] record = encodeRecord(key,
+                    field == Field.TITLE ? title : current.getTitle(),
+                    field == Field.AUTHOR ? author : current.getAuthor(),
+                    field == Field.GENRE ? bookGenre : current.getBookGenre());
+            int sizeClass = buffer(offset).get(position(offset));
+            if (record.length <= slotSize(sizeClass)) {
+                write(offset, sizeClass, record);
+                return;
+            }
+            long moved = allocate(record.length);
+            write(moved, sizeClassOf(record.length), record);
+            index.putLong(entryPosition(entry), moved);
+            free(offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private String readField(String key, Field field) {
+        lock.readLock().lock();
+        try {
+            long entry = find(encode(key));
+            if (entry < 0) {
+                return null;
+            }
+            BookDto record = readRecord(key, index.getLong(entryPosition(entry)));
+            return field == Field.TITLE ? record.getTitle() : record.getAuthor();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String key, String title, String author, BookGenre bookGenre) {
+        byte[] record = encodeRecord(key, title, author, bookGenre);
+        long offset = allocate(record.length);
+        write(offset, sizeClassOf(record.length), record);
+        MappedByteBuffer header = segments.get(0);
+        long count = header.getLong(HEADER_COUNT);
+        if (count + 1 > indexCapacity * MAX_LOAD) {
+            resizeIndex(indexCapacity * 2);
+        }
+        int hash = hash(encode(key));
+        long entry = hash & (indexCapacity - 1);
+        while (index.getLong(entryPosition(entry)) != 0) {
+            entry = (entry + 1) & (indexCapacity - 1);
+        }
+        index.putInt(entryPosition(entry) + 8, hash);
+        index.putLong(entryPosition(entry), offset);
+        index.putLong(INDEX_SIZE, count + 1);
+        header.putLong(HEADER_COUNT, count + 1);
+    }
+
+    /**
+     * Поиск записи хэш-таблицы
+     *
+     * @param key ID книги в UTF-8
+     * @return номер записи хэш-таблицы или -1
+     */
+    private long find(byte[] key) {
+        int hash = hash(key);
+        long entry = hash & (indexCapacity - 1);
+        long offset;
+        while ((offset = index.getLong(entryPosition(entry))) != 0) {
+            if (index.getInt(entryPosition(entry) + 8) == hash && keyEquals(offset, key)) {
+                return entry;
+            }
+            entry = (entry + 1) & (indexCapacity - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Удаление записи хэш-таблицы со сдвигом следующих записей цепочки, без пометок удаления
+     */
+    private void deleteEntry(long entry) {
+        long mask = indexCapacity - 1;
+        long hole = entry;
+        long next = (hole + 1) & mask;
+        while (index.getLong(entryPosition(next)) != 0) {
+            long home = index.getInt(entryPosition(next) + 8) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index.putLong(entryPosition(hole), index.getLong(entryPosition(next)));
+                index.putInt(entryPosition(hole) + 8, index.getInt(entryPosition(next) + 8));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index.putLong(entryPosition(hole), 0);
+        index.putInt(entryPosition(hole) + 8, 0);
+        index.putLong(INDEX_SIZE, index.getLong(INDEX_SIZE) - 1);
+    }
+
+    private void resizeIndex(long capacity) {
+        try {
+            Path resized = directory.resolve(INDEX_FILE + ".tmp");
+            MappedByteBuffer target = createIndex(resized, capacity);
+            long mask = capacity - 1;
+            for (long entry = 0; entry < indexCapacity; entry++) {
+                long offset = index.getLong(entryPosition(entry));
+                if (offset != 0) {
+                    int hash = index.getInt(entryPosition(entry) + 8);
+                    long slot = hash & mask;
+                    while (target.getLong(entryPosition(slot)) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    target.putLong(entryPosition(slot), offset);
+                    target.putInt(entryPosition(slot) + 8, hash);
+                }
+            }
+            target.putLong(INDEX_SIZE, index.getLong(INDEX_SIZE));
+            target.force();
+            Files.move(resized, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            index = target;
+            indexCapacity = capacity;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot resize book index", e);
+        }
+    }
+
+    private MappedByteBuffer createIndex(Path file, long capacity) throws IOException {
+        long size = INDEX_HEADER_SIZE + capacity * INDEX_ENTRY_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Book index is full");
+        }
+        Files.deleteIfExists(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(INDEX_CAPACITY, capacity);
+            buffer.putLong(INDEX_SIZE, 0);
+            return buffer;
+        }
+    }
+
+    private void mapIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            throw new IOException("Unsupported book index format: " + directory);
+        }
+        indexCapacity = index.getLong(INDEX_CAPACITY);
+    }
+
+    private long allocate(int recordSize) {
+        int sizeClass = sizeClassOf(recordSize);
+        MappedByteBuffer header = segments.get(0);
+        int freeList = HEADER_FREE_LISTS + sizeClass * 8;
+        long offset = header.getLong(freeList);
+        if (offset != 0) {
+            header.putLong(freeList, buffer(offset).getLong(position(offset) + RECORD_HEADER_SIZE));
+            return offset;
+        }
+        int slot = slotSize(sizeClass);
+        offset = header.getLong(HEADER_END);
+        if (offset % segmentSize + slot > segmentSize) {
+            offset = (offset / segmentSize + 1) * segmentSize;
+        }
+        mapSegments((int) (offset / segmentSize) + 1);
+        header.putLong(HEADER_END, offset + slot);
+        return offset;
+    }
+
+    private void free(long offset) {
+        ByteBuffer buffer = buffer(offset);
+        int position = position(offset);
+        int sizeClass = buffer.get(position);
+        MappedByteBuffer header = segments.get(0);
+        int freeList = HEADER_FREE_LISTS + sizeClass * 8;
+        buffer.putShort(position + 2, (short) 0);
+        buffer.putLong(position + RECORD_HEADER_SIZE, header.getLong(freeList));
+        header.putLong(freeList, offset);
+    }
+
+    private void write(long offset, int sizeClass, byte[] record) {
+        ByteBuffer target = buffer(offset).duplicate();
+        target.position(position(offset));
+        target.put(record);
+        buffer(offset).put(position(offset), (byte) sizeClass);
+    }
+
+    private BookDto readRecord(String key, long offset) {
+        ByteBuffer buffer = buffer(offset);
+        int position = position(offset);
+        int genre = buffer.get(position + 1);
+        int idLength = buffer.getShort(position + 2);
+        int titleLength = buffer.getShort(position + 4);
+        int authorLength = buffer.getShort(position + 6);
+        int start = position + RECORD_HEADER_SIZE + idLength;
+        String title = readString(buffer, start, titleLength);
+        String author = readString(buffer, start + Math.max(0, titleLength), authorLength);
+        return new BookDto(key, title, author, genre == 0 ? null : GENRES[genre - 1]);
+    }
+
+    private boolean keyEquals(long offset, byte[] key) {
+        ByteBuffer buffer = buffer(offset);
+        int position = position(offset);
+        if (buffer.getShort(position + 2) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(position + RECORD_HEADER_SIZE + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> keys() {
+        lock.readLock().lock();
+        try {
+            List<String> keys = new ArrayList<>((int) index.getLong(INDEX_SIZE));
+            for (long entry = 0; entry < indexCapacity; entry++) {
+                long offset = index.getLong(entryPosition(entry));
+                if (offset != 0) {
+                    ByteBuffer buffer = buffer(offset);
+                    int position = position(offset);
+                    keys.add(readString(buffer, position + RECORD_HEADER_SIZE, buffer.getShort(position + 2)));
+                }
+            }
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static byte[] encodeRecord(String key, String title, String author, BookGenre bookGenre) {
+        byte[] id = encode(key);
+        byte[] titleBytes = title == null ? null : title.getBytes(StandardCharsets.UTF_8);
+        byte[] authorBytes = author == null ? null : author.getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_HEADER_SIZE + id.length + (titleBytes == null ? 0 : titleBytes.length)
+                + (authorBytes == null ? 0 : authorBytes.length);
+        if (size > slotSize(SIZE_CLASSES - 1)) {
+            throw new IllegalArgumentException("Book record is too large: " + size + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.put((byte) 0);
+        record.put((byte) (bookGenre == null ? 0 : bookGenre.ordinal() + 1));
+        record.putShort((short) id.length);
+        record.putShort((short) (titleBytes == null ? NULL_LENGTH : titleBytes.length));
+        record.putShort((short) (authorBytes == null ? NULL_LENGTH : authorBytes.length));
+        record.put(id);
+        if (titleBytes != null) {
+            record.put(titleBytes);
+        }
+        if (authorBytes != null) {
+            record.put(authorBytes);
+        }
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length) {
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] key) {
+        int hash = 1;
+        for (byte b : key) {
+            hash = 31 * hash + b;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int sizeClassOf(int recordSize) {
+        int sizeClass = 0;
+        while (slotSize(sizeClass) < Math.max(recordSize, RECORD_HEADER_SIZE + 8)) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    private static int slotSize(int sizeClass) {
+        return 1 << (MIN_SLOT_SHIFT + sizeClass);
+    }
+
+    private static int entryPosition(long entry) {
+        return (int) (INDEX_HEADER_SIZE + entry * INDEX_ENTRY_SIZE);
+    }
+
+    private ByteBuffer buffer(long offset) {
+        return segments.get((int) (offset / segmentSize));
+    }
+
+    private int position(long offset) {
+        return (int) (offset % segmentSize);
+    }
+
+    /**
+     * Отображение сегментов до указанного количества. Вызывается из конструктора и под блокировкой записи,
+     * поэтому читатели под общей блокировкой видят список сегментов неизменным
+     *
+     * @param count требуемое количество сегментов
+     */
+    private void mapSegments(int count) {
+        while (segments.size() < count) {
+            try {
+                segments.add(data.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentSize, segmentSize));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot map book store segment " + segments.size(), e);
+            }
+        }
+    }
+
+    enum Field {
+        TITLE, AUTHOR, GENRE
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, BookDto>> {
+        private final Iterator<String> keys;
+        private Entry<String, BookDto> next;
+
+        private EntryIterator(List<String> keys) {
+            this.keys = keys.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && keys.hasNext()) {
+                String key = keys.next();
+                BookDto bookDto = get(key);
+                if (bookDto != null) {
+                    next = new SimpleImmutableEntry<>(key, bookDto);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, BookDto> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, BookDto> entry = next;
+            next = null;
+            return entry;
+        }
+    }
+}
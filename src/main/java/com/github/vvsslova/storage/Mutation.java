@@ -0,0 +1,157 @@
+package com.github.vvsslova.storage;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.constant.HoldPriority;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Изменение состояния библиотеки. Заполняются только поля, относящиеся к виду изменения
+ */
+@Data
+public class Mutation {
+    /**
+     * Номер строки истории завершённой выдачи, выгруженной в снимок
+     */
+    public static final long NO_HISTORY_ROW = -1;
+
+    private final MutationType type;
+    private final String bookID;
+    private final String userID;
+    private final String title;
+    private final String author;
+    private final BookGenre bookGenre;
+    private final String name;
+    private final String surname;
+    private final long phoneNumber;
+    private final LocalDate returnDate;
+    private final LocalDate lendDate;
+    private final HoldPriority holdPriority;
+    private final LocalDate closedDate;
+    private final long historyRow;
+
+    Mutation(MutationType type, String bookID, String userID, String title, String author, BookGenre bookGenre,
+             String name, String surname, long phoneNumber, LocalDate returnDate) {
+        this(type, bookID, userID, title, author, bookGenre, name, surname, phoneNumber, returnDate, null);
+    }
+
+    Mutation(MutationType type, String bookID, String userID, String title, String author, BookGenre bookGenre,
+             String name, String surname, long phoneNumber, LocalDate returnDate, LocalDate lendDate) {
+        this(type, bookID, userID, title, author, bookGenre, name, surname, phoneNumber, returnDate, lendDate, null);
+    }
+
+    Mutation(MutationType type, String bookID, String userID, String title, String author, BookGenre bookGenre,
+             String name, String surname, long phoneNumber, LocalDate returnDate, LocalDate lendDate,
+             HoldPriority holdPriority) {
+        this(type, bookID, userID, title, author, bookGenre, name, surname, phoneNumber, returnDate, lendDate,
+                holdPriority, null, NO_HISTORY_ROW);
+    }
+
+    Mutation(MutationType type, String bookID, String userID, String title, String author, BookGenre bookGenre,
+             String name, String surname, long phoneNumber, LocalDate returnDate, LocalDate lendDate,
+             HoldPriority holdPriority, LocalDate closedDate, long historyRow) {
+        this.type = type;
+        this.bookID = bookID;
+        this.userID = userID;
+        this.title = title;
+        this.author = author;
+        this.bookGenre = bookGenre;
+        this.name = name;
+        this.surname = surname;
+        this.phoneNumber = phoneNumber;
+        this.returnDate = returnDate;
+        this.lendDate = lendDate;
+        this.holdPriority = holdPriority;
+        this.closedDate = closedDate;
+        this.historyRow = historyRow;
+    }
+
+    public static Mutation addBook(BookDto bookDto) {
+        return new Mutation(MutationType.ADD_BOOK, bookDto.getID(), null, bookDto.getTitle(), bookDto.getAuthor(),
+                bookDto.getBookGenre(), null, null, 0, null);
+    }
+
+    public static Mutation removeBook(String bookID) {
+        return new Mutation(MutationType.REMOVE_BOOK, bookID, null, null, null, null, null, null, 0, null);
+    }
+
+    public static Mutation changeBookAuthor(String bookID, String newAuthor) {
+        return new Mutation(MutationType.CHANGE_BOOK_AUTHOR, bookID, null, null, newAuthor, null, null, null, 0, null);
+    }
+
+    public static Mutation changeBookTitle(String bookID, String newTitle) {
+        return new Mutation(MutationType.CHANGE_BOOK_TITLE, bookID, null, newTitle, null, null, null, null, 0, null);
+    }
+
+    public static Mutation changeBookGenre(String bookID, BookGenre newBookGenre) {
+        return new Mutation(MutationType.CHANGE_BOOK_GENRE, bookID, null, null, null, newBookGenre, null, null, 0, null);
+    }
+
+    public static Mutation addUser(UserDto userDto) {
+        return new Mutation(MutationType.ADD_USER, null, userDto.getID(), null, null, null, userDto.getName(),
+                userDto.getSurname(), userDto.getPhoneNumber(), null);
+    }
+
+    public static Mutation removeUser(String userID) {
+        return new Mutation(MutationType.REMOVE_USER, null, userID, null, null, null, null, null, 0, null);
+    }
+
+    public static Mutation changeUserPhone(String userID, long newPhone) {
+        return new Mutation(MutationType.CHANGE_USER_PHONE, null, userID, null, null, null, null, null, newPhone, null);
+    }
+
+    public static Mutation changeUserName(String userID, String newName) {
+        return new Mutation(MutationType.CHANGE_USER_NAME, null, userID, null, null, null, newName, null, 0, null);
+    }
+
+    public static Mutation changeUserSurname(String userID, String newSurname) {
+        return new Mutation(MutationType.CHANGE_USER_SURNAME, null, userID, null, null, null, null, newSurname, 0, null);
+    }
+
+    /**
+     * @param lendDate дата выдачи или null, если она неизвестна
+     */
+    public static Mutation lendBook(String bookID, String userID, String bookTitle, LocalDate lendDate,
+                                    LocalDate returnDate) {
+        return new Mutation(MutationType.LEND_BOOK, bookID, userID, bookTitle, null, null, null, null, 0, returnDate,
+                lendDate);
+    }
+
+    public static Mutation returnBook(String bookID, String userID) {
+        return new Mutation(MutationType.RETURN_BOOK, bookID, userID, null, null, null, null, null, 0, null);
+    }
+
+    public static Mutation changeReturnDate(String bookID, String userID, LocalDate newReturnDate) {
+        return new Mutation(MutationType.CHANGE_RETURN_DATE, bookID, userID, null, null, null, null, null, 0,
+                newReturnDate);
+    }
+
+    /**
+     * @param expiresOn последний день действия резервирования
+     */
+    public static Mutation placeHold(String bookID, String userID, HoldPriority priority, LocalDate expiresOn) {
+        return new Mutation(MutationType.PLACE_HOLD, bookID, userID, null, null, null, null, null, 0, expiresOn, null,
+                priority);
+    }
+
+    public static Mutation cancelHold(String bookID, String userID) {
+        return new Mutation(MutationType.CANCEL_HOLD, bookID, userID, null, null, null, null, null, 0, null);
+    }
+
+    /**
+     * Завершённая выдача, записанная в историю
+     *
+     * @param lendDate   дата выдачи или null, если она неизвестна
+     * @param dueDate    срок возврата
+     * @param closedDate дата фактического возврата
+     * @param historyRow номер строки истории или {@link #NO_HISTORY_ROW} для строки из снимка
+     */
+    public static Mutation closeLoan(String bookID, String userID, String author, BookGenre bookGenre,
+                                     LocalDate lendDate, LocalDate dueDate, LocalDate closedDate, long historyRow) {
+        return new Mutation(MutationType.LOAN_CLOSED, bookID, userID, null, author, bookGenre, null, null, 0, dueDate,
+                lendDate, null, closedDate, historyRow);
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.vvsslova.storage;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.constant.HoldPriority;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Двоичное представление изменений: вид изменения, маска заполненных полей и сами поля
+ */
+public final class MutationCodec {
+    private static final int BOOK_ID = 1;
+    private static final int USER_ID = 1 << 1;
+    private static final int TITLE = 1 << 2;
+    private static final int AUTHOR = 1 << 3;
+    private static final int GENRE = 1 << 4;
+    private static final int NAME = 1 << 5;
+    private static final int SURNAME = 1 << 6;
+    private static final int PHONE = 1 << 7;
+    private static final int RETURN_DATE = 1 << 8;
+    private static final int LEND_DATE = 1 << 9;
+    private static final int HOLD_PRIORITY = 1 << 10;
+    private static final int CLOSED_DATE = 1 << 11;
+    private static final int HISTORY_ROW = 1 << 12;
+
+    private static final MutationType[] TYPES = MutationType.values();
+    private static final BookGenre[] GENRES = BookGenre.values();
+    private static final HoldPriority[] PRIORITIES = HoldPriority.values();
+
+    private MutationCodec() {
+    }
+
+    /**
+     * Запись изменения
+     *
+     * @param mutation изменение
+     * @param out      поток записи
+     */
+    public static void write(Mutation mutation, DataOutput out) throws IOException {
+        int mask = (mutation.getBookID() != null ? BOOK_ID : 0)
+                | (mutation.getUserID() != null ? USER_ID : 0)
+                | (mutation.getTitle() != null ? TITLE : 0)
+                | (mutation.getAuthor() != null ? AUTHOR : 0)
+                | (mutation.getBookGenre() != null ? GENRE : 0)
+                | (mutation.getName() != null ? NAME : 0)
+                | (mutation.getSurname() != null ? SURNAME : 0)
+                | (mutation.getPhoneNumber() != 0 ? PHONE : 0)
+                | (mutation.getReturnDate() != null ? RETURN_DATE : 0)
+                | (mutation.getLendDate() != null ? LEND_DATE : 0)
+                | (mutation.getHoldPriority() != null ? HOLD_PRIORITY : 0)
+                | (mutation.getClosedDate() != null ? CLOSED_DATE : 0)
+                | (mutation.getHistoryRow() != Mutation.NO_HISTORY_ROW ? HISTORY_ROW : 0);
+        out.writeByte(mutation.getType().ordinal());
+        out.writeShort(mask);
+        if ((mask & BOOK_ID) != 0) {
+            out.writeUTF(mutation.getBookID());
+        }
+        if ((mask & USER_ID) != 0) {
+            out.writeUTF(mutation.getUserID());
+        }
+        if ((mask & TITLE) != 0) {
+            out.writeUTF(mutation.getTitle());
+        }
+        if ((mask & AUTHOR) != 0) {
+            out.writeUTF(mutation.getAuthor());
+        }
+        if ((mask & GENRE) != 0) {
+            out.writeByte(mutation.getBookGenre().ordinal());
+        }
+        if ((mask & NAME) != 0) {
+            out.writeUTF(mutation.getName());
+        }
+        if ((mask & SURNAME) != 0) {
+            out.writeUTF(mutation.getSurname());
+        }
+        if ((mask & PHONE) != 0) {
+            out.writeLong(mutation.getPhoneNumber());
+        }
+        if ((mask & RETURN_DATE) != 0) {
+            out.writeLong(mutation.getReturnDate().toEpochDay());
+        }
+        if ((mask & LEND_DATE) != 0) {
+            out.writeLong(mutation.getLendDate().toEpochDay());
+        }
+        if ((mask & HOLD_PRIORITY) != 0) {
+            out.writeByte(mutation.getHoldPriority().ordinal());
+        }
+        if ((mask & CLOSED_DATE) != 0) {
+            out.writeLong(mutation.getClosedDate().toEpochDay());
+        }
+        if ((mask & HISTORY_ROW) != 0) {
+            out.writeLong(mutation.getHistoryRow());
+        }
+    }
+
+    /**
+     * Чтение изменения
+     *
+     * @param in поток чтения
+     * @return прочитанное изменение
+     */
+    public static Mutation read(DataInput in) throws IOException {
+        MutationType type = TYPES[in.readUnsignedByte()];
+        int mask = in.readUnsignedShort();
+        String bookID = (mask & BOOK_ID) != 0 ? in.readUTF() : null;
+        String userID = (mask & USER_ID) != 0 ? in.readUTF() : null;
+        String title = (mask & TITLE) != 0 ? in.readUTF() : null;
+        String author = (mask & AUTHOR) != 0 ? in.readUTF() : null;
+        BookGenre bookGenre = (mask & GENRE) != 0 ? GENRES[in.readUnsignedByte()] : null;
+        String name = (mask & NAME) != 0 ? in.readUTF() : null;
+        String surname = (mask & SURNAME) != 0 ? in.readUTF() : null;
+        long phoneNumber = (mask & PHONE) != 0 ? in.readLong() : 0;
+        LocalDate returnDate = (mask & RETURN_DATE) != 0 ? LocalDate.ofEpochDay(in.readLong()) : null;
+        LocalDate lendDate = (mask & LEND_DATE) != 0 ? LocalDate.ofEpochDay(in.readLong()) : null;
+        HoldPriority holdPriority = (mask & HOLD_PRIORITY) != 0 ? PRIORITIES[in.readUnsignedByte()] : null;
+        LocalDate closedDate = (mask & CLOSED_DATE) != 0 ? LocalDate.ofEpochDay(in.readLong()) : null;
+        long historyRow = (mask & HISTORY_ROW) != 0 ? in.readLong() : Mutation.NO_HISTORY_ROW;
+        return new Mutation(type, bookID, userID, title, author, bookGenre, name, surname, phoneNumber, returnDate,
+                lendDate, holdPriority, closedDate, historyRow);
+    }
+
+    /**
+     * Запись изменения в массив байтов
+     *
+     * @param mutation изменение
+     * @return двоичное представление
+     */
+    public static byte[] encode(Mutation mutation) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            write(mutation, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Запись нескольких изменений подряд в массив байтов
+     *
+     * @param mutations изменения
+     * @return двоичное представление
+     */
+    public static byte[] encodeAll(List<Mutation> mutations) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * mutations.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (Mutation mutation : mutations) {
+                write(mutation, out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Чтение изменения из массива байтов
+     *
+     * @param bytes двоичное представление
+     * @return изменение
+     */
+    public static Mutation decode(byte[] bytes) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.vvsslova.storage;
+
+/**
+ * Виды изменений состояния библиотеки, которые записываются в журнал
+ */
+public enum MutationType {
+    ADD_BOOK, REMOVE_BOOK, CHANGE_BOOK_AUTHOR, CHANGE_BOOK_TITLE, CHANGE_BOOK_GENRE,
+    ADD_USER, REMOVE_USER, CHANGE_USER_PHONE, CHANGE_USER_NAME, CHANGE_USER_SURNAME,
+    LEND_BOOK, RETURN_BOOK, CHANGE_RETURN_DATE,
+    PLACE_HOLD, CANCEL_HOLD,
+    LOAN_CLOSED;
+}
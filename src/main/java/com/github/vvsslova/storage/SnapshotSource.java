@@ -0,0 +1,18 @@
+package com.github.vvsslova.storage;
+
+import java.util.function.Consumer;
+
+/**
+ * Источник снимков состояния библиотеки
+ */
+@FunctionalInterface
+public interface SnapshotSource {
+    /**
+     * Выгрузка текущего состояния в виде изменений, которые его воссоздают.
+     * Изменения могут продолжаться во время выгрузки: при восстановлении поверх снимка
+     * повторяются все изменения, записанные после начала выгрузки
+     *
+     * @param sink получатель изменений
+     */
+    void captureState(Consumer<Mutation> sink);
+}
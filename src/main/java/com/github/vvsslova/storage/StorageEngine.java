@@ -0,0 +1,59 @@
+package com.github.vvsslova.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище изменений состояния библиотеки
+ */
+public interface StorageEngine extends Closeable {
+    /**
+     * Восстановление состояния. Вызывается один раз до первой записи
+     *
+     * @param replay получатель восстановленных изменений в порядке их записи
+     */
+    void recover(Consumer<Mutation> replay) throws IOException;
+
+    /**
+     * Запись изменения. Изменение становится долговечным асинхронно
+     *
+     * @param mutation изменение
+     * @return порядковый номер изменения
+     */
+    long append(Mutation mutation);
+
+    /**
+     * Запись пакета изменений одной записью журнала: при восстановлении пакет применяется целиком
+     * или не применяется вовсе
+     *
+     * @param mutations изменения в порядке применения
+     * @return порядковый номер записи пакета
+     */
+    long appendAll(List<Mutation> mutations);
+
+    /**
+     * Номер последнего записанного изменения
+     */
+    long lastSequence();
+
+    /**
+     * Ожидание долговечной записи изменения
+     *
+     * @param sequence номер изменения
+     */
+    void awaitDurable(long sequence) throws InterruptedException;
+
+    /**
+     * Подключение источника снимков состояния
+     *
+     * @param snapshotSource источник снимков
+     */
+    void attachSnapshotSource(SnapshotSource snapshotSource);
+
+    /**
+     * Запись снимка состояния, после которой при восстановлении читается только хвост журнала
+     */
+    void checkpoint() throws IOException;
+}
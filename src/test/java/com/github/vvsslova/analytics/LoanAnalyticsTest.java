@@ -0,0 +1,201 @@
+package com.github.vvsslova.analytics;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Сверка статистики по истории выдач с последовательным подсчётом по тем же строкам
+ */
+public class LoanAnalyticsTest extends TestCase {
+    private static final int ROWS = 20_000;
+    private static final int BOOKS = 300;
+    private static final int USERS = 100;
+    private static final LocalDate START = LocalDate.of(2023, 1, 1);
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    private final List<Row> rows = new ArrayList<>();
+    private LoanHistory history;
+    private ForkJoinPool pool;
+    private LoanAnalytics analytics;
+
+    @Override
+    protected void setUp() {
+        history = new LoanHistory(500);
+        pool = new ForkJoinPool(4);
+        analytics = new LoanAnalytics(history, pool);
+        Random random = new Random(42);
+        for (int i = 0; i < ROWS; i++) {
+            int book = random.nextInt(BOOKS) * random.nextInt(BOOKS) / BOOKS;
+            LocalDate lent = START.plusDays(random.nextInt(700));
+            LocalDate returned = lent.plusDays(random.nextInt(30));
+            Row row = new Row("book-" + book, "user-" + random.nextInt(USERS), "Author " + book % 40,
+                    GENRES[book % GENRES.length], random.nextInt(10) == 0 ? null : lent, lent.plusDays(14), returned);
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparing(row -> row.returned));
+        for (Row row : rows) {
+            history.record(row.bookID, row.userID, row.author, row.bookGenre, row.lent, row.due, row.returned);
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        pool.shutdown();
+    }
+
+    public void testRankingsMatchSequentialCount() {
+        LocalDate from = START.plusDays(100);
+        LocalDate to = START.plusDays(400);
+        assertEquals(expectedTop(from, to, row -> row.bookID, 10), analytics.mostBorrowedBooks(from, to, 10));
+        assertEquals(expectedTop(from, to, row -> row.author, 5), analytics.mostBorrowedAuthors(from, to, 5));
+        assertEquals(ROWS, history.size());
+    }
+
+    public void testGenreDemandAndAverageDuration() {
+        LocalDate from = START.plusDays(30);
+        LocalDate to = START.plusDays(130);
+        Map<BookGenre, long[]> demand = analytics.genreDemand(from, to, 7);
+        for (BookGenre bookGenre : GENRES) {
+            long[] expected = new long[15];
+            for (Row row : rows) {
+                if (row.bookGenre == bookGenre && row.lent != null && !row.lent.isBefore(from) && row.lent.isBefore(to)) {
+                    expected[(int) (row.lent.toEpochDay() - from.toEpochDay()) / 7]++;
+                }
+            }
+            assertTrue(bookGenre.name(), Arrays.equals(expected, demand.get(bookGenre)));
+        }
+
+        long days = 0;
+        long loans = 0;
+        for (Row row : rows) {
+            if (row.lent != null && returnedBetween(row, from, to)) {
+                days += row.returned.toEpochDay() - row.lent.toEpochDay();
+                loans++;
+            }
+        }
+        assertEquals((double) days / loans, analytics.averageLoanDays(from, to), 1e-9);
+        assertTrue(Double.isNaN(analytics.averageLoanDays(START.minusYears(1), START)));
+    }
+
+    public void testOverdueRateByCohort() {
+        LocalDate from = START.plusDays(200);
+        LocalDate to = START.plusDays(500);
+        Map<String, LocalDate> firstDay = new HashMap<>();
+        for (Row row : rows) {
+            LocalDate day = row.lent == null ? row.returned : row.lent;
+            firstDay.merge(row.userID, day, (a, b) -> a.isBefore(b) ? a : b);
+        }
+        Map<YearMonth, long[]> expected = new TreeMap<>();
+        for (Row row : rows) {
+            if (returnedBetween(row, from, to)) {
+                long[] counts = expected.computeIfAbsent(YearMonth.from(firstDay.get(row.userID)), k -> new long[2]);
+                counts[0]++;
+                if (row.returned.isAfter(row.due)) {
+                    counts[1]++;
+                }
+            }
+        }
+        List<CohortStats> cohorts = analytics.overdueRateByCohort(from, to);
+        assertEquals(expected.size(), cohorts.size());
+        for (CohortStats cohort : cohorts) {
+            long[] counts = expected.get(cohort.getCohort());
+            assertEquals(counts[0], cohort.getReturned());
+            assertEquals(counts[1], cohort.getOverdue());
+        }
+    }
+
+    public void testAggregatesAreRefreshedIncrementally() {
+        LoanAggregates aggregates = new LoanAggregates(history);
+        assertEquals(ROWS, aggregates.refresh());
+        assertEquals(0, aggregates.refresh());
+        LocalDate returned = START.plusDays(800);
+        history.record("book-new", "user-new", "Author new", BookGenre.ROMANCE, returned.minusDays(20),
+                returned.minusDays(6), returned);
+        assertEquals(1, aggregates.refresh());
+        assertEquals(ROWS + 1, aggregates.getReturned());
+
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        assertEquals(analytics.mostBorrowedBooks(from, to, 10), aggregates.mostBorrowedBooks(10));
+        assertEquals(analytics.mostBorrowedAuthors(from, to, 10), aggregates.mostBorrowedAuthors(10));
+        assertEquals(analytics.averageLoanDays(from, to), aggregates.getAverageLoanDays(), 1e-9);
+        long overdue = rows.stream().filter(row -> row.returned.isAfter(row.due)).count() + 1;
+        assertEquals((double) overdue / (ROWS + 1), aggregates.getOverdueRate(), 1e-9);
+    }
+
+    public void testLibraryServiceRecordsClosedLoans() throws Exception {
+        try (LibraryService libraryService = new LibraryService("Analytics test library")) {
+            BookDto book = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+            BookDto removed = new BookDto("Fathers and Sons", "Ivan Turgenev", BookGenre.DRAMA);
+            UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+            libraryService.addBook(book);
+            libraryService.addBook(removed);
+            libraryService.addUser(user);
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.returnBook(book.getID(), user.getID());
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.lendBook(removed.getID(), user.getID());
+            libraryService.removeBook(removed.getID());
+
+            LoanAnalytics serviceAnalytics = new LoanAnalytics(libraryService.getLoanHistory());
+            LocalDate today = LocalDate.now();
+            assertEquals(2, libraryService.getLoanHistory().size());
+            assertEquals(Arrays.asList(new RankedItem("Ivan Turgenev", 1), new RankedItem("Nikolai Gogol", 1)),
+                    serviceAnalytics.mostBorrowedAuthors(today, today.plusDays(1), 10));
+            assertEquals(0.0, serviceAnalytics.averageLoanDays(today, today.plusDays(1)), 1e-9);
+        }
+    }
+
+    private List<RankedItem> expectedTop(LocalDate from, LocalDate to, Function<Row, String> key, int limit) {
+        Map<String, Long> counts = rows.stream()
+                .filter(row -> returnedBetween(row, from, to))
+                .collect(Collectors.groupingBy(key, Collectors.counting()));
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(entry -> new RankedItem(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean returnedBetween(Row row, LocalDate from, LocalDate to) {
+        return !row.returned.isBefore(from) && row.returned.isBefore(to);
+    }
+
+    private static final class Row {
+        private final String bookID;
+        private final String userID;
+        private final String author;
+        private final BookGenre bookGenre;
+        private final LocalDate lent;
+        private final LocalDate due;
+        private final LocalDate returned;
+
+        private Row(String bookID, String userID, String author, BookGenre bookGenre, LocalDate lent, LocalDate due,
+                    LocalDate returned) {
+            this.bookID = bookID;
+            this.userID = userID;
+            this.author = author;
+            this.bookGenre = bookGenre;
+            this.lent = lent;
+            this.due = due;
+            this.returned = returned;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.vvsslova.audit;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Проверка асинхронной записи событий аудита
+ */
+public class AuditLogTest extends TestCase {
+
+    public void testLibraryOperationsAreWrittenAsJsonLines() throws IOException {
+        StringWriter out = new StringWriter();
+        BookDto book = new BookDto("The \"Idiot\"", "Fyodor Dostoevsky", BookGenre.DRAMA);
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        try (LibraryService libraryService = new LibraryService("Audit test library",
+                new AuditLog(new JsonLinesAuditSink(out)))) {
+            libraryService.addBook(book);
+            libraryService.addUser(user);
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.returnBook(book.getID(), user.getID());
+        }
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].contains("\"type\":\"BOOK_ADDED\""));
+        assertTrue(lines[0].contains("\"text\":\"The \\\"Idiot\\\"\""));
+        assertTrue(lines[2].startsWith("{\"seq\":2,"));
+        assertTrue(lines[2].contains("\"type\":\"BOOK_LENT\""));
+        assertTrue(lines[2].contains("\"userID\":\"" + user.getID() + "\""));
+        assertTrue(lines[3].contains("\"type\":\"BOOK_RETURNED\""));
+    }
+
+    public void testBlockPolicyKeepsEveryEventInOrder() throws Exception {
+        RecordingSink sink = new RecordingSink(null);
+        AuditLog auditLog = new AuditLog(sink, 16, OverflowPolicy.BLOCK, 4);
+        int threads = 4;
+        int perThread = 10_000;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    assertTrue(auditLog.record(AuditEventType.BOOK_LENT, "book", "user", null, i));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        auditLog.flush();
+        assertEquals(threads * perThread, auditLog.getWritten());
+        auditLog.close();
+
+        assertEquals(0, auditLog.getDropped());
+        assertEquals(threads * perThread, sink.sequences.size());
+        for (int i = 0; i < sink.sequences.size(); i++) {
+            assertEquals(i, sink.sequences.get(i).longValue());
+        }
+        assertTrue(sink.closed);
+    }
+
+    public void testDropPolicyDropsWhenSinkIsStalled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink(release);
+        AuditLog auditLog = new AuditLog(sink, 8, OverflowPolicy.DROP, 8);
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (auditLog.record(AuditEventType.BOOK_ADDED, "book", null, "title", 0)) {
+                accepted++;
+            }
+        }
+        release.countDown();
+        auditLog.close();
+
+        assertTrue(accepted < 100);
+        assertEquals(100 - accepted, auditLog.getDropped());
+        assertEquals(accepted, sink.sequences.size());
+    }
+
+    private static class RecordingSink implements AuditSink {
+        private final CountDownLatch release;
+        private final List<Long> sequences = new ArrayList<>();
+        private volatile boolean closed;
+
+        RecordingSink(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(AuditEvent event) throws IOException {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            sequences.add(event.getSequence());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
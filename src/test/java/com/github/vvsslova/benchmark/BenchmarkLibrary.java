@@ -0,0 +1,59 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Заполнение библиотеки данными для бенчмарков. Выдаётся не больше половины каталога,
+ * свободные книги собраны в начале списка {@link #books}
+ */
+final class BenchmarkLibrary {
+    private static final String[] WORDS = {
+            "pride", "prejudice", "flowers", "algernon", "alice", "wonderland", "war", "peace", "crime",
+            "punishment", "master", "margarita", "idiot", "demons", "quiet", "flows", "don", "white", "guard",
+            "heart", "dog", "dead", "souls", "fathers", "sons", "night", "day", "river", "city", "garden"};
+    private static final String[] AUTHORS = {
+            "Jane Osten", "Daniel Kie", "Lewis Carroll", "Leo Tolstoy", "Fyodor Dostoevsky", "Mikhail Bulgakov",
+            "Nikolai Gogol", "Ivan Turgenev", "Anton Chekhov", "Alexander Pushkin"};
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    final LibraryService libraryService = new LibraryService("Benchmark library");
+    final List<BookDto> books = new ArrayList<>();
+    final List<UserDto> users = new ArrayList<>();
+    final List<BookDto> freeBooks;
+    private final Random random = new Random(42);
+
+    BenchmarkLibrary(int catalogSize, int userCount, int loanCount) {
+        for (int i = 0; i < catalogSize; i++) {
+            BookDto bookDto = newBook();
+            libraryService.addBook(bookDto);
+            books.add(bookDto);
+        }
+        for (int i = 0; i < userCount; i++) {
+            UserDto userDto = newUser();
+            libraryService.addUser(userDto);
+            users.add(userDto);
+        }
+        int activeLoans = Math.min(loanCount, catalogSize / 2);
+        for (int i = 0; i < activeLoans; i++) {
+            libraryService.lendBook(books.get(catalogSize - 1 - i).getID(), users.get(i % userCount).getID());
+        }
+        freeBooks = books.subList(0, catalogSize - activeLoans);
+    }
+
+    BookDto newBook() {
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                + " " + random.nextInt(1000);
+        return new BookDto(title, AUTHORS[random.nextInt(AUTHORS.length)], GENRES[random.nextInt(GENRES.length)]);
+    }
+
+    UserDto newUser() {
+        return new UserDto("Name" + random.nextInt(), "Surname" + random.nextInt(), 79000000000L + random.nextInt(1_000_000));
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.codec.CatalogDecoder;
+import com.github.vvsslova.codec.CatalogEncoder;
+import com.github.vvsslova.codec.CatalogRecordType;
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.importer.RecordParser;
+import com.github.vvsslova.service.Journal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение двоичного формата каталога с JSONL, который принимает массовая загрузка: время записи и чтения
+ * всего каталога с выдачами. Размеры обоих представлений выводятся при подготовке данных
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogCodecBenchmark {
+    @Param({"10000", "100000"})
+    private int catalogSize;
+
+    private List<BookDto> books;
+    private List<UserDto> users;
+    private List<Journal> loans;
+    private ByteBuffer binary;
+    private List<String> json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkLibrary library = new BenchmarkLibrary(catalogSize, catalogSize / 10, catalogSize / 4);
+        books = library.books;
+        users = library.users;
+        loans = new ArrayList<>(library.libraryService.getLendingJournal().findAll());
+        binary = encodeBinary();
+        json = encodeJson();
+        long jsonBytes = 0;
+        for (String line : json) {
+            jsonBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        System.out.printf("%n%d books, %d users, %d loans: binary %d bytes, JSONL %d bytes%n",
+                books.size(), users.size(), loans.size(), binary.remaining(), jsonBytes);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinary() {
+        CatalogEncoder encoder = new CatalogEncoder();
+        for (BookDto bookDto : books) {
+            encoder.writeBook(bookDto);
+        }
+        for (UserDto userDto : users) {
+            encoder.writeUser(userDto);
+        }
+        for (Journal loan : loans) {
+            encoder.writeLoan(loan);
+        }
+        return encoder.toByteBuffer();
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole blackhole) throws IOException {
+        CatalogDecoder decoder = new CatalogDecoder(binary);
+        for (CatalogRecordType type = decoder.next(); type != null; type = decoder.next()) {
+            switch (type) {
+                case BOOK:
+                    blackhole.consume(decoder.readBook());
+                    break;
+                case USER:
+                    blackhole.consume(decoder.readUser());
+                    break;
+                default:
+                    blackhole.consume(decoder.readLoan());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> encodeJson() {
+        List<String> lines = new ArrayList<>(books.size() + users.size() + loans.size());
+        StringBuilder line = new StringBuilder(128);
+        for (BookDto bookDto : books) {
+            line.setLength(0);
+            line.append('{');
+            field(line, "id", bookDto.getID()).append(',');
+            field(line, "title", bookDto.getTitle()).append(',');
+            field(line, "author", bookDto.getAuthor()).append(',');
+            field(line, "genre", bookDto.getBookGenre().name()).append('}');
+            lines.add(line.toString());
+        }
+        for (UserDto userDto : users) {
+            line.setLength(0);
+            line.append('{');
+            field(line, "id", userDto.getID()).append(',');
+            field(line, "name", userDto.getName()).append(',');
+            field(line, "surname", userDto.getSurname()).append(',');
+            line.append("\"phone\":").append(userDto.getPhoneNumber()).append('}');
+            lines.add(line.toString());
+        }
+        for (Journal loan : loans) {
+            line.setLength(0);
+            line.append('{');
+            field(line, "bookId", loan.getBookID()).append(',');
+            field(line, "userId", loan.getUserID()).append(',');
+            field(line, "title", loan.getBookTitle()).append(',');
+            field(line, "lendDate", loan.getLendDate().toString()).append(',');
+            field(line, "returnDate", loan.getReturnDate().toString()).append('}');
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public void decodeJson(Blackhole blackhole) {
+        int usersFrom = books.size();
+        int loansFrom = usersFrom + users.size();
+        for (int i = 0; i < json.size(); i++) {
+            Map<String, String> fields = RecordParser.parseJson(json.get(i));
+            if (i < usersFrom) {
+                blackhole.consume(new BookDto(fields.get("id"), fields.get("title"), fields.get("author"),
+                        BookGenre.valueOf(fields.get("genre"))));
+            } else if (i < loansFrom) {
+                blackhole.consume(new UserDto(fields.get("id"), fields.get("name"), fields.get("surname"),
+                        Long.parseLong(fields.get("phone"))));
+            } else {
+                blackhole.consume(new Journal(fields.get("bookId"), fields.get("userId"), fields.get("title"),
+                        LocalDate.parse(fields.get("lendDate")), LocalDate.parse(fields.get("returnDate"))));
+            }
+        }
+    }
+
+    private static StringBuilder field(StringBuilder line, String name, String value) {
+        line.append('"').append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.http.LibraryHttpServer;
+import com.github.vvsslova.http.RequestExecutors;
+import com.github.vvsslova.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный тест HTTP-сервера библиотеки на локальной машине. Клиенты одновременно отправляют поиск,
+ * выдачу и возврат книг; в отчёт выводятся пропускная способность и перцентили задержки.
+ * Каждый клиент выдаёт и возвращает книги из своей части каталога, поэтому отказы означают ошибки сервера.
+ * Запуск: main с аргументами [клиенты] [запросов на клиента] [размер каталога]
+ */
+public final class HttpLoadHarness {
+    private static final int SEARCH_SHARE_PERCENT = 80;
+
+    private HttpLoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int catalogSize = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        System.out.println(run(clients, requestsPerClient, catalogSize));
+    }
+
+    /**
+     * Запуск сервера на свободном порту и нагрузка на него
+     *
+     * @param clients           количество одновременных клиентов
+     * @param requestsPerClient запросов на одного клиента
+     * @param catalogSize       размер каталога
+     * @return отчёт
+     */
+    static Report run(int clients, int requestsPerClient, int catalogSize) throws Exception {
+        BenchmarkLibrary library = new BenchmarkLibrary(catalogSize, clients, 0);
+        try (LibraryHttpServer server = new LibraryHttpServer(library.libraryService,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort();
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicLong failures = new AtomicLong();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = RequestExecutors.newPerRequestExecutor(Math.min(clients, 256), "load-client");
+            try {
+                List<Future<?>> results = new ArrayList<>(clients);
+                for (int client = 0; client < clients; client++) {
+                    int index = client;
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        runClient(base, library, index, requestsPerClient, latency, failures);
+                        return null;
+                    }));
+                }
+                long begin = System.nanoTime();
+                start.countDown();
+                for (Future<?> result : results) {
+                    result.get();
+                }
+                return new Report(clients, latency, failures.get(), System.nanoTime() - begin);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void runClient(String base, BenchmarkLibrary library, int index, int requests,
+                                  LatencyHistogram latency, AtomicLong failures) {
+        Random random = new Random(index);
+        UserDto userDto = library.users.get(index);
+        int clients = library.users.size();
+        int ownBooks = Math.max(1, library.books.size() / clients);
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            boolean ok;
+            if (random.nextInt(100) < SEARCH_SHARE_PERCENT) {
+                BookDto bookDto = library.books.get(random.nextInt(library.books.size()));
+                String word = encode(bookDto.getTitle().split(" ")[0]);
+                ok = send(base + "/books?limit=10&title=" + word, "GET", null) == 200;
+            } else {
+                BookDto bookDto = library.books.get((index + clients * (i % ownBooks)) % library.books.size());
+                String loan = "{\"bookID\":\"" + bookDto.getID() + "\",\"userID\":\"" + userDto.getID() + "\"}";
+                ok = send(base + "/loans", "POST", loan) == 201 && send(base + "/returns", "POST", loan) == 204;
+            }
+            latency.recordSince(start);
+            if (!ok) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    private static int send(String url, String method, String body) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream output = connection.getOutputStream()) {
+                    output.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (input != null) {
+                byte[] buffer = new byte[4096];
+                while (input.read(buffer) != -1) {
+                    continue;
+                }
+                input.close();
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String encode(String text) {
+        try {
+            return URLEncoder.encode(text, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Итоги нагрузочного теста
+     */
+    static final class Report {
+        final int clients;
+        final long requests;
+        final long failures;
+        final double throughput;
+        final long p50Micros;
+        final long p99Micros;
+        final long p999Micros;
+        final long maxMicros;
+
+        private Report(int clients, LatencyHistogram latency, long failures, long elapsedNanos) {
+            this.clients = clients;
+            this.requests = latency.getCount();
+            this.failures = failures;
+            this.throughput = requests / (elapsedNanos / 1e9);
+            this.p50Micros = TimeUnit.NANOSECONDS.toMicros(latency.valueAtPercentile(50));
+            this.p99Micros = TimeUnit.NANOSECONDS.toMicros(latency.valueAtPercentile(99));
+            this.p999Micros = TimeUnit.NANOSECONDS.toMicros(latency.valueAtPercentile(99.9));
+            this.maxMicros = TimeUnit.NANOSECONDS.toMicros(latency.getMaxNanos());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d clients, virtual threads: %b: %d requests, %d failed, %.0f req/s, "
+                            + "p50 %d us, p99 %d us, p99.9 %d us, max %d us",
+                    clients, RequestExecutors.isVirtualThreadsAvailable(), requests, failures, throughput,
+                    p50Micros, p99Micros, p999Micros, maxMicros);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время отдельных выдач, возвратов и удалений пользователей с активными выдачами.
+ * Эти операции меняют состояние, поэтому каждая итерация выполняет пакет операций над заранее подготовленными данными
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = LibraryServiceBatchBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = LibraryServiceBatchBenchmark.BATCH)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryServiceBatchBenchmark {
+    static final int BATCH = 10_000;
+    private static final int LOANS_PER_REMOVED_USER = 5;
+
+    @Param({"100000", "1000000"})
+    private int catalogSize;
+
+    @Param({"10000"})
+    private int userCount;
+
+    @Param({"1000", "50000"})
+    private int loanCount;
+
+    private BenchmarkLibrary library;
+    private List<BookDto> freeBooks;
+    private List<UserDto> removableUsers;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = new BenchmarkLibrary(catalogSize, userCount, loanCount);
+        freeBooks = library.freeBooks.subList(0, BATCH);
+        removableUsers = new ArrayList<>();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetIteration(BenchmarkParams params) {
+        cursor = 0;
+        String benchmark = params.getBenchmark();
+        if (benchmark.endsWith("returnBook")) {
+            lendFreeBooks();
+        } else if (benchmark.endsWith("removeUserWithLoans")) {
+            prepareRemovableUsers();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanIteration(BenchmarkParams params) {
+        if (params.getBenchmark().endsWith("lendBook")) {
+            for (BookDto bookDto : freeBooks) {
+                library.libraryService.returnBook(bookDto.getID(), library.users.get(0).getID());
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean lendBook() {
+        return library.libraryService.lendBook(freeBooks.get(cursor++).getID(), library.users.get(0).getID());
+    }
+
+    @Benchmark
+    public boolean returnBook() {
+        return library.libraryService.returnBook(freeBooks.get(cursor++).getID(), library.users.get(0).getID());
+    }
+
+    @Benchmark
+    public void removeUserWithLoans() {
+        library.libraryService.removeUser(removableUsers.get(cursor++).getID());
+    }
+
+    private void lendFreeBooks() {
+        for (BookDto bookDto : freeBooks) {
+            library.libraryService.lendBook(bookDto.getID(), library.users.get(0).getID());
+        }
+    }
+
+    private void prepareRemovableUsers() {
+        removableUsers.clear();
+        int bookIndex = 0;
+        for (int i = 0; i < BATCH; i++) {
+            UserDto userDto = library.newUser();
+            library.libraryService.addUser(userDto);
+            removableUsers.add(userDto);
+            for (int j = 0; j < LOANS_PER_REMOVED_USER && bookIndex < library.freeBooks.size(); j++) {
+                library.libraryService.lendBook(library.freeBooks.get(bookIndex++).getID(), userDto.getID());
+            }
+        }
+    }
+}
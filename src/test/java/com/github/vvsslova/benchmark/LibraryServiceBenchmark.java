@@ -0,0 +1,139 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пропускная способность основных операций {@link com.github.vvsslova.service.LibraryService}
+ * в однопоточном и многопоточном режимах
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryServiceBenchmark {
+    private static final int CONCURRENT_THREADS = 4;
+
+    @Param({"10000", "1000000"})
+    private int catalogSize;
+
+    @Param({"10000"})
+    private int userCount;
+
+    @Param({"1000", "100000"})
+    private int loanCount;
+
+    private BenchmarkLibrary library;
+    private final AtomicInteger threadSlots = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = new BenchmarkLibrary(catalogSize, userCount, loanCount);
+        threadSlots.set(0);
+    }
+
+    /**
+     * Свободные книги и пользователь, закреплённые за потоком бенчмарка
+     */
+    @State(Scope.Thread)
+    public static class ThreadSlice {
+        private List<BookDto> freeBooks;
+        private UserDto user;
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(LibraryServiceBenchmark benchmark) {
+            int slot = benchmark.threadSlots.getAndIncrement();
+            List<BookDto> libraryFreeBooks = benchmark.library.freeBooks;
+            int sliceSize = libraryFreeBooks.size() / CONCURRENT_THREADS;
+            int from = slot % CONCURRENT_THREADS * sliceSize;
+            freeBooks = libraryFreeBooks.subList(from, from + sliceSize);
+            user = benchmark.library.users.get(slot % benchmark.userCount);
+        }
+
+        private BookDto nextBook() {
+            BookDto bookDto = freeBooks.get(cursor);
+            cursor = cursor + 1 == freeBooks.size() ? 0 : cursor + 1;
+            return bookDto;
+        }
+    }
+
+    @Benchmark
+    public void addBook() {
+        library.libraryService.addBook(library.newBook());
+    }
+
+    @Benchmark
+    @Threads(CONCURRENT_THREADS)
+    public void addBookConcurrent() {
+        library.libraryService.addBook(new BookDto("Concurrent title", "Concurrent author", null));
+    }
+
+    @Benchmark
+    public void searchBooks(Blackhole blackhole) {
+        searchRandomBook(blackhole);
+    }
+
+    @Benchmark
+    @Threads(CONCURRENT_THREADS)
+    public void searchBooksConcurrent(Blackhole blackhole) {
+        searchRandomBook(blackhole);
+    }
+
+    @Benchmark
+    public List<BookDto> findBooksByPrefix() {
+        BookDto bookDto = randomBook();
+        return library.libraryService.findBooks(bookDto.getTitle().substring(0, 3), bookDto.getAuthor(), null, 20);
+    }
+
+    @Benchmark
+    public List<BookDto> findSimilarBooks() {
+        String title = randomBook().getTitle();
+        String misspelled = title.substring(0, 1) + title.substring(2);
+        return library.libraryService.findSimilarBooks(misspelled, null, null, 20);
+    }
+
+    @Benchmark
+    public boolean lendAndReturnBook(ThreadSlice slice) {
+        return lendAndReturn(slice);
+    }
+
+    @Benchmark
+    @Threads(CONCURRENT_THREADS)
+    public boolean lendAndReturnBookConcurrent(ThreadSlice slice) {
+        return lendAndReturn(slice);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 1, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public void printAllBooks() {
+        library.libraryService.printAllBooks();
+    }
+
+    private void searchRandomBook(Blackhole blackhole) {
+        BookDto bookDto = randomBook();
+        library.libraryService.printFoundBook(bookDto.getTitle(), null);
+        blackhole.consume(bookDto);
+    }
+
+    private boolean lendAndReturn(ThreadSlice slice) {
+        BookDto bookDto = slice.nextBook();
+        String userID = slice.user.getID();
+        return library.libraryService.lendBook(bookDto.getID(), userID)
+                & library.libraryService.returnBook(bookDto.getID(), userID);
+    }
+
+    private BookDto randomBook() {
+        return library.books.get(ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+}
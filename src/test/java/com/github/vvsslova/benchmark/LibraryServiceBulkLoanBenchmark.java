@@ -0,0 +1,71 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.service.Journal;
+import com.github.vvsslova.service.LoanStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время выдачи и возврата одной книги при пакетной обработке по сравнению с отдельными вызовами.
+ * Каждый вызов выдаёт и возвращает один и тот же набор книг, поэтому состояние библиотеки не меняется
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryServiceBulkLoanBenchmark {
+    private static final int ITEMS = 32;
+
+    @Param({"100000"})
+    private int catalogSize;
+
+    @Param({"10000"})
+    private int userCount;
+
+    @Param({"10000"})
+    private int loanCount;
+
+    private BenchmarkLibrary library;
+    private String userID;
+    private List<String> bookIDs;
+    private List<Journal> returns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = new BenchmarkLibrary(catalogSize, userCount, loanCount);
+        userID = library.users.get(0).getID();
+        bookIDs = new ArrayList<>();
+        returns = new ArrayList<>();
+        for (BookDto bookDto : library.freeBooks.subList(0, ITEMS)) {
+            bookIDs.add(bookDto.getID());
+            returns.add(new Journal(bookDto.getID(), userID, null, null));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public int lendAndReturnOneByOne() {
+        int done = 0;
+        for (String bookID : bookIDs) {
+            done += library.libraryService.lendBook(bookID, userID) ? 1 : 0;
+        }
+        for (String bookID : bookIDs) {
+            done += library.libraryService.returnBook(bookID, userID) ? 1 : 0;
+        }
+        return done;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public Map<String, LoanStatus> lendAndReturnBatch() {
+        library.libraryService.lendBooks(userID, bookIDs, true);
+        return library.libraryService.returnBooks(returns, true);
+    }
+}
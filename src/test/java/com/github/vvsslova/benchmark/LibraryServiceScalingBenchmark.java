@@ -0,0 +1,112 @@
+package com.github.vvsslova.benchmark;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Масштабирование выдачи и возврата по числу потоков. Каждый поток работает со своими книгами и своим
+ * пользователем, поэтому потоки не делят блокировок книг и пользователей. Пропускная способность методов
+ * с разным числом потоков сравнивается между собой: при отсутствии общих блокировок она растёт
+ * вместе с числом ядер
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryServiceScalingBenchmark {
+    private static final int BOOKS_PER_THREAD = 64;
+    private static final int MIN_SLOTS = 8;
+
+    private LibraryService libraryService;
+    private int slots;
+    private List<String> bookIDs;
+    private List<String> userIDs;
+    private final AtomicInteger threadSlots = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        libraryService = new LibraryService("Scaling benchmark library");
+        slots = Math.max(MIN_SLOTS, Runtime.getRuntime().availableProcessors());
+        bookIDs = new ArrayList<>(slots * BOOKS_PER_THREAD);
+        userIDs = new ArrayList<>(slots);
+        for (int i = 0; i < slots * BOOKS_PER_THREAD; i++) {
+            BookDto bookDto = new BookDto("Title " + i, "Author " + i % 100, BookGenre.DRAMA);
+            libraryService.addBook(bookDto);
+            bookIDs.add(bookDto.getID());
+        }
+        for (int i = 0; i < slots; i++) {
+            UserDto userDto = new UserDto("Name " + i, "Surname " + i, 79000000000L + i);
+            libraryService.addUser(userDto);
+            userIDs.add(userDto.getID());
+        }
+        threadSlots.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        libraryService.close();
+    }
+
+    /**
+     * Книги и пользователь, закреплённые за потоком бенчмарка
+     */
+    @State(Scope.Thread)
+    public static class ThreadSlice {
+        private List<String> bookIDs;
+        private String userID;
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(LibraryServiceScalingBenchmark benchmark) {
+            int slot = benchmark.threadSlots.getAndIncrement() % benchmark.slots;
+            bookIDs = benchmark.bookIDs.subList(slot * BOOKS_PER_THREAD, (slot + 1) * BOOKS_PER_THREAD);
+            userID = benchmark.userIDs.get(slot);
+        }
+
+        private String nextBook() {
+            String bookID = bookIDs.get(cursor);
+            cursor = cursor + 1 == bookIDs.size() ? 0 : cursor + 1;
+            return bookID;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean lendAndReturn1Thread(ThreadSlice slice) {
+        return lendAndReturn(slice);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean lendAndReturn2Threads(ThreadSlice slice) {
+        return lendAndReturn(slice);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean lendAndReturn4Threads(ThreadSlice slice) {
+        return lendAndReturn(slice);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean lendAndReturnAllCores(ThreadSlice slice) {
+        return lendAndReturn(slice);
+    }
+
+    private boolean lendAndReturn(ThreadSlice slice) {
+        String bookID = slice.nextBook();
+        return libraryService.lendBook(bookID, slice.userID) & libraryService.returnBook(bookID, slice.userID);
+    }
+}
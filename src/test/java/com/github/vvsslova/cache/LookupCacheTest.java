@@ -0,0 +1,148 @@
+package com.github.vvsslova.cache;
+
+import com.github.vvsslova.audit.AuditLog;
+import com.github.vvsslova.audit.Slf4jAuditSink;
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проверка ограничения размера, инвалидации и доли попаданий кэша книг и пользователей
+ */
+public class LookupCacheTest extends TestCase {
+    private static final int HOT_KEYS = 500;
+    private static final int COLD_KEYS = 100_000;
+
+    public void testSizeIsBoundedAndEvictionsCounted() {
+        LookupCache<Integer, String> cache = new LookupCache<>(new CacheSettings(200, CachePolicy.W_TINY_LFU, true));
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals("value-" + i, cache.get(i, key -> "value-" + key));
+        }
+        CacheStats stats = cache.getStats();
+        assertTrue(stats.getSize() <= 200);
+        assertEquals(stats.getSize(), stats.getWeight());
+        assertEquals(1_000, stats.getMisses());
+        assertEquals(1_000 - stats.getSize(), stats.getEvictions());
+    }
+
+    public void testLruKeepsMostRecentKeys() {
+        LookupCache<Integer, String> cache = new LookupCache<>(new CacheSettings(10, CachePolicy.LRU, true));
+        for (int i = 0; i < 20; i++) {
+            cache.get(i, String::valueOf);
+        }
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 10; i < 20; i++) {
+            cache.get(i, key -> String.valueOf(loads.incrementAndGet()));
+        }
+        assertEquals(0, loads.get());
+        assertEquals(10, cache.getStats().getEvictions());
+    }
+
+    public void testInvalidationAndNegativeCaching() {
+        Map<String, String> store = new HashMap<>();
+        AtomicInteger loads = new AtomicInteger();
+        LookupCache<String, String> cache = new LookupCache<>(CacheSettings.defaults());
+
+        assertNull(cache.get("book", key -> load(store, key, loads)));
+        assertNull(cache.get("book", key -> load(store, key, loads)));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().getNegativeHits());
+
+        store.put("book", "Dead Souls");
+        cache.invalidate("book");
+        assertEquals("Dead Souls", cache.get("book", key -> load(store, key, loads)));
+        assertEquals("Dead Souls", cache.get("book", key -> load(store, key, loads)));
+        assertEquals(2, loads.get());
+
+        store.put("book", "Fathers and Sons");
+        cache.invalidate("book");
+        assertEquals("Fathers and Sons", cache.get("book", key -> load(store, key, loads)));
+        assertEquals(2, cache.getStats().getInvalidations());
+
+        LookupCache<String, String> withoutNegative = new LookupCache<>(
+                new CacheSettings(100, CachePolicy.W_TINY_LFU, false));
+        withoutNegative.get("missing", key -> null);
+        withoutNegative.get("missing", key -> null);
+        assertEquals(2, withoutNegative.getStats().getMisses());
+        assertEquals(0, withoutNegative.getStats().getSize());
+    }
+
+    public void testDisabledCachePassesThrough() {
+        LookupCache<String, String> cache = new LookupCache<>(new CacheSettings(0, CachePolicy.LRU, true));
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("book", key -> String.valueOf(loads.incrementAndGet()));
+        cache.get("book", key -> String.valueOf(loads.incrementAndGet()));
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    /**
+     * Популярные книги запрашиваются вперемешку с однократным просмотром большого числа редких:
+     * W-TinyLFU не пускает редкие книги на место популярных, LRU вытесняет популярные
+     */
+    public void testPopularKeysSurviveScans() {
+        assertTrue(hotHitRate(CachePolicy.W_TINY_LFU) > 0.95);
+        assertTrue(hotHitRate(CachePolicy.W_TINY_LFU) > hotHitRate(CachePolicy.LRU));
+    }
+
+    public void testLibraryServiceInvalidatesOnChanges() throws Exception {
+        AuditLog auditLog = new AuditLog(new Slf4jAuditSink());
+        try (LibraryService libraryService = new LibraryService("Cache test library", auditLog,
+                CacheSettings.defaults())) {
+            BookDto book = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+            UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+            assertFalse(libraryService.lendBook(book.getID(), user.getID()));
+            libraryService.addBook(book);
+            assertFalse(libraryService.lendBook(book.getID(), user.getID()));
+            libraryService.addUser(user);
+            assertTrue(libraryService.lendBook(book.getID(), user.getID()));
+            assertTrue(libraryService.returnBook(book.getID(), user.getID()));
+
+            libraryService.changeBookTitle(book.getID(), "Dead Souls, vol. 2");
+            assertTrue(libraryService.lendBook(book.getID(), user.getID()));
+            assertEquals("Dead Souls, vol. 2",
+                    libraryService.getLendingJournal().findByBook(book.getID()).getBookTitle());
+            assertTrue(libraryService.returnBook(book.getID(), user.getID()));
+
+            libraryService.removeUser(user.getID());
+            assertFalse(libraryService.lendBook(book.getID(), user.getID()));
+            assertFalse(libraryService.lendBook(book.getID(), user.getID()));
+            assertTrue(libraryService.getBookCache().getStats().getInvalidations() > 0);
+            assertTrue(libraryService.getUserCache().getStats().getNegativeHits() > 0);
+        }
+    }
+
+    private static double hotHitRate(CachePolicy policy) {
+        LookupCache<Integer, Integer> cache = new LookupCache<>(new CacheSettings(1_000, policy, true));
+        Random random = new Random(7);
+        int hotRequests = 0;
+        int hotLoads = 0;
+        int cold = 0;
+        for (int i = 0; i < 200_000; i++) {
+            if (random.nextInt(4) == 0) {
+                int key = random.nextInt(HOT_KEYS);
+                hotRequests++;
+                Integer[] loaded = new Integer[1];
+                cache.get(key, k -> loaded[0] = k);
+                if (loaded[0] != null) {
+                    hotLoads++;
+                }
+            } else {
+                cache.get(HOT_KEYS + cold++ % COLD_KEYS, k -> k);
+            }
+        }
+        return 1 - (double) hotLoads / hotRequests;
+    }
+
+    private static String load(Map<String, String> store, String key, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return store.get(key);
+    }
+}
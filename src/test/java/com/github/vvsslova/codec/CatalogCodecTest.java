@@ -0,0 +1,148 @@
+package com.github.vvsslova.codec;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Проверка двоичного формата каталога: восстановление записей без потерь, общие строки, запись
+ * в буфер вызывающего и отказ на повреждённых данных
+ */
+public class CatalogCodecTest extends TestCase {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 1);
+
+    public void testRecordsSurviveRoundTrip() throws IOException {
+        List<BookDto> books = Arrays.asList(
+                new BookDto("Flowers for Algernon", "Daniel Keyes", BookGenre.DRAMA),
+                new BookDto("inv-0042", "Мастер и Маргарита", "Михаил Булгаков", BookGenre.FANTASY),
+                new BookDto("", null, null, null));
+        List<UserDto> users = Arrays.asList(
+                new UserDto("Victoria", "Shilova", 79005830462L),
+                new UserDto("reader-7", "Иван", null, 0));
+        List<Journal> loans = Arrays.asList(
+                new Journal(books.get(0).getID(), users.get(0).getID(), books.get(0).getTitle(), TODAY,
+                        TODAY.plusDays(14)),
+                new Journal(books.get(1).getID(), users.get(1).getID(), null, LocalDate.of(1960, 1, 1)),
+                new Journal(books.get(2).getID(), users.get(0).getID(), "", TODAY.minusDays(40000), TODAY));
+
+        CatalogEncoder encoder = new CatalogEncoder();
+        for (int i = 0; i < 3; i++) {
+            encoder.writeBook(books.get(i));
+            if (i < users.size()) {
+                encoder.writeUser(users.get(i));
+            }
+            encoder.writeLoan(loans.get(i));
+        }
+
+        List<Object> decoded = new ArrayList<>();
+        CatalogDecoder decoder = new CatalogDecoder(encoder.toByteBuffer());
+        for (CatalogRecordType type = decoder.next(); type != null; type = decoder.next()) {
+            switch (type) {
+                case BOOK:
+                    decoded.add(decoder.readBook());
+                    break;
+                case USER:
+                    decoded.add(decoder.readUser());
+                    break;
+                default:
+                    decoded.add(decoder.readLoan());
+            }
+        }
+        assertEquals(Arrays.asList(books.get(0), users.get(0), loans.get(0), books.get(1), users.get(1), loans.get(1),
+                books.get(2), loans.get(2)), decoded);
+    }
+
+    public void testRepeatedStringsAreSharedAndCompact() throws IOException {
+        CatalogEncoder encoder = new CatalogEncoder();
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        encoder.writeUser(user);
+        int books = 1000;
+        for (int i = 0; i < books; i++) {
+            BookDto bookDto = new BookDto("Pride and Prejudice", "Jane Austen", BookGenre.ROMANCE);
+            encoder.writeBook(bookDto);
+            encoder.writeLoan(new Journal(bookDto.getID(), user.getID(), bookDto.getTitle(), TODAY, TODAY.plusDays(14)));
+        }
+        assertTrue("Bytes per book and loan: " + encoder.size() / books, encoder.size() < books * 48);
+
+        CatalogDecoder decoder = new CatalogDecoder(encoder.toByteBuffer());
+        decoder.next();
+        decoder.readUser();
+        decoder.next();
+        BookDto first = decoder.readBook();
+        decoder.next();
+        Journal loan = decoder.readLoan();
+        decoder.next();
+        BookDto second = decoder.readBook();
+        assertSame(first.getAuthor(), second.getAuthor());
+        assertSame(first.getTitle(), loan.getBookTitle());
+        assertEquals(user.getID(), loan.getUserID());
+    }
+
+    public void testEncodesIntoCallerBuffer() throws IOException {
+        ByteBuffer target = ByteBuffer.allocateDirect(256);
+        target.position(100);
+        CatalogEncoder encoder = new CatalogEncoder(target);
+        BookDto bookDto = new BookDto("Quiet Flows the Don", "Mikhail Sholokhov", BookGenre.DRAMA);
+        encoder.writeBook(bookDto);
+        ByteBuffer written = encoder.toByteBuffer();
+        assertEquals(encoder.size(), written.remaining());
+
+        CatalogDecoder decoder = new CatalogDecoder(written);
+        assertEquals(CatalogRecordType.BOOK, decoder.next());
+        assertEquals(bookDto, decoder.readBook());
+        assertNull(decoder.next());
+        assertEquals(0, written.position());
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                encoder.writeBook(new BookDto("Book " + i, "Author " + i, BookGenre.DRAMA));
+            }
+            fail("Buffer overflow expected");
+        } catch (BufferOverflowException expected) {
+            assertTrue(target.position() <= target.capacity());
+        }
+    }
+
+    public void testCorruptedInputIsRejected() throws IOException {
+        CatalogEncoder encoder = new CatalogEncoder();
+        encoder.writeBook(new BookDto("Flowers for Algernon", "Daniel Keyes", BookGenre.DRAMA));
+        ByteBuffer bytes = encoder.toByteBuffer();
+
+        ByteBuffer newerVersion = ByteBuffer.allocate(bytes.remaining());
+        newerVersion.put(bytes.duplicate()).flip();
+        newerVersion.put(3, (byte) 2);
+        assertRejected(newerVersion, "version");
+
+        ByteBuffer truncated = bytes.duplicate();
+        truncated.limit(truncated.limit() - 5);
+        CatalogDecoder decoder = new CatalogDecoder(truncated);
+        decoder.next();
+        try {
+            decoder.readBook();
+            fail("Truncated record must be rejected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("exceeds")
+                    || expected.getMessage().contains("Truncated"));
+        }
+        assertRejected(ByteBuffer.wrap(new byte[]{'{', '"'}), "header");
+    }
+
+    private static void assertRejected(ByteBuffer bytes, String reason) {
+        try {
+            new CatalogDecoder(bytes);
+            fail("Stream with wrong " + reason + " must be rejected");
+        } catch (IOException expected) {
+            assertNotNull(expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.vvsslova.federation;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Проверка федерации филиалов: межфилиальная выдача и возврат, объединённый поиск и восстановление размещения
+ */
+public class LibraryFederationTest extends TestCase {
+    private static final String[] BRANCHES = {"North", "South", "East"};
+
+    private LibraryFederation federation;
+
+    @Override
+    protected void setUp() {
+        federation = LibraryFederation.create(BRANCHES);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        federation.close();
+    }
+
+    public void testCrossBranchLendingAndReturn() {
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        assertTrue(federation.addUser(user).join());
+        String otherBranch = otherBranch(federation.getUserBranch(user.getID()));
+        BookDto book = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+        assertTrue(federation.addBook(otherBranch, book).join());
+        assertFalse(federation.addBook(book).join());
+        assertEquals(otherBranch, federation.getBookBranch(book.getID()));
+
+        assertTrue(federation.lendBook(book.getID(), user.getID()).join());
+        assertFalse(federation.lendBook(book.getID(), user.getID()).join());
+        assertFalse(federation.lendBook(book.getID(), "missing").join());
+        assertTrue(federation.returnBook(book.getID(), user.getID()).join());
+        assertFalse(federation.returnBook(book.getID(), user.getID()).join());
+
+        assertTrue(federation.lendBook(book.getID(), user.getID()).join());
+        federation.removeUser(user.getID()).join();
+        UserDto next = new UserDto("Reader", "Shilova", 79042600860L);
+        assertTrue(federation.addUser(next).join());
+        assertTrue(federation.lendBook(book.getID(), next.getID()).join());
+    }
+
+    public void testScatterGatherSearchReturnsOneResultPerTitle() {
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        federation.addUser(user).join();
+        List<BookDto> copies = new ArrayList<>();
+        for (String branch : BRANCHES) {
+            BookDto copy = new BookDto("Flowers for Algernon", "Daniel Keyes", BookGenre.DRAMA);
+            assertTrue(federation.addBook(branch, copy).join());
+            copies.add(copy);
+        }
+        federation.addBook(new BookDto("Flowers of Evil", "Charles Baudelaire", BookGenre.DRAMA)).join();
+        federation.lendBook(copies.get(0).getID(), user.getID()).join();
+        federation.lendBook(copies.get(2).getID(), user.getID()).join();
+
+        List<BookDto> found = federation.findBooks("flowers", null, null, 10).join();
+        assertEquals(2, found.size());
+        assertTrue(found.contains(copies.get(1)));
+        assertEquals(1, federation.findBooks("flowers", null, null, 1).join().size());
+        assertTrue(federation.findBooks("flowers", null, BookGenre.FANTASY, 10).join().isEmpty());
+    }
+
+    public void testConcurrentClientsAcrossShards() throws Exception {
+        int books = 300;
+        List<UserDto> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            UserDto user = new UserDto("Reader " + i, "Shilova", 79042600000L + i);
+            federation.addUser(user).join();
+            users.add(user);
+        }
+        List<BookDto> bookDtos = new ArrayList<>();
+        for (int i = 0; i < books; i++) {
+            BookDto bookDto = new BookDto("Book " + i, "Author " + i % 7, BookGenre.DRAMA);
+            federation.addBook(bookDto).join();
+            bookDtos.add(bookDto);
+        }
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int client = 0; client < 4; client++) {
+                int offset = client;
+                results.add(clients.submit(() -> {
+                    int lent = 0;
+                    for (int i = offset; i < books; i += 4) {
+                        String userID = users.get(i % users.size()).getID();
+                        CompletableFuture<Boolean> lend = federation.lendBook(bookDtos.get(i).getID(), userID);
+                        if (lend.join() && federation.returnBook(bookDtos.get(i).getID(), userID).join()
+                                && federation.lendBook(bookDtos.get(i).getID(), userID).join()) {
+                            lent++;
+                        }
+                    }
+                    return lent;
+                }));
+            }
+            int lent = 0;
+            for (Future<Integer> result : results) {
+                lent += result.get();
+            }
+            assertEquals(books, lent);
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    public void testPlacementIsRestoredFromBranchLibraries() throws IOException {
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        federation.addUser(user).join();
+        String otherBranch = otherBranch(federation.getUserBranch(user.getID()));
+        BookDto book = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+        federation.addBook(otherBranch, book).join();
+        federation.lendBook(book.getID(), user.getID()).join();
+
+        List<LibraryService> libraryServices = new ArrayList<>();
+        for (String branch : BRANCHES) {
+            LibraryService libraryService = new LibraryService(branch);
+            libraryService.addBook(new BookDto("Placeholder " + branch, "Nobody", BookGenre.DRAMA));
+            libraryServices.add(libraryService);
+        }
+        LibraryService home = libraryServices.get(Arrays.asList(BRANCHES).indexOf(otherBranch));
+        home.addBook(book);
+        home.addUser(user);
+        home.lendBook(book.getID(), user.getID());
+        try (LibraryFederation restored = new LibraryFederation(libraryServices)) {
+            assertEquals(otherBranch, restored.getBookBranch(book.getID()));
+            restored.removeUser(user.getID()).join();
+            assertEquals(1, restored.findBooks("dead", null, null, 10).join().size());
+            UserDto next = new UserDto("Reader", "Shilova", 79042600860L);
+            restored.addUser(next).join();
+            assertTrue(restored.lendBook(book.getID(), next.getID()).join());
+        }
+    }
+
+    private static String otherBranch(String branch) {
+        for (String candidate : BRANCHES) {
+            if (!candidate.equals(branch)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.vvsslova.feed;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.exception.EventsExpiredException;
+import com.github.vvsslova.service.LibraryService;
+import com.github.vvsslova.storage.Mutation;
+import com.github.vvsslova.storage.MutationType;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка ленты изменений: порядок и номера событий, продолжение с сохранённого номера,
+ * доставка только запрошенных пачек и отставание подписчика
+ */
+public class ChangeFeedTest extends TestCase {
+
+    public void testLibraryOperationsArePublishedInOrder() throws Exception {
+        try (LibraryService libraryService = new LibraryService("Feed test library")) {
+            Collector collector = new Collector();
+            libraryService.getChangeFeed().subscribe(16, collector);
+            collector.subscription.request(Long.MAX_VALUE);
+
+            BookDto book = new BookDto("Flowers for Algernon", "Daniel Kie", BookGenre.DRAMA);
+            UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+            libraryService.addBook(book);
+            libraryService.changeBookTitle(book.getID(), "Flowers for Algernon: a novel");
+            libraryService.addUser(user);
+            assertTrue(libraryService.lendBook(book.getID(), user.getID()));
+            libraryService.returnBook(book.getID(), user.getID());
+            libraryService.removeUser(user.getID());
+
+            List<LibraryEvent> events = collector.take(6);
+            assertEquals(Arrays.asList(MutationType.ADD_BOOK, MutationType.CHANGE_BOOK_TITLE, MutationType.ADD_USER,
+                            MutationType.LEND_BOOK, MutationType.RETURN_BOOK, MutationType.REMOVE_USER),
+                    types(events));
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(i + 1, events.get(i).getSequence());
+            }
+            assertEquals("Flowers for Algernon: a novel", events.get(1).getMutation().getTitle());
+            assertEquals(user.getID(), events.get(5).getMutation().getUserID());
+        }
+    }
+
+    public void testSubscriberResumesFromSavedSequence() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(64)) {
+            publishBooks(feed, 10);
+            Collector first = new Collector();
+            feed.subscribe(1, 4, first);
+            first.subscription.request(1);
+            assertEquals(4, first.take(4).size());
+            first.subscription.cancel();
+            long resumeFrom = first.subscription.getNextSequence();
+            assertEquals(5, resumeFrom);
+
+            Collector resumed = new Collector();
+            feed.subscribe(resumeFrom, 100, resumed);
+            resumed.subscription.request(Long.MAX_VALUE);
+            List<LibraryEvent> rest = resumed.take(6);
+            assertEquals(5, rest.get(0).getSequence());
+            assertEquals(10, rest.get(5).getSequence());
+        }
+    }
+
+    public void testOnlyRequestedBatchesAreDelivered() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(64)) {
+            Collector collector = new Collector();
+            feed.subscribe(3, collector);
+            publishBooks(feed, 10);
+            collector.subscription.request(2);
+            assertEquals(6, collector.take(6).size());
+            assertNull(collector.events.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(2, collector.batches.size());
+            collector.subscription.request(10);
+            assertEquals(4, collector.take(4).size());
+            assertEquals(Arrays.asList(3, 3, 3, 1), collector.batches);
+        }
+    }
+
+    public void testLaggingSubscriberGetsErrorAndCompletionAfterClose() throws Exception {
+        Collector lagging = new Collector();
+        Collector live = new Collector();
+        try (ChangeFeed feed = new ChangeFeed(4)) {
+            publishBooks(feed, 10);
+            assertEquals(7, feed.getOldestSequence());
+            feed.subscribe(1, 10, lagging);
+            lagging.subscription.request(1);
+            feed.subscribe(10, live);
+            live.subscription.request(1);
+        }
+        assertTrue(lagging.error.poll(5, TimeUnit.SECONDS) instanceof EventsExpiredException);
+        assertTrue(live.completed.poll(5, TimeUnit.SECONDS));
+    }
+
+    private static void publishBooks(ChangeFeed feed, int count) {
+        for (int i = 0; i < count; i++) {
+            feed.publish(Collections.singletonList(
+                    Mutation.addBook(new BookDto("Book " + i, "Author", BookGenre.DRAMA))));
+        }
+    }
+
+    private static List<MutationType> types(List<LibraryEvent> events) {
+        List<MutationType> types = new ArrayList<>();
+        for (LibraryEvent event : events) {
+            types.add(event.getType());
+        }
+        return types;
+    }
+
+    private static final class Collector implements ChangeSubscriber {
+        private final BlockingQueue<LibraryEvent> events = new LinkedBlockingQueue<>();
+        private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        private final BlockingQueue<Throwable> error = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Boolean> completed = new LinkedBlockingQueue<>();
+        private ChangeSubscription subscription;
+
+        @Override
+        public void onSubscribe(ChangeSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(List<LibraryEvent> batch) {
+            batches.add(batch.size());
+            events.addAll(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.add(true);
+        }
+
+        private List<LibraryEvent> take(int count) throws InterruptedException {
+            List<LibraryEvent> taken = new ArrayList<>();
+            while (taken.size() < count) {
+                LibraryEvent event = events.poll(5, TimeUnit.SECONDS);
+                assertNotNull("Событие не доставлено", event);
+                taken.add(event);
+            }
+            return taken;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.vvsslova.http;
+
+import com.github.vvsslova.importer.RecordParser;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Проверка HTTP-интерфейса библиотеки: операции с книгами, пользователями и выдачами, ошибки запросов
+ * и одновременные запросы
+ */
+public class LibraryHttpServerTest extends TestCase {
+    private LibraryService libraryService;
+    private LibraryHttpServer server;
+    private String base;
+
+    @Override
+    protected void setUp() throws IOException {
+        libraryService = new LibraryService("HTTP test library");
+        server = new LibraryHttpServer(libraryService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        base = "http://127.0.0.1:" + server.getPort();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        server.close();
+        libraryService.close();
+    }
+
+    public void testBookAndUserLifecycle() throws IOException {
+        Reply book = send("POST", "/books",
+                "{\"title\":\"Flowers for Algernon\",\"author\":\"Daniel Kie\",\"genre\":\"drama\"}");
+        assertEquals(201, book.status);
+        String bookID = book.field("id");
+        Reply user = send("POST", "/users", "{\"name\":\"Victoria\",\"surname\":\"Shilova\",\"phone\":79005830462}");
+        assertEquals(201, user.status);
+        String userID = user.field("id");
+
+        Reply changed = send("PATCH", "/books/" + bookID, "{\"author\":\"Daniel Keyes\"}");
+        assertEquals(200, changed.status);
+        assertEquals("Daniel Keyes", changed.field("author"));
+        assertEquals("Shilova", send("PATCH", "/users/" + userID, "{\"surname\":\"Shilova\"}").field("surname"));
+        Reply found = send("GET", "/books?title=algern&genre=DRAMA", null);
+        assertEquals(200, found.status);
+        assertTrue(found.body.contains(bookID));
+        assertEquals("[]", send("GET", "/books?title=algernon&genre=ROMANCE", null).body);
+
+        String loan = "{\"bookID\":\"" + bookID + "\",\"userID\":\"" + userID + "\"}";
+        assertEquals(201, send("POST", "/loans", loan).status);
+        assertEquals(409, send("POST", "/loans", loan).status);
+        assertEquals("true", send("GET", "/books/" + bookID, null).field("lent"));
+        assertEquals(204, send("POST", "/returns", loan).status);
+        assertEquals(409, send("POST", "/returns", loan).status);
+        assertTrue(send("GET", "/metrics", null).body.contains("operation=\"lend_book\""));
+
+        assertEquals(201, send("POST", "/loans", loan).status);
+        assertEquals(204, send("DELETE", "/books/" + bookID, null).status);
+        assertEquals(404, send("GET", "/books/" + bookID, null).status);
+        assertEquals(409, send("POST", "/returns", loan).status);
+        assertEquals(204, send("DELETE", "/users/" + userID, null).status);
+        assertEquals(404, send("GET", "/users/" + userID, null).status);
+    }
+
+    public void testMalformedRequestsAreRejected() throws IOException {
+        assertEquals(400, send("POST", "/books", "{\"title\":\"No author\"}").status);
+        assertEquals(400, send("POST", "/books", "{\"title\":\"A\",\"author\":\"B\",\"genre\":\"POETRY\"}").status);
+        assertEquals(400, send("POST", "/users", "not json").status);
+        assertEquals(400, send("GET", "/books?limit=0", null).status);
+        assertEquals(405, send("PUT", "/loans", "{}").status);
+        assertEquals(404, send("PATCH", "/users/missing", "{\"name\":\"X\"}").status);
+    }
+
+    public void testConcurrentRequests() throws Exception {
+        int clients = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                int index = i;
+                results.add(executor.submit(() -> send("POST", "/books",
+                        "{\"title\":\"Book " + index + "\",\"author\":\"Author\",\"genre\":\"DRAMA\"}").status));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(201, result.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(clients, libraryService.getBookService().getBooks().size());
+        assertEquals(20, count(send("GET", "/books?author=author", null).body));
+    }
+
+    private static int count(String array) {
+        int count = 0;
+        for (int i = array.indexOf("\"id\""); i >= 0; i = array.indexOf("\"id\"", i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private Reply send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        if (method.equals("PATCH")) {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(method);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (input != null) {
+            try (InputStream stream = input) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+            }
+        }
+        return new Reply(status, new String(content.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static final class Reply {
+        private final int status;
+        private final String body;
+
+        private Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private String field(String name) {
+            Map<String, String> fields = RecordParser.parseJson(body);
+            return fields.get(name);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.vvsslova.importer;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Проверка массовой загрузки из CSV и JSONL
+ */
+public class BulkImporterTest extends TestCase {
+    private LibraryService libraryService;
+    private BulkImporter importer;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Import test library");
+        importer = new BulkImporter(libraryService, 2, 2, 100);
+    }
+
+    public void testBooksFromCsvWithHeader() throws Exception {
+        String csv = "title,author,genre,id\n"
+                + "\"Pride and Prejudice\",Jane Osten,romance,b1\n"
+                + "\"Alice's Adventures, in Wonderland\",Lewis Carroll,ADVENTURE,b2\n"
+                + "\n"
+                + "Flowers for Algernon,Daniel Kie,POETRY,b3\n"
+                + "Duplicate,Someone,DRAMA,b1\n"
+                + "No author,,DRAMA,b4\n";
+        ImportReport report = importer.importBooks(new StringReader(csv), ImportFormat.CSV);
+
+        assertEquals(2, report.getAccepted());
+        assertEquals(3, report.getRejected());
+        BookDto alice = libraryService.getBookService().getBooks().get("b2");
+        assertEquals("Alice's Adventures, in Wonderland", alice.getTitle());
+        assertEquals(BookGenre.ROMANCE, libraryService.getBookService().getBooks().get("b1").getBookGenre());
+        assertEquals(1, libraryService.findBooks("wonderland", null, null, 10).size());
+        Set<Long> rejectedLines = new HashSet<>();
+        for (ImportReport.Rejection rejection : report.getRejections()) {
+            rejectedLines.add(rejection.getLineNumber());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(5L, 6L, 7L)), rejectedLines);
+    }
+
+    public void testUsersAndLoansFromJsonl() throws Exception {
+        libraryService.addBook(new BookDto("b1", "Pride and Prejudice", "Jane Osten", BookGenre.ROMANCE));
+        String users = "{\"id\": \"u1\", \"name\": \"Victoria\", \"surname\": \"Shilova\", \"phone\": 79005830462}\n"
+                + "{\"id\": \"u2\", \"name\": \"Nat\\\"alia\", \"surname\": \"Shilova\", \"phone\": 79042600860}\n"
+                + "{\"id\": \"u3\", \"name\": \"Broken\"\n";
+        ImportReport userReport = importer.importUsers(new StringReader(users), ImportFormat.JSONL);
+        assertEquals(2, userReport.getAccepted());
+        assertEquals(1, userReport.getRejected());
+        assertEquals("Nat\"alia", libraryService.getUserService().getUsers().get("u2").getName());
+
+        String loans = "bookId,userId,returnDate\n"
+                + "b1,u1,2026-11-01\n"
+                + "b1,u2,2026-11-02\n"
+                + "missing,u1,2026-11-03\n"
+                + "b1,u1,not-a-date\n";
+        ImportReport loanReport = importer.importLoans(new StringReader(loans), ImportFormat.CSV);
+        assertEquals(1, loanReport.getAccepted());
+        assertEquals(3, loanReport.getRejected());
+        assertEquals("u1", libraryService.getLendingJournal().findByBook("b1").getUserID());
+        assertEquals(LocalDate.of(2026, 11, 1), libraryService.getLendingJournal().findByBook("b1").getReturnDate());
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.vvsslova.metrics;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryOperation;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Проверка точности гистограмм, записи из нескольких потоков и выгрузки в формате Prometheus
+ */
+public class MetricsRegistryTest extends TestCase {
+
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(11);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.valueAtPercentile(percentile);
+            assertTrue(percentile + ": " + expected + " vs " + actual,
+                    actual >= expected && actual <= expected + expected / 32 + 1);
+        }
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        assertEquals(Arrays.stream(values).sum(), histogram.getTotalNanos());
+    }
+
+    public void testBucketBoundsAreContiguous() {
+        for (int index = 0; index < LatencyHistogram.indexOf(LatencyHistogram.MAX_TRACKABLE_NANOS); index++) {
+            assertEquals(LatencyHistogram.upperBound(index) + 1, LatencyHistogram.lowerBound(index + 1));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.lowerBound(index)));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.upperBound(index)));
+        }
+    }
+
+    public void testConcurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Counter counter = new Counter();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i);
+                    counter.increment();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(200_000, counter.get());
+        assertEquals(49_999, histogram.getMaxNanos());
+    }
+
+    public void testRecordingDoesNotAllocate() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        Counter counter = new Counter();
+        for (int i = 0; i < 200_000; i++) {
+            histogram.recordSince(System.nanoTime() - i);
+            counter.increment();
+        }
+        long threadID = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadID);
+        for (int i = 0; i < 200_000; i++) {
+            histogram.recordSince(System.nanoTime() - i);
+            counter.increment();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadID) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4_096);
+    }
+
+    public void testPrometheusExport() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter lent = registry.counter("library_lent_total", "Выданные книги", "branch", "main");
+        assertSame(lent, registry.counter("library_lent_total", "Выданные книги", "branch", "main"));
+        lent.add(3);
+        registry.gauge("library_books", "Книги", () -> 42);
+        registry.histogram("library_operation_duration_seconds", "Длительность", "operation", "lend_book")
+                .record(1_500_000);
+
+        String text = registry.toPrometheus();
+        assertTrue(text.contains("# TYPE library_lent_total counter\nlibrary_lent_total{branch=\"main\"} 3\n"));
+        assertTrue(text.contains("# TYPE library_books gauge\nlibrary_books 42\n"));
+        assertTrue(text.contains("library_operation_duration_seconds{operation=\"lend_book\",quantile=\"0.99\"} 0.0015"));
+        assertTrue(text.contains("library_operation_duration_seconds_count{operation=\"lend_book\"} 1\n"));
+
+        Path file = Files.createTempFile("metrics", ".prom");
+        try {
+            registry.exportTo(file);
+            assertEquals(text, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        try {
+            registry.gauge("library_lent_total", "Выданные книги", () -> 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // тип метрики не меняется
+        }
+    }
+
+    public void testLibraryServiceMetrics() throws Exception {
+        try (LibraryService libraryService = new LibraryService("Metrics test library")) {
+            BookDto book = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+            UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+            libraryService.addBook(book);
+            libraryService.addUser(user);
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.findBooks("dead", null, null, 10);
+
+            assertEquals(2, libraryService.getLatency(LibraryOperation.LEND_BOOK).getCount());
+            assertEquals(1, libraryService.getLatency(LibraryOperation.FIND_BOOKS).getCount());
+            assertEquals(0, libraryService.getLatency(LibraryOperation.RETURN_BOOK).getCount());
+            String text = libraryService.getMetrics().toPrometheus();
+            assertTrue(text.contains("library_books 1\n"));
+            assertTrue(text.contains("library_active_loans 1\n"));
+            assertTrue(text.contains("library_overdue_loans 0\n"));
+            assertTrue(text.contains("library_operation_duration_seconds_count{operation=\"lend_book\"} 2\n"));
+            assertTrue(text.contains("library_cache_hits_total{cache=\"book\"} 1\n"));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.vvsslova.policy;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import com.github.vvsslova.service.LibraryService;
+import com.github.vvsslova.service.LoanStatus;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проверка правил выдачи: ограничений количества книг, жанров, просрочек и скорости выдач
+ */
+public class LoanPolicyEngineTest extends TestCase {
+    private LibraryService libraryService;
+    private UserDto user;
+    private List<BookDto> dramas;
+    private BookDto romance;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Policy test library");
+        user = new UserDto("Victoria", "Shilova", 79005830462L);
+        libraryService.addUser(user);
+        dramas = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            BookDto drama = new BookDto("Drama " + i, "Author", BookGenre.DRAMA);
+            dramas.add(drama);
+            libraryService.addBook(drama);
+        }
+        romance = new BookDto("Pride and Prejudice", "Jane Austen", BookGenre.ROMANCE);
+        libraryService.addBook(romance);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        libraryService.close();
+    }
+
+    public void testLoanAndGenreLimits() {
+        Map<BookGenre, Integer> genreLimits = new EnumMap<>(BookGenre.class);
+        genreLimits.put(BookGenre.DRAMA, 2);
+        libraryService.setLoanPolicy(new LoanPolicy(3, genreLimits, false, 0, 0));
+
+        assertTrue(libraryService.lendBook(dramas.get(0).getID(), user.getID()));
+        Map<String, LoanStatus> batch = libraryService.lendBooks(user.getID(),
+                Arrays.asList(dramas.get(1).getID(), dramas.get(2).getID(), romance.getID()), false);
+        assertEquals(Arrays.asList(LoanStatus.DONE, LoanStatus.GENRE_LIMIT_REACHED, LoanStatus.DONE),
+                new ArrayList<>(batch.values()));
+        assertFalse(libraryService.lendBook(dramas.get(3).getID(), user.getID()));
+
+        libraryService.returnBook(romance.getID(), user.getID());
+        assertFalse(libraryService.lendBook(dramas.get(3).getID(), user.getID()));
+        libraryService.setLoanPolicy(new LoanPolicy(3, Collections.emptyMap(), false, 0, 0));
+        assertTrue(libraryService.lendBook(dramas.get(3).getID(), user.getID()));
+        assertFalse(libraryService.lendBook(romance.getID(), user.getID()));
+
+        libraryService.removeBook(dramas.get(0).getID());
+        assertTrue(libraryService.lendBook(romance.getID(), user.getID()));
+    }
+
+    public void testOverdueLoansBlockCheckout() {
+        libraryService.setLoanPolicy(new LoanPolicy(0, Collections.emptyMap(), true, 0, 0));
+        LocalDate today = LocalDate.now();
+        assertTrue(libraryService.addLoans(Collections.singletonList(new Journal(dramas.get(0).getID(), user.getID(),
+                null, today.minusDays(30), today.minusDays(1)))).isEmpty());
+        assertFalse(libraryService.lendBook(romance.getID(), user.getID()));
+
+        assertTrue(libraryService.extendLoan(dramas.get(0).getID(), user.getID(), today.plusDays(7)));
+        assertTrue(libraryService.lendBook(romance.getID(), user.getID()));
+        assertTrue(libraryService.returnBook(dramas.get(0).getID(), user.getID()));
+        assertTrue(libraryService.lendBook(dramas.get(0).getID(), user.getID()));
+    }
+
+    public void testOverdueIsCountedOncePerLoan() {
+        LoanPolicyEngine engine = new LoanPolicyEngine(bookID -> BookGenre.DRAMA);
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        engine.onLent("b1", "u1", today.plusDays(1));
+        engine.onLent("b2", "u1", today.plusDays(3));
+        assertEquals(0, engine.countOverdue("u1", today));
+        assertEquals(1, engine.countOverdue("u1", today.plusDays(2)));
+        assertEquals(1, engine.countOverdue("u1", today.plusDays(2)));
+        assertEquals(2, engine.countOverdue("u1", today.plusDays(4)));
+        engine.onReturnDateChanged("b2", "u1", today.plusDays(10));
+        assertEquals(1, engine.countOverdue("u1", today.plusDays(4)));
+        engine.onReturned("b1", "u1");
+        assertEquals(0, engine.countOverdue("u1", today.plusDays(4)));
+        assertEquals(1, engine.countLoans("u1"));
+        assertEquals(1, engine.countLoans("u1", BookGenre.DRAMA));
+        engine.onReturned("b2", "u1");
+        assertEquals(0, engine.countLoans("u1"));
+    }
+
+    public void testConcurrentEventsKeepCountersConsistent() throws Exception {
+        LoanPolicyEngine engine = new LoanPolicyEngine(bookID -> BookGenre.DRAMA);
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        String bookID = "b" + thread + "-" + (i % 10);
+                        engine.onLent(bookID, "u" + (i % 3), today.plusDays(i % 5));
+                        engine.countOverdue("u0", today.plusDays(i % 7));
+                        engine.onReturnDateChanged(bookID, "u" + (i % 3), today.plusDays(i % 4));
+                        engine.onReturned(bookID, "u" + (i % 3));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int u = 0; u < 3; u++) {
+            assertEquals(0, engine.countLoans("u" + u));
+            assertEquals(0, engine.countLoans("u" + u, BookGenre.DRAMA));
+            assertEquals(0, engine.countOverdue("u" + u, today.plusDays(30)));
+        }
+        engine.onLent("b-late", "u0", today.plusDays(1));
+        assertEquals(1, engine.countOverdue("u0", today.plusDays(30)));
+    }
+
+    public void testRateLimitPerUserAndKiosk() {
+        libraryService.setLoanPolicy(new LoanPolicy(0, Collections.emptyMap(), false, 1, 2));
+        UserDto other = new UserDto("Ivan", "Petrov", 79001112233L);
+        libraryService.addUser(other);
+
+        assertTrue(libraryService.lendBook(dramas.get(0).getID(), user.getID(), "kiosk-1"));
+        assertTrue(libraryService.lendBook(dramas.get(1).getID(), user.getID(), "kiosk-1"));
+        assertFalse(libraryService.lendBook(dramas.get(2).getID(), user.getID(), "kiosk-2"));
+        assertFalse(libraryService.lendBook(dramas.get(2).getID(), other.getID(), "kiosk-1"));
+        assertTrue(libraryService.lendBook(dramas.get(2).getID(), other.getID(), "kiosk-2"));
+        assertEquals(LoanStatus.RATE_LIMITED, libraryService.lendBooks(user.getID(),
+                Collections.singletonList(romance.getID()), false).get(romance.getID()));
+    }
+
+    public void testIdleRateLimitersAreEvicted() {
+        LoanPolicyEngine engine = new LoanPolicyEngine(bookID -> BookGenre.DRAMA);
+        engine.setPolicy(new LoanPolicy(0, Collections.emptyMap(), false, 60, 1));
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(engine.tryAcquire("u" + i, null, 1, start));
+        }
+        assertTrue(engine.tryAcquire("u100", "kiosk-1", 1, start));
+        assertFalse(engine.tryAcquire("u0", null, 1, start));
+        assertEquals(102, engine.countRateLimiters());
+
+        long later = start + TimeUnit.MINUTES.toNanos(2);
+        assertTrue(engine.tryAcquire("u0", null, 1, later));
+        assertEquals(1, engine.countRateLimiters());
+        assertFalse(engine.tryAcquire("u0", null, 1, later));
+        assertTrue(engine.tryAcquire("u1", null, 1, later));
+    }
+
+    public void testConcurrentCheckoutsRespectLimit() throws Exception {
+        int limit = 3;
+        libraryService.setLoanPolicy(new LoanPolicy(limit, Collections.emptyMap(), false, 0, 0));
+        List<BookDto> books = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            BookDto book = new BookDto("Book " + i, "Author", BookGenre.ADVENTURE);
+            books.add(book);
+            libraryService.addBook(book);
+        }
+        AtomicInteger maxSeen = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (BookDto book : books) {
+                results.add(executor.submit(() -> {
+                    for (int round = 0; round < 50; round++) {
+                        if (libraryService.lendBook(book.getID(), user.getID())) {
+                            maxSeen.accumulateAndGet(libraryService.getLendingJournal().findByUser(user.getID()).size(),
+                                    Math::max);
+                            libraryService.returnBook(book.getID(), user.getID());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(maxSeen.get() > 0);
+        assertTrue(maxSeen.get() <= limit);
+        assertTrue(libraryService.getLendingJournal().findByUser(user.getID()).isEmpty());
+    }
+}
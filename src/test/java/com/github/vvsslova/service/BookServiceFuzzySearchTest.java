@@ -0,0 +1,141 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка поиска с опечатками и автодополнения названий
+ */
+public class BookServiceFuzzySearchTest extends TestCase {
+    private BookService bookService;
+    private BookDto pride;
+    private BookDto algernon;
+    private BookDto alice;
+
+    @Override
+    protected void setUp() {
+        bookService = new BookService();
+        pride = new BookDto("Pride and Prejudice", "Jane Osten", BookGenre.ROMANCE);
+        algernon = new BookDto("Flowers for Algernon", "Daniel Kie", BookGenre.DRAMA);
+        alice = new BookDto("Alice's Adventures in Wonderland", "Lewis Carroll", BookGenre.ADVENTURE);
+        bookService.addBook(pride);
+        bookService.addBook(algernon);
+        bookService.addBook(alice);
+    }
+
+    public void testMisspelledWordsAreFound() {
+        assertTrue(bookService.findBooks(null, "austen", null, 10).isEmpty());
+        assertEquals(pride, bookService.findSimilarBooks(null, "Jane Austen", null, 10).get(0));
+        assertEquals(algernon, bookService.findSimilarBooks("flowrs algernonn", null, null, 10).get(0));
+        assertEquals(alice, bookService.findSimilarBooks("wonderlnd", "carrol", BookGenre.ADVENTURE, 10).get(0));
+        assertTrue(bookService.findSimilarBooks("wonderlnd", null, BookGenre.DRAMA, 10).isEmpty());
+        assertTrue(bookService.findSimilarBooks("xyzzy", null, null, 10).isEmpty());
+    }
+
+    public void testExactMatchesRankAboveTypos() {
+        BookDto flows = new BookDto("Quiet Flows the Don", "Mikhail Sholokhov", BookGenre.DRAMA);
+        BookDto flaws = new BookDto("Fatal Flaws", "Jane Doe", BookGenre.DRAMA);
+        bookService.addBook(flows);
+        bookService.addBook(flaws);
+        List<BookDto> found = bookService.findSimilarBooks("flaws", null, null, 10);
+        assertEquals(flaws, found.get(0));
+        assertTrue(found.contains(flows));
+    }
+
+    public void testAutocompleteByPrefix() {
+        bookService.addBook(new BookDto("Alice Through the Looking-Glass", "Lewis Carroll", BookGenre.FANTASY));
+        assertEquals(2, bookService.suggestTitles("ali", 10).size());
+        List<String> titles = bookService.suggestTitles("Alice thr", 10).stream()
+                .map(CatalogTitle::getTitle)
+                .collect(Collectors.toList());
+        assertEquals(1, titles.size());
+        assertEquals("Alice Through the Looking-Glass", titles.get(0));
+        assertTrue(bookService.suggestTitles("  ", 10).isEmpty());
+        assertEquals(1, bookService.suggestTitles("ali", 1).size());
+    }
+
+    public void testRemovedWordsLeaveTrigramIndex() {
+        bookService.removeBook(pride.getID());
+        assertTrue(bookService.findSimilarBooks(null, "austen", null, 10).isEmpty());
+        bookService.changeBookAuthor(algernon.getID(), "Daniel Keyes");
+        assertEquals(algernon, bookService.findSimilarBooks(null, "keys", null, 10).get(0));
+        assertTrue(bookService.findSimilarBooks(null, "kie", null, 10).isEmpty());
+    }
+
+    public void testBoundedDistanceMatchesFullLevenshtein() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String a = randomWord(random);
+            String b = random.nextBoolean() ? randomWord(random) : mutate(a, random);
+            int limit = random.nextInt(3);
+            int expected = levenshtein(a, b);
+            assertEquals(a + " / " + b, Math.min(expected, limit + 1), BookSearchIndex.boundedDistance(a, b, limit));
+        }
+    }
+
+    public void testSearchOnLargeVocabulary() {
+        BookService large = new BookService();
+        Random random = new Random(11);
+        for (int i = 0; i < 5_000; i++) {
+            large.restoreBook(new BookDto(randomWord(random) + " " + randomWord(random) + " " + i,
+                    randomWord(random), BookGenre.DRAMA));
+        }
+        BookDto target = new BookDto("Chronicles of Narnia", "Clive Lewis", BookGenre.FANTASY);
+        large.addBook(target);
+        assertEquals(target, large.findSimilarBooks("cronicles narnya", null, null, 10).get(0));
+    }
+
+    private static String randomWord(Random random) {
+        int length = 3 + random.nextInt(8);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(8)));
+        }
+        return word.toString();
+    }
+
+    private static String mutate(String word, Random random) {
+        StringBuilder mutated = new StringBuilder(word);
+        for (int edits = random.nextInt(4); edits > 0; edits--) {
+            int position = random.nextInt(mutated.length() + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.insert(position, (char) ('a' + random.nextInt(8)));
+                    break;
+                case 1:
+                    if (position < mutated.length() && mutated.length() > 1) {
+                        mutated.deleteCharAt(position);
+                    }
+                    break;
+                default:
+                    if (position < mutated.length()) {
+                        mutated.setCharAt(position, (char) ('a' + random.nextInt(8)));
+                    }
+            }
+        }
+        return mutated.toString();
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] distance = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            distance[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            distance[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                distance[i][j] = Math.min(distance[i - 1][j - 1] + cost,
+                        Math.min(distance[i - 1][j] + 1, distance[i][j - 1] + 1));
+            }
+        }
+        return distance[a.length()][b.length()];
+    }
+}
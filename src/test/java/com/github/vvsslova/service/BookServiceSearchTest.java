@@ -0,0 +1,77 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Проверка поиска книг по инвертированному индексу
+ */
+public class BookServiceSearchTest extends TestCase {
+    private BookService bookService;
+    private BookDto pride;
+    private BookDto algernon;
+    private BookDto alice;
+
+    @Override
+    protected void setUp() {
+        bookService = new BookService();
+        pride = new BookDto("Pride and Prejudice", "Jane Austen", BookGenre.ROMANCE);
+        algernon = new BookDto("Flowers for Algernon", "Daniel Keyes", BookGenre.DRAMA);
+        alice = new BookDto("Alice's Adventures in Wonderland", "Lewis Carroll", BookGenre.ADVENTURE);
+        bookService.addBook(pride);
+        bookService.addBook(algernon);
+        bookService.addBook(alice);
+    }
+
+    public void testExactSearchKeepsCaseInsensitiveSemantics() {
+        assertEquals(1, bookService.searchBooks("pride AND prejudice", null).size());
+        assertEquals(0, bookService.searchBooks("Pride", null).size());
+        assertEquals(1, bookService.searchBooks(null, "daniel keyes").size());
+        assertEquals(3, bookService.searchBooks(null, null).size());
+    }
+
+    public void testTokenPrefixAndFieldsAreCombined() {
+        assertEquals(pride, bookService.findBooks("prej", null, null, 10).get(0));
+        assertEquals(algernon, bookService.findBooks("flow", "keyes", BookGenre.DRAMA, 10).get(0));
+        assertTrue(bookService.findBooks("flow", "carroll", null, 10).isEmpty());
+        assertTrue(bookService.findBooks("flow", null, BookGenre.ROMANCE, 10).isEmpty());
+        assertEquals(alice, bookService.findBooks(null, null, BookGenre.ADVENTURE, 10).get(0));
+    }
+
+    public void testExactTokenRanksAboveTitlePrefix() {
+        BookDto wonder = new BookDto("Wonder", "R. J. Palacio", BookGenre.DRAMA);
+        bookService.addBook(wonder);
+        List<BookDto> found = bookService.findBooks("wonder", null, null, 10);
+        assertEquals(2, found.size());
+        assertEquals(wonder, found.get(0));
+        assertEquals(alice, found.get(1));
+    }
+
+    public void testShortPrefixExpansionIsBounded() {
+        for (int i = 0; i < 1000; i++) {
+            bookService.addBook(new BookDto(String.format("a%04d", i), "Author", BookGenre.DRAMA));
+        }
+        assertEquals(256, bookService.findBooks("a", null, null, 10_000).size());
+        assertEquals(1, bookService.findBooks("a0999", null, null, 10).size());
+        assertEquals(alice, bookService.findBooks("alice", null, null, 10).get(0));
+    }
+
+    public void testIndexFollowsChangesAndRemoval() {
+        bookService.changeBookTitle(algernon.getID(), "Charly");
+        assertTrue(bookService.findBooks("flowers", null, null, 10).isEmpty());
+        assertEquals(algernon, bookService.findBooks("charly", null, null, 10).get(0));
+
+        bookService.changeBookAuthor(pride.getID(), "Jane Osten");
+        assertEquals(pride, bookService.findBooks(null, "osten", null, 10).get(0));
+
+        bookService.changeBookGenre(alice.getID(), BookGenre.FANTASY);
+        assertEquals(alice, bookService.findBooks(null, null, BookGenre.FANTASY, 10).get(0));
+        assertTrue(bookService.findBooks(null, null, BookGenre.ADVENTURE, 10).isEmpty());
+
+        bookService.removeBook(alice.getID());
+        assertTrue(bookService.findBooks("alice", null, null, 10).isEmpty());
+    }
+}
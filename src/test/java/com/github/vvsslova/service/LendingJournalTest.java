@@ -0,0 +1,94 @@
+package com.github.vvsslova.service;
+
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Сверка индексов журнала выдачи с простой моделью на случайной последовательности операций
+ */
+public class LendingJournalTest extends TestCase {
+    private static final int BOOKS = 500;
+    private static final int USERS = 50;
+    private static final int OPERATIONS = 50_000;
+
+    public void testIndexesMatchModel() {
+        LendingJournal lendingJournal = new LendingJournal();
+        Map<String, Journal> model = new HashMap<>();
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < OPERATIONS; i++) {
+            String bookID = "book-" + random.nextInt(BOOKS);
+            String userID = "user-" + random.nextInt(USERS);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                Journal journal = new Journal(bookID, userID, "Title " + bookID, today.plusDays(random.nextInt(30)));
+                lendingJournal.add(journal);
+                model.put(bookID, journal);
+            } else if (operation < 8) {
+                assertEquals(model.remove(bookID), lendingJournal.removeByBook(bookID));
+            } else if (operation < 9) {
+                LocalDate returnDate = today.plusDays(random.nextInt(30));
+                Journal changed = lendingJournal.changeReturnDate(bookID, returnDate);
+                if (model.containsKey(bookID)) {
+                    Journal journal = model.get(bookID);
+                    model.put(bookID, new Journal(bookID, journal.getUserID(), journal.getBookTitle(), returnDate));
+                }
+                assertEquals(model.get(bookID), changed);
+            } else {
+                Set<Journal> removed = new HashSet<>(lendingJournal.removeByUser(userID));
+                Set<Journal> expected = new HashSet<>();
+                model.values().removeIf(journal -> journal.getUserID().equals(userID) && expected.add(journal));
+                assertEquals(expected, removed);
+            }
+        }
+
+        assertEquals(model.size(), lendingJournal.size());
+        assertEquals(new HashSet<>(model.values()), new HashSet<>(lendingJournal.findAll()));
+        for (int i = 0; i < BOOKS; i++) {
+            assertEquals(model.get("book-" + i), lendingJournal.findByBook("book-" + i));
+        }
+        for (int i = 0; i < USERS; i++) {
+            String userID = "user-" + i;
+            Set<Journal> expected = new HashSet<>();
+            for (Journal journal : model.values()) {
+                if (journal.getUserID().equals(userID)) {
+                    expected.add(journal);
+                }
+            }
+            assertEquals(expected, new HashSet<>(lendingJournal.findByUser(userID)));
+            assertEquals(!expected.isEmpty(), lendingJournal.hasLoans(userID));
+        }
+        LocalDate to = today.plusDays(10);
+        List<Journal> due = lendingJournal.dueBetween(today.plusDays(3), to);
+        List<Journal> expected = new ArrayList<>();
+        for (Journal journal : model.values()) {
+            if (!journal.getReturnDate().isBefore(today.plusDays(3)) && journal.getReturnDate().isBefore(to)) {
+                expected.add(journal);
+            }
+        }
+        assertEquals(new HashSet<>(expected), new HashSet<>(due));
+        for (int i = 1; i < due.size(); i++) {
+            assertFalse(due.get(i).getReturnDate().isBefore(due.get(i - 1).getReturnDate()));
+        }
+
+        List<Journal> ordered = new ArrayList<>(model.values());
+        ordered.sort(Comparator.comparing(Journal::getReturnDate).thenComparing(Journal::getBookID));
+        List<Journal> listed = new ArrayList<>();
+        Page<Journal> page = lendingJournal.listLoans(null, 37, null);
+        listed.addAll(page.getItems());
+        while (page.hasNext()) {
+            page = lendingJournal.listLoans(page.getNextCursor(), 37, null);
+            listed.addAll(page.getItems());
+        }
+        assertEquals(ordered, listed);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Проверка пакетной выдачи и возврата книг
+ */
+public class LibraryServiceBatchLoanTest extends TestCase {
+    private LibraryService libraryService;
+    private BookDto first;
+    private BookDto second;
+    private BookDto lent;
+    private UserDto user;
+    private UserDto otherUser;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Batch test library");
+        first = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+        second = new BookDto("Fathers and Sons", "Ivan Turgenev", BookGenre.DRAMA);
+        lent = new BookDto("The White Guard", "Mikhail Bulgakov", BookGenre.HISTORICAL_FICTION);
+        user = new UserDto("Victoria", "Shilova", 79005830462L);
+        otherUser = new UserDto("Natalia", "Shilova", 79042600860L);
+        libraryService.addBook(first);
+        libraryService.addBook(second);
+        libraryService.addBook(lent);
+        libraryService.addUser(user);
+        libraryService.addUser(otherUser);
+        libraryService.lendBook(lent.getID(), otherUser.getID());
+    }
+
+    public void testLendBooksReportsEachItem() {
+        Map<String, LoanStatus> results = libraryService.lendBooks(user.getID(),
+                Arrays.asList(first.getID(), lent.getID(), "missing", first.getID(), second.getID()), false);
+
+        assertEquals(Arrays.asList(first.getID(), lent.getID(), "missing", second.getID()),
+                Arrays.asList(results.keySet().toArray()));
+        assertEquals(LoanStatus.DUPLICATE, results.get(first.getID()));
+        assertEquals(LoanStatus.ALREADY_LENT, results.get(lent.getID()));
+        assertEquals(LoanStatus.BOOK_NOT_FOUND, results.get("missing"));
+        assertEquals(LoanStatus.DONE, results.get(second.getID()));
+        assertEquals(user.getID(), libraryService.getLendingJournal().findByBook(first.getID()).getUserID());
+        assertEquals(2, libraryService.getLendingJournal().findByUser(user.getID()).size());
+    }
+
+    public void testSingleLendReportsStatus() {
+        assertEquals(LoanStatus.BOOK_NOT_FOUND, libraryService.tryLendBook("missing", user.getID(), null));
+        assertEquals(LoanStatus.USER_NOT_FOUND, libraryService.tryLendBook(first.getID(), "missing", null));
+        assertEquals(LoanStatus.ALREADY_LENT, libraryService.tryLendBook(lent.getID(), user.getID(), null));
+        assertEquals(LoanStatus.DONE, libraryService.tryLendBook(first.getID(), user.getID(), null));
+        assertEquals(user.getID(), libraryService.getLendingJournal().findByBook(first.getID()).getUserID());
+        assertFalse(libraryService.lendBook(first.getID(), otherUser.getID()));
+    }
+
+    public void testAllOrNothingLendAppliesNothingOnFailure() {
+        Map<String, LoanStatus> results = libraryService.lendBooks(user.getID(),
+                Arrays.asList(first.getID(), lent.getID(), second.getID()), true);
+
+        assertEquals(LoanStatus.NOT_APPLIED, results.get(first.getID()));
+        assertEquals(LoanStatus.ALREADY_LENT, results.get(lent.getID()));
+        assertEquals(LoanStatus.NOT_APPLIED, results.get(second.getID()));
+        assertFalse(libraryService.getLendingJournal().hasLoans(user.getID()));
+    }
+
+    public void testLendBooksToUnknownUser() {
+        Map<String, LoanStatus> results = libraryService.lendBooks("unknown", Arrays.asList(first.getID()), false);
+        assertEquals(LoanStatus.USER_NOT_FOUND, results.get(first.getID()));
+        assertFalse(libraryService.getLendingJournal().isBookLent(first.getID()));
+    }
+
+    public void testReturnBooks() {
+        libraryService.lendBooks(user.getID(), Arrays.asList(first.getID(), second.getID()), true);
+
+        Map<String, LoanStatus> rejected = libraryService.returnBooks(Arrays.asList(
+                new Journal(first.getID(), user.getID(), null, null),
+                new Journal(lent.getID(), user.getID(), null, null)), true);
+        assertEquals(LoanStatus.NOT_APPLIED, rejected.get(first.getID()));
+        assertEquals(LoanStatus.NOT_LENT_TO_USER, rejected.get(lent.getID()));
+        assertEquals(3, libraryService.getLendingJournal().size());
+
+        Map<String, LoanStatus> results = libraryService.returnBooks(Arrays.asList(
+                new Journal(first.getID(), user.getID(), null, null),
+                new Journal(second.getID(), user.getID(), null, null),
+                new Journal(lent.getID(), otherUser.getID(), null, null)), true);
+        for (LoanStatus status : results.values()) {
+            assertEquals(LoanStatus.DONE, status);
+        }
+        assertEquals(0, libraryService.getLendingJournal().size());
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.constant.HoldPriority;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.storage.FileStorageEngine;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Проверка каскадного удаления книг и пользователей: выдачи, резервирования и история,
+ * массовое удаление пакетами и восстановление из хранилища
+ */
+public class LibraryServiceCascadeDeleteTest extends TestCase {
+    private LibraryService libraryService;
+    private BookDto lent;
+    private BookDto held;
+    private UserDto reader;
+    private UserDto other;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Cascade test library");
+        lent = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+        held = new BookDto("Quiet Flows the Don", "Mikhail Sholokhov", BookGenre.DRAMA);
+        reader = new UserDto("Victoria", "Shilova", 79005830462L);
+        other = new UserDto("Ivan", "Petrov", 79001112233L);
+        libraryService.addBook(lent);
+        libraryService.addBook(held);
+        libraryService.addUser(reader);
+        libraryService.addUser(other);
+        assertTrue(libraryService.lendBook(lent.getID(), reader.getID()));
+        assertTrue(libraryService.lendBook(held.getID(), other.getID()));
+        assertTrue(libraryService.placeHold(held.getID(), reader.getID(), HoldPriority.NORMAL));
+        assertTrue(libraryService.placeHold(lent.getID(), other.getID(), HoldPriority.NORMAL));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        libraryService.close();
+    }
+
+    public void testRemoveUserReturnsBooksAndCancelsHolds() {
+        assertTrue(libraryService.removeUser(reader.getID()));
+
+        assertNull(libraryService.getUser(reader.getID()));
+        assertFalse(libraryService.getLendingJournal().hasLoans(reader.getID()));
+        assertTrue(libraryService.getHolds(held.getID()).isEmpty());
+        assertEquals(other.getID(), libraryService.getLendingJournal().findByBook(lent.getID()).getUserID());
+        assertTrue(libraryService.getHolds(lent.getID()).isEmpty());
+        assertEquals(1, libraryService.getLoanHistory().size());
+
+        assertTrue(libraryService.returnBook(held.getID(), other.getID()));
+        assertFalse(libraryService.getLendingJournal().isBookLent(held.getID()));
+        assertFalse(libraryService.removeUser(reader.getID()));
+    }
+
+    public void testRemoveBookClosesLoanAndDropsQueue() {
+        assertTrue(libraryService.removeBook(lent.getID()));
+
+        assertNull(libraryService.getBook(lent.getID()));
+        assertFalse(libraryService.getLendingJournal().isBookLent(lent.getID()));
+        assertTrue(libraryService.getHolds(lent.getID()).isEmpty());
+        assertEquals(1, libraryService.getLoanHistory().size());
+        assertFalse(libraryService.removeBook(lent.getID()));
+
+        assertTrue(libraryService.removeUser(other.getID()));
+        assertEquals(reader.getID(), libraryService.getLendingJournal().findByBook(held.getID()).getUserID());
+    }
+
+    public void testDeactivateUsersInBatches() {
+        int students = LibraryService.DEACTIVATION_BATCH * 2 + 10;
+        List<String> purge = new ArrayList<>();
+        for (int i = 0; i < students; i++) {
+            UserDto student = new UserDto("Student " + i, "Shilova", 79100000000L + i);
+            BookDto textbook = new BookDto("Textbook " + i, "Author", BookGenre.ADVENTURE);
+            libraryService.addUser(student);
+            libraryService.addBook(textbook);
+            assertTrue(libraryService.lendBook(textbook.getID(), student.getID()));
+            assertTrue(libraryService.placeHold(held.getID(), student.getID(), HoldPriority.LOW));
+            purge.add(student.getID());
+        }
+        purge.add(reader.getID());
+        purge.add("unknown-user");
+
+        assertEquals(Collections.singletonList("unknown-user"), libraryService.deactivateUsers(purge));
+
+        assertEquals(Collections.singleton(other.getID()), libraryService.getUserService().getUsers().keySet());
+        assertEquals(2, libraryService.getLendingJournal().size());
+        assertEquals(other.getID(), libraryService.getLendingJournal().findByBook(lent.getID()).getUserID());
+        assertTrue(libraryService.getHolds(held.getID()).isEmpty());
+        assertEquals(students + 1, libraryService.getLoanHistory().size());
+    }
+
+    public void testCascadeIsRecovered() throws IOException {
+        Path directory = Files.createTempDirectory("library-cascade");
+        try {
+            try (LibraryService stored = LibraryService.open("Cascade storage library",
+                    new FileStorageEngine(directory))) {
+                stored.addBook(lent);
+                stored.addBook(held);
+                stored.addUser(reader);
+                stored.addUser(other);
+                stored.lendBook(held.getID(), other.getID());
+                stored.placeHold(held.getID(), reader.getID(), HoldPriority.NORMAL);
+                stored.lendBook(lent.getID(), reader.getID());
+                assertEquals(Collections.emptyList(), stored.deactivateUsers(Collections.singletonList(reader.getID())));
+            }
+            try (LibraryService recovered = LibraryService.open("Cascade storage library",
+                    new FileStorageEngine(directory))) {
+                assertNull(recovered.getUser(reader.getID()));
+                assertFalse(recovered.getLendingJournal().isBookLent(lent.getID()));
+                assertTrue(recovered.getHolds(held.getID()).isEmpty());
+                assertTrue(recovered.returnBook(held.getID(), other.getID()));
+                assertFalse(recovered.getLendingJournal().isBookLent(held.getID()));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
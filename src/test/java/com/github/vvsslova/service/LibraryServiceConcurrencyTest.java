@@ -0,0 +1,146 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочная проверка параллельной выдачи и возврата книг. Масштабирование по числу потоков
+ * измеряется бенчмарком {@code LibraryServiceScalingBenchmark}
+ */
+public class LibraryServiceConcurrencyTest extends TestCase {
+    private static final int BOOKS = 64;
+    private static final int USERS = 256;
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+
+    private LibraryService libraryService;
+    private List<String> bookIDs;
+    private List<String> userIDs;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Concurrency test library");
+        bookIDs = new ArrayList<>();
+        userIDs = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            BookDto bookDto = new BookDto("Title " + i, "Author " + i, BookGenre.DRAMA);
+            libraryService.addBook(bookDto);
+            bookIDs.add(bookDto.getID());
+        }
+        for (int i = 0; i < USERS; i++) {
+            UserDto userDto = new UserDto("Name " + i, "Surname " + i, 79000000000L + i);
+            libraryService.addUser(userDto);
+            userIDs.add(userDto.getID());
+        }
+    }
+
+    public void testNoDoubleLendUnderContention() throws Exception {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger lent = new AtomicInteger();
+        AtomicInteger returned = new AtomicInteger();
+        runConcurrently(threads, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                String bookID = bookIDs.get(random.nextInt(BOOKS));
+                String userID = userIDs.get(random.nextInt(USERS));
+                if (random.nextBoolean()) {
+                    if (libraryService.lendBook(bookID, userID)) {
+                        lent.incrementAndGet();
+                    }
+                } else {
+                    Journal journal = libraryService.getLendingJournal().findByBook(bookID);
+                    if (journal != null && libraryService.returnBook(bookID, journal.getUserID())) {
+                        returned.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        LendingJournal lendingJournal = libraryService.getLendingJournal();
+        assertEquals(lent.get() - returned.get(), lendingJournal.size());
+        int loansByUsers = 0;
+        for (String userID : userIDs) {
+            for (Journal journal : lendingJournal.findByUser(userID)) {
+                assertEquals(journal, lendingJournal.findByBook(journal.getBookID()));
+                loansByUsers++;
+            }
+        }
+        assertEquals(lendingJournal.size(), loansByUsers);
+    }
+
+    public void testRemoveUserRacingWithLending() throws Exception {
+        runConcurrently(4, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                String userID = userIDs.get(random.nextInt(USERS));
+                if (random.nextInt(100) == 0) {
+                    libraryService.removeUser(userID);
+                } else {
+                    libraryService.lendBook(bookIDs.get(random.nextInt(BOOKS)), userID);
+                }
+            }
+        });
+
+        for (String userID : userIDs) {
+            if (!libraryService.getUserService().getUsers().containsKey(userID)) {
+                assertFalse(libraryService.getLendingJournal().hasLoans(userID));
+            }
+        }
+    }
+
+    public void testLendAndReturnOnDisjointBooks() throws Exception {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int booksPerThread = 4;
+        List<String> disjointBookIDs = new ArrayList<>();
+        for (int i = 0; i < threads * booksPerThread; i++) {
+            BookDto bookDto = new BookDto("Disjoint title " + i, "Author", BookGenre.DRAMA);
+            libraryService.addBook(bookDto);
+            disjointBookIDs.add(bookDto.getID());
+        }
+        AtomicInteger slot = new AtomicInteger();
+        runConcurrently(threads, () -> {
+            int index = slot.getAndIncrement();
+            String userID = userIDs.get(index % USERS);
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                String bookID = disjointBookIDs.get(index * booksPerThread + i % booksPerThread);
+                assertTrue(libraryService.lendBook(bookID, userID));
+                assertTrue(libraryService.returnBook(bookID, userID));
+            }
+        });
+        assertEquals(0, libraryService.getLendingJournal().size());
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Проверка учёта экземпляров: одно издание на результат поиска и счётчик свободных экземпляров
+ */
+public class LibraryServiceCopiesTest extends TestCase {
+    private static final int COPIES = 50;
+
+    private LibraryService libraryService;
+    private List<BookDto> copies;
+    private UserDto user;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Copies test library");
+        copies = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            BookDto copy = new BookDto("Flowers for Algernon", "Daniel Keyes", BookGenre.DRAMA);
+            libraryService.addBook(copy);
+            copies.add(copy);
+        }
+        libraryService.addBook(new BookDto("Alice's Adventures in Wonderland", "Lewis Carroll", BookGenre.ADVENTURE));
+        user = new UserDto("Victoria", "Shilova", 79005830462L);
+        libraryService.addUser(user);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        libraryService.close();
+    }
+
+    public void testSearchReturnsOneResultPerTitle() {
+        List<BookDto> found = libraryService.findBooks("algernon", "keyes", null, 100);
+        assertEquals(1, found.size());
+        assertTrue(copies.contains(found.get(0)));
+
+        List<CatalogTitle> titles = libraryService.findTitles("flowers", null, BookGenre.DRAMA, 100);
+        assertEquals(1, titles.size());
+        assertEquals(COPIES, titles.get(0).getCopyCount());
+        assertEquals(COPIES, titles.get(0).getAvailableCopies());
+        assertSame(titles.get(0), libraryService.getTitle(copies.get(7).getID()));
+    }
+
+    public void testAvailableCopiesFollowLendingAndReturn() {
+        CatalogTitle title = libraryService.getTitle(copies.get(0).getID());
+        for (int i = 0; i < COPIES - 1; i++) {
+            assertTrue(libraryService.lendBook(copies.get(i).getID(), user.getID()));
+        }
+        assertEquals(1, title.getAvailableCopies());
+        assertTrue(libraryService.isAnyCopyAvailable(copies.get(0).getID()));
+        assertEquals(copies.get(COPIES - 1), libraryService.findBooks("algernon", null, null, 10).get(0));
+
+        assertTrue(libraryService.lendBook(copies.get(COPIES - 1).getID(), user.getID()));
+        assertFalse(libraryService.isAnyCopyAvailable(copies.get(0).getID()));
+        assertEquals(1, libraryService.findBooks("algernon", null, null, 10).size());
+
+        assertTrue(libraryService.returnBook(copies.get(3).getID(), user.getID()));
+        assertEquals(1, title.getAvailableCopies());
+        assertEquals(copies.get(3), libraryService.findBooks("algernon", null, null, 10).get(0));
+    }
+
+    public void testChangedCopyMovesToAnotherTitle() {
+        BookDto lent = copies.get(0);
+        assertTrue(libraryService.lendBook(lent.getID(), user.getID()));
+        libraryService.changeBookTitle(lent.getID(), "Charly");
+        libraryService.changeBookTitle(copies.get(1).getID(), "Charly");
+
+        CatalogTitle original = libraryService.getTitle(copies.get(2).getID());
+        CatalogTitle moved = libraryService.getTitle(lent.getID());
+        assertEquals(COPIES - 2, original.getCopyCount());
+        assertEquals(COPIES - 2, original.getAvailableCopies());
+        assertEquals(2, moved.getCopyCount());
+        assertEquals(1, moved.getAvailableCopies());
+
+        assertTrue(libraryService.returnBook(lent.getID(), user.getID()));
+        assertEquals(2, moved.getAvailableCopies());
+        libraryService.removeBook(lent.getID());
+        libraryService.removeBook(copies.get(1).getID());
+        assertNull(libraryService.getTitle(lent.getID()));
+        assertTrue(libraryService.findTitles("charly", null, null, 10).isEmpty());
+        assertEquals(COPIES - 2, original.getAvailableCopies());
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.constant.HoldPriority;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.policy.LoanPolicy;
+import com.github.vvsslova.storage.FileStorageEngine;
+import com.github.vvsslova.storage.Mutation;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Проверка очередей резервирования: порядок уровней и подачи, передача книги при возврате,
+ * отмена, истечение и восстановление из хранилища
+ */
+public class LibraryServiceHoldTest extends TestCase {
+    private LibraryService libraryService;
+    private BookDto book;
+    private UserDto owner;
+    private List<UserDto> users;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Hold test library");
+        book = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+        owner = new UserDto("Victoria", "Shilova", 79005830462L);
+        libraryService.addBook(book);
+        libraryService.addUser(owner);
+        users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            UserDto user = new UserDto("Reader " + i, "Shilova", 79042600860L + i);
+            libraryService.addUser(user);
+            users.add(user);
+        }
+        assertTrue(libraryService.lendBook(book.getID(), owner.getID()));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        libraryService.close();
+    }
+
+    public void testReturnedBookGoesToHoldersByPriorityThenOrder() {
+        assertFalse(libraryService.placeHold(book.getID(), owner.getID(), HoldPriority.NORMAL));
+        assertTrue(libraryService.placeHold(book.getID(), users.get(0).getID(), HoldPriority.NORMAL));
+        assertTrue(libraryService.placeHold(book.getID(), users.get(1).getID(), HoldPriority.LOW));
+        assertTrue(libraryService.placeHold(book.getID(), users.get(2).getID(), HoldPriority.HIGH));
+        assertTrue(libraryService.placeHold(book.getID(), users.get(3).getID(), HoldPriority.NORMAL));
+        assertFalse(libraryService.placeHold(book.getID(), users.get(3).getID(), HoldPriority.HIGH));
+        assertEquals(holders(2, 0, 3, 1), holderIDs());
+
+        for (int expected : new int[]{2, 0, 3, 1}) {
+            String current = libraryService.getLendingJournal().findByBook(book.getID()).getUserID();
+            assertTrue(libraryService.returnBook(book.getID(), current));
+            assertEquals(users.get(expected).getID(),
+                    libraryService.getLendingJournal().findByBook(book.getID()).getUserID());
+        }
+        assertTrue(libraryService.getHolds(book.getID()).isEmpty());
+        assertTrue(libraryService.returnBook(book.getID(), users.get(1).getID()));
+        assertFalse(libraryService.getLendingJournal().isBookLent(book.getID()));
+        assertFalse(libraryService.placeHold(book.getID(), owner.getID(), HoldPriority.NORMAL));
+    }
+
+    public void testOnlyFirstHolderCanBorrowFreedBook() {
+        libraryService.placeHold(book.getID(), users.get(0).getID(), HoldPriority.NORMAL);
+        libraryService.placeHold(book.getID(), users.get(1).getID(), HoldPriority.NORMAL);
+        libraryService.removeUser(users.get(0).getID());
+        libraryService.removeUser(owner.getID());
+
+        assertEquals(users.get(1).getID(), libraryService.getLendingJournal().findByBook(book.getID()).getUserID());
+        libraryService.placeHold(book.getID(), users.get(2).getID(), HoldPriority.NORMAL);
+        assertTrue(libraryService.returnBook(book.getID(), users.get(1).getID()));
+        assertEquals(users.get(2).getID(), libraryService.getLendingJournal().findByBook(book.getID()).getUserID());
+
+        libraryService.placeHold(book.getID(), users.get(3).getID(), HoldPriority.NORMAL);
+        assertTrue(libraryService.cancelHold(book.getID(), users.get(3).getID()));
+        assertFalse(libraryService.cancelHold(book.getID(), users.get(3).getID()));
+        libraryService.placeHold(book.getID(), users.get(1).getID(), HoldPriority.NORMAL);
+        Map<String, LoanStatus> results = libraryService.lendBooks(users.get(3).getID(),
+                Collections.singletonList(book.getID()), false);
+        assertEquals(LoanStatus.ALREADY_LENT, results.get(book.getID()));
+    }
+
+    public void testFreedBookWaitsForFirstHolder() throws IOException {
+        Path directory = Files.createTempDirectory("library-holds");
+        try {
+            try (FileStorageEngine storage = new FileStorageEngine(directory)) {
+                storage.recover(mutation -> {
+                });
+                storage.append(Mutation.addBook(book));
+                storage.append(Mutation.addUser(owner));
+                users.forEach(user -> storage.append(Mutation.addUser(user)));
+                storage.append(Mutation.lendBook(book.getID(), owner.getID(), book.getTitle(), null,
+                        LocalDate.now().plusDays(1)));
+                storage.append(Mutation.placeHold(book.getID(), users.get(0).getID(), HoldPriority.NORMAL,
+                        LocalDate.now().plusDays(1)));
+                storage.append(Mutation.returnBook(book.getID(), owner.getID()));
+            }
+            try (LibraryService recovered = LibraryService.open("Hold storage library",
+                    new FileStorageEngine(directory))) {
+                assertFalse(recovered.getLendingJournal().isBookLent(book.getID()));
+                assertFalse(recovered.lendBook(book.getID(), users.get(1).getID()));
+                assertEquals(LoanStatus.ON_HOLD, recovered.tryLendBook(book.getID(), users.get(1).getID(), null));
+                assertEquals(LoanStatus.ON_HOLD, recovered.lendBooks(users.get(1).getID(),
+                        Collections.singletonList(book.getID()), false).get(book.getID()));
+                assertTrue(recovered.placeHold(book.getID(), users.get(1).getID(), HoldPriority.HIGH));
+                assertTrue(recovered.lendBook(book.getID(), users.get(1).getID()));
+                assertEquals(Collections.singletonList(users.get(0).getID()), recovered.getHolds(book.getID())
+                        .stream().map(Hold::getUserID).collect(Collectors.toList()));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testIneligibleHolderIsSkippedOnHandOff() {
+        BookDto other = new BookDto("Quiet Flows the Don", "Mikhail Sholokhov", BookGenre.DRAMA);
+        libraryService.addBook(other);
+        assertTrue(libraryService.lendBook(other.getID(), users.get(0).getID()));
+        assertTrue(libraryService.placeHold(book.getID(), users.get(0).getID(), HoldPriority.HIGH));
+        assertTrue(libraryService.placeHold(book.getID(), users.get(1).getID(), HoldPriority.NORMAL));
+        libraryService.setLoanPolicy(new LoanPolicy(1, Collections.emptyMap(), false, 0, 0));
+
+        assertTrue(libraryService.returnBook(book.getID(), owner.getID()));
+        assertEquals(users.get(1).getID(), libraryService.getLendingJournal().findByBook(book.getID()).getUserID());
+        assertEquals(1, libraryService.getLendingJournal().findByUser(users.get(0).getID()).size());
+        assertTrue(libraryService.getHolds(book.getID()).isEmpty());
+    }
+
+    public void testExpiredAndCancelledHoldsAreSkipped() {
+        HoldQueue queue = new HoldQueue();
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        queue.add(new Hold("book", "expired", HoldPriority.HIGH, today.minusDays(1)));
+        queue.add(new Hold("book", "cancelled", HoldPriority.NORMAL, today));
+        queue.add(new Hold("book", "removed", HoldPriority.NORMAL, today));
+        queue.add(new Hold("book", "waiting", HoldPriority.NORMAL, today.plusDays(5)));
+        assertNotNull(queue.cancel("cancelled"));
+        assertEquals(Arrays.asList("removed", "waiting"),
+                queue.toList(today).stream().map(Hold::getUserID).collect(Collectors.toList()));
+
+        assertEquals("waiting", queue.poll(today, userID -> !userID.equals("removed")).getUserID());
+        assertNull(queue.head(today, userID -> true));
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.add(new Hold("book", "expired", HoldPriority.LOW, today)));
+    }
+
+    public void testBestsellerQueueHandsOffInConstantTime() {
+        HoldQueue queue = new HoldQueue();
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        int holders = 50_000;
+        for (int i = 0; i < holders; i++) {
+            assertTrue(queue.add(new Hold("book", "user-" + i, HoldPriority.values()[i % 3], today)));
+        }
+        for (int i = 0; i < holders; i += 2) {
+            queue.cancel("user-" + i);
+        }
+        List<String> served = new ArrayList<>();
+        Hold hold;
+        while ((hold = queue.poll(today, userID -> true)) != null) {
+            served.add(hold.getUserID());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int tier = 0; tier < 3; tier++) {
+            for (int i = 1; i < holders; i += 2) {
+                if (i % 3 == tier) {
+                    expected.add("user-" + i);
+                }
+            }
+        }
+        assertEquals(expected, served);
+    }
+
+    public void testHoldsAreRecovered() throws IOException {
+        Path directory = Files.createTempDirectory("library-holds");
+        try {
+            try (LibraryService stored = LibraryService.open("Hold storage library", new FileStorageEngine(directory))) {
+                stored.addBook(book);
+                stored.addUser(owner);
+                users.forEach(stored::addUser);
+                stored.lendBook(book.getID(), owner.getID());
+                stored.placeHold(book.getID(), users.get(0).getID(), HoldPriority.NORMAL);
+                stored.placeHold(book.getID(), users.get(1).getID(), HoldPriority.HIGH);
+                stored.placeHold(book.getID(), users.get(2).getID(), HoldPriority.NORMAL);
+                stored.cancelHold(book.getID(), users.get(2).getID());
+                stored.returnBook(book.getID(), owner.getID());
+            }
+            try (LibraryService recovered = LibraryService.open("Hold storage library",
+                    new FileStorageEngine(directory))) {
+                assertEquals(users.get(1).getID(),
+                        recovered.getLendingJournal().findByBook(book.getID()).getUserID());
+                assertEquals(Collections.singletonList(users.get(0).getID()), recovered.getHolds(book.getID())
+                        .stream().map(Hold::getUserID).collect(Collectors.toList()));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private List<String> holders(int... indexes) {
+        List<String> ids = new ArrayList<>();
+        for (int index : indexes) {
+            ids.add(users.get(index).getID());
+        }
+        return ids;
+    }
+
+    private List<String> holderIDs() {
+        return libraryService.getHolds(book.getID()).stream().map(Hold::getUserID).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка постраничного и потокового получения книг, пользователей и выдач
+ */
+public class LibraryServiceListingTest extends TestCase {
+    private static final BookGenre[] GENRES = BookGenre.values();
+
+    private LibraryService libraryService;
+    private List<BookDto> books;
+    private UserDto user;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Listing test library");
+        books = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            BookDto bookDto = new BookDto("Title " + i, (i % 3 == 0 ? "Tolstoy " : "Chekhov ") + i,
+                    GENRES[i % GENRES.length]);
+            libraryService.addBook(bookDto);
+            books.add(bookDto);
+        }
+        user = new UserDto("Victoria", "Shilova", 79005830462L);
+        libraryService.addUser(user);
+    }
+
+    public void testBookPagesMatchStreamInIdOrder() {
+        List<BookDto> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<BookDto> page = libraryService.listBooks(cursor, 7, null, null);
+            assertTrue(page.getItems().size() <= 7);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        List<BookDto> expected = books.stream()
+                .sorted((a, b) -> a.getID().compareTo(b.getID()))
+                .collect(Collectors.toList());
+        assertEquals(expected, paged);
+        assertEquals(expected, libraryService.streamBooks(null, null).collect(Collectors.toList()));
+    }
+
+    public void testBookFilters() {
+        List<BookDto> filtered = libraryService.streamBooks(BookGenre.MYSTERY, "tol").collect(Collectors.toList());
+        Set<String> expected = new HashSet<>();
+        for (BookDto bookDto : books) {
+            if (bookDto.getBookGenre() == BookGenre.MYSTERY && bookDto.getAuthor().startsWith("Tolstoy")) {
+                expected.add(bookDto.getID());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, filtered.stream().map(BookDto::getID).collect(Collectors.toSet()));
+        assertEquals(filtered, libraryService.listBooks(null, 100, BookGenre.MYSTERY, "TOL").getItems());
+    }
+
+    public void testCursorSurvivesConcurrentChanges() {
+        Page<BookDto> first = libraryService.listBooks(null, 10, null, null);
+        for (int i = 0; i < 20; i++) {
+            libraryService.addBook(new BookDto("New " + i, "Author", BookGenre.DRAMA));
+        }
+        libraryService.removeBook(first.getItems().get(0).getID());
+
+        Set<String> seen = new HashSet<>();
+        for (BookDto bookDto : first.getItems()) {
+            seen.add(bookDto.getID());
+        }
+        String cursor = first.getNextCursor();
+        String previous = first.getItems().get(9).getID();
+        while (cursor != null) {
+            Page<BookDto> page = libraryService.listBooks(cursor, 10, null, null);
+            for (BookDto bookDto : page.getItems()) {
+                assertTrue(seen.add(bookDto.getID()));
+                assertTrue(bookDto.getID().compareTo(previous) > 0);
+                previous = bookDto.getID();
+            }
+            cursor = page.getNextCursor();
+        }
+    }
+
+    public void testLoanPagesAndOverdueFilter() {
+        List<Journal> loans = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < 30; i++) {
+            loans.add(new Journal(books.get(i).getID(), user.getID(), null, today.plusDays(i % 10 - 5)));
+        }
+        assertTrue(libraryService.addLoans(loans).isEmpty());
+
+        List<Journal> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Journal> page = libraryService.listLoans(cursor, 4, false);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(30, paged.size());
+        for (int i = 1; i < paged.size(); i++) {
+            Journal previous = paged.get(i - 1);
+            Journal current = paged.get(i);
+            int byDate = previous.getReturnDate().compareTo(current.getReturnDate());
+            assertTrue(byDate < 0 || byDate == 0 && previous.getBookID().compareTo(current.getBookID()) < 0);
+        }
+        assertEquals(paged, libraryService.streamLoans(false).collect(Collectors.toList()));
+
+        List<Journal> overdue = libraryService.streamLoans(true).collect(Collectors.toList());
+        assertEquals(15, overdue.size());
+        for (Journal journal : overdue) {
+            assertTrue(journal.getReturnDate().isBefore(today));
+        }
+    }
+
+    public void testMalformedLoanCursorIsRejected() {
+        assertTrue(libraryService.addLoans(Collections.singletonList(
+                new Journal(books.get(0).getID(), user.getID(), null, LocalDate.now()))).isEmpty());
+        for (String cursor : new String[]{"garbage", ":" + books.get(0).getID(), "day:" + books.get(0).getID(), "99999999999:x"}) {
+            try {
+                libraryService.listLoans(cursor, 4, false);
+                fail("Cursor accepted: " + cursor);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().contains(cursor));
+            }
+        }
+    }
+
+    public void testNonPositiveLimitIsRejected() {
+        for (int limit : new int[]{0, -1}) {
+            try {
+                libraryService.listLoans(null, limit, false);
+                fail("Loan limit accepted: " + limit);
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                libraryService.listBooks(null, limit, null, null);
+                fail("Book limit accepted: " + limit);
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                libraryService.listUsers(null, limit);
+                fail("User limit accepted: " + limit);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.vvsslova.service;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка оповещения о просроченных выдачах и переноса сроков возврата
+ */
+public class OverdueSchedulerTest extends TestCase {
+    private LibraryService libraryService;
+    private BookDto book;
+    private UserDto user;
+    private MutableClock clock;
+    private List<Journal> overdue;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Overdue test library");
+        book = new BookDto("The Master and Margarita", "Mikhail Bulgakov", BookGenre.FANTASY);
+        user = new UserDto("Victoria", "Shilova", 79005830462L);
+        libraryService.addBook(book);
+        libraryService.addUser(user);
+        clock = new MutableClock();
+        overdue = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        libraryService.close();
+    }
+
+    public void testOverdueLoanIsNotifiedOnce() {
+        OverdueScheduler scheduler = scheduler(Executors.newSingleThreadScheduledExecutor());
+        libraryService.lendBook(book.getID(), user.getID());
+
+        clock.setDate(LocalDate.now().plusDays(LibraryService.LENDING_PERIOD_DAYS));
+        assertEquals(0, scheduler.checkOverdue());
+        clock.setDate(LocalDate.now().plusDays(LibraryService.LENDING_PERIOD_DAYS + 1));
+        assertEquals(1, scheduler.checkOverdue());
+        assertEquals(0, scheduler.checkOverdue());
+        assertEquals(book.getID(), overdue.get(0).getBookID());
+    }
+
+    public void testRenewedLoanIsNotifiedAfterNewReturnDate() {
+        OverdueScheduler scheduler = scheduler(Executors.newSingleThreadScheduledExecutor());
+        libraryService.lendBook(book.getID(), user.getID());
+        LocalDate returnDate = libraryService.getLendingJournal().findByBook(book.getID()).getReturnDate();
+
+        assertTrue(libraryService.renewLoan(book.getID(), user.getID()));
+        LocalDate renewedDate = libraryService.getLendingJournal().findByBook(book.getID()).getReturnDate();
+        assertEquals(returnDate.plusDays(LibraryService.LENDING_PERIOD_DAYS), renewedDate);
+
+        clock.setDate(returnDate.plusDays(1));
+        assertEquals(0, scheduler.checkOverdue());
+        clock.setDate(renewedDate.plusDays(1));
+        assertEquals(1, scheduler.checkOverdue());
+        assertEquals(renewedDate, overdue.get(0).getReturnDate());
+        assertEquals(1, libraryService.getLendingJournal().dueBefore(renewedDate.plusDays(1)).size());
+    }
+
+    public void testPastDueLoanIsNotifiedOnAdd() {
+        OverdueScheduler scheduler = scheduler(Executors.newSingleThreadScheduledExecutor());
+        clock.setDate(LocalDate.now());
+        assertEquals(0, scheduler.checkOverdue());
+
+        LocalDate pastDate = LocalDate.now().minusDays(3);
+        libraryService.getLendingJournal().add(new Journal(book.getID(), user.getID(), book.getTitle(), pastDate));
+        assertEquals(1, overdue.size());
+        assertEquals(pastDate, overdue.get(0).getReturnDate());
+        assertEquals(0, scheduler.checkOverdue());
+
+        libraryService.getLendingJournal().changeReturnDate(book.getID(), LocalDate.now().plusDays(1));
+        assertEquals(1, overdue.size());
+        libraryService.getLendingJournal().changeReturnDate(book.getID(), pastDate.minusDays(1));
+        assertEquals(2, overdue.size());
+        assertEquals(pastDate.minusDays(1), overdue.get(1).getReturnDate());
+    }
+
+    public void testLoanBeforeFirstCheckIsNotifiedOnce() {
+        OverdueScheduler scheduler = scheduler(Executors.newSingleThreadScheduledExecutor());
+        clock.setDate(LocalDate.now());
+        libraryService.getLendingJournal().add(new Journal(book.getID(), user.getID(), book.getTitle(),
+                LocalDate.now().minusDays(1)));
+        assertTrue(overdue.isEmpty());
+        assertEquals(1, scheduler.checkOverdue());
+        assertEquals(1, overdue.size());
+    }
+
+    public void testLoanAddedDuringCheckIsNotifiedOnce() {
+        OverdueScheduler scheduler = scheduler(Executors.newSingleThreadScheduledExecutor());
+        BookDto lateBook = new BookDto("Heart of a Dog", "Mikhail Bulgakov", BookGenre.FANTASY);
+        libraryService.addBook(lateBook);
+        LocalDate pastDate = LocalDate.now().minusDays(1);
+        libraryService.getLendingJournal().add(new Journal(book.getID(), user.getID(), book.getTitle(), pastDate));
+        scheduler.addListener(journal -> {
+            if (journal.getBookID().equals(book.getID())
+                    && libraryService.getLendingJournal().findByBook(lateBook.getID()) == null) {
+                libraryService.getLendingJournal().add(
+                        new Journal(lateBook.getID(), user.getID(), lateBook.getTitle(), pastDate));
+            }
+        });
+
+        clock.setDate(LocalDate.now());
+        scheduler.checkOverdue();
+        assertEquals(2, overdue.size());
+        assertEquals(lateBook.getID(), overdue.get(1).getBookID());
+        assertEquals(0, scheduler.checkOverdue());
+
+        scheduler.rescan();
+        assertEquals(2, scheduler.checkOverdue());
+        assertEquals(4, overdue.size());
+    }
+
+    public void testServiceSchedulerIsClosedWithService() throws IOException {
+        OverdueScheduler scheduler = libraryService.getOverdueScheduler();
+        scheduler.addListener(overdue::add);
+        assertEquals(0, scheduler.checkOverdue());
+        libraryService.getLendingJournal().add(new Journal(book.getID(), user.getID(), book.getTitle(),
+                LocalDate.now().minusDays(1)));
+        assertEquals(1, overdue.size());
+
+        libraryService.close();
+        libraryService.getLendingJournal().changeReturnDate(book.getID(), LocalDate.now().minusDays(2));
+        assertEquals(1, overdue.size());
+    }
+
+    public void testExtendLoanValidatesBorrowerAndDate() {
+        libraryService.lendBook(book.getID(), user.getID());
+        assertFalse(libraryService.extendLoan(book.getID(), user.getID(), LocalDate.now().minusDays(1)));
+        assertFalse(libraryService.extendLoan(book.getID(), "unknown", LocalDate.now().plusDays(30)));
+        assertTrue(libraryService.extendLoan(book.getID(), user.getID(), LocalDate.now().plusDays(30)));
+        assertEquals(LocalDate.now().plusDays(30),
+                libraryService.getLendingJournal().findByBook(book.getID()).getReturnDate());
+        assertEquals(1, libraryService.getLendingJournal().findByUser(user.getID()).size());
+    }
+
+    public void testScheduledCheckRunsOnExecutor() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch notified = new CountDownLatch(1);
+        libraryService.lendBook(book.getID(), user.getID());
+        clock.setDate(LocalDate.now().plusDays(LibraryService.LENDING_PERIOD_DAYS + 1));
+        OverdueScheduler scheduler = scheduler(executor);
+        scheduler.addListener(journal -> notified.countDown());
+        try {
+            scheduler.start();
+            assertTrue(notified.await(10, TimeUnit.SECONDS));
+        } finally {
+            scheduler.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private OverdueScheduler scheduler(ScheduledExecutorService executor) {
+        OverdueScheduler scheduler = new OverdueScheduler(libraryService.getLendingJournal(), executor, clock);
+        scheduler.addListener(overdue::add);
+        return scheduler;
+    }
+
+    /**
+     * Часы, дату которых задаёт тест
+     */
+    private static class MutableClock extends Clock {
+        private final ZoneId zone = ZoneId.systemDefault();
+        private volatile Instant instant = Instant.now();
+
+        void setDate(LocalDate date) {
+            instant = date.atStartOfDay(zone).toInstant();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
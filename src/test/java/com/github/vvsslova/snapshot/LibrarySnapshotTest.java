@@ -0,0 +1,219 @@
+package com.github.vvsslova.snapshot;
+
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import com.github.vvsslova.service.LibraryService;
+import com.github.vvsslova.storage.Mutation;
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка согласованности и неизменности снимков состояния
+ */
+public class LibrarySnapshotTest extends TestCase {
+    private static final int PAIRS = 32;
+    private static final int USERS = 8;
+
+    private LibraryService libraryService;
+
+    @Override
+    protected void setUp() {
+        libraryService = new LibraryService("Snapshot test library");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        libraryService.close();
+    }
+
+    public void testSnapshotIsNotAffectedByLaterChanges() {
+        BookDto drama = new BookDto("War and Peace", "Leo Tolstoy", BookGenre.DRAMA);
+        BookDto adventure = new BookDto("Treasure Island", "Robert Stevenson", BookGenre.ADVENTURE);
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        libraryService.addBook(drama);
+        libraryService.addBook(adventure);
+        libraryService.addUser(user);
+        libraryService.lendBook(drama.getID(), user.getID());
+
+        LibrarySnapshot before = libraryService.snapshot();
+        libraryService.changeBookTitle(drama.getID(), "Anna Karenina");
+        libraryService.lendBook(adventure.getID(), user.getID());
+        libraryService.removeUser(user.getID());
+        LibrarySnapshot after = libraryService.snapshot();
+
+        assertEquals("War and Peace", before.getBook(drama.getID()).getTitle());
+        assertEquals(1, before.getLoanCount());
+        assertEquals(user.getID(), before.findLoanByBook(drama.getID()).getUserID());
+        assertEquals(user, before.getUser(user.getID()));
+        assertEquals(Collections.singletonList(adventure), before.booksNeverLent().collect(Collectors.toList()));
+
+        assertEquals("Anna Karenina", after.getBook(drama.getID()).getTitle());
+        assertEquals(0, after.getLoanCount());
+        assertNull(after.getUser(user.getID()));
+        assertEquals(0, after.booksNeverLent().count());
+        assertTrue(after.getVersion() > before.getVersion());
+    }
+
+    public void testStartCanBeRetriedAfterFailedCapture() {
+        BookDto lost = new BookDto("War and Peace", "Leo Tolstoy", BookGenre.DRAMA);
+        BookDto kept = new BookDto("Treasure Island", "Robert Stevenson", BookGenre.ADVENTURE);
+        SnapshotManager snapshots = new SnapshotManager();
+        try {
+            try {
+                snapshots.start(sink -> {
+                    sink.accept(Mutation.addBook(lost));
+                    snapshots.publish(Collections.singletonList(Mutation.addBook(lost)));
+                    throw new IllegalStateException("capture failed");
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("capture failed", e.getMessage());
+            }
+            assertFalse(snapshots.isStarted());
+
+            snapshots.start(sink -> sink.accept(Mutation.addBook(kept)));
+            snapshots.publish(Collections.singletonList(Mutation.changeBookTitle(kept.getID(), "Kidnapped")));
+            LibrarySnapshot snapshot = snapshots.snapshot();
+            assertEquals(1, snapshot.getBookCount());
+            assertNull(snapshot.getBook(lost.getID()));
+            assertEquals("Kidnapped", snapshot.getBook(kept.getID()).getTitle());
+        } finally {
+            snapshots.close();
+        }
+    }
+
+    public void testGenreReportsSkipLoansOfMissingBooks() {
+        BookDto drama = new BookDto("War and Peace", "Leo Tolstoy", BookGenre.DRAMA);
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        LocalDate today = LocalDate.now();
+        SnapshotManager snapshots = new SnapshotManager();
+        try {
+            snapshots.start(sink -> {
+                sink.accept(Mutation.addBook(drama));
+                sink.accept(Mutation.addUser(user));
+                sink.accept(Mutation.lendBook(drama.getID(), user.getID(), drama.getTitle(), today, today));
+                sink.accept(Mutation.lendBook("missing", user.getID(), "Lost", today, today));
+            });
+            LibrarySnapshot snapshot = snapshots.snapshot();
+            assertEquals(2, snapshot.getLoanCount());
+            assertEquals(Collections.singletonMap(BookGenre.DRAMA, 1L), snapshot.countLoansByGenre());
+            assertEquals(1, snapshot.loansByGenre(BookGenre.DRAMA).count());
+        } finally {
+            snapshots.close();
+        }
+    }
+
+    public void testReports() {
+        List<BookDto> books = Arrays.asList(
+                new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA),
+                new BookDto("Fathers and Sons", "Ivan Turgenev", BookGenre.DRAMA),
+                new BookDto("Treasure Island", "Robert Stevenson", BookGenre.ADVENTURE),
+                new BookDto("Emma", "Jane Austen", BookGenre.ROMANCE));
+        UserDto reader = new UserDto("Natalia", "Shilova", 79042600860L);
+        UserDto other = new UserDto("Alexander", "Butusov", 79269848426L);
+        books.forEach(libraryService::addBook);
+        libraryService.addUser(reader);
+        libraryService.addUser(other);
+        libraryService.lendBooks(reader.getID(), Arrays.asList(books.get(0).getID(), books.get(1).getID(),
+                books.get(2).getID()), true);
+        libraryService.returnBook(books.get(2).getID(), reader.getID());
+        libraryService.lendBook(books.get(2).getID(), other.getID());
+
+        LibrarySnapshot snapshot = libraryService.snapshot();
+        assertEquals(2, snapshot.loansByGenre(BookGenre.DRAMA).count());
+        assertEquals(Long.valueOf(1), snapshot.countLoansByGenre().get(BookGenre.ADVENTURE));
+        assertNull(snapshot.countLoansByGenre().get(BookGenre.ROMANCE));
+        assertEquals(Collections.singletonList(reader), snapshot.usersWithMoreThan(1));
+        assertEquals(2, snapshot.usersWithMoreThan(0).size());
+        assertEquals(Collections.singletonList(books.get(3)), snapshot.booksNeverLent().collect(Collectors.toList()));
+        assertEquals(2, snapshot.findLoansByUser(reader.getID()).size());
+    }
+
+    /**
+     * Книги каждой пары выдаются и возвращаются одним пакетом, поэтому в согласованном снимке
+     * они выданы либо обе, либо ни одна. Снимки начинают вестись во время операций
+     */
+    public void testSnapshotsAreConsistentUnderConcurrentChanges() throws Exception {
+        List<String[]> pairs = new ArrayList<>();
+        List<String> userIDs = new ArrayList<>();
+        for (int i = 0; i < PAIRS; i++) {
+            BookDto first = new BookDto("First " + i, "Author " + i, BookGenre.DRAMA);
+            BookDto second = new BookDto("Second " + i, "Author " + i, BookGenre.ROMANCE);
+            libraryService.addBook(first);
+            libraryService.addBook(second);
+            pairs.add(new String[]{first.getID(), second.getID()});
+        }
+        for (int i = 0; i < USERS; i++) {
+            UserDto userDto = new UserDto("Name " + i, "Surname " + i, 79000000000L + i);
+            libraryService.addUser(userDto);
+            userIDs.add(userDto.getID());
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; running.get(); i++) {
+                        String[] pair = pairs.get((writer + i * 4) % PAIRS);
+                        String userID = userIDs.get(i % USERS);
+                        libraryService.lendBooks(userID, Arrays.asList(pair), true);
+                        Journal journal = libraryService.getLendingJournal().findByBook(pair[0]);
+                        if (journal != null) {
+                            libraryService.returnBooks(Arrays.asList(
+                                    new Journal(pair[0], journal.getUserID(), null, null),
+                                    new Journal(pair[1], journal.getUserID(), null, null)), true);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            writers.add(thread);
+        }
+        try {
+            long previousVersion = -1;
+            for (int i = 0; i < 200; i++) {
+                LibrarySnapshot snapshot = libraryService.snapshot();
+                assertTrue(snapshot.getVersion() >= previousVersion);
+                previousVersion = snapshot.getVersion();
+                for (String[] pair : pairs) {
+                    Journal first = snapshot.findLoanByBook(pair[0]);
+                    Journal second = snapshot.findLoanByBook(pair[1]);
+                    assertEquals(first == null, second == null);
+                    if (first != null) {
+                        assertEquals(first.getUserID(), second.getUserID());
+                    }
+                }
+                assertEquals(PAIRS * 2, snapshot.getBookCount());
+                assertEquals(snapshot.loansByGenre(BookGenre.DRAMA).count(),
+                        snapshot.loansByGenre(BookGenre.ROMANCE).count());
+                Thread.yield();
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : writers) {
+                thread.join();
+            }
+        }
+        assertNull(failure.get());
+
+        LibrarySnapshot snapshot = libraryService.snapshot();
+        assertEquals(new HashSet<>(libraryService.getLendingJournal().findAll()),
+                snapshot.loans().collect(Collectors.toSet()));
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.vvsslova.snapshot;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Сверка неизменяемой хеш-таблицы с {@link HashMap} на случайной последовательности операций
+ */
+public class PersistentMapTest extends TestCase {
+    private static final int KEYS = 5_000;
+    private static final int OPERATIONS = 100_000;
+
+    public void testOperationsMatchModel() {
+        PersistentMap<Key, Integer> map = PersistentMap.empty();
+        Map<Key, Integer> model = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < OPERATIONS; i++) {
+            Key key = new Key(random.nextInt(KEYS));
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                model.remove(key);
+            } else {
+                map = map.put(key, i);
+                model.put(key, i);
+            }
+            assertEquals(model.get(key), map.get(key));
+        }
+        assertEquals(model.size(), map.size());
+        assertEquals(model, map.entries().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        for (Key key : model.keySet()) {
+            map = map.remove(key);
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.values().count());
+    }
+
+    public void testOldVersionsAreUnchanged() {
+        PersistentMap<String, Integer> first = PersistentMap.<String, Integer>empty().put("Aa", 1).put("BB", 2);
+        PersistentMap<String, Integer> second = first.put("Aa", 3).remove("BB").put("C", 4);
+        assertEquals(2, first.size());
+        assertEquals(Integer.valueOf(1), first.get("Aa"));
+        assertEquals(Integer.valueOf(2), first.get("BB"));
+        assertNull(first.get("C"));
+        assertEquals(2, second.size());
+        assertEquals(Integer.valueOf(3), second.get("Aa"));
+        assertNull(second.get("BB"));
+        assertSame(second, second.remove("missing"));
+        assertSame(second, second.put("C", second.get("C")));
+    }
+
+    /**
+     * Ключ с частыми совпадениями хешей
+     */
+    private static final class Key {
+        private final int value;
+
+        private Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 1_000 * 7_919;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.vvsslova.storage;
+
+import com.github.vvsslova.analytics.LoanAnalytics;
+import com.github.vvsslova.analytics.LoanHistory;
+import com.github.vvsslova.analytics.RankedItem;
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.Journal;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Проверка восстановления состояния из журнала и снимков
+ */
+public class FileStorageEngineTest extends TestCase {
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("library-storage");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public void testStateIsRecoveredFromLog() throws IOException {
+        BookDto book = new BookDto("Flowers for Algernon", "Daniel Kie", BookGenre.DRAMA);
+        BookDto removedBook = new BookDto("Pride and Prejudice", "Jane Osten", BookGenre.ROMANCE);
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        try (LibraryService libraryService = open()) {
+            libraryService.addBook(book);
+            libraryService.addBook(removedBook);
+            libraryService.addUser(user);
+            libraryService.changeBookAuthor(book.getID(), "Daniel Keyes");
+            libraryService.changeUserPhone(user.getID(), 79005830463L);
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.lendBook(removedBook.getID(), user.getID());
+            libraryService.removeBook(removedBook.getID());
+        }
+
+        try (LibraryService libraryService = open()) {
+            BookDto recovered = libraryService.getBookService().getBooks().get(book.getID());
+            assertEquals(book, recovered);
+            assertFalse(libraryService.getBookService().getBooks().containsKey(removedBook.getID()));
+            assertEquals(79005830463L, libraryService.getUserService().getUsers().get(user.getID()).getPhoneNumber());
+            Journal journal = libraryService.getLendingJournal().findByBook(book.getID());
+            assertEquals(user.getID(), journal.getUserID());
+            assertEquals(journal.getReturnDate().minusDays(LibraryService.LENDING_PERIOD_DAYS), journal.getLendDate());
+            assertEquals(1, libraryService.getLendingJournal().size());
+            assertEquals(1, libraryService.findBooks(null, "keyes", null, 10).size());
+        }
+    }
+
+    public void testRecoveryReplaysOnlyTailAfterSnapshot() throws IOException {
+        BookDto book = new BookDto("Alice's Adventures in Wonderland", "Lewis Carroll", BookGenre.ADVENTURE);
+        UserDto user = new UserDto("Natalia", "Shilova", 79042600860L);
+        try (LibraryService libraryService = open()) {
+            libraryService.addBook(book);
+            libraryService.addUser(user);
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.getStorage().checkpoint();
+            libraryService.returnBook(book.getID(), user.getID());
+            libraryService.changeUserName(user.getID(), "Natasha");
+        }
+        assertEquals(1, listFiles("snapshot-").size());
+        assertEquals(1, listFiles("wal-").size());
+
+        try (LibraryService libraryService = open()) {
+            assertEquals(0, libraryService.getLendingJournal().size());
+            assertEquals("Natasha", libraryService.getUserService().getUsers().get(user.getID()).getName());
+            assertEquals(book, libraryService.getBookService().getBooks().get(book.getID()));
+        }
+    }
+
+    public void testChangedReturnDateIsRecovered() throws IOException {
+        BookDto book = new BookDto("War and Peace", "Leo Tolstoy", BookGenre.DRAMA);
+        UserDto user = new UserDto("Natalia", "Shilova", 79042600860L);
+        LocalDate newReturnDate = LocalDate.now().plusDays(40);
+        try (LibraryService libraryService = open()) {
+            libraryService.addBook(book);
+            libraryService.addUser(user);
+            libraryService.lendBook(book.getID(), user.getID());
+            libraryService.extendLoan(book.getID(), user.getID(), newReturnDate);
+        }
+
+        try (LibraryService libraryService = open()) {
+            assertEquals(newReturnDate, libraryService.getLendingJournal().findByBook(book.getID()).getReturnDate());
+            assertEquals(1, libraryService.getLendingJournal().dueBefore(newReturnDate.plusDays(1)).size());
+        }
+    }
+
+    public void testBatchLendingIsRecovered() throws IOException {
+        BookDto first = new BookDto("Dead Souls", "Nikolai Gogol", BookGenre.DRAMA);
+        BookDto second = new BookDto("Fathers and Sons", "Ivan Turgenev", BookGenre.DRAMA);
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        try (LibraryService libraryService = open()) {
+            libraryService.addBook(first);
+            libraryService.addBook(second);
+            libraryService.addUser(user);
+            libraryService.lendBooks(user.getID(), Arrays.asList(first.getID(), second.getID()), true);
+            libraryService.returnBooks(Collections.singletonList(
+                    new Journal(first.getID(), user.getID(), null, null)), true);
+        }
+
+        try (LibraryService libraryService = open()) {
+            assertEquals(1, libraryService.getLendingJournal().size());
+            assertEquals(user.getID(), libraryService.getLendingJournal().findByBook(second.getID()).getUserID());
+        }
+    }
+
+    public void testLoanHistoryIsRecovered() throws IOException {
+        BookDto book = new BookDto("Anna Karenina", "Leo Tolstoy", BookGenre.ROMANCE);
+        UserDto reader = new UserDto("Natalia", "Shilova", 79042600860L);
+        UserDto removedReader = new UserDto("Victoria", "Shilova", 79005830462L);
+        LocalDate today = LocalDate.now();
+        try (LibraryService libraryService = open()) {
+            libraryService.addBook(book);
+            libraryService.addUser(reader);
+            libraryService.addUser(removedReader);
+            for (int i = 0; i < 2; i++) {
+                libraryService.lendBook(book.getID(), removedReader.getID());
+                libraryService.returnBook(book.getID(), removedReader.getID());
+            }
+            libraryService.deactivateUsers(Collections.singletonList(removedReader.getID()));
+            libraryService.getStorage().checkpoint();
+            // строка, которая уже вошла в снимок, но была записана в журнал изменений после его начала
+            libraryService.getStorage().append(Mutation.closeLoan(book.getID(), reader.getID(), book.getAuthor(),
+                    book.getBookGenre(), null, today, today, 0));
+            libraryService.lendBook(book.getID(), reader.getID());
+            libraryService.returnBook(book.getID(), reader.getID());
+        }
+
+        try (LibraryService libraryService = open()) {
+            assertEquals(3, libraryService.getLoanHistory().size());
+            libraryService.getStorage().checkpoint();
+            libraryService.lendBook(book.getID(), reader.getID());
+            libraryService.returnBook(book.getID(), reader.getID());
+        }
+
+        try (LibraryService libraryService = open()) {
+            LoanHistory history = libraryService.getLoanHistory();
+            assertEquals(4, history.size());
+            List<RankedItem> books = new LoanAnalytics(history).mostBorrowedBooks(today, today.plusDays(1), 1);
+            assertEquals(4, books.get(0).getCount());
+            assertFalse(history.forgetUser(removedReader.getID()));
+            assertTrue(history.forgetUser(reader.getID()));
+        }
+    }
+
+    public void testTornTailIsIgnored() throws IOException {
+        UserDto user = new UserDto("Alexander", "Butusov", 79269848426L);
+        try (LibraryService libraryService = open()) {
+            libraryService.addUser(user);
+        }
+        Path segment = listFiles("wal-").get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (LibraryService libraryService = open()) {
+            assertTrue(libraryService.getUserService().getUsers().containsKey(user.getID()));
+            libraryService.changeUserSurname(user.getID(), "Butusov-Jr");
+        }
+        try (LibraryService libraryService = open()) {
+            assertEquals("Butusov-Jr", libraryService.getUserService().getUsers().get(user.getID()).getSurname());
+        }
+    }
+
+    private LibraryService open() throws IOException {
+        return LibraryService.open("Storage test library", new FileStorageEngine(directory));
+    }
+
+    private List<Path> listFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
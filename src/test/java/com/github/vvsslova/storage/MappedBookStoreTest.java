@@ -0,0 +1,185 @@
+package com.github.vvsslova.storage;
+
+import com.github.vvsslova.audit.AuditLog;
+import com.github.vvsslova.audit.Slf4jAuditSink;
+import com.github.vvsslova.cache.CacheSettings;
+import com.github.vvsslova.constant.BookGenre;
+import com.github.vvsslova.dto.BookDto;
+import com.github.vvsslova.dto.UserDto;
+import com.github.vvsslova.service.LibraryService;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Проверка каталога книг в отображаемых в память файлах
+ */
+public class MappedBookStoreTest extends TestCase {
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("library-mapped");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public void testRecordsAreUpdatedInPlaceAndRelocated() throws IOException {
+        try (MappedBookStore store = new MappedBookStore(directory)) {
+            BookDto book = new BookDto("Flowers for Algernon", "Daniel Kie", BookGenre.DRAMA);
+            assertNull(store.putIfAbsent(book.getID(), book));
+            assertNotNull(store.putIfAbsent(book.getID(), book));
+            BookDto view = store.get(book.getID());
+            assertEquals(book, view);
+
+            view.setAuthor("Daniel Keyes");
+            view.setBookGenre(BookGenre.FANTASY);
+            StringBuilder longTitle = new StringBuilder();
+            while (longTitle.length() < 1000) {
+                longTitle.append("Flowers for Algernon ");
+            }
+            view.setTitle(longTitle.toString());
+            BookDto reread = store.get(book.getID());
+            assertEquals(longTitle.toString(), reread.getTitle());
+            assertEquals("Daniel Keyes", reread.getAuthor());
+            assertEquals(BookGenre.FANTASY, reread.getBookGenre());
+
+            BookDto removed = store.remove(book.getID());
+            assertEquals("Daniel Keyes", removed.getAuthor());
+            assertNull(store.get(book.getID()));
+            assertNull(view.getTitle());
+            assertEquals(0, store.size());
+        }
+    }
+
+    public void testStoreGrowsBeyondSegmentAndReopens() throws IOException {
+        int count = 20_000;
+        List<BookDto> books = new ArrayList<>(count);
+        try (MappedBookStore store = new MappedBookStore(directory, 1 << 16)) {
+            for (int i = 0; i < count; i++) {
+                BookDto book = new BookDto("Title " + i, i % 2 == 0 ? null : "Автор " + i, BookGenre.values()[i % 3]);
+                books.add(book);
+                store.put(book.getID(), book);
+            }
+            for (int i = 0; i < count; i += 2) {
+                store.remove(books.get(i).getID());
+            }
+        }
+        try (MappedBookStore store = new MappedBookStore(directory, 1 << 16)) {
+            assertEquals(count / 2, store.size());
+            for (int i = 0; i < count; i++) {
+                BookDto book = books.get(i);
+                assertEquals(i % 2 == 0 ? null : book, store.get(book.getID()));
+            }
+            Set<String> ids = new HashSet<>(store.keySet());
+            assertEquals(count / 2, ids.size());
+            assertTrue(ids.contains(books.get(1).getID()));
+            long dataSize = Files.size(directory.resolve("books.dat"));
+            for (int i = 0; i < count; i += 2) {
+                store.put(books.get(i).getID(), books.get(i));
+            }
+            assertEquals(count, store.size());
+            assertEquals(dataSize, Files.size(directory.resolve("books.dat")));
+        }
+    }
+
+    public void testReopenedStoreIsReadConcurrently() throws Exception {
+        int count = 5_000;
+        List<BookDto> books = new ArrayList<>(count);
+        try (MappedBookStore store = new MappedBookStore(directory, 1 << 16)) {
+            for (int i = 0; i < count; i++) {
+                BookDto book = new BookDto("Title " + i, "Author " + i, BookGenre.values()[i % 3]);
+                books.add(book);
+                store.put(book.getID(), book);
+            }
+        }
+        try (MappedBookStore store = new MappedBookStore(directory, 1 << 16)) {
+            int threads = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> readers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int first = t;
+                    readers.add(executor.submit(() -> {
+                        for (int i = count - 1 - first; i >= 0; i -= threads) {
+                            assertEquals(books.get(i), store.get(books.get(i).getID()));
+                        }
+                    }));
+                }
+                for (Future<?> reader : readers) {
+                    reader.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(count, store.size());
+        }
+    }
+
+    public void testLibraryStartsFromMappedCatalog() throws IOException {
+        BookDto book = new BookDto("Pride and Prejudice", "Jane Osten", BookGenre.ROMANCE);
+        try (LibraryService libraryService = open()) {
+            libraryService.addBook(book);
+            libraryService.addBook(new BookDto("Pride and Prejudice", "Jane Austen", BookGenre.ROMANCE));
+            libraryService.changeBookAuthor(book.getID(), "Jane Austen");
+        }
+        try (LibraryService libraryService = open()) {
+            assertEquals(2, libraryService.getBookService().getBooks().size());
+            assertEquals("Jane Austen", libraryService.getBook(book.getID()).getAuthor());
+            assertEquals("Jane Austen", libraryService.findBooks(null, "austen", null, 10).get(0).getAuthor());
+            assertEquals(1, libraryService.findTitles("pride", null, null, 10).size());
+        }
+    }
+
+    public void testStorageSnapshotOmitsMappedBooks() throws IOException {
+        Path books = directory.resolve("books");
+        Path changes = directory.resolve("changes");
+        BookDto book = new BookDto("Pride and Prejudice", "Jane Austen", BookGenre.ROMANCE);
+        UserDto user = new UserDto("Victoria", "Shilova", 79005830462L);
+        try (LibraryService libraryService = open(books, changes)) {
+            libraryService.addBook(book);
+            libraryService.addUser(user);
+            assertTrue(libraryService.lendBook(book.getID(), user.getID()));
+            libraryService.getStorage().checkpoint();
+        }
+        List<MutationType> recovered = new ArrayList<>();
+        try (FileStorageEngine storage = new FileStorageEngine(changes)) {
+            storage.recover(mutation -> recovered.add(mutation.getType()));
+        }
+        assertFalse(recovered.contains(MutationType.ADD_BOOK));
+        assertTrue(recovered.contains(MutationType.LEND_BOOK));
+        try (LibraryService libraryService = open(books, changes)) {
+            assertEquals("Pride and Prejudice", libraryService.getBook(book.getID()).getTitle());
+            assertEquals(user.getID(), libraryService.getLendingJournal().findByBook(book.getID()).getUserID());
+        }
+    }
+
+    private LibraryService open(Path books, Path changes) throws IOException {
+        return LibraryService.open("Mapped test library", new FileStorageEngine(changes),
+                new AuditLog(new Slf4jAuditSink()), CacheSettings.defaults(), new MappedBookStore(books));
+    }
+
+    private LibraryService open() throws IOException {
+        return LibraryService.open("Mapped test library", new InMemoryStorageEngine(),
+                new AuditLog(new Slf4jAuditSink()), CacheSettings.defaults(), new MappedBookStore(directory));
+    }
+}